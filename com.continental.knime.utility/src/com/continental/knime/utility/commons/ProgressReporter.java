@@ -0,0 +1,77 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.continental.knime.utility.commons;
+
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+
+/**
+ * Reports the progress of a loop over a known number of items as "label: 50%" and checks for cancellation.
+ * Messages are only built and sent when the percentage changed and some time passed since the last one,
+ * cancellation is checked every CANCEL_CHECK_INTERVAL items; in between, advancing only counts the item.
+ */
+public class ProgressReporter {
+	
+	private static final int CANCEL_CHECK_INTERVAL = 256;
+	
+	private static final long MIN_REPORT_INTERVAL_NANOS = 250_000_000L;
+	
+	private final ExecutionMonitor m_exec;
+	private final String m_label;
+	private final double m_total;
+	private final long m_reportInterval;
+	
+	private long m_current = 0;
+	private int m_itemsUntilCancelCheck = 1; // check right at the first item
+	private long m_nextReportCheckpoint = 1;
+	private long m_lastReportNanos = System.nanoTime() - MIN_REPORT_INTERVAL_NANOS;
+	
+	/**
+	 * @param exec The (sub) execution monitor to report to.
+	 * @param label The text to show before the percentage.
+	 * @param total The total number of items of the loop.
+	 */
+	public ProgressReporter(final ExecutionMonitor exec, final String label, final double total) {
+		m_exec = exec;
+		m_label = label;
+		m_total = total;
+		m_reportInterval = Math.max(1, (long)(total / 100)); // one report per percent at most
+	}
+	
+	/**
+	 * Counts one processed item.
+	 * @throws CanceledExecutionException If the node execution has been canceled.
+	 */
+	public void advance() throws CanceledExecutionException {
+		m_current++;
+		if (--m_itemsUntilCancelCheck == 0) {
+			m_itemsUntilCancelCheck = CANCEL_CHECK_INTERVAL;
+			m_exec.checkCanceled();
+		}
+		if (m_current >= m_nextReportCheckpoint) {
+			m_nextReportCheckpoint = m_current + m_reportInterval;
+			long now = System.nanoTime();
+			if (now - m_lastReportNanos >= MIN_REPORT_INTERVAL_NANOS) {
+				m_lastReportNanos = now;
+				double fraction = m_total <= 0 ? 0d : Math.min(1d, m_current / m_total);
+				m_exec.setProgress(fraction, m_label + ": " + Math.round(fraction * 100) + "%");
+			}
+		}
+	}
+}
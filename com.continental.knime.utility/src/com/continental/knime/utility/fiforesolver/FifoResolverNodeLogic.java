@@ -41,9 +41,10 @@ import org.knime.core.data.def.StringCell;
 import org.knime.core.node.BufferedDataContainer;
 import org.knime.core.node.BufferedDataTable;
 import org.knime.core.node.ExecutionContext;
-import org.knime.core.node.ExecutionMonitor;
 import org.knime.core.node.NodeLogger;
 
+import com.continental.knime.utility.commons.ProgressReporter;
+
 public class FifoResolverNodeLogic {
 	
 	public static BufferedDataTable[] execute(final BufferedDataTable[] inData, final boolean isModeFifo,
@@ -52,7 +53,6 @@ public class FifoResolverNodeLogic {
 		
 		// qm (queue map): <group name, <row id IN, remaining quantity>>
 		HashMap<String, FifoLifoStore> qm = new HashMap<String, FifoLifoStore>();
-		ExecutionMonitor subExecMonitor;
 		
 		BufferedDataTable inputTable = inData[IN_PORT];
 		long rowCount = inputTable.size();
@@ -75,12 +75,9 @@ public class FifoResolverNodeLogic {
 								new DataType[] { StringCell.TYPE, StringCell.TYPE, StringCell.TYPE, qtyNumberType })));
 		
 		// main loop of processing the input table (and where possible already populating the output table)
-		long currentRow = 0;
-		subExecMonitor = exec.createSubProgress(.8d);
+		ProgressReporter progress = new ProgressReporter(exec.createSubProgress(.8d), "process input table", rowCount);
 		for (DataRow row : inputTable) {
-			subExecMonitor.checkCanceled();
-			subExecMonitor.setProgress((double)currentRow / rowCount,
-					"process input table: " + Math.round(currentRow * 100d / rowCount) + "%");
+			progress.advance();
 			
 			// read data from row:
 			String group =
@@ -147,12 +144,9 @@ public class FifoResolverNodeLogic {
 		}
 		
 		// handle end inventory (still enqueued at end, meaning not matched with an OUT):
-		subExecMonitor = exec.createSubProgress(.2d);
-		long i = 0;
+		progress = new ProgressReporter(exec.createSubProgress(.2d), "post-process remainder", qm.size());
 		for (String group : qm.keySet()) {
-			subExecMonitor.checkCanceled();
-			subExecMonitor.setProgress((double)i / (i+1),
-					"post-process remainder: " + Math.round(i * 100d / (i+1)) + "%");
+			progress.advance();
 			FifoLifoStore q = qm.get(group); // get this group's queue
 			AbstractMap.SimpleEntry<String, Double> entry = null;
 			while ((entry = q.poll()) != null) {
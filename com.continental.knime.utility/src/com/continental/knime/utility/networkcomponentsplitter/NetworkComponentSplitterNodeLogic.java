@@ -43,6 +43,8 @@ import org.knime.core.node.ExecutionContext;
 import org.knime.core.node.ExecutionMonitor;
 import org.knime.core.node.NodeLogger;
 
+import com.continental.knime.utility.commons.ProgressReporter;
+
 public class NetworkComponentSplitterNodeLogic {
 	
 	public static BufferedDataTable[] execute(final BufferedDataTable[] inData,
@@ -95,13 +97,10 @@ public class NetworkComponentSplitterNodeLogic {
 		
 		// read in data table and fill HashMaps in this first pass right away,
 		// i.e. part 1 of the algorithm description above
-		long currentRow = 0;
-		subExecMonitor = exec.createSubProgress(.5d);
+		ProgressReporter progress = new ProgressReporter(exec.createSubProgress(.5d), "pre-process input table", rowCount);
 		for (DataRow row : inputTable) {
 			
-			subExecMonitor.checkCanceled();
-			subExecMonitor.setProgress((double)currentRow / rowCount,
-					"pre-process input table: " + Math.round(currentRow * 100d / rowCount) + "%");
+			progress.advance();
 			
 			String key1 =
 					row.getCell(colIndexNode1).isMissing() || row.getCell(colIndexNode1).getType() != StringCell.TYPE ? null
@@ -144,7 +143,6 @@ public class NetworkComponentSplitterNodeLogic {
 				nextFreeClusterId++;
 			}
 			
-			currentRow++;
 		}
   		
 		
@@ -154,13 +152,9 @@ public class NetworkComponentSplitterNodeLogic {
 		HashMap<Integer, HashSet<Integer>> clusterGroupMap = new HashMap<Integer, HashSet<Integer>>(); // reverse look-up table (in above logic: which value maps to which keys)
 		
 		// initially fill new data structures
-		long progress = 0;
-		double statusCalculationTotal = nextFreeClusterId + -1 * (double)Integer.MIN_VALUE;  	
-		subExecMonitor = exec.createSubProgress(.02d);
+		progress = new ProgressReporter(exec.createSubProgress(.02d), "prepare cluster ID assignment", nextFreeClusterId + -1 * (double)Integer.MIN_VALUE);
 		for (int i = Integer.MIN_VALUE; i < nextFreeClusterId; i++) {
-			subExecMonitor.checkCanceled();
-			subExecMonitor.setProgress(progress / statusCalculationTotal,
-					"prepare cluster ID assignment " + Math.round(progress++ * 100d / statusCalculationTotal) + "%");
+			progress.advance();
 			
 			smallestRelatedClusterMap.put(i, i); // add self-reference for all clusters not appearing in a connection
 			clusterGroupMap.put(i, new HashSet<Integer>());
@@ -168,13 +162,10 @@ public class NetworkComponentSplitterNodeLogic {
 		}
 		
 		// iterate through the known connections between clusters
-		progress = 0;
-		statusCalculationTotal = clusterConnections.size();
 		subExecMonitor = exec.createSubProgress(.01d);
+		progress = new ProgressReporter(subExecMonitor, "calculate cluster IDs for nodes", clusterConnections.size());
 		for (AbstractMap.SimpleEntry<Integer, Integer> pair : clusterConnections) {
-			subExecMonitor.checkCanceled();
-			subExecMonitor.setProgress(progress / statusCalculationTotal,
-					"calculate cluster IDs for nodes " + Math.round(progress++ * 100d / statusCalculationTotal) + "%");
+			progress.advance();
 			Integer pairSmaller = pair.getKey(); // by the above adding strategy, key is always smaller than value in these connections
 			Integer pairLarger = pair.getValue();
 			Integer valuePairS = smallestRelatedClusterMap.get(pairSmaller);
@@ -205,13 +196,9 @@ public class NetworkComponentSplitterNodeLogic {
 		nextFreeClusterId = 1;  // final cluster ID list shall be 1-based, not 0-based
 		Set<Integer> keys = smallestRelatedClusterMap.keySet();
 		
-		progress = 0;
-		statusCalculationTotal = keys.size();
-		subExecMonitor = exec.createSubProgress(.02d);
+		progress = new ProgressReporter(exec.createSubProgress(.02d), "generate final cluster IDs", keys.size());
 		for (Integer key : keys) {
-			subExecMonitor.checkCanceled();
-			subExecMonitor.setProgress(progress / statusCalculationTotal,
-					"generate final cluster IDs: " + Math.round(progress++ * 100d / statusCalculationTotal) + "%");
+			progress.advance();
 			Integer right = smallestRelatedClusterMap.get(key);
 			if (!finalClusterIds.containsKey(right)) {
 				
@@ -229,12 +216,9 @@ public class NetworkComponentSplitterNodeLogic {
 		
 		// assign nodes to clusters, i.e. create unsorted output table
 		long i = 0;
-		statusCalculationTotal = nodeToClusterMap.size();
-		subExecMonitor = exec.createSubProgress(.1d);
+		progress = new ProgressReporter(exec.createSubProgress(.1d), "buffer unsorted output table", nodeToClusterMap.size());
 		for (String key : nodeToClusterMap.keySet()) {
-			subExecMonitor.checkCanceled();
-			subExecMonitor.setProgress((double)i / statusCalculationTotal,
-					"buffer unsorted output table: " + Math.round(i * 100d / statusCalculationTotal) + "%");
+			progress.advance();
 			
 			DataCell[] cells = new DataCell[2];
 			cells[0] = key == null ? new MissingCell("") : new StringCell(key);
@@ -0,0 +1,178 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.continental.knime.xlsformatter.apply;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.continental.knime.xlsformatter.benchmarks.SyntheticStateGenerator;
+import com.continental.knime.xlsformatter.benchmarks.SyntheticWorkbookGenerator;
+import com.continental.knime.xlsformatter.commons.ProgressMonitor;
+import com.continental.knime.xlsformatter.commons.WarningMessageContainer;
+import com.continental.knime.xlsformatter.commons.XlsFormatterLogger;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState;
+
+/**
+ * Benchmarks the phases of applying an XLS Formatter state to an xlsx file, i.e. opening the input workbook, resolving
+ * full-range and color scale instructions, deriving the POI styles, adding the conditional formats and the complete apply
+ * run incl. writing the output file. Besides the operation throughput, each phase reports the cells processed per second
+ * (the "cells" counter). Run via XlsFormatterBenchmarks to obtain the allocation rate per phase as well.
+ * The phases live in this package to reach the package private methods of XlsFormatterApplyLogic.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 10, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx8g" })
+public class XlsFormatterApplyBenchmark {
+	
+	private static final long SEED = 20190101L;
+	
+	@Param({ "10000", "200000", "2000000" })
+	public int cellCount;
+	
+	/**
+	 * The number of distinct cell formats.
+	 */
+	@Param({ "16", "1024" })
+	public int styleDiversity;
+	
+	/**
+	 * The optional instruction kinds, see SyntheticStateGenerator.parseFeatures.
+	 */
+	@Param({ "none", "all" })
+	public String features;
+	
+	private byte[] m_inputFile;
+	private XlsFormatterState m_state;
+	private XlsFormatterState m_resolvedState;
+	private Workbook m_sharedWorkbook;
+	
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		m_inputFile = SyntheticWorkbookGenerator.generate(cellCount, SEED);
+		m_state = new SyntheticStateGenerator(cellCount, styleDiversity, SyntheticStateGenerator.parseFeatures(features), SEED).generate();
+		m_sharedWorkbook = openInputFile();
+		m_resolvedState = resolve(m_state, m_sharedWorkbook);
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		m_sharedWorkbook.close();
+	}
+	
+	Workbook openInputFile() throws Exception {
+		return WorkbookFactory.create(new ByteArrayInputStream(m_inputFile));
+	}
+	
+	private static XlsFormatterState resolve(final XlsFormatterState xlsf, final Workbook wb) throws Exception {
+		XlsFormatterState ret = XlsFormatterApplyFullRangeResolver.resolve(xlsf, wb);
+		return XlsFormatterApplyColorScaleDetector.convert(ret, wb, false, XlsFormatterLogger.NONE);
+	}
+	
+	/**
+	 * Counts the cells processed by a phase, reported as throughput next to the operations.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class CellCounter {
+		
+		public long cells;
+		
+		@Setup(Level.Iteration)
+		public void reset() {
+			cells = 0;
+		}
+	}
+	
+	/**
+	 * A freshly opened input workbook for phases that modify it.
+	 */
+	@State(Scope.Thread)
+	public static class FreshWorkbook {
+		
+		Workbook workbook;
+		
+		@Setup(Level.Invocation)
+		public void open(final XlsFormatterApplyBenchmark benchmark) throws Exception {
+			workbook = benchmark.openInputFile();
+		}
+		
+		@TearDown(Level.Invocation)
+		public void close() throws Exception {
+			workbook.close();
+		}
+	}
+	
+	@Benchmark
+	public int openWorkbook(final CellCounter counter) throws Exception {
+		try (Workbook wb = openInputFile()) {
+			counter.cells += cellCount;
+			return wb.getNumCellStyles();
+		}
+	}
+	
+	@Benchmark
+	public XlsFormatterState resolveInstructions(final CellCounter counter) throws Exception {
+		counter.cells += cellCount;
+		return resolve(m_state, m_sharedWorkbook);
+	}
+	
+	@Benchmark
+	public Object deriveNecessaryStyles(final FreshWorkbook input, final CellCounter counter) throws Exception {
+		counter.cells += cellCount;
+		return XlsFormatterApplyLogic.deriveNecessaryStyles(input.workbook, m_resolvedState, false, ProgressMonitor.NONE, XlsFormatterLogger.NONE);
+	}
+	
+	@Benchmark
+	public int applyConditionalFormatting(final FreshWorkbook input, final CellCounter counter) throws Exception {
+		counter.cells += cellCount;
+		XlsFormatterApplyLogic.applyConditionalFormatting(input.workbook.getSheetAt(0), m_resolvedState.sheetStates.get(null),
+				new WarningMessageContainer(), ProgressMonitor.NONE, XlsFormatterLogger.NONE);
+		return input.workbook.getSheetAt(0).getSheetConditionalFormatting().getNumConditionalFormattings();
+	}
+	
+	@Benchmark
+	public WarningMessageContainer applyComplete(final CellCounter counter) throws Exception {
+		WarningMessageContainer warningMessageContainer = new WarningMessageContainer();
+		XlsFormatterApplyLogic.apply("benchmark.xlsx", () -> new ByteArrayInputStream(m_inputFile), () -> OutputStream.nullOutputStream(),
+				m_state, false, warningMessageContainer, ProgressMonitor.NONE, XlsFormatterLogger.NONE);
+		counter.cells += cellCount;
+		return warningMessageContainer;
+	}
+}
@@ -0,0 +1,235 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.continental.knime.xlsformatter.benchmarks;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import com.continental.knime.xlsformatter.porttype.CellMap;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.BorderEdge;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.BorderStyle;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.CellAlignmentHorizontal;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.CellState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.Comment;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.ConditionalFormattingSet;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.DataBar;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.FillPattern;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.FormattingFlag;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.HighlightRule;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.HighlightRuleType;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.SheetState;
+
+/**
+ * Generates reproducible XLS Formatter states of a given size and shape for benchmarking. The cells cover a rectangle of
+ * COLUMN_COUNT columns (i.e. the data area of a SyntheticWorkbookGenerator workbook of the same cell count), each cell
+ * getting its cell format set like after a chain of formatting nodes. The styles are taken from a pool of styleDiversity
+ * distinct cell formats, assigned in column blocks of varying height such that the style map shows realistic locality.
+ */
+public class SyntheticStateGenerator {
+	
+	/**
+	 * Optional instruction kinds besides plain cell formats.
+	 */
+	public enum Feature { MERGES, CONDITIONAL_FORMATS, HYPERLINKS, COMMENTS }
+	
+	public static final int COLUMN_COUNT = 50;
+	
+	private static final int MERGE_ROW_INTERVAL = 100;
+	private static final int CONDITIONAL_FORMAT_COLUMN_INTERVAL = 10;
+	private static final int HYPERLINK_CELL_INTERVAL = 50;
+	private static final int COMMENT_CELL_INTERVAL = 200;
+	
+	private final int m_cellCount;
+	private final int m_styleDiversity;
+	private final Set<Feature> m_features;
+	private final long m_seed;
+	
+	/**
+	 * @param cellCount The number of cells with formatting instructions.
+	 * @param styleDiversity The number of distinct cell formats.
+	 * @param features The optional instruction kinds to add.
+	 * @param seed The random seed, equal arguments yield equal states.
+	 */
+	public SyntheticStateGenerator(final int cellCount, final int styleDiversity, final Set<Feature> features, final long seed) {
+		if (cellCount <= 0 || styleDiversity <= 0)
+			throw new IllegalArgumentException("Cell count and style diversity need to be positive.");
+		m_cellCount = cellCount;
+		m_styleDiversity = styleDiversity;
+		m_features = features.isEmpty() ? EnumSet.noneOf(Feature.class) : EnumSet.copyOf(features);
+		m_seed = seed;
+	}
+	
+	/**
+	 * Parses a comma separated list of feature names (case insensitive) as used in benchmark parameters. "none" and the
+	 * empty string yield no feature, "all" all of them.
+	 */
+	public static Set<Feature> parseFeatures(final String features) {
+		String trimmed = features == null ? "" : features.trim().toUpperCase(Locale.ROOT);
+		if (trimmed.isEmpty() || trimmed.equals("NONE"))
+			return EnumSet.noneOf(Feature.class);
+		if (trimmed.equals("ALL"))
+			return EnumSet.allOf(Feature.class);
+		Set<Feature> ret = EnumSet.noneOf(Feature.class);
+		for (String feature : trimmed.split(","))
+			ret.add(Feature.valueOf(feature.trim()));
+		return ret;
+	}
+	
+	/**
+	 * Gets the number of rows covered by the generated cells.
+	 */
+	public int getRowCount() {
+		return getRowCount(m_cellCount);
+	}
+	
+	static int getRowCount(final int cellCount) {
+		return (cellCount + COLUMN_COUNT - 1) / COLUMN_COUNT;
+	}
+	
+	/**
+	 * Generates a state addressing the default sheet.
+	 */
+	public XlsFormatterState generate() throws Exception {
+		Random random = new Random(m_seed);
+		XlsFormatterState ret = new XlsFormatterState();
+		SheetState sheetState = ret.getCurrentSheetStateForModification();
+		
+		List<CellState> stylePool = createStylePool(random);
+		List<ConditionalFormattingSet> conditionalFormats = createConditionalFormats();
+		
+		// styles are assigned per column in blocks of 1 to 64 rows:
+		int[] styleOfColumn = new int[COLUMN_COUNT];
+		int[] rowsLeftInBlock = new int[COLUMN_COUNT];
+		
+		int rowCount = getRowCount();
+		int cellIndex = 0;
+		for (int row = 0; row < rowCount; row++) {
+			for (int col = 0; col < COLUMN_COUNT && cellIndex < m_cellCount; col++, cellIndex++) {
+				if (rowsLeftInBlock[col]-- <= 0) {
+					styleOfColumn[col] = random.nextInt(m_styleDiversity);
+					rowsLeftInBlock[col] = random.nextInt(64);
+				}
+				CellState cellState = copyOf(stylePool.get(styleOfColumn[col]));
+				
+				if (m_features.contains(Feature.CONDITIONAL_FORMATS) && col % CONDITIONAL_FORMAT_COLUMN_INTERVAL == 0 && // numeric columns only
+						random.nextInt(4) != 0) // leave gaps to obtain jagged ranges
+					cellState.conditionalFormat = conditionalFormats.get((col / CONDITIONAL_FORMAT_COLUMN_INTERVAL) % conditionalFormats.size());
+				if (m_features.contains(Feature.HYPERLINKS) && cellIndex % HYPERLINK_CELL_INTERVAL == 1)
+					cellState.hyperlink = "https://www.example.com/items/" + cellIndex;
+				if (m_features.contains(Feature.COMMENTS) && cellIndex % COMMENT_CELL_INTERVAL == 2) {
+					cellState.comment = new Comment();
+					cellState.comment.author = "Benchmark";
+					cellState.comment.text = "Synthetic comment of cell " + cellIndex;
+				}
+				sheetState.putCellState(CellMap.toKey(row, col), cellState);
+			}
+			
+			// merge two cells of a string column every MERGE_ROW_INTERVAL rows:
+			if (m_features.contains(Feature.MERGES) && row % MERGE_ROW_INTERVAL == MERGE_ROW_INTERVAL - 1)
+				sheetState.mergeRanges.add(new CellRangeAddress(row, row, 1 + 2 * ((row / MERGE_ROW_INTERVAL) % (COLUMN_COUNT / 2 - 1)),
+						2 + 2 * ((row / MERGE_ROW_INTERVAL) % (COLUMN_COUNT / 2 - 1))));
+		}
+		return ret;
+	}
+	
+	/**
+	 * Creates styleDiversity mutually distinct cell formats. The first formats vary in one property each, later ones combine
+	 * several properties, so that larger pools also contain more complex styles.
+	 */
+	private List<CellState> createStylePool(final Random random) {
+		List<CellState> ret = new ArrayList<CellState>(m_styleDiversity);
+		BorderStyle[] borderStyles = { BorderStyle.NORMAL, BorderStyle.THICK, BorderStyle.DASHED, BorderStyle.DOUBLE };
+		CellAlignmentHorizontal[] alignments = { CellAlignmentHorizontal.LEFT, CellAlignmentHorizontal.CENTER, CellAlignmentHorizontal.RIGHT };
+		String[] textFormats = { "0.00", "#,##0", "0%", "yyyy-mm-dd" };
+		for (int i = 0; i < m_styleDiversity; i++) {
+			CellState style = new CellState();
+			// the background color alone makes the styles distinct (a 24 bit color derived from the index):
+			style.backgroundColor = new Color((i * 0x9E3779) & 0xFFFFFF);
+			style.fillPattern = FillPattern.SOLID_BACKGROUND_COLOR;
+			if (i % 2 == 1)
+				style.fontBold = FormattingFlag.ON;
+			if (i % 3 == 1)
+				style.fontSize = 8 + random.nextInt(8);
+			if (i % 5 == 2)
+				style.fontColor = new Color(random.nextInt(0x1000000));
+			if (i % 4 == 3)
+				style.cellHorizontalAlignment = alignments[random.nextInt(alignments.length)];
+			if (i % 7 == 4) {
+				BorderEdge edge = new BorderEdge(borderStyles[random.nextInt(borderStyles.length)], Color.BLACK);
+				style.borderTop = edge;
+				style.borderBottom = new BorderEdge(edge.style, edge.color);
+			}
+			if (i % 11 == 5)
+				style.textFormat = textFormats[random.nextInt(textFormats.length)];
+			ret.add(style);
+		}
+		return ret;
+	}
+	
+	/**
+	 * Creates one conditional formatting set of each kind: a color scale, a relative formula based highlight rule and a data bar.
+	 */
+	private static List<ConditionalFormattingSet> createConditionalFormats() {
+		List<ConditionalFormattingSet> ret = new ArrayList<ConditionalFormattingSet>();
+		
+		ConditionalFormattingSet colorScale = new ConditionalFormattingSet();
+		colorScale.backgroundScaleFixpoints.add(Pair.of(0d, Color.RED));
+		colorScale.backgroundScaleFixpoints.add(Pair.of(1d, Color.GREEN));
+		ret.add(colorScale);
+		
+		ConditionalFormattingSet highlight = new ConditionalFormattingSet();
+		HighlightRule rule = new HighlightRule();
+		rule.type = HighlightRuleType.FORMULA;
+		rule.formula1 = "A1>0.5";
+		rule.backgroundColor = Color.YELLOW;
+		rule.fontBold = true;
+		highlight.highlightRules.add(rule);
+		ret.add(highlight);
+		
+		ConditionalFormattingSet dataBar = new ConditionalFormattingSet();
+		dataBar.dataBar = new DataBar();
+		dataBar.dataBar.color = Color.BLUE;
+		ret.add(dataBar);
+		
+		return ret;
+	}
+	
+	private static CellState copyOf(final CellState style) {
+		CellState ret = new CellState();
+		ret.fontSize = style.fontSize;
+		ret.fontBold = style.fontBold;
+		ret.fontColor = style.fontColor;
+		ret.cellHorizontalAlignment = style.cellHorizontalAlignment;
+		ret.backgroundColor = style.backgroundColor;
+		ret.fillPattern = style.fillPattern;
+		ret.textFormat = style.textFormat;
+		ret.borderTop = style.borderTop == null ? null : new BorderEdge(style.borderTop.style, style.borderTop.color);
+		ret.borderBottom = style.borderBottom == null ? null : new BorderEdge(style.borderBottom.style, style.borderBottom.color);
+		return ret;
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.continental.knime.xlsformatter.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+/**
+ * Generates reproducible unformatted xlsx files, like written by KNIME's XLS Writer, as input of the apply benchmarks.
+ * The data area covers SyntheticStateGenerator.COLUMN_COUNT columns, with numeric values in even and text values in odd columns.
+ */
+public class SyntheticWorkbookGenerator {
+	
+	private SyntheticWorkbookGenerator() { }
+	
+	/**
+	 * Generates an xlsx file with a single sheet holding the given number of cells.
+	 * @param seed The random seed, equal arguments yield equal files.
+	 * @return The xlsx file's content.
+	 */
+	public static byte[] generate(final int cellCount, final long seed) throws IOException {
+		Random random = new Random(seed);
+		int rowCount = SyntheticStateGenerator.getRowCount(cellCount);
+		int columnCount = SyntheticStateGenerator.COLUMN_COUNT;
+		try (SXSSFWorkbook wb = new SXSSFWorkbook(1000)) {
+			wb.setCompressTempFiles(true);
+			Sheet sheet = wb.createSheet("Sheet1");
+			int cellIndex = 0;
+			for (int r = 0; r < rowCount; r++) {
+				Row row = sheet.createRow(r);
+				for (int c = 0; c < columnCount && cellIndex < cellCount; c++, cellIndex++) {
+					if (c % 2 == 0)
+						row.createCell(c).setCellValue(random.nextDouble());
+					else
+						row.createCell(c).setCellValue("Text " + Integer.toString(random.nextInt(100000), 36));
+				}
+			}
+			ByteArrayOutputStream ret = new ByteArrayOutputStream();
+			wb.write(ret);
+			wb.dispose();
+			return ret.toByteArray();
+		}
+	}
+}
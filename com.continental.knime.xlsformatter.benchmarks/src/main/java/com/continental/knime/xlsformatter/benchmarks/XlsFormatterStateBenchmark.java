@@ -0,0 +1,252 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.continental.knime.xlsformatter.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.continental.knime.xlsformatter.commons.ProgressMonitor;
+import com.continental.knime.xlsformatter.commons.WarningMessageContainer;
+import com.continental.knime.xlsformatter.commons.XlsFormatterLogger;
+import com.continental.knime.xlsformatter.commons.XlsFormattingStateValidator;
+import com.continental.knime.xlsformatter.commons.XlsFormattingStateValidator.ValidationModes;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterStateMerger;
+
+/**
+ * Benchmarks the operations on the XLS Formatter port object that every formatting node or the KNIME port persistence
+ * performs, i.e. deep cloning, serialization and de-serialization (as done by XlsFormatterStateSerializer), equals and hashCode,
+ * merging resp. combining several states and the style complexity validation. The memoryFootprint benchmark reports the
+ * retained heap and the serialized size per cell (the "heapBytesPerCell" and "serializedBytesPerCell" counters).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 10, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx8g" })
+public class XlsFormatterStateBenchmark {
+	
+	private static final long SEED = 20190101L;
+	
+	@Param({ "10000", "200000", "2000000" })
+	public int cellCount;
+	
+	/**
+	 * The number of distinct cell formats.
+	 */
+	@Param({ "256" })
+	public int styleDiversity;
+	
+	/**
+	 * The optional instruction kinds, see SyntheticStateGenerator.parseFeatures.
+	 */
+	@Param({ "none", "all" })
+	public String features;
+	
+	/**
+	 * The number of states to merge, each holding cellCount / mergeWays cells of the same area, so that all cells conflict.
+	 */
+	@Param({ "4" })
+	public int mergeWays;
+	
+	private XlsFormatterState m_state;
+	private XlsFormatterState m_equalState;
+	private byte[] m_serializedState;
+	private List<XlsFormatterState> m_statesToMerge;
+	
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		m_state = createGenerator(cellCount, SEED).generate();
+		m_equalState = createGenerator(cellCount, SEED).generate();
+		m_serializedState = serialize(m_state);
+		m_statesToMerge = new ArrayList<XlsFormatterState>();
+		for (int i = 0; i < mergeWays; i++)
+			m_statesToMerge.add(createGenerator(Math.max(1, cellCount / mergeWays), SEED + i).generate());
+	}
+	
+	private SyntheticStateGenerator createGenerator(final int cells, final long seed) {
+		return new SyntheticStateGenerator(cells, styleDiversity, SyntheticStateGenerator.parseFeatures(features), seed);
+	}
+	
+	private static byte[] serialize(final XlsFormatterState state) throws Exception {
+		ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+		try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(byteOutputStream)) {
+			objectOutputStream.writeObject(state);
+		}
+		return byteOutputStream.toByteArray();
+	}
+	
+	/**
+	 * Counts the cells processed by an operation, reported as throughput next to the operations.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class CellCounter {
+		
+		public long cells;
+		
+		@Setup(Level.Iteration)
+		public void reset() {
+			cells = 0;
+		}
+	}
+	
+	/**
+	 * A fresh clone of the first state to merge into, as merging modifies the master state.
+	 */
+	@State(Scope.Thread)
+	public static class MergeMaster {
+		
+		XlsFormatterState master;
+		
+		@Setup(Level.Invocation)
+		public void clone(final XlsFormatterStateBenchmark benchmark) throws Exception {
+			master = benchmark.m_statesToMerge.get(0).getDeepClone();
+		}
+	}
+	
+	/**
+	 * The memory footprint of the state per cell.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class FootprintCounter {
+		
+		public long heapBytesPerCell;
+		public long serializedBytesPerCell;
+		
+		@Setup(Level.Iteration)
+		public void reset() {
+			heapBytesPerCell = 0;
+			serializedBytesPerCell = 0;
+		}
+	}
+	
+	@Benchmark
+	public XlsFormatterState deepClone(final CellCounter counter) throws Exception {
+		counter.cells += cellCount;
+		return m_state.getDeepClone();
+	}
+	
+	/**
+	 * The copy every node starts with, so compare with deepClone.
+	 */
+	@Benchmark
+	public XlsFormatterState modifiableCopy(final CellCounter counter) {
+		counter.cells += cellCount;
+		return m_state.getModifiableCopy();
+	}
+	
+	@Benchmark
+	public byte[] writeExternal(final CellCounter counter) throws Exception {
+		counter.cells += cellCount;
+		return serialize(m_state);
+	}
+	
+	@Benchmark
+	public Object readExternal(final CellCounter counter) throws Exception {
+		counter.cells += cellCount;
+		try (ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(m_serializedState))) {
+			return objectInputStream.readObject();
+		}
+	}
+	
+	@Benchmark
+	public boolean equalsOfEqualStates(final CellCounter counter) {
+		counter.cells += cellCount;
+		return m_state.equals(m_equalState);
+	}
+	
+	@Benchmark
+	public int hashCodeOfState(final CellCounter counter) {
+		counter.cells += cellCount;
+		return m_state.hashCode();
+	}
+	
+	@Benchmark
+	public XlsFormatterState mergeFormatterStates(final MergeMaster input, final CellCounter counter) throws Exception {
+		for (int i = 1; i < m_statesToMerge.size(); i++)
+			XlsFormatterStateMerger.mergeFormatterStates(input.master, m_statesToMerge.get(i), ProgressMonitor.NONE, XlsFormatterLogger.NONE);
+		counter.cells += cellCount;
+		return input.master;
+	}
+	
+	@Benchmark
+	public XlsFormatterState combineFormatterStates(final CellCounter counter) throws Exception {
+		counter.cells += cellCount;
+		return XlsFormatterStateMerger.combineFormatterStates(m_statesToMerge, ProgressMonitor.NONE, XlsFormatterLogger.NONE);
+	}
+	
+	@Benchmark
+	public WarningMessageContainer validateStyleComplexity(final CellCounter counter) throws Exception {
+		WarningMessageContainer warningMessageContainer = new WarningMessageContainer();
+		XlsFormattingStateValidator.validateState(m_state, ValidationModes.STYLES, warningMessageContainer, ProgressMonitor.NONE, XlsFormatterLogger.NONE);
+		counter.cells += cellCount;
+		return warningMessageContainer;
+	}
+	
+	/**
+	 * Generates a state and measures the heap it retains. The measurement forces garbage collections, so the reported
+	 * time is meaningless, the counters are what matters.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 1)
+	@Measurement(iterations = 3)
+	public XlsFormatterState memoryFootprint(final FootprintCounter counter) throws Exception {
+		long heapBefore = getUsedHeapAfterGc();
+		XlsFormatterState state = createGenerator(cellCount, SEED).generate();
+		long heapAfter = getUsedHeapAfterGc();
+		counter.heapBytesPerCell = (heapAfter - heapBefore) / cellCount;
+		counter.serializedBytesPerCell = m_serializedState.length / cellCount;
+		return state;
+	}
+	
+	private static long getUsedHeapAfterGc() throws InterruptedException {
+		long used = Long.MAX_VALUE;
+		for (int i = 0; i < 5; i++) { // the used heap settles after a few collections
+			System.gc();
+			Thread.sleep(50);
+			used = Math.min(used, ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+		}
+		return used;
+	}
+}
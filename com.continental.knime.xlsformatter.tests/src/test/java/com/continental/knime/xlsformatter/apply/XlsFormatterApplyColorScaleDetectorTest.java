@@ -0,0 +1,188 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.continental.knime.xlsformatter.apply;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.Color;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import org.apache.poi.ss.usermodel.ColorScaleFormatting;
+import org.apache.poi.ss.usermodel.ConditionType;
+import org.apache.poi.ss.usermodel.ConditionalFormatting;
+import org.apache.poi.ss.usermodel.ConditionalFormattingThreshold.RangeType;
+import org.apache.poi.ss.usermodel.FillPatternType;
+import org.apache.poi.ss.usermodel.SheetConditionalFormatting;
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.apache.poi.xssf.usermodel.XSSFColor;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+import com.continental.knime.xlsformatter.commons.ProgressMonitor;
+import com.continental.knime.xlsformatter.commons.WarningMessageContainer;
+import com.continental.knime.xlsformatter.commons.XlsFormatterLogger;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.FillPattern;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.SheetState;
+
+/**
+ * Tests that blocks of background colors following a color scale of the cells' values are written as color scale conditional
+ * formatting, and that all others keep their per-cell fill.
+ */
+public class XlsFormatterApplyColorScaleDetectorTest {
+
+	private static final CellRangeAddress BLOCK = CellRangeAddress.valueOf("B2:E6");
+	private static final int MAX_VALUE = 19; // the block's cells hold the values 0 to 19
+
+	@Test
+	public void testLinearScaleWithinTolerance() throws Exception {
+		IntFunction<Color> colors = value -> {
+			int jitter = value == 0 || value == MAX_VALUE ? 0 : value % 3 - 1; // rounding of the generating process
+			return new Color(20 + (int)Math.round(215d * value / MAX_VALUE) + jitter, 100, 235 - (int)Math.round(215d * value / MAX_VALUE));
+		};
+		try (XSSFWorkbook wb = apply(colors)) {
+			XSSFSheet sheet = wb.getSheetAt(0);
+			SheetConditionalFormatting sheetCF = sheet.getSheetConditionalFormatting();
+			assertEquals(1, sheetCF.getNumConditionalFormattings());
+			ConditionalFormatting formatting = sheetCF.getConditionalFormattingAt(0);
+			assertArrayEquals(new CellRangeAddress[] { BLOCK }, formatting.getFormattingRanges());
+			assertEquals(1, formatting.getNumberOfRules());
+			assertEquals(ConditionType.COLOR_SCALE, formatting.getRule(0).getConditionType());
+			ColorScaleFormatting colorScale = formatting.getRule(0).getColorScaleFormatting();
+			assertEquals(2, colorScale.getNumControlPoints());
+			assertFixpoint(colorScale, 0, 0, new Color(20, 100, 235));
+			assertFixpoint(colorScale, 1, MAX_VALUE, new Color(235, 100, 20));
+			assertCells(sheet, null);
+		}
+	}
+
+	@Test
+	public void testThreePointScale() throws Exception {
+		IntFunction<Color> colors = value -> value <= 8 ?
+				new Color(20 + value * 25, 100, 220) :
+				new Color(220, 100, 220 - (int)Math.round(200d * (value - 8) / (MAX_VALUE - 8)));
+		try (XSSFWorkbook wb = apply(colors)) {
+			XSSFSheet sheet = wb.getSheetAt(0);
+			SheetConditionalFormatting sheetCF = sheet.getSheetConditionalFormatting();
+			assertEquals(1, sheetCF.getNumConditionalFormattings());
+			ColorScaleFormatting colorScale = sheetCF.getConditionalFormattingAt(0).getRule(0).getColorScaleFormatting();
+			assertEquals(3, colorScale.getNumControlPoints());
+			assertFixpoint(colorScale, 0, 0, new Color(20, 100, 220));
+			assertFixpoint(colorScale, 1, 8, new Color(220, 100, 220));
+			assertFixpoint(colorScale, 2, MAX_VALUE, new Color(220, 100, 20));
+			assertCells(sheet, null);
+		}
+	}
+
+	@Test
+	public void testDeviationBeyondToleranceKeepsFills() throws Exception {
+		IntFunction<Color> colors = value -> {
+			int deviation = value == 0 || value == MAX_VALUE ? 0 : value % 2 == 0 ? 4 : -4;
+			return new Color(20 + (int)Math.round(215d * value / MAX_VALUE) + deviation, 100, 235 - (int)Math.round(215d * value / MAX_VALUE));
+		};
+		try (XSSFWorkbook wb = apply(colors)) {
+			XSSFSheet sheet = wb.getSheetAt(0);
+			assertEquals(0, sheet.getSheetConditionalFormatting().getNumConditionalFormattings());
+			assertCells(sheet, colors);
+		}
+	}
+
+	@Test
+	public void testTooFewColorsKeepFills() throws Exception {
+		IntFunction<Color> colors = value -> value < 10 ? Color.BLUE : Color.RED; // following a scale of the values 0 and 1, but not worth a rule
+		try (XSSFWorkbook wb = apply(colors, value -> value < 10 ? 0 : 1)) {
+			XSSFSheet sheet = wb.getSheetAt(0);
+			assertEquals(0, sheet.getSheetConditionalFormatting().getNumConditionalFormattings());
+			assertCells(sheet, colors);
+		}
+	}
+
+	private static XSSFWorkbook apply(final IntFunction<Color> colors) throws Exception {
+		return apply(colors, value -> value);
+	}
+
+	/**
+	 * Writes a block of values and applies a background color per value.
+	 * @param colors Gets the color of the cell with the n-th value.
+	 * @param values Maps n to the cell's value.
+	 */
+	private static XSSFWorkbook apply(final IntFunction<Color> colors, final IntFunction<Integer> values) throws Exception {
+		XlsFormatterState state = new XlsFormatterState();
+		SheetState sheetState = state.getCurrentSheetStateForModification();
+		ByteArrayOutputStream input = new ByteArrayOutputStream();
+		try (XSSFWorkbook wb = new XSSFWorkbook()) {
+			XSSFSheet sheet = wb.createSheet("data");
+			for (int r = BLOCK.getFirstRow(); r <= BLOCK.getLastRow(); r++) {
+				XSSFRow row = sheet.createRow(r);
+				for (int c = BLOCK.getFirstColumn(); c <= BLOCK.getLastColumn(); c++) {
+					int n = getIndex(r, c);
+					row.createCell(c).setCellValue(values.apply(n));
+					Color color = colors.apply(n);
+					sheetState.modifyCells(List.of(new CellAddress(r, c)), cellState -> {
+						cellState.backgroundColor = color;
+						cellState.fillPattern = FillPattern.SOLID_BACKGROUND_COLOR;
+					});
+				}
+			}
+			wb.write(input);
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		XlsFormatterApplyLogic.apply("input.xlsx", () -> new ByteArrayInputStream(input.toByteArray()), () -> out, state, false,
+				new WarningMessageContainer(), ProgressMonitor.NONE, XlsFormatterLogger.NONE);
+		return new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()));
+	}
+
+	private static int getIndex(final int row, final int column) {
+		return (row - BLOCK.getFirstRow()) * (BLOCK.getLastColumn() - BLOCK.getFirstColumn() + 1) + column - BLOCK.getFirstColumn();
+	}
+
+	/**
+	 * Checks the block's cells' values and fills.
+	 * @param colors Gets the expected fill color of the cell with the n-th value, or null if the cells shall have no fill.
+	 */
+	private static void assertCells(final XSSFSheet sheet, final IntFunction<Color> colors) {
+		for (int r = BLOCK.getFirstRow(); r <= BLOCK.getLastRow(); r++)
+			for (int c = BLOCK.getFirstColumn(); c <= BLOCK.getLastColumn(); c++) {
+				XSSFCell cell = sheet.getRow(r).getCell(c);
+				int n = getIndex(r, c);
+				if (colors == null)
+					assertEquals(FillPatternType.NO_FILL, cell.getCellStyle().getFillPattern(), "fill of cell " + cell.getAddress());
+				else
+					assertArrayEquals(getRgb(colors.apply(n)), cell.getCellStyle().getFillForegroundColorColor().getRGB(), "color of cell " + cell.getAddress());
+			}
+	}
+
+	private static void assertFixpoint(final ColorScaleFormatting colorScale, final int index, final double value, final Color color) {
+		assertEquals(RangeType.NUMBER, colorScale.getThresholds()[index].getRangeType());
+		assertEquals(value, colorScale.getThresholds()[index].getValue(), 1e-9);
+		assertArrayEquals(getRgb(color), ((XSSFColor)colorScale.getColors()[index]).getRGB());
+	}
+
+	private static byte[] getRgb(final Color color) {
+		return new byte[] { (byte)color.getRed(), (byte)color.getGreen(), (byte)color.getBlue() };
+	}
+}
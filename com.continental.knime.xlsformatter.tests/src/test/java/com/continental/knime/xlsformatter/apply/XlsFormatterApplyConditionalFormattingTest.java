@@ -0,0 +1,167 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.continental.knime.xlsformatter.apply;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.poi.ss.usermodel.ConditionType;
+import org.apache.poi.ss.usermodel.ConditionalFormatting;
+import org.apache.poi.ss.usermodel.ConditionalFormattingThreshold;
+import org.apache.poi.ss.usermodel.ConditionalFormattingThreshold.RangeType;
+import org.apache.poi.ss.usermodel.SheetConditionalFormatting;
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+import com.continental.knime.xlsformatter.commons.AddressingTools;
+import com.continental.knime.xlsformatter.commons.ProgressMonitor;
+import com.continental.knime.xlsformatter.commons.WarningMessageContainer;
+import com.continental.knime.xlsformatter.commons.XlsFormatterLogger;
+import com.continental.knime.xlsformatter.commons.XlsFormattingStateValidator;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.ConditionalFormattingSet;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.ConditionalThresholdType;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.DataBar;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.HighlightRule;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.IconSetDefinition;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.SheetState;
+
+/**
+ * Tests how conditional formatting on jagged range lists exceeding the maximum formula length is split over several rules.
+ */
+public class XlsFormatterApplyConditionalFormattingTest {
+
+	private static final int AREA_SIZE = 80;
+
+	@Test
+	public void testHighlightRulesAndNumberThresholdsArePartitioned() throws Exception {
+		ConditionalFormattingSet conditionalFormat = new ConditionalFormattingSet();
+		conditionalFormat.highlightRules.add(createHighlightRule("A1>0"));
+		conditionalFormat.dataBar = new DataBar();
+		conditionalFormat.dataBar.color = Color.BLUE;
+		conditionalFormat.dataBar.minType = ConditionalThresholdType.NUMBER;
+		conditionalFormat.dataBar.minValue = 0d;
+		conditionalFormat.dataBar.maxType = ConditionalThresholdType.NUMBER;
+		conditionalFormat.dataBar.maxValue = 100d;
+		WarningMessageContainer warningMessageContainer = new WarningMessageContainer();
+
+		try (XSSFWorkbook wb = new XSSFWorkbook()) {
+			SheetConditionalFormatting sheetCF = apply(wb, conditionalFormat, warningMessageContainer);
+			int partitionCount = getExpectedPartitions().size();
+			assertTrue(partitionCount > 1);
+			assertEquals(partitionCount, sheetCF.getNumConditionalFormattings());
+			for (int i = 0; i < partitionCount; i++) {
+				ConditionalFormatting formatting = sheetCF.getConditionalFormattingAt(i);
+				assertEquals(2, formatting.getNumberOfRules());
+				assertEquals(ConditionType.FORMULA, formatting.getRule(0).getConditionType());
+				assertEquals(ConditionType.DATA_BAR, formatting.getRule(1).getConditionType());
+				assertThreshold(formatting.getRule(1).getDataBarFormatting().getMinThreshold(), RangeType.NUMBER, 0d);
+				assertThreshold(formatting.getRule(1).getDataBarFormatting().getMaxThreshold(), RangeType.NUMBER, 100d);
+			}
+			assertEquals(AREA_SIZE * AREA_SIZE / 2, getRangeCount(sheetCF, 0, partitionCount));
+			assertFalse(warningMessageContainer.hasMessage());
+		}
+	}
+
+	@Test
+	public void testRangeRelativeThresholdsAreKeptInOneRule() throws Exception {
+		ConditionalFormattingSet conditionalFormat = new ConditionalFormattingSet();
+		conditionalFormat.highlightRules.add(createHighlightRule("A1>0"));
+		conditionalFormat.iconSet = new IconSetDefinition(); // thresholds in percent of the range's values by default
+		conditionalFormat.iconSet.thresholds.add(33d);
+		conditionalFormat.iconSet.thresholds.add(67d);
+		WarningMessageContainer warningMessageContainer = new WarningMessageContainer();
+
+		try (XSSFWorkbook wb = new XSSFWorkbook()) {
+			SheetConditionalFormatting sheetCF = apply(wb, conditionalFormat, warningMessageContainer);
+			int partitionCount = getExpectedPartitions().size();
+			assertTrue(partitionCount > 1);
+			assertEquals(partitionCount + 1, sheetCF.getNumConditionalFormattings());
+			for (int i = 0; i < partitionCount; i++) {
+				assertEquals(1, sheetCF.getConditionalFormattingAt(i).getNumberOfRules());
+				assertEquals(ConditionType.FORMULA, sheetCF.getConditionalFormattingAt(i).getRule(0).getConditionType());
+			}
+			assertEquals(AREA_SIZE * AREA_SIZE / 2, getRangeCount(sheetCF, 0, partitionCount));
+
+			ConditionalFormatting iconSetFormatting = sheetCF.getConditionalFormattingAt(partitionCount);
+			assertEquals(AREA_SIZE * AREA_SIZE / 2, iconSetFormatting.getFormattingRanges().length);
+			assertEquals(1, iconSetFormatting.getNumberOfRules());
+			assertEquals(ConditionType.ICON_SET, iconSetFormatting.getRule(0).getConditionType());
+			ConditionalFormattingThreshold[] thresholds = iconSetFormatting.getRule(0).getMultiStateFormatting().getThresholds();
+			assertThreshold(thresholds[1], RangeType.PERCENT, 33d);
+			assertThreshold(thresholds[2], RangeType.PERCENT, 67d);
+			assertTrue(warningMessageContainer.hasMessage());
+		}
+	}
+
+	/**
+	 * Applies a conditional formatting set on the cells of a checkerboard pattern, i.e. on a range list of single cells.
+	 */
+	private static SheetConditionalFormatting apply(final XSSFWorkbook wb, final ConditionalFormattingSet conditionalFormat,
+			final WarningMessageContainer warningMessageContainer) throws Exception {
+		XlsFormatterState state = new XlsFormatterState();
+		SheetState sheetState = state.getCurrentSheetStateForModification();
+		sheetState.modifyCells(getCheckerboard(), cellState -> cellState.conditionalFormat = conditionalFormat);
+		XSSFSheet sheet = wb.createSheet();
+		XlsFormatterApplyLogic.applyConditionalFormatting(sheet, sheetState, warningMessageContainer, ProgressMonitor.NONE, XlsFormatterLogger.NONE);
+		return sheet.getSheetConditionalFormatting();
+	}
+
+	private static List<CellAddress> getCheckerboard() {
+		List<CellAddress> ret = new ArrayList<CellAddress>();
+		for (int r = 0; r < AREA_SIZE; r++)
+			for (int c = r % 2; c < AREA_SIZE; c += 2)
+				ret.add(new CellAddress(r, c));
+		return ret;
+	}
+
+	private static List<List<CellRangeAddress>> getExpectedPartitions() throws Exception {
+		List<CellRangeAddress> ranges = AddressingTools.getRangesFromAddressList(getCheckerboard(), ProgressMonitor.NONE, XlsFormatterLogger.NONE);
+		ranges.sort(Comparator.comparingInt(CellRangeAddress::getFirstRow).thenComparingInt(CellRangeAddress::getFirstColumn));
+		return AddressingTools.partitionRangeListByFormulaLength(ranges, XlsFormattingStateValidator.MAX_FORMULA_CHARACTERS);
+	}
+
+	private static int getRangeCount(final SheetConditionalFormatting sheetCF, final int from, final int to) {
+		int ret = 0;
+		for (int i = from; i < to; i++)
+			ret += sheetCF.getConditionalFormattingAt(i).getFormattingRanges().length;
+		return ret;
+	}
+
+	private static HighlightRule createHighlightRule(final String formula) {
+		HighlightRule ret = new HighlightRule();
+		ret.formula1 = formula;
+		ret.backgroundColor = Color.YELLOW;
+		return ret;
+	}
+
+	private static void assertThreshold(final ConditionalFormattingThreshold threshold, final RangeType rangeType, final double value) {
+		assertEquals(rangeType, threshold.getRangeType());
+		assertEquals(value, threshold.getValue(), 1e-9);
+	}
+}
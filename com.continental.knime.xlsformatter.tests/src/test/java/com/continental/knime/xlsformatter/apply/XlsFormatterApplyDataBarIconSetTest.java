@@ -0,0 +1,196 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.continental.knime.xlsformatter.apply;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.ss.usermodel.ConditionType;
+import org.apache.poi.ss.usermodel.ConditionalFormatting;
+import org.apache.poi.ss.usermodel.ConditionalFormattingRule;
+import org.apache.poi.ss.usermodel.ConditionalFormattingThreshold;
+import org.apache.poi.ss.usermodel.ConditionalFormattingThreshold.RangeType;
+import org.apache.poi.ss.usermodel.DataBarFormatting;
+import org.apache.poi.ss.usermodel.IconMultiStateFormatting;
+import org.apache.poi.ss.usermodel.IconMultiStateFormatting.IconSet;
+import org.apache.poi.ss.usermodel.SheetConditionalFormatting;
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFColor;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+import com.continental.knime.xlsformatter.commons.ProgressMonitor;
+import com.continental.knime.xlsformatter.commons.WarningMessageContainer;
+import com.continental.knime.xlsformatter.commons.XlsFormatterLogger;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.ConditionalFormattingSet;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.ConditionalThresholdType;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.DataBar;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.IconSetDefinition;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.IconSetStyle;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.SheetState;
+
+/**
+ * Tests that data bars and icon sets are written as the corresponding conditional formatting rules with their thresholds and options.
+ */
+public class XlsFormatterApplyDataBarIconSetTest {
+
+	private static final int ROW_COUNT = 10;
+	private static final int COLUMN_COUNT = 6;
+
+	@Test
+	public void testDataBars() throws Exception {
+		XlsFormatterState state = new XlsFormatterState();
+		SheetState sheetState = state.getCurrentSheetStateForModification();
+		DataBar automatic = new DataBar();
+		automatic.color = Color.GREEN;
+		automatic.maxType = ConditionalThresholdType.PERCENTILE;
+		automatic.maxValue = 90d;
+		automatic.showValue = false;
+		applyOn(sheetState, "B2:B10", automatic, null);
+		DataBar fixed = new DataBar();
+		fixed.color = Color.ORANGE;
+		fixed.minType = ConditionalThresholdType.NUMBER;
+		fixed.minValue = -5d;
+		fixed.maxType = ConditionalThresholdType.PERCENT;
+		fixed.maxValue = 80d;
+		applyOn(sheetState, "C2:C10", fixed, null);
+
+		try (XSSFWorkbook wb = apply(state)) {
+			SheetConditionalFormatting sheetCF = wb.getSheetAt(0).getSheetConditionalFormatting();
+			assertEquals(2, sheetCF.getNumConditionalFormattings());
+
+			DataBarFormatting dataBar = getRule(sheetCF, "B2:B10", ConditionType.DATA_BAR).getDataBarFormatting();
+			assertArrayEquals(getRgb(Color.GREEN), ((XSSFColor)dataBar.getColor()).getRGB());
+			assertEquals(RangeType.MIN, dataBar.getMinThreshold().getRangeType());
+			assertNull(dataBar.getMinThreshold().getValue());
+			assertThreshold(dataBar.getMaxThreshold(), RangeType.PERCENTILE, 90d);
+			assertTrue(dataBar.isIconOnly());
+
+			dataBar = getRule(sheetCF, "C2:C10", ConditionType.DATA_BAR).getDataBarFormatting();
+			assertArrayEquals(getRgb(Color.ORANGE), ((XSSFColor)dataBar.getColor()).getRGB());
+			assertThreshold(dataBar.getMinThreshold(), RangeType.NUMBER, -5d);
+			assertThreshold(dataBar.getMaxThreshold(), RangeType.PERCENT, 80d);
+			assertFalse(dataBar.isIconOnly());
+		}
+	}
+
+	@Test
+	public void testIconSets() throws Exception {
+		XlsFormatterState state = new XlsFormatterState();
+		SheetState sheetState = state.getCurrentSheetStateForModification();
+		IconSetDefinition ratings = new IconSetDefinition();
+		ratings.style = IconSetStyle.RATINGS_5;
+		ratings.thresholdType = ConditionalThresholdType.PERCENTILE;
+		ratings.thresholds.addAll(List.of(20d, 40d, 60d, 80d));
+		ratings.reversed = true;
+		ratings.showValue = false;
+		applyOn(sheetState, "D2:D10", null, ratings);
+		IconSetDefinition trafficLights = new IconSetDefinition(); // the default style
+		trafficLights.thresholdType = ConditionalThresholdType.NUMBER;
+		trafficLights.thresholds.addAll(List.of(10d, 50d));
+		applyOn(sheetState, "E2:E10", null, trafficLights);
+
+		try (XSSFWorkbook wb = apply(state)) {
+			SheetConditionalFormatting sheetCF = wb.getSheetAt(0).getSheetConditionalFormatting();
+			assertEquals(2, sheetCF.getNumConditionalFormattings());
+
+			IconMultiStateFormatting iconSet = getRule(sheetCF, "D2:D10", ConditionType.ICON_SET).getMultiStateFormatting();
+			assertEquals(IconSet.RATINGS_5, iconSet.getIconSet());
+			ConditionalFormattingThreshold[] thresholds = iconSet.getThresholds();
+			assertEquals(5, thresholds.length);
+			for (int i = 1; i < thresholds.length; i++)
+				assertThreshold(thresholds[i], RangeType.PERCENTILE, i * 20d);
+			assertTrue(iconSet.isReversed());
+			assertTrue(iconSet.isIconOnly());
+
+			iconSet = getRule(sheetCF, "E2:E10", ConditionType.ICON_SET).getMultiStateFormatting();
+			assertEquals(IconSet.GYR_3_TRAFFIC_LIGHTS, iconSet.getIconSet());
+			thresholds = iconSet.getThresholds();
+			assertEquals(3, thresholds.length);
+			assertThreshold(thresholds[1], RangeType.NUMBER, 10d);
+			assertThreshold(thresholds[2], RangeType.NUMBER, 50d);
+			assertFalse(iconSet.isReversed());
+			assertFalse(iconSet.isIconOnly());
+		}
+	}
+
+	private static void applyOn(final SheetState sheetState, final String range, final DataBar dataBar, final IconSetDefinition iconSet) throws Exception {
+		ConditionalFormattingSet conditionalFormat = new ConditionalFormattingSet();
+		conditionalFormat.dataBar = dataBar;
+		conditionalFormat.iconSet = iconSet;
+		List<CellAddress> cells = new ArrayList<CellAddress>();
+		for (CellAddress cell : CellRangeAddress.valueOf(range))
+			cells.add(cell);
+		sheetState.modifyCells(cells, cellState -> cellState.conditionalFormat = conditionalFormat);
+	}
+
+	/**
+	 * Gets the single rule of the conditional formatting on the given range, checking its type.
+	 */
+	private static ConditionalFormattingRule getRule(final SheetConditionalFormatting sheetCF, final String range, final ConditionType type) {
+		for (int i = 0; i < sheetCF.getNumConditionalFormattings(); i++) {
+			ConditionalFormatting formatting = sheetCF.getConditionalFormattingAt(i);
+			if (formatting.getFormattingRanges()[0].formatAsString().equals(range)) {
+				assertEquals(1, formatting.getNumberOfRules());
+				assertEquals(type, formatting.getRule(0).getConditionType());
+				return formatting.getRule(0);
+			}
+		}
+		throw new AssertionError("No conditional formatting on " + range + ".");
+	}
+
+	private static void assertThreshold(final ConditionalFormattingThreshold threshold, final RangeType rangeType, final double value) {
+		assertEquals(rangeType, threshold.getRangeType());
+		assertEquals(value, threshold.getValue(), 1e-9);
+	}
+
+	private static byte[] getRgb(final Color color) {
+		return new byte[] { (byte)color.getRed(), (byte)color.getGreen(), (byte)color.getBlue() };
+	}
+
+	private static XSSFWorkbook apply(final XlsFormatterState state) throws Exception {
+		ByteArrayOutputStream input = new ByteArrayOutputStream();
+		try (XSSFWorkbook wb = new XSSFWorkbook()) {
+			XSSFSheet sheet = wb.createSheet("data");
+			for (int r = 0; r < ROW_COUNT; r++) {
+				XSSFRow row = sheet.createRow(r);
+				for (int c = 0; c < COLUMN_COUNT; c++)
+					row.createCell(c).setCellValue(r * 10 + c);
+			}
+			wb.write(input);
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		XlsFormatterApplyLogic.apply("input.xlsx", () -> new ByteArrayInputStream(input.toByteArray()), () -> out, state, false,
+				new WarningMessageContainer(), ProgressMonitor.NONE, XlsFormatterLogger.NONE);
+		return new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()));
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.continental.knime.xlsformatter.apply;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+import com.continental.knime.xlsformatter.commons.ProgressMonitor;
+import com.continental.knime.xlsformatter.commons.XlsFormatterLogger;
+import com.continental.knime.xlsformatter.porttype.CellMap;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.CellDataType;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.FormattingFlag;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.SheetState;
+
+/**
+ * Tests that the copies of the styles with a date/time number format, which the streaming writer needs for the date/time values
+ * written into the styled cells, are derived and counted with all other styles.
+ */
+public class XlsFormatterApplyDateStyleTest {
+
+	@Test
+	public void testDateStylesAreDerivedInAdvance() throws Exception {
+		XlsFormatterState state = new XlsFormatterState();
+		SheetState sheet = state.getCurrentSheetStateForModification();
+		sheet.modifyCells(List.of(new CellAddress("A2")), cellState -> cellState.backgroundColor = Color.RED);
+		sheet.modifyCells(List.of(new CellAddress("B2")), cellState -> cellState.textFormat = "0.00");
+		sheet.modifyFullRanges(List.of(new CellRangeAddress(-1, -1, 2, 2)), cellState -> cellState.fontBold = FormattingFlag.ON);
+
+		try (XSSFWorkbook wb = new XSSFWorkbook()) {
+			XlsFormatterApplyLogic.StyleAnalysisResult result = XlsFormatterApplyLogic.deriveNecessaryStyles(wb, state, false,
+					Map.of(0, Set.of(CellDataType.LOCALDATE), 1, Set.of(CellDataType.LOCALDATE), 2, Set.of(CellDataType.LOCALTIME)),
+					ProgressMonitor.NONE, XlsFormatterLogger.NONE);
+
+			// the default style for date and time values, the red style for dates and the bold style for times; the style with a number format keeps it
+			int redStyleId = result.getCellStyleId(null, CellMap.toKey(new CellAddress("A2")));
+			int numberStyleId = result.getCellStyleId(null, CellMap.toKey(new CellAddress("B2")));
+			int boldStyleId = result.mapFullColumnToStyleId.get(Pair.of(null, 2));
+			assertEquals(Set.of(Pair.of(null, CellDataType.LOCALDATE), Pair.of(null, CellDataType.LOCALTIME),
+					Pair.of(redStyleId, CellDataType.LOCALDATE), Pair.of(boldStyleId, CellDataType.LOCALTIME)), result.mapBaseStyleToDateStyleId.keySet());
+			assertFalse(result.mapBaseStyleToDateStyleId.containsKey(Pair.of(numberStyleId, CellDataType.LOCALDATE)));
+			assertEquals(8, result.xlsArtifactCount.StyleCount); // 3 styles of the state, 4 copies and the workbook's default style
+			assertEquals(result.xlsArtifactCount.StyleCount, wb.getNumCellStyles());
+
+			XSSFCellStyle redDateStyle = result.mapStyleIdToPoiStyle.get(result.mapBaseStyleToDateStyleId.get(Pair.of(redStyleId, CellDataType.LOCALDATE)));
+			assertEquals(CellDataType.LOCALDATE.getDateTextFormat(), redDateStyle.getDataFormatString());
+			assertEquals(result.mapStyleIdToPoiStyle.get(redStyleId).getFillForegroundColorColor(), redDateStyle.getFillForegroundColorColor());
+			XSSFCellStyle boldTimeStyle = result.mapStyleIdToPoiStyle.get(result.mapBaseStyleToDateStyleId.get(Pair.of(boldStyleId, CellDataType.LOCALTIME)));
+			assertEquals(CellDataType.LOCALTIME.getDateTextFormat(), boldTimeStyle.getDataFormatString());
+			assertTrue(boldTimeStyle.getFont().getBold());
+		}
+	}
+
+	@Test
+	public void testDateStylesCountTowardsTheStyleLimit() throws Exception {
+		XlsFormatterState state = new XlsFormatterState();
+		SheetState sheet = state.getCurrentSheetStateForModification();
+		int styleCount = XlsFormatterApplyLogic.getMaximumDerivedStyleCount() / 2 + 1;
+		for (int i = 0; i < styleCount; i++) {
+			Color color = new Color(i);
+			sheet.modifyCells(List.of(new CellAddress(i, 0)), cellState -> cellState.backgroundColor = color);
+		}
+
+		// the state's styles alone fit into the workbook:
+		try (XSSFWorkbook wb = new XSSFWorkbook()) {
+			assertEquals(styleCount + 1, XlsFormatterApplyLogic.deriveNecessaryStyles(null, state, false, ProgressMonitor.NONE, XlsFormatterLogger.NONE).xlsArtifactCount.StyleCount);
+			// but not with a copy of each for date/time values:
+			Exception e = assertThrows(Exception.class, () -> XlsFormatterApplyLogic.deriveNecessaryStyles(wb, state, false, Map.of(0, Set.of(CellDataType.LOCALDATETIME)),
+					ProgressMonitor.NONE, XlsFormatterLogger.NONE));
+			assertTrue(e.getMessage().contains("date/time"), e.getMessage());
+			assertEquals(1, wb.getNumCellStyles()); // no style has been created
+		}
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.continental.knime.xlsformatter.apply;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.ss.usermodel.FillPatternType;
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+import com.continental.knime.xlsformatter.commons.ProgressMonitor;
+import com.continental.knime.xlsformatter.commons.WarningMessageContainer;
+import com.continental.knime.xlsformatter.commons.XlsFormatterLogger;
+import com.continental.knime.xlsformatter.porttype.CellMap;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.FillPattern;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.FormattingFlag;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.SheetState;
+
+/**
+ * Tests that uniformly formatted columns and rows covering the used range get a default style instead of styled empty cells.
+ */
+public class XlsFormatterApplyDefaultStyleTest {
+
+	private static final int ROW_COUNT = 10;
+	private static final int COLUMN_COUNT = 5;
+	private static final int FILLED_ROW_COUNT = 5; // the columns but the first are only filled up to here
+
+	@Test
+	public void testUniformColumnsAndRowsGetDefaultStyles() throws Exception {
+		XlsFormatterState state = new XlsFormatterState();
+		SheetState sheetState = state.getCurrentSheetStateForModification();
+		List<CellAddress> boldCells = new ArrayList<CellAddress>();
+		for (int r = 0; r < ROW_COUNT; r++)
+			boldCells.add(new CellAddress(r, 1)); // column B
+		for (int c = 0; c < COLUMN_COUNT; c++)
+			if (c != 1)
+				boldCells.add(new CellAddress(6, c)); // row 7, sharing the style with column B
+		sheetState.modifyCells(boldCells, cellState -> cellState.fontBold = FormattingFlag.ON);
+		List<CellAddress> filledCells = new ArrayList<CellAddress>();
+		for (int r = 0; r < ROW_COUNT; r++)
+			if (r != 6)
+				filledCells.add(new CellAddress(r, 3)); // column D, with a fill that would be visible beyond the used range
+		sheetState.modifyCells(filledCells, cellState -> {
+			cellState.backgroundColor = Color.RED;
+			cellState.fillPattern = FillPattern.SOLID_BACKGROUND_COLOR;
+		});
+		List<CellAddress> italicCells = new ArrayList<CellAddress>();
+		for (int r = 0; r < ROW_COUNT - 1; r++)
+			if (r != 6)
+				italicCells.add(new CellAddress(r, 4)); // column E, not covering the whole used range
+		sheetState.modifyCells(italicCells, cellState -> cellState.fontItalic = FormattingFlag.ON);
+		sheetState.hyperlinks.put(CellMap.toKey(new CellAddress("B9")), "https://www.knime.com");
+
+		try (XSSFWorkbook wb = apply(createInput(), state)) {
+			XSSFSheet sheet = wb.getSheetAt(0);
+
+			// column B:
+			XSSFCellStyle columnStyle = (XSSFCellStyle)sheet.getColumnStyle(1);
+			assertNotNull(columnStyle);
+			assertTrue(columnStyle.getFont().getBold());
+			for (int r = 0; r < FILLED_ROW_COUNT; r++)
+				assertTrue(sheet.getRow(r).getCell(1).getCellStyle().getFont().getBold(), "cell B" + (r + 1));
+			assertNull(sheet.getRow(7).getCell(1)); // empty cells are not created
+			assertNull(sheet.getRow(9).getCell(1));
+			XSSFCell hyperlinkCell = sheet.getRow(8).getCell(1); // but those with a payload beyond their style
+			assertEquals("https://www.knime.com", hyperlinkCell.getHyperlink().getAddress());
+			assertTrue(hyperlinkCell.getCellStyle().getFont().getBold());
+
+			// row 7:
+			XSSFRow row = sheet.getRow(6);
+			assertTrue(row.isFormatted());
+			assertTrue(row.getRowStyle().getFont().getBold());
+			assertTrue(row.getCell(0).getCellStyle().getFont().getBold());
+			assertNull(row.getCell(2)); // empty cells are not created
+			assertNull(row.getCell(3));
+
+			// column D keeps per-cell styles, also on its empty cells:
+			assertEquals(0, sheet.getColumnStyle(3) == null ? 0 : sheet.getColumnStyle(3).getIndex());
+			for (int r = 0; r < ROW_COUNT; r++)
+				if (r != 6)
+					assertEquals(FillPatternType.SOLID_FOREGROUND, sheet.getRow(r).getCell(3).getCellStyle().getFillPattern(), "cell D" + (r + 1));
+
+			// column E doesn't cover the used range:
+			assertEquals(0, sheet.getColumnStyle(4) == null ? 0 : sheet.getColumnStyle(4).getIndex());
+			assertTrue(sheet.getRow(8).getCell(4).getCellStyle().getFont().getItalic());
+			assertFalse(sheet.getRow(9).isFormatted());
+		}
+	}
+
+	private static byte[] createInput() throws Exception {
+		try (XSSFWorkbook wb = new XSSFWorkbook()) {
+			XSSFSheet sheet = wb.createSheet("data");
+			for (int r = 0; r < ROW_COUNT; r++) {
+				XSSFRow row = sheet.createRow(r);
+				for (int c = 0; c < (r < FILLED_ROW_COUNT ? COLUMN_COUNT : 1); c++)
+					row.createCell(c).setCellValue(r * 10 + c);
+			}
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			wb.write(out);
+			return out.toByteArray();
+		}
+	}
+
+	private static XSSFWorkbook apply(final byte[] input, final XlsFormatterState state) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		XlsFormatterApplyLogic.apply("input.xlsx", () -> new ByteArrayInputStream(input), () -> out, state, false,
+				new WarningMessageContainer(), ProgressMonitor.NONE, XlsFormatterLogger.NONE);
+		return new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()));
+	}
+}
@@ -0,0 +1,205 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.continental.knime.xlsformatter.apply;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.ss.usermodel.ComparisonOperator;
+import org.apache.poi.ss.usermodel.ConditionType;
+import org.apache.poi.ss.usermodel.ConditionalFormatting;
+import org.apache.poi.ss.usermodel.ConditionalFormattingRule;
+import org.apache.poi.ss.usermodel.SheetConditionalFormatting;
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.usermodel.XSSFColor;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+import com.continental.knime.xlsformatter.commons.ProgressMonitor;
+import com.continental.knime.xlsformatter.commons.WarningMessageContainer;
+import com.continental.knime.xlsformatter.commons.XlsFormatterLogger;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.CellValueComparison;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.ConditionalFormattingSet;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.HighlightRule;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.HighlightRuleType;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.SheetState;
+
+/**
+ * Tests that cell value and formula based highlight rules are written as the corresponding conditional formatting rules.
+ */
+public class XlsFormatterApplyHighlightRuleTest {
+
+	private static final int ROW_COUNT = 10;
+	private static final int COLUMN_COUNT = 6;
+
+	@Test
+	public void testHighlightRules() throws Exception {
+		XlsFormatterState state = new XlsFormatterState();
+		SheetState sheetState = state.getCurrentSheetStateForModification();
+
+		HighlightRule between = createCellValueRule(CellValueComparison.BETWEEN, "10", "20");
+		between.backgroundColor = Color.YELLOW;
+		between.fontBold = true;
+		HighlightRule greaterThan = createCellValueRule(CellValueComparison.GREATER_THAN, "$A$1*2", "99"); // without second operand
+		greaterThan.fontColor = Color.BLUE;
+		applyOn(sheetState, "B2:D5", between, greaterThan);
+
+		HighlightRule formula = new HighlightRule();
+		formula.type = HighlightRuleType.FORMULA;
+		formula.formula1 = "$A2>F$1";
+		formula.fontColor = Color.RED;
+		formula.fontItalic = true;
+		applyOn(sheetState, "F2:F10", formula);
+
+		try (XSSFWorkbook wb = apply(state)) {
+			SheetConditionalFormatting sheetCF = wb.getSheetAt(0).getSheetConditionalFormatting();
+			assertEquals(2, sheetCF.getNumConditionalFormattings());
+
+			ConditionalFormatting formatting = getFormatting(sheetCF, "B2:D5");
+			assertEquals(2, formatting.getNumberOfRules());
+			ConditionalFormattingRule rule = formatting.getRule(0);
+			assertEquals(ConditionType.CELL_VALUE_IS, rule.getConditionType());
+			assertEquals(ComparisonOperator.BETWEEN, rule.getComparisonOperation());
+			assertEquals("10", rule.getFormula1());
+			assertEquals("20", rule.getFormula2());
+			assertArrayEquals(getRgb(Color.YELLOW), ((XSSFColor)rule.getPatternFormatting().getFillBackgroundColorColor()).getRGB());
+			assertTrue(rule.getFontFormatting().isBold());
+			assertFalse(rule.getFontFormatting().isItalic());
+			rule = formatting.getRule(1);
+			assertEquals(ConditionType.CELL_VALUE_IS, rule.getConditionType());
+			assertEquals(ComparisonOperator.GT, rule.getComparisonOperation());
+			assertEquals("$A$1*2", rule.getFormula1());
+			assertNull(rule.getFormula2());
+			assertNull(rule.getPatternFormatting());
+			assertArrayEquals(getRgb(Color.BLUE), ((XSSFColor)rule.getFontFormatting().getFontColor()).getRGB());
+			assertFalse(rule.getFontFormatting().isBold());
+
+			formatting = getFormatting(sheetCF, "F2:F10");
+			assertEquals(1, formatting.getNumberOfRules());
+			rule = formatting.getRule(0);
+			assertEquals(ConditionType.FORMULA, rule.getConditionType());
+			assertEquals("$A2>F$1", rule.getFormula1());
+			assertNull(rule.getPatternFormatting());
+			assertTrue(rule.getFontFormatting().isItalic());
+			assertArrayEquals(getRgb(Color.RED), ((XSSFColor)rule.getFontFormatting().getFontColor()).getRGB());
+		}
+	}
+
+	@Test
+	public void testFormulasOfSplitRangesAreShifted() throws Exception {
+		XlsFormatterState state = new XlsFormatterState();
+		SheetState sheetState = state.getCurrentSheetStateForModification();
+		HighlightRule formula = new HighlightRule();
+		formula.formula1 = "AND(A1>$A$1,A2<>B$1)"; // resolved from the top-left cell A1
+		formula.backgroundColor = Color.GREEN;
+		HighlightRule cellValue = createCellValueRule(CellValueComparison.EQUAL, "B1", null);
+		cellValue.fontBold = true;
+		ConditionalFormattingSet conditionalFormat = new ConditionalFormattingSet();
+		conditionalFormat.highlightRules.add(formula);
+		conditionalFormat.highlightRules.add(cellValue);
+		List<CellAddress> checkerboard = new ArrayList<CellAddress>();
+		for (int r = 0; r < 80; r++)
+			for (int c = r % 2; c < 80; c += 2)
+				checkerboard.add(new CellAddress(r, c));
+		sheetState.modifyCells(checkerboard, cellState -> cellState.conditionalFormat = conditionalFormat);
+
+		try (XSSFWorkbook wb = new XSSFWorkbook()) {
+			XSSFSheet sheet = wb.createSheet();
+			XlsFormatterApplyLogic.applyConditionalFormatting(sheet, sheetState, new WarningMessageContainer(), ProgressMonitor.NONE, XlsFormatterLogger.NONE);
+			SheetConditionalFormatting sheetCF = sheet.getSheetConditionalFormatting();
+			assertTrue(sheetCF.getNumConditionalFormattings() > 1);
+			for (int i = 0; i < sheetCF.getNumConditionalFormattings(); i++) {
+				ConditionalFormatting formatting = sheetCF.getConditionalFormattingAt(i);
+				CellRangeAddress firstRange = formatting.getFormattingRanges()[0];
+				int r = firstRange.getFirstRow();
+				int c = firstRange.getFirstColumn();
+				assertEquals("AND(" + getReference(r, c) + ">$A$1," + getReference(r + 1, c) + "<>" + CellReference.convertNumToColString(c + 1) + "$1)",
+						formatting.getRule(0).getFormula1(), "partition " + i);
+				assertEquals(ConditionType.CELL_VALUE_IS, formatting.getRule(1).getConditionType());
+				assertEquals(ComparisonOperator.EQUAL, formatting.getRule(1).getComparisonOperation());
+				assertEquals(getReference(r, c + 1), formatting.getRule(1).getFormula1(), "partition " + i);
+			}
+		}
+	}
+
+	private static HighlightRule createCellValueRule(final CellValueComparison comparison, final String formula1, final String formula2) {
+		HighlightRule ret = new HighlightRule();
+		ret.type = HighlightRuleType.CELL_VALUE;
+		ret.comparison = comparison;
+		ret.formula1 = formula1;
+		ret.formula2 = formula2;
+		return ret;
+	}
+
+	private static void applyOn(final SheetState sheetState, final String range, final HighlightRule... highlightRules) throws Exception {
+		ConditionalFormattingSet conditionalFormat = new ConditionalFormattingSet();
+		for (HighlightRule highlightRule : highlightRules)
+			conditionalFormat.highlightRules.add(highlightRule);
+		List<CellAddress> cells = new ArrayList<CellAddress>();
+		for (CellAddress cell : CellRangeAddress.valueOf(range))
+			cells.add(cell);
+		sheetState.modifyCells(cells, cellState -> cellState.conditionalFormat = conditionalFormat);
+	}
+
+	private static ConditionalFormatting getFormatting(final SheetConditionalFormatting sheetCF, final String range) {
+		for (int i = 0; i < sheetCF.getNumConditionalFormattings(); i++)
+			if (sheetCF.getConditionalFormattingAt(i).getFormattingRanges()[0].formatAsString().equals(range))
+				return sheetCF.getConditionalFormattingAt(i);
+		throw new AssertionError("No conditional formatting on " + range + ".");
+	}
+
+	private static String getReference(final int row, final int column) {
+		return new CellReference(row, column).formatAsString();
+	}
+
+	private static byte[] getRgb(final Color color) {
+		return new byte[] { (byte)color.getRed(), (byte)color.getGreen(), (byte)color.getBlue() };
+	}
+
+	private static XSSFWorkbook apply(final XlsFormatterState state) throws Exception {
+		ByteArrayOutputStream input = new ByteArrayOutputStream();
+		try (XSSFWorkbook wb = new XSSFWorkbook()) {
+			XSSFSheet sheet = wb.createSheet("data");
+			for (int r = 0; r < ROW_COUNT; r++) {
+				XSSFRow row = sheet.createRow(r);
+				for (int c = 0; c < COLUMN_COUNT; c++)
+					row.createCell(c).setCellValue(r * 10 + c);
+			}
+			wb.write(input);
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		XlsFormatterApplyLogic.apply("input.xlsx", () -> new ByteArrayInputStream(input.toByteArray()), () -> out, state, false,
+				new WarningMessageContainer(), ProgressMonitor.NONE, XlsFormatterLogger.NONE);
+		return new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()));
+	}
+}
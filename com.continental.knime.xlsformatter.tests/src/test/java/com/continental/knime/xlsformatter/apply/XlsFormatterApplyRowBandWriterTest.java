@@ -0,0 +1,123 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.continental.knime.xlsformatter.apply;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.ss.usermodel.FillPatternType;
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+import com.continental.knime.xlsformatter.commons.ProgressMonitor;
+import com.continental.knime.xlsformatter.commons.WarningMessageContainer;
+import com.continental.knime.xlsformatter.commons.XlsFormatterLogger;
+import com.continental.knime.xlsformatter.porttype.CellMap;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.FillPattern;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.FormattingFlag;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.SheetState;
+
+/**
+ * Tests that the cell styles of very large sheets, which are rendered in parallel row bands, end up on the right cells.
+ */
+public class XlsFormatterApplyRowBandWriterTest {
+
+	private static final int DATA_ROW_COUNT = 300;
+	private static final int DATA_COLUMN_COUNT = 60;
+	private static final int FORMATTED_ROW_COUNT = 1100; // spanning several row bands and rows without data
+	private static final int FORMATTED_COLUMN_COUNT = 50;
+	private static final Color[] COLORS = new Color[] { Color.RED, Color.GREEN, Color.BLUE };
+
+	@Test
+	public void testRowBandRenderedStyles() throws Exception {
+		XlsFormatterState state = new XlsFormatterState();
+		SheetState sheetState = state.getCurrentSheetStateForModification();
+		for (int i = 0; i < COLORS.length; i++) {
+			List<CellAddress> cells = new ArrayList<CellAddress>();
+			for (int r = 0; r < FORMATTED_ROW_COUNT; r++)
+				for (int c = 0; c < FORMATTED_COLUMN_COUNT; c++)
+					if ((r + c) % COLORS.length == i)
+						cells.add(new CellAddress(r, c));
+			Color color = COLORS[i];
+			sheetState.modifyCells(cells, cellState -> {
+				cellState.backgroundColor = color;
+				cellState.fillPattern = FillPattern.SOLID_BACKGROUND_COLOR;
+			});
+		}
+		sheetState.modifyCells(List.of(new CellAddress("B2")), cellState -> cellState.fontBold = FormattingFlag.ON);
+		sheetState.hyperlinks.put(CellMap.toKey(new CellAddress("C3")), "https://www.knime.com");
+		assertTrue(XlsFormatterApplyRowBandWriter.isApplicable(sheetState));
+
+		try (XSSFWorkbook wb = apply(createInput(), state)) {
+			XSSFSheet sheet = wb.getSheetAt(0);
+			for (int r = 0; r < FORMATTED_ROW_COUNT; r++) {
+				XSSFRow row = sheet.getRow(r);
+				assertNotNull(row, "row " + r);
+				for (int c = 0; c < FORMATTED_COLUMN_COUNT; c++) {
+					XSSFCell cell = row.getCell(c);
+					assertNotNull(cell, "cell " + new CellAddress(r, c));
+					assertEquals(FillPatternType.SOLID_FOREGROUND, cell.getCellStyle().getFillPattern(), "fill of cell " + cell.getAddress());
+					Color color = COLORS[(r + c) % COLORS.length];
+					assertArrayEquals(new byte[] { (byte)color.getRed(), (byte)color.getGreen(), (byte)color.getBlue() },
+							cell.getCellStyle().getFillForegroundColorColor().getRGB(), "color of cell " + cell.getAddress());
+					if (r < DATA_ROW_COUNT && c < DATA_COLUMN_COUNT)
+						assertEquals(r * 1000d + c, cell.getNumericCellValue(), "value of cell " + cell.getAddress());
+				}
+			}
+			assertTrue(sheet.getRow(1).getCell(1).getCellStyle().getFont().getBold());
+			assertEquals("https://www.knime.com", sheet.getRow(2).getCell(2).getHyperlink().getAddress());
+			for (int c = FORMATTED_COLUMN_COUNT; c < DATA_COLUMN_COUNT; c++) // unformatted data keeps the default style
+				assertEquals(0, sheet.getRow(0).getCell(c).getCellStyle().getIndex());
+		}
+	}
+
+	private static byte[] createInput() throws Exception {
+		try (XSSFWorkbook wb = new XSSFWorkbook()) {
+			XSSFSheet sheet = wb.createSheet("data");
+			for (int r = 0; r < DATA_ROW_COUNT; r++) {
+				XSSFRow row = sheet.createRow(r);
+				for (int c = 0; c < DATA_COLUMN_COUNT; c++)
+					row.createCell(c).setCellValue(r * 1000 + c);
+			}
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			wb.write(out);
+			return out.toByteArray();
+		}
+	}
+
+	private static XSSFWorkbook apply(final byte[] input, final XlsFormatterState state) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		XlsFormatterApplyLogic.apply("input.xlsx", () -> new ByteArrayInputStream(input), () -> out, state, false,
+				new WarningMessageContainer(), ProgressMonitor.NONE, XlsFormatterLogger.NONE);
+		return new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()));
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.continental.knime.xlsformatter.apply;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.PaneInformation;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+import com.continental.knime.xlsformatter.commons.ProgressMonitor;
+import com.continental.knime.xlsformatter.commons.WarningMessageContainer;
+import com.continental.knime.xlsformatter.commons.XlsFormatterLogger;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.SheetState;
+
+/**
+ * Tests that states with sheet-level instructions only are patched into the sheet XML, yielding the same workbook as the POI model.
+ */
+public class XlsFormatterApplySheetXmlPatcherTest {
+
+	private static final int ROW_COUNT = 30;
+	private static final int COLUMN_COUNT = 8;
+
+	@Test
+	public void testIsApplicable() throws Exception {
+		XlsFormatterState state = createSheetLevelState();
+		assertTrue(XlsFormatterApplySheetXmlPatcher.isApplicable(state));
+
+		XlsFormatterState autoSizedState = createSheetLevelState();
+		autoSizedState.sheetStates.get(null).columnWidths.put(2, null); // requires font metrics
+		assertFalse(XlsFormatterApplySheetXmlPatcher.isApplicable(autoSizedState));
+
+		XlsFormatterState mergingState = createSheetLevelState();
+		mergingState.sheetStates.get(null).mergeRanges.add(CellRangeAddress.valueOf("A1:B2"));
+		assertFalse(XlsFormatterApplySheetXmlPatcher.isApplicable(mergingState));
+
+		assertFalse(XlsFormatterApplySheetXmlPatcher.isApplicable(createCellLevelState()));
+	}
+
+	@Test
+	public void testPatchedWorkbookEqualsPoiModel() throws Exception {
+		byte[] input = createInput();
+		try (XSSFWorkbook patched = apply(input, createSheetLevelState());
+				XSSFWorkbook poiModel = apply(input, createCellLevelState())) {
+			XSSFSheet patchedSheet = patched.getSheetAt(0);
+			XSSFSheet poiSheet = poiModel.getSheetAt(0);
+
+			PaneInformation pane = patchedSheet.getPaneInformation();
+			assertNotNull(pane);
+			assertTrue(pane.isFreezePane());
+			assertEquals(1, pane.getVerticalSplitLeftColumn());
+			assertEquals(2, pane.getHorizontalSplitTopRow());
+			assertEquals(poiSheet.getPaneInformation().getVerticalSplitLeftColumn(), pane.getVerticalSplitLeftColumn());
+			assertEquals(poiSheet.getPaneInformation().getHorizontalSplitTopRow(), pane.getHorizontalSplitTopRow());
+			assertEquals("A1:H30", patchedSheet.getCTWorksheet().getAutoFilter().getRef());
+			assertEquals(poiSheet.getCTWorksheet().getAutoFilter().getRef(), patchedSheet.getCTWorksheet().getAutoFilter().getRef());
+
+			for (int r = 0; r < ROW_COUNT + 2; r++) {
+				XSSFRow patchedRow = patchedSheet.getRow(r);
+				XSSFRow poiRow = poiSheet.getRow(r);
+				assertEquals(poiRow == null, patchedRow == null, "row " + r);
+				if (poiRow == null)
+					continue;
+				assertEquals(poiRow.getHeightInPoints(), patchedRow.getHeightInPoints(), 1e-3, "height of row " + r);
+				assertEquals(poiRow.getZeroHeight(), patchedRow.getZeroHeight(), "hidden row " + r);
+				assertEquals(poiRow.getOutlineLevel(), patchedRow.getOutlineLevel(), "outline level of row " + r);
+				assertEquals(poiRow.getCTRow().getCollapsed(), patchedRow.getCTRow().getCollapsed(), "collapsed row " + r);
+				if (r < ROW_COUNT)
+					assertEquals(r + 1d, patchedRow.getCell(0).getNumericCellValue());
+			}
+			assertEquals(30f, patchedSheet.getRow(3).getHeightInPoints(), 1e-3);
+			assertTrue(patchedSheet.getRow(6).getZeroHeight());
+			assertTrue(patchedSheet.getRow(9).getZeroHeight());
+			assertEquals(1, patchedSheet.getRow(9).getOutlineLevel());
+			assertTrue(patchedSheet.getRow(11).getCTRow().getCollapsed()); // the row behind the collapsed group
+
+			for (int c = 0; c < COLUMN_COUNT + 1; c++) {
+				assertEquals(poiSheet.getColumnWidth(c), patchedSheet.getColumnWidth(c), "width of column " + c);
+				assertEquals(poiSheet.isColumnHidden(c), patchedSheet.isColumnHidden(c), "hidden column " + c);
+				assertEquals(poiSheet.getColumnOutlineLevel(c), patchedSheet.getColumnOutlineLevel(c), "outline level of column " + c);
+			}
+			assertEquals(XlsFormatterApplyLogic.xlsToPoiStandardColumnWidthConversion(20d), patchedSheet.getColumnWidth(1));
+			assertTrue(patchedSheet.isColumnHidden(4));
+			assertEquals(1, patchedSheet.getColumnOutlineLevel(2));
+		}
+	}
+
+	/**
+	 * Creates a state with sheet-level instructions only.
+	 */
+	private static XlsFormatterState createSheetLevelState() throws Exception {
+		XlsFormatterState state = new XlsFormatterState();
+		SheetState sheet = state.getCurrentSheetStateForModification();
+		sheet.freezeSheetAtTopLeftCornerOfCell = new CellAddress("B3");
+		sheet.autoFilterRange = CellRangeAddress.valueOf("A1:H30");
+		sheet.columnWidths.put(1, 20d);
+		sheet.rowHeights.put(3, 30d);
+		sheet.hiddenColumns.add(4);
+		sheet.hiddenRows.add(6);
+		sheet.rowGroups.put(Pair.of(8, 10), true);
+		sheet.columnGroups.put(Pair.of(2, 3), false);
+		return state;
+	}
+
+	/**
+	 * Creates the same state with an additional cell instruction that leaves the cell unformatted, but needs the POI model to be applied.
+	 */
+	private static XlsFormatterState createCellLevelState() throws Exception {
+		XlsFormatterState state = createSheetLevelState();
+		state.sheetStates.get(null).modifyCells(List.of(new CellAddress("A1")), cellState -> { });
+		return state;
+	}
+
+	private static byte[] createInput() throws Exception {
+		try (XSSFWorkbook wb = new XSSFWorkbook()) {
+			XSSFSheet sheet = wb.createSheet("data");
+			for (int r = 0; r < ROW_COUNT; r++) {
+				XSSFRow row = sheet.createRow(r);
+				for (int c = 0; c < COLUMN_COUNT; c++)
+					row.createCell(c).setCellValue(r + 1 + c * 100);
+			}
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			wb.write(out);
+			return out.toByteArray();
+		}
+	}
+
+	private static XSSFWorkbook apply(final byte[] input, final XlsFormatterState state) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		XlsFormatterApplyLogic.apply("input.xlsx", () -> new ByteArrayInputStream(input), () -> out, state, false,
+				new WarningMessageContainer(), ProgressMonitor.NONE, XlsFormatterLogger.NONE);
+		return new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()));
+	}
+}
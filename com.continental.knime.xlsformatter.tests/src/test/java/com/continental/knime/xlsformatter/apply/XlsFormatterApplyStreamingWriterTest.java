@@ -0,0 +1,299 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.continental.knime.xlsformatter.apply;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.time.LocalDate;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFColor;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+import com.continental.knime.xlsformatter.commons.ProgressMonitor;
+import com.continental.knime.xlsformatter.commons.WarningMessageContainer;
+import com.continental.knime.xlsformatter.commons.XlsFormatterLogger;
+import com.continental.knime.xlsformatter.porttype.CellMap;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.CellDataType;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.FillPattern;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.FormattingFlag;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.SheetState;
+
+/**
+ * Tests that the streaming writer yields the same workbook as writing the table first and applying the state afterwards.
+ */
+public class XlsFormatterApplyStreamingWriterTest {
+
+	private static final String[] COLUMN_NAMES = new String[] { "name", "value", "date" };
+	private static final int ROW_COUNT = 12;
+	private static final int LAST_FORMATTED_ROW = 15; // behind the table
+
+	@Test
+	public void testStreamedWorkbookEqualsAppliedWorkbook() throws Exception {
+		try (XSSFWorkbook streamed = stream(createState());
+				XSSFWorkbook applied = apply(createState())) {
+			XSSFSheet streamedSheet = streamed.getSheetAt(0);
+			XSSFSheet appliedSheet = applied.getSheetAt(0);
+			assertEquals("data", streamedSheet.getSheetName());
+
+			for (int r = 0; r <= LAST_FORMATTED_ROW + 1; r++) {
+				XSSFRow streamedRow = streamedSheet.getRow(r);
+				XSSFRow appliedRow = appliedSheet.getRow(r);
+				assertEquals(appliedRow == null, streamedRow == null, "row " + r);
+				if (appliedRow == null)
+					continue;
+				assertEquals(appliedRow.getHeightInPoints(), streamedRow.getHeightInPoints(), 1e-3, "height of row " + r);
+				assertEquals(appliedRow.getZeroHeight(), streamedRow.getZeroHeight(), "hidden row " + r);
+				assertEquals(appliedRow.getOutlineLevel(), streamedRow.getOutlineLevel(), "outline level of row " + r);
+				assertEquals(appliedRow.getCTRow().getCollapsed(), streamedRow.getCTRow().getCollapsed(), "collapsed row " + r);
+				assertEquals(appliedRow.isFormatted(), streamedRow.isFormatted(), "row style of row " + r);
+				if (appliedRow.isFormatted())
+					assertStyleEquals(appliedRow.getRowStyle(), streamedRow.getRowStyle(), "row " + r);
+				for (int c = 0; c < COLUMN_NAMES.length + 1; c++) {
+					XSSFCell streamedCell = getFormattedCell(streamedRow, c);
+					XSSFCell appliedCell = getFormattedCell(appliedRow, c);
+					String address = new CellAddress(r, c).formatAsString();
+					assertEquals(appliedCell == null, streamedCell == null, "cell " + address);
+					if (appliedCell == null)
+						continue;
+					assertEquals(appliedCell.getCellType(), streamedCell.getCellType(), "type of cell " + address);
+					if (appliedCell.getCellType() == CellType.NUMERIC)
+						assertEquals(appliedCell.getNumericCellValue(), streamedCell.getNumericCellValue(), 1e-9, "value of cell " + address);
+					else if (appliedCell.getCellType() == CellType.STRING)
+						assertEquals(appliedCell.getStringCellValue(), streamedCell.getStringCellValue(), "value of cell " + address);
+					assertStyleEquals(appliedCell.getCellStyle(), streamedCell.getCellStyle(), "cell " + address);
+					assertEquals(appliedCell.getHyperlink() == null ? null : appliedCell.getHyperlink().getAddress(),
+							streamedCell.getHyperlink() == null ? null : streamedCell.getHyperlink().getAddress(), "hyperlink of cell " + address);
+				}
+			}
+
+			for (int c = 0; c < COLUMN_NAMES.length + 1; c++) {
+				assertEquals(appliedSheet.getColumnWidth(c), streamedSheet.getColumnWidth(c), "width of column " + c);
+				assertEquals(appliedSheet.isColumnHidden(c), streamedSheet.isColumnHidden(c), "hidden column " + c);
+				assertEquals(appliedSheet.getColumnOutlineLevel(c), streamedSheet.getColumnOutlineLevel(c), "outline level of column " + c);
+				assertEquals(appliedSheet.getColumnStyle(c) == null, streamedSheet.getColumnStyle(c) == null, "style of column " + c);
+			}
+			assertEquals(new HashSet<CellRangeAddress>(appliedSheet.getMergedRegions()), new HashSet<CellRangeAddress>(streamedSheet.getMergedRegions()));
+			assertEquals(appliedSheet.getPaneInformation().getHorizontalSplitTopRow(), streamedSheet.getPaneInformation().getHorizontalSplitTopRow());
+			assertEquals(appliedSheet.getPaneInformation().getVerticalSplitLeftColumn(), streamedSheet.getPaneInformation().getVerticalSplitLeftColumn());
+		}
+	}
+
+	@Test
+	public void testDateValuesKeepTheirNumberFormat() throws Exception {
+		try (XSSFWorkbook streamed = stream(createState())) {
+			XSSFSheet sheet = streamed.getSheetAt(0);
+			for (int r = 1; r <= ROW_COUNT; r++) {
+				XSSFCell cell = sheet.getRow(r).getCell(2);
+				if (r == 5) { // missing value
+					assertNull(cell);
+					continue;
+				}
+				assertEquals(getDate(r - 1), cell.getLocalDateTimeCellValue().toLocalDate());
+				assertEquals(CellDataType.LOCALDATE.getDateTextFormat(), cell.getCellStyle().getDataFormatString(), "cell C" + (r + 1));
+			}
+			assertTrue(sheet.getRow(2).getCell(2).getCellStyle().getFont().getBold()); // the full column's style with the date format
+			assertTrue(sheet.getRow(3).getCell(2).getCellStyle().getFont().getItalic()); // the full row's style with the date format
+			assertEquals(0, sheet.getRow(1).getCell(1).getCellStyle().getDataFormat()); // no date
+		}
+	}
+
+	private static XlsFormatterState createState() throws Exception {
+		XlsFormatterState state = new XlsFormatterState();
+		SheetState sheet = state.getCurrentSheetStateForModification();
+		sheet.modifyCells(List.of(new CellAddress("B2"), new CellAddress("A16")), cellState -> {
+			cellState.backgroundColor = Color.RED;
+			cellState.fillPattern = FillPattern.SOLID_BACKGROUND_COLOR;
+		});
+		sheet.modifyFullRanges(List.of(new CellRangeAddress(-1, -1, 2, 2)), cellState -> cellState.fontBold = FormattingFlag.ON);
+		sheet.modifyFullRanges(List.of(new CellRangeAddress(3, 3, -1, -1)), cellState -> cellState.fontItalic = FormattingFlag.ON);
+		sheet.hyperlinks.put(CellMap.toKey(new CellAddress("A3")), "https://www.knime.com");
+		sheet.mergeRanges.add(CellRangeAddress.valueOf("A7:B7"));
+		sheet.freezeSheetAtTopLeftCornerOfCell = new CellAddress("A2");
+		sheet.columnWidths.put(0, 25d);
+		sheet.rowHeights.put(8, 40d);
+		sheet.hiddenRows.add(9);
+		sheet.rowGroups.put(Pair.of(10, 11), true);
+		sheet.columnGroups.put(Pair.of(0, 1), false);
+		return state;
+	}
+
+	private static Object getValue(int row, int column) {
+		if (row == 4 && column == 2)
+			return null;
+		switch (column) {
+		case 0:
+			return "row " + row;
+		case 1:
+			return row * 1.5;
+		default:
+			return getDate(row);
+		}
+	}
+
+	private static LocalDate getDate(int row) {
+		return LocalDate.of(2020, 1, 1).plusDays(row);
+	}
+
+	/**
+	 * Writes the table with the streaming writer.
+	 */
+	private static XSSFWorkbook stream(final XlsFormatterState state) throws Exception {
+		XlsFormatterApplyStreamingWriter.TableSource table = new XlsFormatterApplyStreamingWriter.TableSource() {
+
+			@Override
+			public int getColumnCount() {
+				return COLUMN_NAMES.length;
+			}
+
+			@Override
+			public String getColumnName(int column) {
+				return COLUMN_NAMES[column];
+			}
+
+			@Override
+			public long size() {
+				return ROW_COUNT;
+			}
+
+			@Override
+			public Set<CellDataType> getDateTypes(int column) {
+				return column == 2 ? EnumSet.of(CellDataType.LOCALDATE) : EnumSet.noneOf(CellDataType.class);
+			}
+
+			@Override
+			public XlsFormatterApplyStreamingWriter.RowIterator iterator() {
+				return new XlsFormatterApplyStreamingWriter.RowIterator() {
+					private int m_row = 0;
+
+					@Override
+					public boolean hasNext() {
+						return m_row < ROW_COUNT;
+					}
+
+					@Override
+					public XlsFormatterApplyStreamingWriter.RowSource next() {
+						int row = m_row++;
+						return new XlsFormatterApplyStreamingWriter.RowSource() {
+
+							@Override
+							public boolean isMissing(int column) {
+								return getValue(row, column) == null;
+							}
+
+							@Override
+							public CellDataType setCellValue(int column, Cell cell) {
+								Object value = getValue(row, column);
+								if (value instanceof LocalDate) {
+									cell.setCellValue((LocalDate)value);
+									return CellDataType.LOCALDATE;
+								}
+								if (value instanceof Double)
+									cell.setCellValue((Double)value);
+								else
+									cell.setCellValue((String)value);
+								return null;
+							}
+						};
+					}
+
+					@Override
+					public void close() {
+					}
+				};
+			}
+		};
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		XlsFormatterApplyStreamingWriter.write(table, "data", true, () -> out, state, new WarningMessageContainer(),
+				ProgressMonitor.NONE, XlsFormatterLogger.NONE);
+		return new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()));
+	}
+
+	/**
+	 * Writes the table as a plain writer would and applies the state afterwards.
+	 */
+	private static XSSFWorkbook apply(final XlsFormatterState state) throws Exception {
+		ByteArrayOutputStream input = new ByteArrayOutputStream();
+		try (XSSFWorkbook wb = new XSSFWorkbook()) {
+			XSSFSheet sheet = wb.createSheet("data");
+			XSSFRow header = sheet.createRow(0);
+			for (int c = 0; c < COLUMN_NAMES.length; c++)
+				header.createCell(c).setCellValue(COLUMN_NAMES[c]);
+			for (int r = 0; r < ROW_COUNT; r++) {
+				XSSFRow row = sheet.createRow(r + 1);
+				for (int c = 0; c < COLUMN_NAMES.length; c++) {
+					Object value = getValue(r, c);
+					if (value instanceof LocalDate)
+						row.createCell(c).setCellValue((LocalDate)value); // without date format, which the applied styles would replace anyway
+					else if (value instanceof Double)
+						row.createCell(c).setCellValue((Double)value);
+					else if (value != null)
+						row.createCell(c).setCellValue((String)value);
+				}
+			}
+			wb.write(input);
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		XlsFormatterApplyLogic.apply("input.xlsx", () -> new ByteArrayInputStream(input.toByteArray()), () -> out, state, false,
+				new WarningMessageContainer(), ProgressMonitor.NONE, XlsFormatterLogger.NONE);
+		return new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()));
+	}
+
+	/**
+	 * Compares the formatting of two styles, apart from their number format (as only the streaming writer knows the values' types).
+	 */
+	private static void assertStyleEquals(final XSSFCellStyle expected, final XSSFCellStyle actual, final String message) {
+		assertEquals(expected.getFillPattern(), actual.getFillPattern(), "fill of " + message);
+		assertArrayEquals(getRgb(expected.getFillForegroundColorColor()), getRgb(actual.getFillForegroundColorColor()), "fill color of " + message);
+		assertEquals(expected.getFont().getBold(), actual.getFont().getBold(), "bold font of " + message);
+		assertEquals(expected.getFont().getItalic(), actual.getFont().getItalic(), "italic font of " + message);
+	}
+
+	/**
+	 * Gets a cell, unless it is blank and unformatted, as the cells covered by merge ranges are blanked when applying, but not written when streaming.
+	 */
+	private static XSSFCell getFormattedCell(final XSSFRow row, final int column) {
+		XSSFCell ret = row.getCell(column);
+		return ret == null || (ret.getCellType() == CellType.BLANK && ret.getCellStyle().getIndex() == 0) ? null : ret;
+	}
+
+	private static byte[] getRgb(final XSSFColor color) {
+		return color == null ? null : color.getRGB();
+	}
+}
@@ -0,0 +1,200 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.continental.knime.xlsformatter.apply;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.util.AreaReference;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFTable;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTTableStyleInfo;
+
+import com.continental.knime.xlsformatter.commons.ProgressMonitor;
+import com.continental.knime.xlsformatter.commons.WarningMessageContainer;
+import com.continental.knime.xlsformatter.commons.XlsFormatterLogger;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.SheetState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.TableDefinition;
+
+/**
+ * Tests that table definitions are written as native Excel tables and that conflicting tables and auto filters are skipped.
+ */
+public class XlsFormatterApplyTableWriterTest {
+
+	private static final int ROW_COUNT = 6;
+	private static final int COLUMN_COUNT = 8;
+	private static final String EXISTING_TABLE_RANGE = "K1:L3";
+
+	@Test
+	public void testTablesAreWrittenAsNativeTables() throws Exception {
+		XlsFormatterState state = new XlsFormatterState();
+		SheetState sheetState = state.getCurrentSheetStateForModification();
+		TableDefinition headedTable = createTable("A1:D6");
+		headedTable.styleName = "TableStyleMedium9";
+		headedTable.hasTotalsRow = true;
+		headedTable.showBandedColumns = true;
+		headedTable.highlightFirstColumn = true;
+		sheetState.tables.add(headedTable);
+		TableDefinition plainTable = createTable("F2:G6");
+		plainTable.name = "Sales";
+		plainTable.hasHeaderRow = false;
+		plainTable.showBandedRows = false;
+		plainTable.highlightLastColumn = true;
+		sheetState.tables.add(plainTable);
+		WarningMessageContainer warningMessageContainer = new WarningMessageContainer();
+
+		try (XSSFWorkbook wb = apply(createInput(), state, warningMessageContainer)) {
+			XSSFSheet sheet = wb.getSheetAt(0);
+			Map<String, XSSFTable> tables = getTables(sheet);
+			assertEquals(3, tables.size());
+
+			XSSFTable table = tables.get("Table1"); // the automatically derived name
+			assertEquals("A1:D6", table.getCTTable().getRef());
+			assertEquals(1, table.getHeaderRowCount());
+			assertEquals(1, table.getTotalsRowCount());
+			assertEquals("A1:D5", table.getCTTable().getAutoFilter().getRef()); // without totals row
+			assertEquals("Name", table.getColumns().get(0).getName());
+			assertEquals("Column2", table.getColumns().get(1).getName()); // for the empty header cell
+			assertEquals("NAME2", table.getColumns().get(2).getName()); // case-insensitively unique
+			assertEquals("42", table.getColumns().get(3).getName());
+			for (int c = 0; c < 4; c++) { // the header cells hold the column names
+				assertEquals(CellType.STRING, sheet.getRow(0).getCell(c).getCellType());
+				assertEquals(table.getColumns().get(c).getName(), sheet.getRow(0).getCell(c).getStringCellValue());
+			}
+			CTTableStyleInfo styleInfo = table.getCTTable().getTableStyleInfo();
+			assertEquals("TableStyleMedium9", styleInfo.getName());
+			assertTrue(styleInfo.getShowRowStripes());
+			assertTrue(styleInfo.getShowColumnStripes());
+			assertTrue(styleInfo.getShowFirstColumn());
+			assertFalse(styleInfo.getShowLastColumn());
+
+			table = tables.get("Sales");
+			assertEquals("F2:G6", table.getCTTable().getRef());
+			assertEquals(0, table.getHeaderRowCount());
+			assertEquals(0, table.getTotalsRowCount());
+			assertFalse(table.getCTTable().isSetAutoFilter());
+			assertEquals("Column1", table.getColumns().get(0).getName()); // rather than the duplicate values of the first data row
+			assertEquals("Column2", table.getColumns().get(1).getName());
+			assertEquals(15d, sheet.getRow(1).getCell(5).getNumericCellValue()); // data instead of a header
+			assertEquals(15d, sheet.getRow(1).getCell(6).getNumericCellValue());
+			styleInfo = table.getCTTable().getTableStyleInfo();
+			assertFalse(styleInfo.isSetName());
+			assertFalse(styleInfo.getShowRowStripes());
+			assertTrue(styleInfo.getShowLastColumn());
+
+			assertFalse(warningMessageContainer.hasMessage());
+		}
+	}
+
+	@Test
+	public void testConflictingTablesAndAutoFilterAreSkipped() throws Exception {
+		XlsFormatterState state = new XlsFormatterState();
+		SheetState sheetState = state.getCurrentSheetStateForModification();
+		sheetState.tables.add(createTable("A1:B6"));
+		sheetState.tables.add(createTable("C1:D6")); // overlapping a merge range
+		sheetState.mergeRanges.add(CellRangeAddress.valueOf("D3:E3"));
+		sheetState.tables.add(createTable("J2:K6")); // overlapping the existing table
+		sheetState.autoFilterRange = CellRangeAddress.valueOf("B1:C6"); // overlapping the first table
+		WarningMessageContainer warningMessageContainer = new WarningMessageContainer();
+
+		try (XSSFWorkbook wb = apply(createInput(), state, warningMessageContainer)) {
+			XSSFSheet sheet = wb.getSheetAt(0);
+			Map<String, XSSFTable> tables = getTables(sheet);
+			assertEquals(2, tables.size());
+			assertEquals("A1:B6", tables.get("Table1").getCTTable().getRef());
+			assertEquals(EXISTING_TABLE_RANGE, tables.get("Existing").getCTTable().getRef());
+			assertNull(sheet.getCTWorksheet().getAutoFilter());
+			assertTrue(warningMessageContainer.hasMessage());
+		}
+	}
+
+	@Test
+	public void testDuplicateTableNameFails() throws Exception {
+		XlsFormatterState state = new XlsFormatterState();
+		TableDefinition table = createTable("A1:B6");
+		table.name = "EXISTING"; // table names are case-insensitive
+		state.getCurrentSheetStateForModification().tables.add(table);
+		Exception e = assertThrows(Exception.class, () -> apply(createInput(), state, new WarningMessageContainer()).close());
+		assertTrue(e.getMessage().contains("already used"));
+	}
+
+	private static TableDefinition createTable(final String range) {
+		TableDefinition ret = new TableDefinition();
+		ret.range = CellRangeAddress.valueOf(range);
+		return ret;
+	}
+
+	private static Map<String, XSSFTable> getTables(final XSSFSheet sheet) {
+		Map<String, XSSFTable> ret = new HashMap<String, XSSFTable>();
+		for (XSSFTable table : sheet.getTables())
+			ret.put(table.getName(), table);
+		return ret;
+	}
+
+	/**
+	 * Creates a sheet of numbers with a header row of a String, an empty, a duplicate and a numeric column name, and an existing table.
+	 */
+	private static byte[] createInput() throws Exception {
+		try (XSSFWorkbook wb = new XSSFWorkbook()) {
+			XSSFSheet sheet = wb.createSheet("data");
+			for (int r = 0; r < ROW_COUNT; r++) {
+				XSSFRow row = sheet.createRow(r);
+				for (int c = 0; c < COLUMN_COUNT; c++)
+					row.createCell(c).setCellValue(r * 10 + c);
+			}
+			XSSFRow header = sheet.getRow(0);
+			header.getCell(0).setCellValue("Name");
+			header.removeCell(header.getCell(1));
+			header.getCell(2).setCellValue("NAME");
+			header.getCell(3).setCellValue(42);
+			sheet.getRow(1).getCell(6).setCellValue(15); // the first row of a table without header, duplicating the value of F2
+
+			header.createCell(10).setCellValue("Key");
+			header.createCell(11).setCellValue("Value");
+			XSSFTable existingTable = sheet.createTable(new AreaReference(EXISTING_TABLE_RANGE, SpreadsheetVersion.EXCEL2007));
+			existingTable.setName("Existing");
+			existingTable.setDisplayName("Existing");
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			wb.write(out);
+			return out.toByteArray();
+		}
+	}
+
+	private static XSSFWorkbook apply(final byte[] input, final XlsFormatterState state, final WarningMessageContainer warningMessageContainer) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		XlsFormatterApplyLogic.apply("input.xlsx", () -> new ByteArrayInputStream(input), () -> out, state, false,
+				warningMessageContainer, ProgressMonitor.NONE, XlsFormatterLogger.NONE);
+		return new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()));
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.continental.knime.xlsformatter.commons;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+public class ColorQuantizerTest {
+
+	private static Map<Color, Long> createColorWeights(final int colorCount, final long seed) {
+		Random random = new Random(seed);
+		Map<Color, Long> ret = new HashMap<Color, Long>();
+		while (ret.size() < colorCount)
+			ret.put(new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256)), 1l + random.nextInt(100));
+		return ret;
+	}
+
+	@Test
+	public void testFewColorsAreKept() {
+		Map<Color, Long> colorWeights = createColorWeights(5, 1);
+		ColorQuantizer.QuantizationResult result = ColorQuantizer.quantize(colorWeights, 5);
+		assertEquals(5, result.colorCount);
+		assertEquals(0d, result.maxColorError);
+		for (Color color : colorWeights.keySet())
+			assertEquals(color, result.colorMap.get(color));
+	}
+
+	@Test
+	public void testNearIdenticalColorsAreMergedFirst() {
+		Map<Color, Long> colorWeights = new HashMap<Color, Long>();
+		colorWeights.put(new Color(200, 0, 0), 1l);
+		colorWeights.put(new Color(201, 1, 0), 1l);
+		colorWeights.put(new Color(0, 0, 200), 1l);
+		colorWeights.put(new Color(0, 1, 201), 1l);
+		ColorQuantizer.QuantizationResult result = ColorQuantizer.quantize(colorWeights, 2);
+		assertEquals(2, result.colorCount);
+		assertEquals(result.colorMap.get(new Color(200, 0, 0)), result.colorMap.get(new Color(201, 1, 0)));
+		assertEquals(result.colorMap.get(new Color(0, 0, 200)), result.colorMap.get(new Color(0, 1, 201)));
+		assertNotEquals(result.colorMap.get(new Color(200, 0, 0)), result.colorMap.get(new Color(0, 0, 200)));
+		assertTrue(result.maxColorError < 2d);
+	}
+
+	/**
+	 * The representatives are rounded to RGB, so the means of two groups of near-identical colors can become the same
+	 * color, which must not be counted twice.
+	 */
+	@Test
+	public void testRoundedRepresentativesAreCountedOnce() {
+		Map<Color, Long> colorWeights = new HashMap<Color, Long>();
+		colorWeights.put(new Color(101, 102, 101), 1l);
+		colorWeights.put(new Color(101, 101, 101), 3l);
+		colorWeights.put(new Color(100, 101, 101), 1l);
+		List<ColorQuantizer.QuantizationStep> steps = ColorQuantizer.getQuantizationSteps(colorWeights, colorWeights.size());
+		assertEquals(2, steps.get(1).groups.size());
+		assertEquals(steps.get(1).groups.get(0).representative, steps.get(1).groups.get(1).representative);
+
+		ColorQuantizer.QuantizationResult result = ColorQuantizer.quantize(steps, 2);
+		assertEquals(1, result.colorCount);
+		assertEquals(1, new HashSet<Color>(result.colorMap.values()).size());
+		assertEquals(3, ColorQuantizer.quantize(steps, 3).colorCount);
+	}
+
+	/**
+	 * The steps are a sequence of refinements: the first one maps all colors to one group, every further one splits a
+	 * current group into two, and applying the first n steps yields the quantization to n colors.
+	 */
+	@Test
+	public void testStepsAreConsistentWithQuantization() {
+		for (long seed = 0; seed < 20; seed++) {
+			Map<Color, Long> colorWeights = createColorWeights(50, seed);
+			List<ColorQuantizer.QuantizationStep> steps = ColorQuantizer.getQuantizationSteps(colorWeights, colorWeights.size());
+			assertEquals(colorWeights.size(), steps.size(), "distinct colors are split until each is represented on its own");
+			assertEquals(1, steps.get(0).groups.size());
+			assertEquals(colorWeights.keySet(), new HashSet<Color>(steps.get(0).groups.get(0).colors));
+
+			Map<Color, Integer> groupOfColor = new HashMap<Color, Integer>();
+			for (Color color : colorWeights.keySet())
+				groupOfColor.put(color, 0);
+			int groupCount = 1;
+			for (int colorCount = 1; colorCount <= steps.size(); colorCount++) {
+				ColorQuantizer.QuantizationStep step = steps.get(colorCount - 1);
+				if (colorCount > 1) {
+					assertEquals(2, step.groups.size());
+					Set<Integer> splitGroups = new HashSet<Integer>();
+					for (ColorQuantizer.ColorGroup group : step.groups) {
+						assertTrue(group.colors.size() > 0);
+						for (Color color : group.colors)
+							splitGroups.add(groupOfColor.get(color));
+					}
+					assertEquals(1, splitGroups.size(), "only colors of one group are split");
+					int splitGroup = splitGroups.iterator().next();
+					assertEquals(groupOfColor.values().stream().filter(g -> g == splitGroup).count(),
+							step.groups.get(0).colors.size() + step.groups.get(1).colors.size(), "all colors of the group are split");
+				}
+				for (ColorQuantizer.ColorGroup group : step.groups) {
+					int newGroup = groupCount++;
+					for (Color color : group.colors)
+						groupOfColor.put(color, newGroup);
+				}
+
+				ColorQuantizer.QuantizationResult fromSteps = ColorQuantizer.quantize(steps, colorCount);
+				ColorQuantizer.QuantizationResult direct = ColorQuantizer.quantize(colorWeights, colorCount);
+				assertEquals(new HashSet<Color>(fromSteps.colorMap.values()).size(), fromSteps.colorCount);
+				assertEquals(direct.colorMap, fromSteps.colorMap);
+				assertEquals(direct.maxColorError, fromSteps.maxColorError);
+				assertEquals(colorCount, new HashSet<Integer>(groupOfColor.values()).size());
+				// colors share a representative exactly if they are in the same group
+				for (Color color : colorWeights.keySet())
+					for (Color other : colorWeights.keySet())
+						if (groupOfColor.get(color).equals(groupOfColor.get(other)))
+							assertEquals(fromSteps.colorMap.get(color), fromSteps.colorMap.get(other));
+			}
+
+			assertEquals(3, ColorQuantizer.getQuantizationSteps(colorWeights, 3).size());
+			assertEquals(ColorQuantizer.quantize(steps, 3).colorMap, ColorQuantizer.quantize(ColorQuantizer.getQuantizationSteps(colorWeights, 3), 3).colorMap);
+		}
+	}
+
+	@Test
+	public void testMaxColorError() {
+		Map<Color, Long> colorWeights = createColorWeights(200, 7);
+		double previousError = Double.MAX_VALUE;
+		for (int colorCount : new int[] { 1, 4, 16, 64 }) {
+			ColorQuantizer.QuantizationResult result = ColorQuantizer.quantize(colorWeights, colorCount);
+			double maxError = 0d;
+			for (Map.Entry<Color, Color> entry : result.colorMap.entrySet()) {
+				double[] lab = ColorQuantizer.rgbToLab(entry.getKey());
+				double[] representativeLab = ColorQuantizer.rgbToLab(entry.getValue());
+				maxError = Math.max(maxError, Math.sqrt(Math.pow(lab[0] - representativeLab[0], 2) +
+						Math.pow(lab[1] - representativeLab[1], 2) + Math.pow(lab[2] - representativeLab[2], 2)));
+			}
+			assertEquals(maxError, result.maxColorError, 1e-9);
+			assertEquals(colorCount, new HashSet<Color>(result.colorMap.values()).size());
+			assertTrue(result.maxColorError < previousError);
+			previousError = result.maxColorError;
+		}
+	}
+
+	@Test
+	public void testLabConversionRoundTrip() {
+		Random random = new Random(3);
+		for (int i = 0; i < 1000; i++) {
+			Color color = new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256));
+			assertEquals(color, ColorQuantizer.labToRgb(ColorQuantizer.rgbToLab(color)));
+		}
+		double[] white = ColorQuantizer.rgbToLab(Color.WHITE);
+		assertEquals(100d, white[0], 1e-3);
+		assertEquals(0d, white[1], 1e-3);
+		assertEquals(0d, white[2], 1e-3);
+	}
+}
@@ -0,0 +1,264 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.continental.knime.xlsformatter.porttype;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.poi.ss.util.CellAddress;
+import org.junit.jupiter.api.Test;
+
+public class CellMapTest {
+
+	@Test
+	public void testKeyPacking() {
+		long key = CellMap.toKey(1048575, 16383);
+		assertEquals(1048575, CellMap.getRow(key));
+		assertEquals(16383, CellMap.getColumn(key));
+		assertEquals(new CellAddress(1048575, 16383), CellMap.toCellAddress(key));
+		assertEquals(key, CellMap.toKey(new CellAddress(1048575, 16383)));
+		assertTrue(CellMap.toKey(0, 16383) < CellMap.toKey(1, 0), "keys sort in row-major order");
+
+		CellMap<String> map = new CellMap<>();
+		assertThrows(IllegalArgumentException.class, () -> map.put(0, 16384, "x"));
+		assertThrows(IllegalArgumentException.class, () -> map.put(-1, 0, "x"));
+	}
+
+	@Test
+	public void testGrowthBeyondInitialCapacity() {
+		CellMap<Integer> map = new CellMap<>();
+		for (int i = 0; i < 100000; i++)
+			assertNull(map.put(i / 100, i % 100, i));
+		assertEquals(100000, map.size());
+		for (int i = 0; i < 100000; i++)
+			assertEquals(i, map.get(i / 100, i % 100));
+		assertFalse(map.containsKey(1000, 0));
+
+		CellMap<Integer> presized = new CellMap<>(100000);
+		for (int i = 99999; i >= 0; i--)
+			presized.put(i / 100, i % 100, i);
+		assertEquals(map, presized);
+	}
+
+	/**
+	 * Removes and re-adds cells randomly in a dense area, so that removals frequently happen within probe sequences and
+	 * entries need to be shifted back, and compares all lookups with a HashMap.
+	 */
+	@Test
+	public void testRemoveAgainstHashMap() {
+		Random random = new Random(42);
+		CellMap<Integer> map = new CellMap<>();
+		Map<Long, Integer> expected = new HashMap<>();
+		for (int operation = 0; operation < 200000; operation++) {
+			long key = CellMap.toKey(random.nextInt(64), random.nextInt(64));
+			if (random.nextInt(3) == 0)
+				assertEquals(expected.remove(key), map.remove(key));
+			else
+				assertEquals(expected.put(key, operation), map.put(key, operation));
+			if (operation % 10000 == 0)
+				assertSameEntries(expected, map);
+		}
+		assertSameEntries(expected, map);
+
+		for (long key : new ArrayList<>(expected.keySet()))
+			assertEquals(expected.remove(key), map.remove(key));
+		assertTrue(map.isEmpty());
+		assertEquals(0, map.getContentHash());
+		assertNull(map.remove(CellMap.toKey(0, 0)));
+	}
+
+	private static void assertSameEntries(final Map<Long, Integer> expected, final CellMap<Integer> map) {
+		assertEquals(expected.size(), map.size());
+		for (int row = 0; row < 64; row++)
+			for (int column = 0; column < 64; column++) {
+				long key = CellMap.toKey(row, column);
+				assertEquals(expected.containsKey(key), map.containsKey(key));
+				assertEquals(expected.get(key), map.get(key));
+			}
+		int visited = 0;
+		for (CellMap<Integer>.Cursor cursor = map.getCursor(); cursor.next(); visited++)
+			assertEquals(expected.get(cursor.getKey()), cursor.getValue());
+		assertEquals(expected.size(), visited);
+	}
+
+	@Test
+	public void testRowMajorCursor() {
+		Random random = new Random(7);
+		// dense rows (bucketed by row) and sparse rows far apart (sorted as a whole)
+		for (int maxRow : new int[] { 50, 1048576 }) {
+			CellMap<Long> map = new CellMap<>();
+			for (int i = 0; i < 5000; i++) {
+				long key = CellMap.toKey(random.nextInt(maxRow), random.nextInt(16384));
+				map.put(key, key);
+			}
+			long[] expectedKeys = map.getKeys();
+			Arrays.sort(expectedKeys);
+
+			List<Long> keys = new ArrayList<>();
+			for (CellMap<Long>.Cursor cursor = map.getRowMajorCursor(); cursor.next(); ) {
+				assertEquals(cursor.getKey(), cursor.getValue());
+				assertEquals(CellMap.toKey(cursor.getRow(), cursor.getColumn()), cursor.getKey());
+				keys.add(cursor.getKey());
+			}
+			assertArrayEquals(expectedKeys, keys.stream().mapToLong(Long::longValue).toArray());
+		}
+		assertFalse(new CellMap<String>().getRowMajorCursor().next());
+	}
+
+	@Test
+	public void testCursorModification() {
+		CellMap<String> map = new CellMap<>();
+		map.put(0, 0, "a");
+		map.put(0, 1, "b");
+		for (CellMap<String>.Cursor cursor = map.getCursor(); cursor.next(); )
+			cursor.setValue(cursor.getValue().toUpperCase());
+		CellMap<String> expected = new CellMap<>();
+		expected.put(0, 1, "B");
+		expected.put(0, 0, "A");
+		assertEquals(expected, map);
+		assertEquals(expected.getContentHash(), map.getContentHash());
+
+		CellMap<String>.Cursor cursor = map.getCursor();
+		cursor.next();
+		map.put(5, 5, "c");
+		assertThrows(ConcurrentModificationException.class, cursor::next);
+	}
+
+	@Test
+	public void testCopyOnWriteIsolation() {
+		CellMap<String> original = new CellMap<>();
+		for (int i = 0; i < 100; i++)
+			original.put(i, i, "v" + i);
+		CellMap<String> snapshot = new CellMap<>(new HashMap<>(original));
+
+		// modifying the copy leaves the original untouched
+		CellMap<String> copy = new CellMap<>(original);
+		assertEquals(original, copy);
+		copy.put(0, 0, "changed");
+		copy.put(500, 500, "added");
+		copy.remove(CellMap.toKey(1, 1));
+		assertEquals(snapshot, original);
+		assertEquals(snapshot.getContentHash(), original.getContentHash());
+		assertEquals("changed", copy.get(0, 0));
+		assertEquals("added", copy.get(500, 500));
+		assertFalse(copy.containsKey(1, 1));
+		assertNotEquals(original, copy);
+
+		// modifying the original leaves a copy untouched, also via a cursor and when growing
+		copy = new CellMap<>(original);
+		for (CellMap<String>.Cursor cursor = original.getCursor(); cursor.next(); )
+			cursor.setValue("x");
+		for (int i = 100; i < 1000; i++)
+			original.put(i, 0, "v" + i);
+		assertEquals(snapshot, copy);
+		assertEquals(snapshot.getContentHash(), copy.getContentHash());
+
+		// clearing a shared map
+		copy = new CellMap<>(original);
+		original.clear();
+		assertTrue(original.isEmpty());
+		assertEquals(1000, copy.size());
+		assertEquals("x", copy.get(0, 0));
+
+		// a chain of copies
+		CellMap<String> first = new CellMap<>(snapshot);
+		CellMap<String> second = new CellMap<>(first);
+		second.put(0, 0, "second");
+		first.put(0, 0, "first");
+		assertEquals("v0", snapshot.get(0, 0));
+		assertEquals("first", first.get(0, 0));
+		assertEquals("second", second.get(0, 0));
+	}
+
+	@Test
+	public void testContentHashAndEquality() {
+		List<Long> keys = new ArrayList<>();
+		for (int i = 0; i < 1000; i++)
+			keys.add(CellMap.toKey(i % 37, i));
+		CellMap<String> forward = new CellMap<>();
+		for (long key : keys)
+			forward.put(key, "v" + (key % 5));
+		Collections.shuffle(keys, new Random(3));
+		CellMap<String> shuffled = new CellMap<>(10);
+		for (long key : keys)
+			shuffled.put(key, "v" + (key % 5));
+		assertEquals(forward, shuffled);
+		assertEquals(forward.getContentHash(), shuffled.getContentHash());
+		assertEquals(forward.hashCode(), shuffled.hashCode());
+		assertEquals(new HashMap<>(forward), shuffled, "equal to other maps of the same entries");
+
+		// moving a value to another cell changes the hash, even though the set of values stays the same
+		CellMap<String> moved = new CellMap<>(forward);
+		long from = keys.get(0);
+		long to = CellMap.toKey(5000, 0);
+		moved.put(to, moved.remove(from));
+		assertNotEquals(forward.getContentHash(), moved.getContentHash());
+		assertNotEquals(forward, moved);
+
+		// swapping two different values changes the hash, too
+		CellMap<String> swapped = new CellMap<>(forward);
+		long a = CellMap.toKey(0, 0), b = CellMap.toKey(0, 37);
+		assertNotEquals(forward.get(a), forward.get(b));
+		swapped.put(a, forward.get(b));
+		swapped.put(b, forward.get(a));
+		assertNotEquals(forward.getContentHash(), swapped.getContentHash());
+		swapped.put(a, forward.get(a));
+		swapped.put(b, forward.get(b));
+		assertEquals(forward.getContentHash(), swapped.getContentHash());
+		assertEquals(forward, swapped);
+
+		// null values count as entries
+		CellMap<String> withNull = new CellMap<>(forward);
+		withNull.put(CellMap.toKey(9999, 9), null);
+		assertTrue(withNull.containsKey(9999, 9));
+		assertNotEquals(forward, withNull);
+		withNull.remove(CellMap.toKey(9999, 9));
+		assertEquals(forward, withNull);
+		assertEquals(forward.getContentHash(), withNull.getContentHash());
+	}
+
+	@Test
+	public void testMapView() {
+		CellMap<String> map = new CellMap<>();
+		map.put(new CellAddress("B3"), "b3");
+		map.put(new CellAddress("A1"), "a1");
+		assertEquals("b3", map.get(new CellAddress(2, 1)));
+		assertTrue(map.containsKey(new CellAddress("A1")));
+		assertFalse(map.containsKey("A1"));
+		assertEquals(Map.of(new CellAddress("A1"), "a1", new CellAddress("B3"), "b3"), new HashMap<>(map));
+		assertEquals("a1", map.remove(new CellAddress("A1")));
+		assertEquals(1, map.size());
+		assertEquals("b3", map.remove(new CellAddress("B3")));
+		assertTrue(map.isEmpty());
+	}
+}
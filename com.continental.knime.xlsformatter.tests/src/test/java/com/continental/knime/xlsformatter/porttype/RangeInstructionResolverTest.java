@@ -0,0 +1,307 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.continental.knime.xlsformatter.porttype;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.junit.jupiter.api.Test;
+
+import com.continental.knime.xlsformatter.commons.AddressingTools;
+import com.continental.knime.xlsformatter.commons.ProgressMonitor;
+import com.continental.knime.xlsformatter.commons.XlsFormatterLogger;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.BorderEdge;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.BorderStyle;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.CellState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.CellStateModification;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.FormattingFlag;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.FormattingRecord;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.SheetState;
+
+/**
+ * Tests that range instructions, resolved lazily, yield the same formatting as applying each instruction on each of its
+ * cells in the order of the instructions.
+ */
+public class RangeInstructionResolverTest {
+
+	private static final int AREA_SIZE = 20;
+
+	@Test
+	public void testOverlappingInstructionsInOrder() throws Exception {
+		XlsFormatterState state = new XlsFormatterState();
+		SheetState sheet = state.getCurrentSheetStateForModification();
+		sheet.addRangeInstruction(List.of(CellRangeAddress.valueOf("A1:C3")), cellState -> cellState.fontBold = FormattingFlag.ON);
+		sheet.modifyCells(List.of(new CellAddress("B2")), cellState -> cellState.fontBold = FormattingFlag.OFF);
+		sheet.addRangeInstruction(List.of(CellRangeAddress.valueOf("B2:D4")), cellState -> cellState.fontSize = 14);
+		sheet.addRangeInstruction(List.of(CellRangeAddress.valueOf("C3:C3")), cellState -> cellState.fontBold = FormattingFlag.OFF);
+		sheet.addRangeInstruction(List.of(CellRangeAddress.valueOf("A1:D1")), cellState -> cellState.fontColor = Color.RED);
+		// reads the cells' formatting, hence needs the range instructions resolved first
+		sheet.modifyCells(List.of(new CellAddress("A1"), new CellAddress("B2"), new CellAddress("D4")),
+				cellState -> cellState.fontSize = cellState.fontSize == null ? 8 : cellState.fontSize + 1);
+
+		assertCell(sheet, "A1", FormattingFlag.ON, 8, Color.RED);
+		assertCell(sheet, "B1", FormattingFlag.ON, null, Color.RED);
+		assertCell(sheet, "D1", FormattingFlag.UNMODIFIED, null, Color.RED);
+		assertCell(sheet, "B2", FormattingFlag.OFF, 15, null);
+		assertCell(sheet, "C2", FormattingFlag.ON, 14, null);
+		assertCell(sheet, "C3", FormattingFlag.OFF, 14, null);
+		assertCell(sheet, "D4", FormattingFlag.UNMODIFIED, 15, null);
+		assertNull(sheet.getCellState(CellMap.toKey(new CellAddress("E5"))));
+		assertTrue(sheet.isCoveredByRangeInstruction(CellMap.toKey(new CellAddress("C4"))));
+		assertFalse(sheet.isCoveredByRangeInstruction(CellMap.toKey(new CellAddress("A4"))));
+
+		CellMap<FormattingRecord> resolved = sheet.getResolvedCells(new FormattingRecordTable());
+		assertEquals(15, resolved.size()); // the union of A1:C3, B2:D4 and A1:D1
+	}
+
+	private static void assertCell(final SheetState sheet, final String address, final FormattingFlag bold, final Integer fontSize,
+			final Color fontColor) {
+		CellState cellState = sheet.getCellState(CellMap.toKey(new CellAddress(address)));
+		assertEquals(bold, cellState.fontBold, address);
+		assertEquals(fontSize, cellState.fontSize, address);
+		assertEquals(fontColor, cellState.fontColor, address);
+		FormattingRecord resolved = sheet.getResolvedCells(new FormattingRecordTable()).get(CellMap.toKey(new CellAddress(address)));
+		assertEquals(new FormattingRecord(cellState), resolved, address);
+	}
+
+	/**
+	 * Applies random sequences of cell modifications and range instructions on overlapping rectangles and compares the
+	 * result with a fold of the same modifications over a plain map of cell states.
+	 */
+	@Test
+	public void testRandomInstructionsAgainstCellByCellFold() throws Exception {
+		Random random = new Random(1);
+		for (int iteration = 0; iteration < 300; iteration++) {
+			XlsFormatterState state = new XlsFormatterState();
+			SheetState sheet = state.getCurrentSheetStateForModification();
+			Map<Long, CellState> expected = new HashMap<Long, CellState>();
+
+			for (int operation = 0; operation < 10; operation++) {
+				int firstRow = random.nextInt(AREA_SIZE / 2), firstColumn = random.nextInt(AREA_SIZE / 2);
+				List<CellAddress> addresses = new ArrayList<CellAddress>();
+				boolean sparse = random.nextInt(4) == 0;
+				for (int r = firstRow; r <= firstRow + random.nextInt(AREA_SIZE / 2); r++)
+					for (int c = firstColumn; c <= firstColumn + random.nextInt(AREA_SIZE / 2); c++)
+						if (!sparse || random.nextBoolean())
+							addresses.add(new CellAddress(r, c));
+
+				int value = random.nextInt(3);
+				CellStateModification modification;
+				boolean stateIndependent = true;
+				switch (random.nextInt(5)) {
+				case 0:
+					modification = cellState -> cellState.fontSize = 8 + value;
+					break;
+				case 1:
+					modification = cellState -> cellState.fontBold = value == 0 ? FormattingFlag.ON : FormattingFlag.OFF;
+					break;
+				case 2:
+					Color color = new Color(value * 100, 0, 0);
+					modification = cellState -> cellState.backgroundColor = color;
+					break;
+				case 3: // merges like a range instruction's delta is overlaid
+					BorderEdge edge = value == 0 ? new BorderEdge(BorderStyle.THICK) : new BorderEdge(BorderStyle.NORMAL, Color.BLUE);
+					modification = cellState -> {
+						if (cellState.borderTop == null)
+							cellState.borderTop = new BorderEdge(edge.style, edge.color);
+						else
+							cellState.borderTop.mergeIn(edge);
+					};
+					break;
+				default:
+					modification = cellState -> cellState.wrapText = cellState.fontSize == null ? FormattingFlag.ON : FormattingFlag.OFF;
+					stateIndependent = false;
+				}
+
+				if (stateIndependent && random.nextBoolean())
+					sheet.addRangeInstruction(AddressingTools.getRangesFromAddressList(new ArrayList<CellAddress>(addresses),
+							ProgressMonitor.NONE, XlsFormatterLogger.NONE), modification);
+				else
+					sheet.modifyCells(addresses, modification);
+				for (CellAddress address : addresses) {
+					CellState cellState = expected.computeIfAbsent(CellMap.toKey(address), key -> new CellState());
+					modification.modify(cellState);
+				}
+			}
+
+			assertSameFormatting(expected, sheet, "iteration " + iteration);
+			assertSameFormatting(expected, state.getModifiableCopy().sheetStates.get(null), "copy of iteration " + iteration);
+		}
+	}
+
+	/**
+	 * Mixes full-column and full-row modifications with range instructions and cell modifications and compares the formatting
+	 * at apply (the resolved cells overlaid over their full row and column) with a fold of the same modifications over a plain
+	 * map of cell states.
+	 */
+	@Test
+	public void testFullRangesAgainstCellByCellFold() throws Exception {
+		Random random = new Random(2);
+		for (int iteration = 0; iteration < 300; iteration++) {
+			XlsFormatterState state = new XlsFormatterState();
+			SheetState sheet = state.getCurrentSheetStateForModification();
+			Map<Long, CellState> expected = new HashMap<Long, CellState>();
+
+			for (int operation = 0; operation < 10; operation++) {
+				int value = random.nextInt(3);
+				CellStateModification modification;
+				switch (random.nextInt(4)) {
+				case 0:
+					modification = cellState -> cellState.fontSize = 8 + value;
+					break;
+				case 1:
+					modification = cellState -> cellState.fontBold = value == 0 ? FormattingFlag.ON : FormattingFlag.OFF;
+					break;
+				case 2:
+					Color color = new Color(value * 100, 0, 0);
+					modification = cellState -> cellState.backgroundColor = color;
+					break;
+				default:
+					BorderEdge edge = value == 0 ? new BorderEdge(BorderStyle.THICK) : new BorderEdge(BorderStyle.NORMAL, Color.BLUE);
+					modification = cellState -> {
+						if (cellState.borderTop == null)
+							cellState.borderTop = new BorderEdge(edge.style, edge.color);
+						else
+							cellState.borderTop.mergeIn(edge);
+					};
+				}
+
+				List<CellAddress> addresses = new ArrayList<CellAddress>();
+				int first = random.nextInt(AREA_SIZE), last = Math.min(AREA_SIZE - 1, first + random.nextInt(3));
+				switch (random.nextInt(4)) {
+				case 0: // full columns
+					sheet.modifyFullRanges(List.of(new CellRangeAddress(-1, -1, first, last)), modification);
+					for (int r = 0; r < AREA_SIZE; r++)
+						for (int c = first; c <= last; c++)
+							addresses.add(new CellAddress(r, c));
+					break;
+				case 1: // full rows
+					sheet.modifyFullRanges(List.of(new CellRangeAddress(first, last, -1, -1)), modification);
+					for (int r = first; r <= last; r++)
+						for (int c = 0; c < AREA_SIZE; c++)
+							addresses.add(new CellAddress(r, c));
+					break;
+				default:
+					int firstRow = random.nextInt(AREA_SIZE / 2), firstColumn = random.nextInt(AREA_SIZE / 2);
+					for (int r = firstRow; r <= firstRow + random.nextInt(AREA_SIZE / 2); r++)
+						for (int c = firstColumn; c <= firstColumn + random.nextInt(AREA_SIZE / 2); c++)
+							addresses.add(new CellAddress(r, c));
+					if (random.nextBoolean())
+						sheet.addRangeInstruction(AddressingTools.getRangesFromAddressList(new ArrayList<CellAddress>(addresses),
+								ProgressMonitor.NONE, XlsFormatterLogger.NONE), modification);
+					else
+						sheet.modifyCells(addresses, modification);
+				}
+				for (CellAddress address : addresses)
+					modification.modify(expected.computeIfAbsent(CellMap.toKey(address), key -> new CellState()));
+			}
+
+			CellMap<FormattingRecord> resolved = sheet.getResolvedCells(new FormattingRecordTable());
+			for (int r = 0; r < AREA_SIZE; r++)
+				for (int c = 0; c < AREA_SIZE; c++) {
+					CellState expectedState = expected.get(CellMap.toKey(r, c));
+					FormattingRecord record = resolved.get(CellMap.toKey(r, c));
+					CellState fullRow = sheet.fullRows.get(r);
+					CellState fullColumn = sheet.fullColumns.get(c);
+					String message = "iteration " + iteration + ", cell " + new CellAddress(r, c);
+					if (expectedState == null) {
+						assertTrue(record == null && fullRow == null && fullColumn == null, message);
+						continue;
+					}
+					CellState applied = XlsFormatterStateMerger.getOverlaidCellState(record == null ? null : record.toCellState(), fullRow, fullColumn);
+					assertEquals(new FormattingRecord(expectedState), new FormattingRecord(applied), message);
+				}
+		}
+	}
+
+	/**
+	 * A full-column modification after a range instruction spanning all rows must neither create the cells of the
+	 * instruction nor of the column.
+	 */
+	@Test
+	public void testFullColumnsDoNotResolveTallRangeInstructions() throws Exception {
+		XlsFormatterState state = new XlsFormatterState();
+		SheetState sheet = state.getCurrentSheetStateForModification();
+		sheet.modifyCells(List.of(new CellAddress("A5")), cellState -> cellState.fontSize = 12);
+		sheet.addRangeInstruction(List.of(CellRangeAddress.valueOf("A1:B1048576")), cellState -> cellState.backgroundColor = Color.RED);
+		sheet.modifyFullRanges(List.of(new CellRangeAddress(-1, -1, 0, 0)), cellState -> cellState.backgroundColor = Color.BLUE);
+		assertEquals(1, sheet.cells.size());
+		assertEquals(2, sheet.rangeInstructions.size());
+		assertEquals(Color.BLUE, sheet.getCellState(CellMap.toKey(new CellAddress("A1000000"))).backgroundColor);
+		assertEquals(Color.RED, sheet.getCellState(CellMap.toKey(new CellAddress("B1000000"))).backgroundColor);
+		CellState a5 = sheet.getCellState(CellMap.toKey(new CellAddress("A5")));
+		assertEquals(Color.BLUE, a5.backgroundColor);
+		assertEquals(12, a5.fontSize);
+		assertEquals(Color.BLUE, sheet.fullColumns.get(0).backgroundColor);
+	}
+
+	private static void assertSameFormatting(final Map<Long, CellState> expected, final SheetState sheet, final String message) {
+		CellMap<FormattingRecord> resolved = sheet.getResolvedCells(new FormattingRecordTable());
+		assertEquals(expected.size(), resolved.size(), message);
+		Set<FormattingRecord> expectedDistinctRecords = new HashSet<FormattingRecord>();
+		for (int r = 0; r < AREA_SIZE; r++)
+			for (int c = 0; c < AREA_SIZE; c++) {
+				long key = CellMap.toKey(r, c);
+				CellState expectedState = expected.get(key);
+				if (expectedState == null) {
+					assertFalse(resolved.containsKey(key), message);
+					assertNull(sheet.getCellState(key), message);
+					continue;
+				}
+				FormattingRecord expectedRecord = new FormattingRecord(expectedState);
+				expectedDistinctRecords.add(expectedRecord);
+				assertEquals(expectedRecord, resolved.get(key), message + ", cell " + new CellAddress(r, c));
+				assertEquals(expectedRecord, new FormattingRecord(sheet.getCellState(key)), message + ", cell " + new CellAddress(r, c));
+			}
+		assertEquals(expectedDistinctRecords, new HashSet<FormattingRecord>(sheet.getDistinctResolvedRecords()), message);
+	}
+
+	@Test
+	public void testResolvingDoesNotModifyState() throws Exception {
+		XlsFormatterState state = new XlsFormatterState();
+		SheetState sheet = state.getCurrentSheetStateForModification();
+		sheet.modifyCells(List.of(new CellAddress("A1")), cellState -> cellState.fontItalic = FormattingFlag.ON);
+		assertSame(sheet.cells, sheet.getResolvedCells(new FormattingRecordTable()), "no range instructions, nothing to resolve");
+
+		sheet.addRangeInstruction(List.of(CellRangeAddress.valueOf("A1:B2")), cellState -> cellState.fontSize = 20);
+		CellMap<FormattingRecord> cellsBefore = new CellMap<FormattingRecord>(sheet.cells);
+		int tableSizeBefore = state.getFormattingRecords().size();
+		FormattingRecordTable targetRecords = new FormattingRecordTable();
+		CellMap<FormattingRecord> resolved = sheet.getResolvedCells(targetRecords);
+		assertEquals(4, resolved.size());
+		assertEquals(cellsBefore, sheet.cells);
+		assertEquals(1, sheet.rangeInstructions.size());
+		assertEquals(tableSizeBefore, state.getFormattingRecords().size());
+		assertTrue(targetRecords.size() > 0);
+	}
+}
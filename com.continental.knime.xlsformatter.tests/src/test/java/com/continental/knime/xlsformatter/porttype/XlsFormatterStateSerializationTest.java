@@ -0,0 +1,363 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.continental.knime.xlsformatter.porttype;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.BorderEdge;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.BorderStyle;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.CellAlignmentHorizontal;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.CellDataType;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.CellState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.Comment;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.ConditionalFormattingSet;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.FillPattern;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.FormattingFlag;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.SheetState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.TableDefinition;
+
+/**
+ * Tests writing and reading XLS Formatter states, incl. states whose sheets are decoded lazily or kept in a file, and
+ * states written by earlier versions of the extension.
+ */
+public class XlsFormatterStateSerializationTest {
+
+	@TempDir
+	Path m_tempDir;
+
+	private static byte[] write(final XlsFormatterState state) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+			state.writeExternal(output);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static XlsFormatterState read(final InputStream bytes) throws IOException, ClassNotFoundException {
+		XlsFormatterState ret = new XlsFormatterState();
+		try (ObjectInputStream input = new ObjectInputStream(bytes)) {
+			ret.readExternal(input);
+		}
+		return ret;
+	}
+
+	private static XlsFormatterState read(final byte[] bytes) throws IOException, ClassNotFoundException {
+		return read(new ByteArrayInputStream(bytes));
+	}
+
+	/**
+	 * Creates a sheet with cellCount cells of only a few distinct records, spread over the whole sheet, and with instructions
+	 * of all other kinds.
+	 */
+	private static SheetState createSheet(final XlsFormatterState state, final String sheetName, final int cellCount,
+			final long seed) throws Exception {
+		SheetState sheet = state.new SheetState();
+		state.sheetStates.put(sheetName, sheet);
+		Random random = new Random(seed);
+		List<CellAddress> dense = new ArrayList<CellAddress>();
+		for (int i = 0; i < cellCount / 2; i++)
+			dense.add(new CellAddress(i / 50, i % 50));
+		sheet.modifyCells(dense, cellState -> cellState.fontBold = FormattingFlag.ON);
+		for (int i = 0; i < cellCount - dense.size(); i++) {
+			int size = 8 + random.nextInt(4);
+			sheet.modifyCell(CellMap.toKey(random.nextInt(1048576), random.nextInt(16384)), cellState -> cellState.fontSize = size);
+		}
+
+		sheet.modifyCells(List.of(new CellAddress("B2")), cellState -> {
+			cellState.backgroundColor = new Color(200, 220, 240);
+			cellState.fillPattern = FillPattern.SOLID_BACKGROUND_COLOR;
+			cellState.borderBottom = new BorderEdge(BorderStyle.NORMAL, Color.RED);
+			cellState.cellHorizontalAlignment = CellAlignmentHorizontal.CENTER;
+			cellState.cellDataType = CellDataType.NUMERIC;
+			cellState.textFormat = "0.00";
+			cellState.conditionalFormat = new ConditionalFormattingSet();
+			cellState.conditionalFormat.backgroundScaleFixpoints.add(Pair.of(0d, Color.WHITE));
+			cellState.conditionalFormat.backgroundScaleFixpoints.add(Pair.of(1d, Color.GREEN));
+		});
+		sheet.setHyperlink(CellMap.toKey(2, 0), "https://example.com/" + sheetName);
+		Comment comment = new Comment();
+		comment.author = "Author";
+		comment.text = "A comment on " + sheetName;
+		sheet.setComment(CellMap.toKey(3, 0), comment);
+		sheet.addRangeInstruction(List.of(CellRangeAddress.valueOf("A1:C10"), CellRangeAddress.valueOf("E5:F6")),
+				cellState -> cellState.fontItalic = FormattingFlag.ON);
+		sheet.addRangeInstruction(List.of(CellRangeAddress.valueOf("B1:B20")), cellState -> cellState.fontColor = Color.BLUE);
+		sheet.modifyFullRanges(List.of(new CellRangeAddress(-1, -1, 60, 61)), cellState -> cellState.wrapText = FormattingFlag.ON);
+		sheet.modifyFullRanges(List.of(new CellRangeAddress(5, 5, -1, -1)), cellState -> cellState.textTiltDegree = 45);
+
+		sheet.freezeSheetAtTopLeftCornerOfCell = new CellAddress(1, 0);
+		sheet.autoFilterRange = CellRangeAddress.valueOf("A1:E20");
+		sheet.rowHeights.put(0, 30d);
+		sheet.columnWidths.put(0, 20d);
+		sheet.columnWidths.put(1, null);
+		sheet.hiddenRows.add(19);
+		sheet.hiddenColumns.add(70);
+		sheet.mergeRanges.add(CellRangeAddress.valueOf("BZ1:CA2"));
+		sheet.columnGroups.put(Pair.of(2, 3), true);
+		sheet.rowGroups.put(Pair.of(10, 12), false);
+		TableDefinition table = new TableDefinition();
+		table.range = CellRangeAddress.valueOf("CC1:CE10");
+		table.styleName = "TableStyleMedium2";
+		sheet.tables.add(table);
+		return sheet;
+	}
+
+	private static XlsFormatterState createState(final int cellCountPerSheet) throws Exception {
+		XlsFormatterState state = new XlsFormatterState();
+		createSheet(state, "first", cellCountPerSheet, 1);
+		createSheet(state, "second", cellCountPerSheet, 2);
+		state.sheetStates.put("empty", state.new SheetState());
+		return state;
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		XlsFormatterState state = createState(50000);
+		byte[] bytes = write(state);
+		XlsFormatterState readState = read(bytes);
+		assertEquals(state, readState);
+		assertEquals(state.hashCode(), readState.hashCode());
+		assertEquals(state.getSummary(), readState.getSummary());
+		assertEquals(state.toLongString(false), readState.toLongString(false));
+		assertEquals("https://example.com/first", readState.sheetStates.get("first").getCellState(CellMap.toKey(2, 0)).hyperlink);
+		assertEquals(state.sheetStates.get("second").comments, readState.sheetStates.get("second").comments);
+
+		// the records are written once per sheet, the cells as small record ids and as key differences to their predecessors
+		assertTrue(bytes.length < 5 * 2 * 50000, "few bytes per cell expected, but got " + bytes.length);
+
+		assertArrayEquals(bytes, write(readState), "a read state is written as it was read");
+		assertEquals(state, read(write(readState.getModifiableCopy())));
+		assertEquals(state, readState.getDeepClone());
+	}
+
+	@Test
+	public void testEmptyState() throws Exception {
+		XlsFormatterState readState = read(write(new XlsFormatterState()));
+		assertTrue(readState.isEmpty());
+		assertEquals(0, readState.sheetStates.size());
+		readState.getCurrentSheetStateForModification().modifyCell(CellMap.toKey(0, 0), cellState -> cellState.fontSize = 10);
+		assertFalse(readState.isEmpty());
+	}
+
+	@Test
+	public void testLazilyDecodedSheets() throws Exception {
+		XlsFormatterState state = createState(20000);
+		byte[] bytes = write(state);
+
+		XlsFormatterState readState = read(bytes);
+		assertEquals(state.getSummary(), readState.getSummary());
+		assertEquals(List.of("empty", "first", "second"), readState.sheetStates.keySet().stream().sorted().toList());
+		assertArrayEquals(bytes, write(readState), "an undecoded state is written as it was read");
+
+		// decoding one sheet keeps the others as they were read
+		assertEquals(state.sheetStates.get("second"), readState.sheetStates.get("second"));
+		assertEquals(state.getSummary(), readState.getSummary());
+		assertArrayEquals(bytes, write(readState), "a partly decoded state is written as it was read");
+		XlsFormatterState copy = readState.getModifiableCopy();
+		assertEquals(state, readState);
+		assertEquals(state, copy);
+
+		// modifying a copy leaves the read state untouched
+		copy = read(bytes).getModifiableCopy();
+		copy.sheetStates.get("first").modifyCell(CellMap.toKey(0, 0), cellState -> cellState.fontSize = 30);
+		copy.sheetStates.remove("second");
+		assertEquals(state, readState);
+		assertFalse(state.equals(copy));
+
+		// replacing or removing a sheet drops its byte block without decoding it, so only a decoded sheet is returned
+		XlsFormatterState replacedState = read(bytes);
+		SheetState decodedSheet = replacedState.sheetStates.get("second");
+		assertSame(decodedSheet, replacedState.sheetStates.put("second", replacedState.new SheetState()));
+		assertNull(replacedState.sheetStates.put("first", replacedState.new SheetState()));
+		assertNull(replacedState.sheetStates.remove("empty"));
+		assertEquals(List.of("first", "second"), replacedState.sheetStates.keySet().stream().sorted().toList());
+		assertTrue(replacedState.isEmpty());
+	}
+
+	/**
+	 * Compares and hashes read states whose sheets can't be decoded (their byte blocks are made unreadable), which hence
+	 * needs to be done from the sheet index, except for comparing sheets of equal hash codes.
+	 */
+	@Test
+	public void testComparingWithoutDecoding() throws Exception {
+		XlsFormatterState state = createState(20000);
+		byte[] bytes = write(state);
+		int corruptedBlocks = 0;
+		for (int i = 4; i < bytes.length - 3; i++) // the stream header of each block, after the one of the whole stream
+			if (bytes[i] == (byte)0xAC && bytes[i + 1] == (byte)0xED && bytes[i + 2] == 0 && bytes[i + 3] == 5) {
+				bytes[i + 3] = 0;
+				corruptedBlocks++;
+			}
+		assertEquals(3, corruptedBlocks);
+
+		XlsFormatterState readState = read(bytes);
+		assertEquals(state.hashCode(), readState.hashCode());
+		assertEquals(readState, readState.getModifiableCopy(), "copies share the byte blocks");
+		XlsFormatterState otherState = createState(20000);
+		otherState.sheetStates.get("first").modifyCell(CellMap.toKey(0, 0), cellState -> cellState.fontSize = 30);
+		assertNotEquals(otherState, readState);
+		assertNotEquals(readState, otherState);
+		assertNotEquals(readState, read(write(otherState)));
+		assertThrows(IllegalStateException.class, () -> readState.equals(state), "sheets of equal hash codes are decoded");
+	}
+
+	@Test
+	public void testFileBackedSheets() throws Exception {
+		XlsFormatterState state = createState(600000); // above the minimum cell count to be moved to a file
+		byte[] bytes = write(state);
+		Path file = m_tempDir.resolve("state.bin");
+
+		XlsFormatterState readState = read(bytes);
+		readState.moveSheetsToFile(() -> file.toFile());
+		assertTrue(Files.size(file) > 0);
+		assertEquals(state.getSummary(), readState.getSummary());
+		assertEquals(state.sheetStates.get("first"), readState.sheetStates.get("first"));
+		assertEquals(state, readState);
+		assertArrayEquals(bytes, write(readState));
+		XlsFormatterState copy = readState.getModifiableCopy();
+		copy.sheetStates.get("first").modifyCell(CellMap.toKey(0, 0), cellState -> cellState.fontSize = 30);
+		assertEquals(state, readState);
+
+		// a state created on the heap is moved as well
+		Path otherFile = m_tempDir.resolve("other.bin");
+		XlsFormatterState heapState = state.getDeepClone();
+		heapState.moveSheetsToFile(() -> otherFile.toFile());
+		assertTrue(Files.size(otherFile) > 0);
+		assertEquals(state, heapState);
+		assertArrayEquals(bytes, write(heapState));
+
+		// a copy only writes the sheets it modified, the blocks of the others stay in the file of the state it was copied from
+		XlsFormatterState fileState = read(bytes);
+		fileState.moveSheetsToFile(() -> m_tempDir.resolve("file.bin").toFile());
+		XlsFormatterState unmodifiedCopy = fileState.getModifiableCopy();
+		assertEquals(state.sheetStates.get("first"), unmodifiedCopy.sheetStates.get("first"));
+		unmodifiedCopy.moveSheetsToFile(() -> { throw new IOException("no sheet needs to be written"); });
+		assertEquals(state, unmodifiedCopy);
+		assertArrayEquals(bytes, write(unmodifiedCopy));
+		XlsFormatterState modifiedCopy = unmodifiedCopy.getModifiableCopy();
+		modifiedCopy.sheetStates.get("first").modifyCell(CellMap.toKey(0, 0), cellState -> cellState.fontSize = 30);
+		Path copyFile = m_tempDir.resolve("copy.bin");
+		modifiedCopy.moveSheetsToFile(() -> copyFile.toFile());
+		assertTrue(Files.size(copyFile) < Files.size(m_tempDir.resolve("file.bin")) * 2 / 3, "only the modified sheet is written");
+		assertEquals(30, modifiedCopy.sheetStates.get("first").getCellState(CellMap.toKey(0, 0)).fontSize);
+		assertEquals(state.sheetStates.get("second"), modifiedCopy.sheetStates.get("second"));
+		assertEquals(copy, read(write(modifiedCopy)));
+
+		// small states stay on the heap
+		XlsFormatterState smallState = createState(1000);
+		smallState.moveSheetsToFile(() -> m_tempDir.resolve("small.bin").toFile());
+		assertFalse(Files.exists(m_tempDir.resolve("small.bin")));
+	}
+
+	/**
+	 * Reads a state written by version 2 of the serialization (one CellState per cell, no sheet index), created with the
+	 * same instructions as expected here.
+	 */
+	@Test
+	public void testReadingVersion2() throws Exception {
+		XlsFormatterState expected = new XlsFormatterState();
+		SheetState first = expected.new SheetState();
+		for (int r = 0; r < 20; r++)
+			for (int c = 0; c < 5; c++) {
+				CellState cellState = new CellState();
+				cellState.fontBold = r == 0 ? FormattingFlag.ON : FormattingFlag.UNMODIFIED;
+				cellState.fontSize = c == 1 ? 14 : null;
+				cellState.backgroundColor = r % 2 == 0 ? new Color(200, 220, 240) : null;
+				cellState.fillPattern = r % 2 == 0 ? FillPattern.SOLID_BACKGROUND_COLOR : FillPattern.UNMODIFIED;
+				cellState.cellHorizontalAlignment = c == 2 ? CellAlignmentHorizontal.CENTER : CellAlignmentHorizontal.UNMODIFIED;
+				cellState.textFormat = c == 3 ? "0.00" : null;
+				cellState.cellDataType = c == 3 ? CellDataType.NUMERIC : CellDataType.UNMODIFIED;
+				if (c == 4) {
+					cellState.borderBottom = new BorderEdge(BorderStyle.NORMAL, Color.RED);
+					cellState.borderTop = new BorderEdge(BorderStyle.THICK);
+				}
+				if (r == 5 && c == 0)
+					cellState.hyperlink = "https://example.com/5";
+				if (r == 6 && c == 0) {
+					cellState.comment = new Comment();
+					cellState.comment.author = "Author";
+					cellState.comment.text = "A comment";
+				}
+				if (r == 7 && c == 1) {
+					cellState.conditionalFormat = new ConditionalFormattingSet();
+					cellState.conditionalFormat.backgroundScaleFixpoints.add(Pair.of(0d, Color.WHITE));
+					cellState.conditionalFormat.backgroundScaleFixpoints.add(Pair.of(1d, Color.GREEN));
+				}
+				first.putCellState(CellMap.toKey(r, c), cellState);
+			}
+		first.freezeSheetAtTopLeftCornerOfCell = new CellAddress(1, 0);
+		first.autoFilterRange = CellRangeAddress.valueOf("A1:E20");
+		first.rowHeights.put(0, 30d);
+		first.columnWidths.put(0, 20d);
+		first.columnWidths.put(1, null);
+		first.hiddenRows.add(19);
+		first.hiddenColumns.add(6);
+		first.mergeRanges.add(CellRangeAddress.valueOf("G1:H2"));
+		first.columnGroups.put(Pair.of(2, 3), true);
+		first.rowGroups.put(Pair.of(10, 12), false);
+		expected.sheetStates.put("first", first);
+		SheetState second = expected.new SheetState();
+		CellState cellState = new CellState();
+		cellState.fontItalic = FormattingFlag.ON;
+		cellState.fontColor = Color.BLUE;
+		cellState.wrapText = FormattingFlag.OFF;
+		cellState.textTiltDegree = 45;
+		second.putCellState(CellMap.toKey(100, 200), cellState);
+		expected.sheetStates.put("second", second);
+
+		InputStream resource = getClass().getResourceAsStream("xlsformatterstate-v2.bin");
+		assertNotNull(resource);
+		XlsFormatterState readState = read(resource);
+		assertEquals(expected, readState);
+		assertEquals(expected.getSummary(), readState.getSummary());
+		assertEquals(expected.toLongString(false), readState.toLongString(false));
+
+		// written in the current version and read again
+		XlsFormatterState rewrittenState = read(write(readState));
+		assertEquals(expected, rewrittenState);
+		assertEquals(expected.toLongString(false), rewrittenState.toLongString(false));
+	}
+}
@@ -37,6 +37,7 @@ import org.knime.core.node.port.PortType;
 import org.knime.core.util.DesktopUtil;
 
 import com.continental.knime.xlsformatter.commons.Commons;
+import com.continental.knime.xlsformatter.commons.KnimeAdapters;
 import com.continental.knime.xlsformatter.commons.WarningMessageContainer;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterState;
 
@@ -99,7 +100,7 @@ public class XlsFormatterApplyNodeModel extends NodeModel {
 			
 			WarningMessageContainer warningMessageContainer = new WarningMessageContainer(); // used to sneak out a warning from apply()
 			XlsFormatterApplyLogic.apply(in, out,
-					state, false, warningMessageContainer, exec, logger);
+					state, false, warningMessageContainer, KnimeAdapters.of(exec), KnimeAdapters.of(logger));
 			if (warningMessageContainer.hasMessage())
 				setWarningMessage(warningMessageContainer.getMessage());
 		}
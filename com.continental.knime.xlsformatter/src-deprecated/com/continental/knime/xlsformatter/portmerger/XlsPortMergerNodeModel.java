@@ -34,6 +34,7 @@ import org.knime.core.node.port.PortObjectSpec;
 import org.knime.core.node.port.PortType;
 
 import com.continental.knime.xlsformatter.apply.XlsFormatterApplyNodeModel;
+import com.continental.knime.xlsformatter.commons.KnimeAdapters;
 import com.continental.knime.xlsformatter.commons.WarningMessageContainer;
 import com.continental.knime.xlsformatter.commons.XlsFormattingStateValidator;
 import com.continental.knime.xlsformatter.commons.XlsFormattingStateValidator.ValidationModes;
@@ -63,18 +64,19 @@ public class XlsPortMergerNodeModel extends NodeModel {
 
 		XlsFormatterState master = XlsFormatterState.getDeepClone(inObjects[0]); // the master port state that will be added on
 		for (int i = 1; i < inObjects.length; i++)
-			XlsFormatterStateMerger.mergeFormatterStates(master, (XlsFormatterState)inObjects[i], exec, logger);
+			XlsFormatterStateMerger.mergeFormatterStates(master, (XlsFormatterState)inObjects[i], KnimeAdapters.of(exec), KnimeAdapters.of(logger));
 		
 		WarningMessageContainer warningMessageContainer = new WarningMessageContainer();
 		
 		if (master.isEmpty())
 			warningMessageContainer.addMessage("All inputs were empty XLS Formatting states, so is the generated output.");
 		
-		XlsFormattingStateValidator.validateState(master, ValidationModes.EVERYTHING, warningMessageContainer, exec, logger);
+		XlsFormattingStateValidator.validateState(master, ValidationModes.EVERYTHING, warningMessageContainer, KnimeAdapters.of(exec), KnimeAdapters.of(logger));
 		
 		if (warningMessageContainer.hasMessage())
 			setWarningMessage(warningMessageContainer.getMessage());
 		
+		master.moveSheetsToFileStore(exec);
 		return new PortObject[] { master };
 	}
 
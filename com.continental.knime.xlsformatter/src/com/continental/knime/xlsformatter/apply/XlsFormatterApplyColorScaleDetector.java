@@ -0,0 +1,324 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.continental.knime.xlsformatter.apply;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.FillPatternType;
+import org.apache.poi.ss.usermodel.HorizontalAlignment;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.VerticalAlignment;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import com.continental.knime.xlsformatter.commons.XlsFormatterLogger;
+import com.continental.knime.xlsformatter.porttype.CellMap;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.CellState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.ConditionalFormattingSet;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.FillPattern;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.FormattingRecord;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.SheetState;
+
+/**
+ * Heatmaps (e.g. created via the XLS Background Colorizer's direct mode) require one cell style per distinct color. If the colors
+ * of a rectangular block of numeric cells follow a linear color scale of the cells' values, the same can be achieved by a single
+ * color scale conditional formatting rule. This class detects such blocks and converts their background color instructions
+ * into conditional formatting instructions, which are then implemented by the common conditional formatting path.
+ * Only cells whose background color is their sole style instruction and whose existing style has no visible formatting qualify,
+ * so that the spreadsheet looks identical either way.
+ */
+class XlsFormatterApplyColorScaleDetector {
+
+	/**
+	 * Minimum number of cells and distinct colors of a block to be worth a conditional formatting rule.
+	 */
+	private final static int MIN_BLOCK_CELL_COUNT = 16;
+	private final static int MIN_BLOCK_COLOR_COUNT = 3;
+
+	/**
+	 * Maximum deviation per RGB channel between a cell's color and the interpolated color scale, covering the rounding of the
+	 * process that generated the colors as well as that of the spreadsheet application.
+	 */
+	private final static int COLOR_TOLERANCE = 2;
+
+	/**
+	 * Converts all detected color scale blocks of all sheets.
+	 * @return The provided state, if no block was found, otherwise a new state sharing all unaffected objects with the provided
+	 * one (which is not modified).
+	 */
+	static XlsFormatterState convert(final XlsFormatterState xlsf, final Workbook wb, final boolean preserveStyles, final XlsFormatterLogger logger) throws Exception {
+		XlsFormatterState ret = null;
+		for (Map.Entry<String, SheetState> sheetStateEntry : xlsf.sheetStates.entrySet()) {
+			SheetState sheetState = sheetStateEntry.getValue();
+			Sheet sheet = sheetStateEntry.getKey() == null ? wb.getSheetAt(0) : wb.getSheet(sheetStateEntry.getKey());
+			if (sheet == null || sheetState.cells.size() < MIN_BLOCK_CELL_COUNT)
+				continue;
+
+			Map<CellAddress, Double> candidates = getCandidates(sheet, sheetState, preserveStyles);
+			if (candidates.size() < MIN_BLOCK_CELL_COUNT)
+				continue;
+
+			List<ColorScaleBlock> convertedBlocks = new ArrayList<ColorScaleBlock>();
+			long convertedCellCount = 0;
+			for (ColorScaleBlock block : getColorScaleBlocks(candidates, sheetState))
+				if (block.isWorthConverting()) {
+					convertedBlocks.add(block);
+					convertedCellCount += block.range.getNumberOfCells();
+				}
+			if (convertedBlocks.size() == 0)
+				continue;
+
+			if (ret == null) {
+				ret = new XlsFormatterState();
+				for (Map.Entry<String, SheetState> entry : xlsf.sheetStates.entrySet())
+					ret.sheetStates.put(entry.getKey(), XlsFormatterApplyFullRangeResolver.getShallowCopy(ret, entry.getValue()));
+			}
+			SheetState convertedSheetState = ret.sheetStates.get(sheetStateEntry.getKey());
+			convertedSheetState.cells = new CellMap<FormattingRecord>(sheetState.cells);
+			for (ColorScaleBlock block : convertedBlocks) {
+				ConditionalFormattingSet colorScale = new ConditionalFormattingSet();
+				colorScale.backgroundScaleFixpoints = block.fixpoints;
+				convertedSheetState.modifyCells(block.range, convertedState -> {
+					convertedState.backgroundColor = null;
+					convertedState.fillPattern = FillPattern.UNMODIFIED;
+					convertedState.conditionalFormat = colorScale;
+				});
+			}
+			logger.debug("Sheet " + (sheetStateEntry.getKey() == null ? "0" : "\"" + sheetStateEntry.getKey() + "\"") + ": background colors of " + convertedCellCount +
+					" cell(s) in " + convertedBlocks.size() + " block(s) implemented as color scale conditional formatting.");
+		}
+		return ret == null ? xlsf : ret;
+	}
+
+	/**
+	 * Collects the numeric cells whose only style instruction is a solid background color, mapped to their value.
+	 */
+	private static Map<CellAddress, Double> getCandidates(final Sheet sheet, final SheetState sheetState, final boolean preserveStyles) {
+		Map<CellAddress, Double> ret = new HashMap<CellAddress, Double>();
+		Map<FormattingRecord, Boolean> isBackgroundOnlyRecord = new HashMap<FormattingRecord, Boolean>();
+		for (CellMap<FormattingRecord>.Cursor cursor = sheetState.cells.getCursor(); cursor.next(); ) {
+			long cellKey = cursor.getKey();
+			if (!isBackgroundOnlyRecord.computeIfAbsent(cursor.getValue(), state -> {
+				if (state.backgroundColor == null || state.fillPattern != FillPattern.SOLID_BACKGROUND_COLOR || state.conditionalFormat != null)
+					return false;
+				CellState stateWithoutBackground = state.toCellState();
+				stateWithoutBackground.backgroundColor = null;
+				stateWithoutBackground.fillPattern = FillPattern.UNMODIFIED;
+				return stateWithoutBackground.cellFormatToShortString(true, true).equals(CellState.getNonFormattingStateString());
+			}))
+				continue;
+
+			Row row = sheet.getRow(CellMap.getRow(cellKey));
+			Cell cell = row == null ? null : row.getCell(CellMap.getColumn(cellKey));
+			if (cell == null || cell.getCellType() != CellType.NUMERIC || !isInvisibleStyle(cell.getCellStyle(), preserveStyles))
+				continue;
+			ret.put(CellMap.toCellAddress(cellKey), cell.getNumericCellValue());
+		}
+
+		// merged cells are displayed via their top-left cell only, hence leave them as they are:
+		if (sheetState.mergeRanges != null)
+			for (CellRangeAddress range : sheetState.mergeRanges)
+				for (CellAddress cellAddress : range)
+					ret.remove(cellAddress);
+		return ret;
+	}
+
+	/**
+	 * Checks whether an existing cell style has no visible formatting, which a derived style would otherwise have overwritten.
+	 * A number format only counts if it would not be preserved anyway.
+	 */
+	private static boolean isInvisibleStyle(final CellStyle style, final boolean preserveStyles) {
+		if (style == null || style.getIndex() == 0)
+			return true;
+		return style.getFontIndex() == 0 && style.getFillPattern() == FillPatternType.NO_FILL &&
+				style.getBorderTop() == BorderStyle.NONE && style.getBorderBottom() == BorderStyle.NONE &&
+				style.getBorderLeft() == BorderStyle.NONE && style.getBorderRight() == BorderStyle.NONE &&
+				style.getAlignment() == HorizontalAlignment.GENERAL && style.getVerticalAlignment() == VerticalAlignment.BOTTOM &&
+				!style.getWrapText() && style.getRotation() == 0 &&
+				(preserveStyles || style.getDataFormat() == 0);
+	}
+
+	/**
+	 * A rectangular block of cells along with their values and colors, and the fixpoints of the color scale they follow.
+	 */
+	private static class ColorScaleBlock {
+		CellRangeAddress range;
+		List<Pair<Double, Color>> points;
+		List<Pair<Double, Color>> fixpoints; // null if the points don't follow a color scale
+
+		ColorScaleBlock(CellRangeAddress range, List<Pair<Double, Color>> points) {
+			this.range = range;
+			this.points = points;
+			this.fixpoints = fitColorScale(points);
+		}
+
+		/**
+		 * Tries to extend this block by an adjacent block, which succeeds if the union follows a color scale. Note that this
+		 * may be the case even if one of the blocks alone doesn't (e.g. if a value at which the scale bends is missing in it).
+		 */
+		boolean tryExtend(ColorScaleBlock other) {
+			List<Pair<Double, Color>> unionPoints = new ArrayList<Pair<Double, Color>>(points);
+			unionPoints.addAll(other.points);
+			List<Pair<Double, Color>> unionFixpoints;
+			if (fixpoints != null && fixpoints.size() >= 2 && isWithinRange(other.points, fixpoints) && getWorstFittingPoint(other.points, fixpoints) == null)
+				unionFixpoints = fixpoints; // the common case of a continued scale doesn't require refitting all points
+			else
+				unionFixpoints = fitColorScale(unionPoints);
+			if (unionFixpoints == null)
+				return false;
+			range = new CellRangeAddress(range.getFirstRow(), range.getLastRow(), range.getFirstColumn(), other.range.getLastColumn());
+			points = unionPoints;
+			fixpoints = unionFixpoints;
+			return true;
+		}
+
+		/**
+		 * Checks whether a conditional formatting rule pays off compared to per-cell styles.
+		 */
+		boolean isWorthConverting() {
+			if (fixpoints == null || fixpoints.size() < 2 || range.getNumberOfCells() < MIN_BLOCK_CELL_COUNT)
+				return false;
+			Set<Color> distinctColors = new HashSet<Color>();
+			for (Pair<Double, Color> point : points)
+				if (distinctColors.add(point.getRight()) && distinctColors.size() >= MIN_BLOCK_COLOR_COUNT)
+					return true;
+			return false;
+		}
+	}
+
+	/**
+	 * Finds rectangular blocks following a color scale: Each column's contiguous runs of candidate cells form an initial block,
+	 * which is then extended to the right by the runs of the following columns covering the same rows, as long as the union
+	 * still follows a color scale.
+	 */
+	private static List<ColorScaleBlock> getColorScaleBlocks(final Map<CellAddress, Double> candidates, final SheetState sheetState) {
+		List<CellAddress> sortedCells = new ArrayList<CellAddress>(candidates.keySet());
+		sortedCells.sort((a, b) -> a.getColumn() != b.getColumn() ? Integer.compare(a.getColumn(), b.getColumn()) : Integer.compare(a.getRow(), b.getRow()));
+
+		List<ColorScaleBlock> ret = new ArrayList<ColorScaleBlock>();
+		Map<Pair<Integer, Integer>, ColorScaleBlock> openBlocks = new HashMap<Pair<Integer, Integer>, ColorScaleBlock>(); // by first and last row
+		int i = 0;
+		while (i < sortedCells.size()) {
+			// collect the next vertical run:
+			CellAddress first = sortedCells.get(i);
+			List<Pair<Double, Color>> points = new ArrayList<Pair<Double, Color>>();
+			int lastRow = first.getRow();
+			do {
+				CellAddress cellAddress = sortedCells.get(i++);
+				points.add(Pair.of(candidates.get(cellAddress), sheetState.cells.get(cellAddress).backgroundColor));
+				lastRow = cellAddress.getRow();
+			} while (i < sortedCells.size() && sortedCells.get(i).getColumn() == first.getColumn() && sortedCells.get(i).getRow() == lastRow + 1);
+			ColorScaleBlock run = new ColorScaleBlock(new CellRangeAddress(first.getRow(), lastRow, first.getColumn(), first.getColumn()), points);
+
+			Pair<Integer, Integer> rows = Pair.of(first.getRow(), lastRow);
+			ColorScaleBlock openBlock = openBlocks.get(rows);
+			if (openBlock != null && openBlock.range.getLastColumn() == first.getColumn() - 1 && openBlock.tryExtend(run))
+				continue;
+			openBlocks.put(rows, run);
+			ret.add(run);
+		}
+		return ret;
+	}
+
+	private static boolean isWithinRange(final List<Pair<Double, Color>> points, final List<Pair<Double, Color>> fixpoints) {
+		for (Pair<Double, Color> point : points)
+			if (point.getLeft() < fixpoints.get(0).getLeft() || point.getLeft() > fixpoints.get(fixpoints.size() - 1).getLeft())
+				return false;
+		return true;
+	}
+
+	/**
+	 * Fits a two-point color scale (minimum and maximum value) to the points' colors or, if that fails, a three-point scale
+	 * with the worst-fitting value as midpoint.
+	 * @return The color scale's fixpoints (a single one if all values are equal) or null, if the colors don't follow a color scale.
+	 */
+	private static List<Pair<Double, Color>> fitColorScale(final List<Pair<Double, Color>> points) {
+		Pair<Double, Color> min = null;
+		Pair<Double, Color> max = null;
+		for (Pair<Double, Color> point : points) {
+			if (min == null || point.getLeft() < min.getLeft())
+				min = point;
+			if (max == null || point.getLeft() > max.getLeft())
+				max = point;
+		}
+
+		List<Pair<Double, Color>> fixpoints = new ArrayList<Pair<Double, Color>>();
+		fixpoints.add(min);
+		if (min.getLeft().equals(max.getLeft()))
+			return getWorstFittingPoint(points, fixpoints) == null ? fixpoints : null;
+		fixpoints.add(max);
+		Pair<Double, Color> worstPoint = getWorstFittingPoint(points, fixpoints);
+		if (worstPoint != null) {
+			if (worstPoint.getLeft().equals(min.getLeft()) || worstPoint.getLeft().equals(max.getLeft()))
+				return null; // the extreme values themselves are ambiguous
+			fixpoints.add(1, worstPoint);
+			if (getWorstFittingPoint(points, fixpoints) != null)
+				return null;
+		}
+		return fixpoints;
+	}
+
+	/**
+	 * Finds the point deviating most from the color scale defined by the fixpoints.
+	 * @return The worst-fitting point or null, if all points are within the tolerance.
+	 */
+	private static Pair<Double, Color> getWorstFittingPoint(final List<Pair<Double, Color>> points, final List<Pair<Double, Color>> fixpoints) {
+		Pair<Double, Color> ret = null;
+		double maxDeviation = COLOR_TOLERANCE;
+		for (Pair<Double, Color> point : points) {
+			Color color = point.getRight();
+			double deviation;
+			if (fixpoints.size() == 1) // a constant color
+				deviation = Math.max(Math.abs(color.getRed() - fixpoints.get(0).getRight().getRed()),
+						Math.max(Math.abs(color.getGreen() - fixpoints.get(0).getRight().getGreen()), Math.abs(color.getBlue() - fixpoints.get(0).getRight().getBlue())));
+			else {
+				int segment = 0;
+				while (segment < fixpoints.size() - 2 && point.getLeft() > fixpoints.get(segment + 1).getLeft())
+					segment++;
+				Pair<Double, Color> from = fixpoints.get(segment);
+				Pair<Double, Color> to = fixpoints.get(segment + 1);
+				double ratio = (point.getLeft() - from.getLeft()) / (to.getLeft() - from.getLeft());
+				deviation = Math.max(
+						Math.abs(color.getRed() - (from.getRight().getRed() + ratio * (to.getRight().getRed() - from.getRight().getRed()))),
+						Math.max(
+								Math.abs(color.getGreen() - (from.getRight().getGreen() + ratio * (to.getRight().getGreen() - from.getRight().getGreen()))),
+								Math.abs(color.getBlue() - (from.getRight().getBlue() + ratio * (to.getRight().getBlue() - from.getRight().getBlue())))));
+			}
+			if (deviation > maxDeviation) {
+				maxDeviation = deviation;
+				ret = point;
+			}
+		}
+		return ret;
+	}
+}
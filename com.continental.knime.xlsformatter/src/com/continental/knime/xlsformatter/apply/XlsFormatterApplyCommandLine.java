@@ -0,0 +1,130 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.continental.knime.xlsformatter.apply;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+import com.continental.knime.xlsformatter.commons.ProgressMonitor;
+import com.continental.knime.xlsformatter.commons.WarningMessageContainer;
+import com.continental.knime.xlsformatter.commons.XlsFormatterLogger;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState;
+
+/**
+ * Applies a serialized XLS Formatter state to an xlsx file outside of a KNIME workflow, e.g. for batch runs on a report
+ * server or for profiling the apply logic. No KNIME runtime is started, but the KNIME core and file handling libraries
+ * still need to be on the class path next to Apache POI.
+ * 
+ * Usage: XlsFormatterApplyCommandLine &lt;state file&gt; &lt;input xlsx&gt; &lt;output xlsx&gt; [-preserveStyles] [-verbose]
+ * 
+ * The state file holds a Java serialized XlsFormatterState as written by writeState, which is the same format
+ * the XLS Formatter port object uses inside a saved workflow.
+ */
+public final class XlsFormatterApplyCommandLine {
+	
+	private XlsFormatterApplyCommandLine() { }
+	
+	public static void main(String[] args) {
+		if (args.length < 3) {
+			System.err.println("Usage: " + XlsFormatterApplyCommandLine.class.getName() + " <state file> <input xlsx> <output xlsx> [-preserveStyles] [-verbose]");
+			System.exit(2);
+		}
+		boolean preserveStyles = false;
+		boolean verbose = false;
+		for (int i = 3; i < args.length; i++) {
+			if (args[i].equalsIgnoreCase("-preserveStyles"))
+				preserveStyles = true;
+			else if (args[i].equalsIgnoreCase("-verbose"))
+				verbose = true;
+			else {
+				System.err.println("Unknown option " + args[i]);
+				System.exit(2);
+			}
+		}
+		
+		try {
+			String warning = apply(args[0], args[1], args[2], preserveStyles, ProgressMonitor.NONE, createConsoleLogger(verbose));
+			if (warning != null)
+				System.err.println("WARN  " + warning);
+		}
+		catch (Exception e) {
+			System.err.println("ERROR " + e.getMessage());
+			if (verbose)
+				e.printStackTrace();
+			System.exit(1);
+		}
+	}
+	
+	/**
+	 * Applies the XLS Formatter state stored in stateFile to the inputFile and writes the result to outputFile.
+	 * @return The warning message the XLS Formatter (apply) node would show, or null if there is none.
+	 */
+	public static String apply(final String stateFile, final String inputFile, final String outputFile, final boolean preserveStyles,
+			final ProgressMonitor exec, final XlsFormatterLogger logger) throws Exception {
+		XlsFormatterState state;
+		try (InputStream in = new BufferedInputStream(new FileInputStream(stateFile))) {
+			state = readState(in);
+		}
+		WarningMessageContainer warningMessageContainer = new WarningMessageContainer();
+		XlsFormatterApplyLogic.apply(inputFile, outputFile, state, preserveStyles, warningMessageContainer, exec, logger);
+		return warningMessageContainer.getMessage();
+	}
+	
+	/**
+	 * Reads an XLS Formatter state written by writeState.
+	 */
+	public static XlsFormatterState readState(final InputStream in) throws IOException {
+		try {
+			return (XlsFormatterState)new ObjectInputStream(in).readObject();
+		} catch (ClassNotFoundException | ClassCastException e) {
+			throw new IOException("The file does not contain an XLS Formatter state: " + e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Writes an XLS Formatter state so that it can be read by readState respectively passed to this command line.
+	 * The stream is flushed, but not closed.
+	 */
+	public static void writeState(final XlsFormatterState state, final OutputStream out) throws IOException {
+		ObjectOutputStream objectOut = new ObjectOutputStream(new BufferedOutputStream(out));
+		objectOut.writeObject(state);
+		objectOut.flush();
+	}
+	
+	private static XlsFormatterLogger createConsoleLogger(final boolean verbose) {
+		return new XlsFormatterLogger() {
+			public void debug(final String message) {
+				if (verbose)
+					System.err.println("DEBUG " + message);
+			}
+			public void warn(final String message) {
+				System.err.println("WARN  " + message);
+			}
+			public void error(final String message) {
+				System.err.println("ERROR " + message);
+			}
+		};
+	}
+}
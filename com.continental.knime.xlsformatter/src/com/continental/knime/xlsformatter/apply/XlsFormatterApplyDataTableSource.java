@@ -0,0 +1,165 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.continental.knime.xlsformatter.apply;
+
+import java.time.temporal.ChronoUnit;
+import java.util.EnumSet;
+import java.util.Set;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.knime.core.data.BooleanValue;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DataType;
+import org.knime.core.data.DoubleValue;
+import org.knime.core.data.IntValue;
+import org.knime.core.data.LongValue;
+import org.knime.core.data.container.CloseableRowIterator;
+import org.knime.core.data.time.localdate.LocalDateValue;
+import org.knime.core.data.time.localdatetime.LocalDateTimeValue;
+import org.knime.core.data.time.localtime.LocalTimeValue;
+import org.knime.core.data.time.zoneddatetime.ZonedDateTimeValue;
+import org.knime.core.node.BufferedDataTable;
+
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.CellDataType;
+
+/**
+ * Provides the rows of a KNIME data table to the streaming writer (see XlsFormatterApplyStreamingWriter).
+ */
+public class XlsFormatterApplyDataTableSource implements XlsFormatterApplyStreamingWriter.TableSource {
+
+	private final BufferedDataTable m_table;
+
+	private final DataTableSpec m_spec;
+
+	private final Set<CellDataType>[] m_dateTypes;
+
+	@SuppressWarnings("unchecked")
+	public XlsFormatterApplyDataTableSource(final BufferedDataTable table) {
+		m_table = table;
+		m_spec = table.getSpec();
+		m_dateTypes = new Set[m_spec.getNumColumns()];
+		for (int c = 0; c < m_dateTypes.length; c++)
+			m_dateTypes[c] = getDateTypes(m_spec.getColumnSpec(c).getType());
+	}
+
+	@Override
+	public int getColumnCount() {
+		return m_spec.getNumColumns();
+	}
+
+	@Override
+	public String getColumnName(int column) {
+		return m_spec.getColumnSpec(column).getName();
+	}
+
+	@Override
+	public long size() {
+		return m_table.size();
+	}
+
+	@Override
+	public Set<CellDataType> getDateTypes(int column) {
+		return m_dateTypes[column];
+	}
+
+	@Override
+	public XlsFormatterApplyStreamingWriter.RowIterator iterator() {
+		CloseableRowIterator rowIterator = m_table.iterator();
+		return new XlsFormatterApplyStreamingWriter.RowIterator() {
+
+			@Override
+			public boolean hasNext() {
+				return rowIterator.hasNext();
+			}
+
+			@Override
+			public XlsFormatterApplyStreamingWriter.RowSource next() {
+				DataRow dataRow = rowIterator.next();
+				return new XlsFormatterApplyStreamingWriter.RowSource() {
+
+					@Override
+					public boolean isMissing(int column) {
+						return dataRow.getCell(column).isMissing();
+					}
+
+					@Override
+					public CellDataType setCellValue(int column, Cell cell) {
+						return XlsFormatterApplyDataTableSource.setCellValue(cell, dataRow.getCell(column));
+					}
+				};
+			}
+
+			@Override
+			public void close() {
+				rowIterator.close();
+			}
+		};
+	}
+
+	/**
+	 * Gets the date/time types of the values a column of the given type can hold. Columns of a mixed type can hold values of any type.
+	 */
+	private static Set<CellDataType> getDateTypes(DataType type) {
+		Set<CellDataType> ret = type.getCellClass() == null ?
+				EnumSet.of(CellDataType.LOCALDATE, CellDataType.LOCALDATETIME, CellDataType.LOCALTIME) : EnumSet.noneOf(CellDataType.class);
+		if (type.isCompatible(LocalDateValue.class))
+			ret.add(CellDataType.LOCALDATE);
+		if (type.isCompatible(LocalDateTimeValue.class) || type.isCompatible(ZonedDateTimeValue.class))
+			ret.add(CellDataType.LOCALDATETIME);
+		if (type.isCompatible(LocalTimeValue.class))
+			ret.add(CellDataType.LOCALTIME);
+		return ret;
+	}
+
+	/**
+	 * Sets the value of a KNIME data cell to a POI cell. Data types without XLS counterpart are written as their String representation.
+	 * @return The date/time type of the written value (requiring a number format to be displayed as such) or null.
+	 */
+	private static CellDataType setCellValue(Cell cell, DataCell dataCell) {
+		if (dataCell instanceof BooleanValue)
+			cell.setCellValue(((BooleanValue)dataCell).getBooleanValue());
+		else if (dataCell instanceof IntValue)
+			cell.setCellValue(((IntValue)dataCell).getIntValue());
+		else if (dataCell instanceof LongValue)
+			cell.setCellValue(((LongValue)dataCell).getLongValue());
+		else if (dataCell instanceof DoubleValue)
+			cell.setCellValue(((DoubleValue)dataCell).getDoubleValue());
+		else if (dataCell instanceof LocalDateValue) {
+			cell.setCellValue(((LocalDateValue)dataCell).getLocalDate());
+			return CellDataType.LOCALDATE;
+		}
+		else if (dataCell instanceof LocalDateTimeValue) {
+			cell.setCellValue(((LocalDateTimeValue)dataCell).getLocalDateTime());
+			return CellDataType.LOCALDATETIME;
+		}
+		else if (dataCell instanceof ZonedDateTimeValue) {
+			cell.setCellValue(((ZonedDateTimeValue)dataCell).getZonedDateTime().toLocalDateTime());
+			return CellDataType.LOCALDATETIME;
+		}
+		else if (dataCell instanceof LocalTimeValue) {
+			cell.setCellValue(((LocalTimeValue)dataCell).getLocalTime().toNanoOfDay() / (double)ChronoUnit.DAYS.getDuration().toNanos()); // fraction of a day
+			return CellDataType.LOCALTIME;
+		}
+		else
+			cell.setCellValue(dataCell.toString());
+		return null;
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.continental.knime.xlsformatter.apply;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.FillPatternType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+
+import com.continental.knime.xlsformatter.porttype.CellMap;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.FormattingRecord;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.SheetState;
+
+/**
+ * Plans which columns and rows of a sheet are formatted uniformly enough to be implemented by a column default style
+ * or row style instead of per-cell styles. Such a column (row) has all its addressed cells share one style and covers the sheet's
+ * whole used row (column) range. Empty cells in it then don't need to be created at all.
+ * Only styles that are invisible on empty cells (i.e. without fill and borders) are considered, since the default style also
+ * reaches beyond the used range.
+ */
+class XlsFormatterApplyDefaultStylePlan {
+
+	/**
+	 * Maps column index to the internal style ID of its default style.
+	 */
+	private final Map<Integer, Integer> columnStyleIds = new HashMap<Integer, Integer>();
+
+	/**
+	 * Maps row index to the internal style ID of its row style.
+	 */
+	private final Map<Integer, Integer> rowStyleIds = new HashMap<Integer, Integer>();
+
+	/**
+	 * Columns and rows with full-column resp. full-row instructions, which get their own default style and hence are excluded from this plan.
+	 */
+	private Set<Integer> fullColumns = Collections.emptySet();
+	private Set<Integer> fullRows = Collections.emptySet();
+
+	private XlsFormatterApplyDefaultStylePlan() { }
+
+	/**
+	 * Analyzes the cell instructions of a sheet against the sheet's used range.
+	 * @param sheet The POI sheet the instructions will be applied to.
+	 * @param sheetName The sheet's key in the XLS Formatting instructions (null for the default sheet).
+	 * @param xlsfs The sheet's XLS Formatting instructions.
+	 * @param analysisResult The derived styles.
+	 */
+	static XlsFormatterApplyDefaultStylePlan create(final Sheet sheet, final String sheetName, final SheetState xlsfs,
+			final XlsFormatterApplyLogic.StyleAnalysisResult analysisResult) {
+
+		XlsFormatterApplyDefaultStylePlan plan = new XlsFormatterApplyDefaultStylePlan();
+		if (sheet.getPhysicalNumberOfRows() == 0 || xlsfs.cells.size() == 0)
+			return plan;
+
+		// derive the used range:
+		int firstUsedRow = sheet.getFirstRowNum();
+		int lastUsedRow = sheet.getLastRowNum();
+		int firstUsedColumn = Integer.MAX_VALUE;
+		int lastUsedColumn = -1;
+		for (Row row : sheet) {
+			if (row.getFirstCellNum() < 0)
+				continue;
+			firstUsedColumn = Math.min(firstUsedColumn, row.getFirstCellNum());
+			lastUsedColumn = Math.max(lastUsedColumn, row.getLastCellNum() - 1);
+		}
+		if (lastUsedColumn == -1)
+			return plan;
+
+		// collect per column and row: the shared style ID (or -1 in case of differing / no styles) and the number of addressed cells in the used range:
+		Map<Integer, int[]> columnStatistics = new HashMap<Integer, int[]>();
+		Map<Integer, int[]> rowStatistics = new HashMap<Integer, int[]>();
+		for (long cellKey : xlsfs.cells.getKeys()) {
+			Integer styleId = analysisResult.getCellStyleId(sheetName, cellKey);
+			int id = styleId == null || !isInvisibleOnEmptyCells(analysisResult.mapStyleIdToPoiStyle.get(styleId)) ? -1 : styleId;
+			int rowIndex = CellMap.getRow(cellKey);
+			int columnIndex = CellMap.getColumn(cellKey);
+			countCell(columnStatistics, columnIndex, id, firstUsedRow <= rowIndex && rowIndex <= lastUsedRow);
+			countCell(rowStatistics, rowIndex, id, firstUsedColumn <= columnIndex && columnIndex <= lastUsedColumn);
+		}
+		for (Map.Entry<Integer, int[]> entry : columnStatistics.entrySet())
+			if (entry.getValue()[0] != -1 && entry.getValue()[1] == lastUsedRow - firstUsedRow + 1 && !xlsfs.fullColumns.containsKey(entry.getKey()))
+				plan.columnStyleIds.put(entry.getKey(), entry.getValue()[0]);
+		for (Map.Entry<Integer, int[]> entry : rowStatistics.entrySet())
+			if (entry.getValue()[0] != -1 && entry.getValue()[1] == lastUsedColumn - firstUsedColumn + 1 && !xlsfs.fullRows.containsKey(entry.getKey()))
+				plan.rowStyleIds.put(entry.getKey(), entry.getValue()[0]);
+		plan.fullColumns = xlsfs.fullColumns.keySet();
+		plan.fullRows = xlsfs.fullRows.keySet();
+		return plan;
+	}
+
+	private static void countCell(Map<Integer, int[]> statistics, int index, int styleId, boolean isInUsedRange) {
+		int[] statistic = statistics.get(index);
+		if (statistic == null) {
+			statistic = new int[] { styleId, 0 };
+			statistics.put(index, statistic);
+		}
+		else if (statistic[0] != styleId)
+			statistic[0] = -1;
+		if (isInUsedRange)
+			statistic[1]++;
+	}
+
+	/**
+	 * Checks whether a style has no visible effect on an empty cell, i.e. defines neither a fill nor borders.
+	 */
+	private static boolean isInvisibleOnEmptyCells(final XSSFCellStyle style) {
+		return style.getFillPattern() == FillPatternType.NO_FILL &&
+				style.getBorderTop() == BorderStyle.NONE && style.getBorderBottom() == BorderStyle.NONE &&
+				style.getBorderLeft() == BorderStyle.NONE && style.getBorderRight() == BorderStyle.NONE;
+	}
+
+	/**
+	 * Checks whether the plan found any column or row to be implemented by a default style.
+	 */
+	boolean isEmpty() {
+		return columnStyleIds.size() == 0 && rowStyleIds.size() == 0;
+	}
+
+	int getColumnCount() {
+		return columnStyleIds.size();
+	}
+
+	int getRowCount() {
+		return rowStyleIds.size();
+	}
+
+	/**
+	 * Sets the planned column default styles and row styles.
+	 */
+	void applyDefaultStyles(final Sheet sheet, final XlsFormatterApplyLogic.StyleAnalysisResult analysisResult) {
+		for (Map.Entry<Integer, Integer> entry : columnStyleIds.entrySet())
+			sheet.setDefaultColumnStyle(entry.getKey(), analysisResult.mapStyleIdToPoiStyle.get(entry.getValue()));
+		for (Map.Entry<Integer, Integer> entry : rowStyleIds.entrySet()) {
+			Row row = sheet.getRow(entry.getKey());
+			if (row == null)
+				row = sheet.createRow(entry.getKey());
+			row.setRowStyle(analysisResult.mapStyleIdToPoiStyle.get(entry.getValue()));
+		}
+	}
+
+	/**
+	 * Checks whether a cell instruction is fully implemented by a planned default style, so that the cell can be skipped.
+	 * This is the case for cells that don't exist yet and have no instructions beyond their style.
+	 */
+	boolean isImplementedByDefaultStyle(final Sheet sheet, final long cellKey, final SheetState xlsfs) {
+		int rowIndex = CellMap.getRow(cellKey);
+		int columnIndex = CellMap.getColumn(cellKey);
+		if (!columnStyleIds.containsKey(columnIndex) && !rowStyleIds.containsKey(rowIndex))
+			return false;
+		if (fullColumns.contains(columnIndex) || fullRows.contains(rowIndex)) // the full column's or row's default style would apply instead
+			return false;
+		FormattingRecord state = xlsfs.cells.get(cellKey);
+		if (xlsfs.hyperlinks.containsKey(cellKey) || xlsfs.comments.containsKey(cellKey) ||
+				(state.cellDataType != null && state.cellDataType != XlsFormatterState.CellDataType.UNMODIFIED))
+			return false;
+		Row row = sheet.getRow(rowIndex);
+		if (row == null)
+			return true;
+		Cell cell = row.getCell(columnIndex);
+		return cell == null;
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.continental.knime.xlsformatter.apply;
+
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.formula.FormulaParser;
+import org.apache.poi.ss.formula.FormulaRenderer;
+import org.apache.poi.ss.formula.FormulaType;
+import org.apache.poi.ss.formula.ptg.AreaPtgBase;
+import org.apache.poi.ss.formula.ptg.Ptg;
+import org.apache.poi.ss.formula.ptg.RefPtgBase;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFEvaluationWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.BaseXSSFEvaluationWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFEvaluationWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+/**
+ * Relative references of conditional formatting formulas are resolved from the top-left cell of the rule's first range. When the
+ * ranges of one conditional format are split over several rules, the formulas of the later rules need to be shifted by the offset
+ * of their first range, which is what this class does (like copying a formula in the spreadsheet application would).
+ */
+class XlsFormatterApplyFormulaShifter {
+
+	private static final SpreadsheetVersion VERSION = SpreadsheetVersion.EXCEL2007;
+
+	private final BaseXSSFEvaluationWorkbook evaluationWorkbook;
+	private final int sheetIndex;
+
+	XlsFormatterApplyFormulaShifter(final Sheet sheet) {
+		if (sheet.getWorkbook() instanceof SXSSFWorkbook)
+			evaluationWorkbook = SXSSFEvaluationWorkbook.create((SXSSFWorkbook)sheet.getWorkbook());
+		else
+			evaluationWorkbook = XSSFEvaluationWorkbook.create((XSSFWorkbook)sheet.getWorkbook());
+		sheetIndex = sheet.getWorkbook().getSheetIndex(sheet);
+	}
+
+	/**
+	 * Shifts the relative references of a formula by the given number of rows and columns. References moved beyond the
+	 * sheet's edge wrap around, just as the spreadsheet application resolves relative references of conditional formats.
+	 * Whole column and whole row references are not shifted in their full dimension.
+	 * @return The shifted formula, or the original formula if there is no offset.
+	 */
+	String shift(final String formula, final int rowOffset, final int columnOffset) {
+		if (formula == null || (rowOffset == 0 && columnOffset == 0))
+			return formula;
+
+		Ptg[] ptgs = FormulaParser.parse(formula, evaluationWorkbook, FormulaType.CELL, sheetIndex);
+		for (Ptg ptg : ptgs) {
+			if (ptg instanceof RefPtgBase) {
+				RefPtgBase ref = (RefPtgBase)ptg;
+				if (ref.isRowRelative())
+					ref.setRow(wrap(ref.getRow() + rowOffset, VERSION.getMaxRows()));
+				if (ref.isColRelative())
+					ref.setColumn(wrap(ref.getColumn() + columnOffset, VERSION.getMaxColumns()));
+			}
+			else if (ptg instanceof AreaPtgBase) {
+				AreaPtgBase area = (AreaPtgBase)ptg;
+				boolean isWholeColumn = area.getFirstRow() == 0 && area.getLastRow() == VERSION.getLastRowIndex();
+				boolean isWholeRow = area.getFirstColumn() == 0 && area.getLastColumn() == VERSION.getLastColumnIndex();
+				if (!isWholeColumn) {
+					if (area.isFirstRowRelative())
+						area.setFirstRow(wrap(area.getFirstRow() + rowOffset, VERSION.getMaxRows()));
+					if (area.isLastRowRelative())
+						area.setLastRow(wrap(area.getLastRow() + rowOffset, VERSION.getMaxRows()));
+				}
+				if (!isWholeRow) {
+					if (area.isFirstColRelative())
+						area.setFirstColumn(wrap(area.getFirstColumn() + columnOffset, VERSION.getMaxColumns()));
+					if (area.isLastColRelative())
+						area.setLastColumn(wrap(area.getLastColumn() + columnOffset, VERSION.getMaxColumns()));
+				}
+			}
+		}
+		return FormulaRenderer.toFormulaString(evaluationWorkbook, ptgs);
+	}
+
+	private static int wrap(final int index, final int count) {
+		return ((index % count) + count) % count;
+	}
+}
@@ -0,0 +1,189 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.continental.knime.xlsformatter.apply;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.lang3.tuple.Triple;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+
+import com.continental.knime.xlsformatter.porttype.CellMap;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.CellState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.Comment;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.FormattingRecord;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.RangeInstruction;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.SheetState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterStateMerger;
+
+/**
+ * Full-column and full-row instructions are kept lazily in the XLS Formatter state and are rendered as column default style
+ * resp. row style. These however don't affect cells that already exist in the sheet (as those carry their own style), nor cells
+ * that get a style of their own by other instructions. This class resolves the instructions for exactly these cells, so that only
+ * the sheet's used cells are touched instead of all cells of a full column or row.
+ * A cell's own instructions win over those of its full row and column. This keeps the order of the nodes, as a modification of
+ * full columns or rows is also applied on the cells with instructions at that time, and the intersections of full columns and rows
+ * are cells of their own (see SheetState.modifyFullRanges()).
+ * Range instructions (see SheetState.rangeInstructions) count as the cells' own instructions and are hence resolved beforehand.
+ */
+class XlsFormatterApplyFullRangeResolver {
+
+	/**
+	 * Checks whether a state contains any full-column or full-row instruction.
+	 */
+	static boolean hasFullRanges(final XlsFormatterState xlsf) {
+		for (SheetState sheetState : xlsf.sheetStates.values())
+			if (sheetState.fullColumns.size() != 0 || sheetState.fullRows.size() != 0)
+				return true;
+		return false;
+	}
+	
+	/**
+	 * Checks whether a state contains any range instruction.
+	 */
+	static boolean hasRangeInstructions(final XlsFormatterState xlsf) {
+		for (SheetState sheetState : xlsf.sheetStates.values())
+			if (sheetState.rangeInstructions.size() != 0)
+				return true;
+		return false;
+	}
+
+	/**
+	 * Resolves the full-column and full-row instructions of all sheets for the cells existing in the workbook.
+	 * @return The provided state, if it has no full-column, full-row or range instructions, otherwise a new state sharing all
+	 * unaffected objects with the provided one (which is not modified).
+	 */
+	static XlsFormatterState resolve(final XlsFormatterState xlsf, final Workbook wb) {
+		if (!hasFullRanges(xlsf) && !hasRangeInstructions(xlsf))
+			return xlsf;
+
+		XlsFormatterState ret = new XlsFormatterState();
+		for (Map.Entry<String, SheetState> sheetStateEntry : xlsf.sheetStates.entrySet()) {
+			SheetState sheetState = sheetStateEntry.getValue();
+			Sheet sheet = sheetStateEntry.getKey() == null ? wb.getSheetAt(0) : wb.getSheet(sheetStateEntry.getKey());
+			CellMap<Boolean> existingCells = new CellMap<Boolean>(); // used as set of cell keys
+			if (sheet != null && (sheetState.fullColumns.size() != 0 || sheetState.fullRows.size() != 0))
+				for (Row row : sheet) {
+					if (sheetState.fullRows.containsKey(row.getRowNum())) {
+						for (Cell cell : row)
+							existingCells.put(row.getRowNum(), cell.getColumnIndex(), Boolean.TRUE);
+					}
+					else
+						for (Integer column : sheetState.fullColumns.keySet()) {
+							Cell cell = row.getCell(column);
+							if (cell != null)
+								existingCells.put(row.getRowNum(), column, Boolean.TRUE);
+						}
+				}
+			ret.sheetStates.put(sheetStateEntry.getKey(), resolveSheet(ret, sheetState, existingCells));
+		}
+		return ret;
+	}
+
+	/**
+	 * Resolves the range instructions of all sheets and the full-column and full-row instructions of the cells with instructions of their
+	 * own only, e.g. for a sheet that is streamed and whose other cells get the instructions of their full row or column as they are written.
+	 * @return The provided state, if it has no full-column, full-row or range instructions, otherwise a new state sharing all
+	 * unaffected objects with the provided one (which is not modified).
+	 */
+	static XlsFormatterState resolve(final XlsFormatterState xlsf) {
+		if (!hasFullRanges(xlsf) && !hasRangeInstructions(xlsf))
+			return xlsf;
+
+		XlsFormatterState ret = new XlsFormatterState();
+		for (Map.Entry<String, SheetState> sheetStateEntry : xlsf.sheetStates.entrySet())
+			ret.sheetStates.put(sheetStateEntry.getKey(), resolveSheet(ret, sheetStateEntry.getValue(), new CellMap<Boolean>()));
+		return ret;
+	}
+
+	/**
+	 * Creates a copy of a sheet state, in which the range instructions are resolved and all existing or addressed cells of
+	 * full columns and rows (as well as the intersections of full columns and rows) carry the resolved instructions.
+	 */
+	private static SheetState resolveSheet(final XlsFormatterState parent, final SheetState sheetState, final CellMap<Boolean> existingCells) {
+		SheetState ret = getShallowCopy(parent, sheetState);
+		CellMap<FormattingRecord> cells = sheetState.getResolvedCells(parent.getFormattingRecords());
+		if (sheetState.rangeInstructions.size() != 0) {
+			ret.cells = cells;
+			ret.rangeInstructions = new ArrayList<RangeInstruction>();
+		}
+		if (sheetState.fullColumns.size() == 0 && sheetState.fullRows.size() == 0)
+			return ret;
+
+		CellMap<Boolean> affectedCells = new CellMap<Boolean>(existingCells); // used as set of cell keys
+		for (long cellKey : cells.getKeys())
+			if (sheetState.fullColumns.containsKey(CellMap.getColumn(cellKey)) || sheetState.fullRows.containsKey(CellMap.getRow(cellKey)))
+				affectedCells.put(cellKey, Boolean.TRUE);
+		for (Integer row : sheetState.fullRows.keySet())
+			for (Integer column : sheetState.fullColumns.keySet())
+				affectedCells.put(row, column, Boolean.TRUE);
+
+		// full ranges don't get hyperlinks or comments by the formatting nodes, so typically only the formatting records need to be
+		// overlaid (once per distinct combination), while the cells' payloads stay as they are:
+		boolean hasFullRangePayloads = sheetState.fullRows.values().stream().anyMatch(s -> s.hyperlink != null || s.comment != null) ||
+				sheetState.fullColumns.values().stream().anyMatch(s -> s.hyperlink != null || s.comment != null);
+		if (ret.cells == sheetState.cells)
+			ret.cells = new CellMap<FormattingRecord>(sheetState.cells);
+		if (hasFullRangePayloads) {
+			ret.hyperlinks = new CellMap<String>(sheetState.hyperlinks);
+			ret.comments = new CellMap<Comment>(sheetState.comments);
+		}
+		Map<Triple<FormattingRecord, CellState, CellState>, FormattingRecord> overlaidRecords = new HashMap<Triple<FormattingRecord, CellState, CellState>, FormattingRecord>();
+		for (long cellKey : affectedCells.getKeys()) {
+			CellState fullRow = sheetState.fullRows.get(CellMap.getRow(cellKey));
+			CellState fullColumn = sheetState.fullColumns.get(CellMap.getColumn(cellKey));
+			if (hasFullRangePayloads)
+				ret.putCellState(cellKey, XlsFormatterStateMerger.getOverlaidCellState(ret.getCellState(cellKey), fullRow, fullColumn));
+			else
+				ret.cells.put(cellKey, overlaidRecords.computeIfAbsent(Triple.of(ret.cells.get(cellKey), fullRow, fullColumn), states ->
+						parent.getFormattingRecords().intern(XlsFormatterStateMerger.getOverlaidCellState(
+								states.getLeft() == null ? null : states.getLeft().toCellState(), states.getMiddle(), states.getRight()))));
+		}
+		return ret;
+	}
+
+	/**
+	 * Creates a copy of a sheet state that shares all its fields (including the cell map) with the provided one.
+	 */
+	static SheetState getShallowCopy(final XlsFormatterState parent, final SheetState sheetState) {
+		SheetState ret = parent.new SheetState();
+		ret.freezeSheetAtTopLeftCornerOfCell = sheetState.freezeSheetAtTopLeftCornerOfCell;
+		ret.autoFilterRange = sheetState.autoFilterRange;
+		ret.columnWidths = sheetState.columnWidths;
+		ret.rowHeights = sheetState.rowHeights;
+		ret.hiddenRows = sheetState.hiddenRows;
+		ret.hiddenColumns = sheetState.hiddenColumns;
+		ret.mergeRanges = sheetState.mergeRanges;
+		ret.columnGroups = sheetState.columnGroups;
+		ret.rowGroups = sheetState.rowGroups;
+		ret.fullColumns = sheetState.fullColumns;
+		ret.fullRows = sheetState.fullRows;
+		ret.tables = sheetState.tables;
+		ret.rangeInstructions = sheetState.rangeInstructions;
+		ret.cells = sheetState.cells;
+		ret.hyperlinks = sheetState.hyperlinks;
+		ret.comments = sheetState.comments;
+		return ret;
+	}
+}
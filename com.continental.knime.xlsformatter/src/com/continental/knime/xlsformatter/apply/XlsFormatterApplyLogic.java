@@ -26,11 +26,17 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.time.DateUtils;
@@ -43,9 +49,15 @@ import org.apache.poi.ss.usermodel.ClientAnchor;
 import org.apache.poi.ss.usermodel.Color;
 import org.apache.poi.ss.usermodel.ColorScaleFormatting;
 import org.apache.poi.ss.usermodel.ConditionalFormattingRule;
+import org.apache.poi.ss.usermodel.ConditionalFormattingThreshold;
 import org.apache.poi.ss.usermodel.ConditionalFormattingThreshold.RangeType;
 import org.apache.poi.ss.usermodel.CreationHelper;
+import org.apache.poi.ss.usermodel.DataBarFormatting;
+import org.apache.poi.ss.usermodel.DataFormatter;
 import org.apache.poi.ss.usermodel.Drawing;
+import org.apache.poi.ss.usermodel.FontFormatting;
+import org.apache.poi.ss.usermodel.IconMultiStateFormatting;
+import org.apache.poi.ss.usermodel.PatternFormatting;
 import org.apache.poi.ss.usermodel.RichTextString;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
@@ -58,20 +70,32 @@ import org.apache.poi.xssf.usermodel.XSSFCellStyle;
 import org.apache.poi.xssf.usermodel.XSSFFont;
 import org.apache.poi.xssf.usermodel.XSSFHyperlink;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
-import org.knime.core.node.ExecutionContext;
-import org.knime.core.node.NodeLogger;
+import org.apache.poi.xssf.usermodel.XSSFTable;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.knime.filehandling.core.util.CheckedExceptionSupplier;
 import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTSheetViews;
 import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTWorksheet;
 
 import com.continental.knime.xlsformatter.commons.AddressingTools;
 import com.continental.knime.xlsformatter.commons.ColorTools;
-import com.continental.knime.xlsformatter.commons.ProgressTools;
+import com.continental.knime.xlsformatter.commons.ProgressMonitor;
+import com.continental.knime.xlsformatter.commons.ProgressReporter;
 import com.continental.knime.xlsformatter.commons.WarningMessageContainer;
+import com.continental.knime.xlsformatter.commons.XlsFormatterLogger;
 import com.continental.knime.xlsformatter.commons.XlsFormattingStateValidator;
+import com.continental.knime.xlsformatter.porttype.CellMap;
+import com.continental.knime.xlsformatter.porttype.FormattingRecordTable;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterState;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterState.CellState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.ConditionalFormattingSet;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.ConditionalThresholdType;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.DataBar;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.FormattingRecord;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.HighlightRule;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.HighlightRuleType;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.IconSetDefinition;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterState.SheetState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.TableDefinition;
 
 /**
  * Holds the logic how to apply collected formatting instructions to an XLSX file via Apache POI.
@@ -106,13 +130,13 @@ public class XlsFormatterApplyLogic {
 	 * @param inputFile  the input file.
 	 * @param outputFile The file path of the existing xlsx file to modify.
 	 * @param xlsf       The XLS Formatting instructions object.
-	 * @param exec       The execution context (for aborting the operation and
+	 * @param exec       The progress monitor (for aborting the operation and
 	 *                   providing progress information).
-	 * @param logger     the node logger.
+	 * @param logger     the logger.
 	 * @throws IOException
 	 */
 	public static void apply(final String inputFile, final String outputFile, final XlsFormatterState xlsf, final boolean preserveStyles,
-			WarningMessageContainer warningMessageContainer, final ExecutionContext exec, final NodeLogger logger)
+			WarningMessageContainer warningMessageContainer, final ProgressMonitor exec, final XlsFormatterLogger logger)
 			throws Exception {
 		apply(inputFile, //
 				() -> new FileInputStream(inputFile), //
@@ -131,9 +155,9 @@ public class XlsFormatterApplyLogic {
 	 * @param openInput  creates the input stream to read from.
 	 * @param openOutput create the output stream to write to.
 	 * @param xlsf       The XLS Formatting instructions object.
-	 * @param exec       The execution context (for aborting the operation and
+	 * @param exec       The progress monitor (for aborting the operation and
 	 *                   providing progress information).
-	 * @param logger     the node logger.
+	 * @param logger     the logger.
 	 * @throws IOException
 	 */
 	public static void apply(
@@ -143,11 +167,20 @@ public class XlsFormatterApplyLogic {
 			final XlsFormatterState xlsf,
 			final boolean preserveStyles,
 			WarningMessageContainer warningMessageContainer,
-			final ExecutionContext exec, final NodeLogger logger) throws Exception {
+			final ProgressMonitor exec, final XlsFormatterLogger logger) throws Exception {
+		
+		// States with sheet-level instructions only can be implemented by patching the sheet XML, without building the POI model:
+		if (XlsFormatterApplySheetXmlPatcher.isApplicable(xlsf)) {
+			logger.debug("Only sheet-level instructions found, patching the sheet XML of input file " + inputFile + " directly.");
+			if (XlsFormatterApplySheetXmlPatcher.apply(inputFile, openInput, openOutput, xlsf, exec, logger))
+				return;
+			logger.debug("Input file cannot be patched directly, falling back to the POI model.");
+		}
+		
 		// Open the file
 		Workbook wb = null;
 		CreationHelper createHelper = null;
-		exec.setProgress("Opening input file...");
+		exec.setMessage("Opening input file...");
 		try (InputStream inputFileStream = openInput.get()) {
 			wb = WorkbookFactory.create(inputFileStream); // returns XSSF workbook for XSLX files
 			createHelper = wb.getCreationHelper();
@@ -180,14 +213,23 @@ public class XlsFormatterApplyLogic {
 		// Note that if we carry on with some pre-existing (but duplicate) styles, adding many new styles could exceed the total style limit. This might not be detected
 		// in deriveNecessaryStyles yet, but would still trigger a POI-caused exception in the (very time consuming) process after adding the n+1st style
 		
+		// Resolve full-column and full-row instructions for the cells that are not covered by the column default style resp. row style:
+		XlsFormatterState resolvedXlsf = XlsFormatterApplyFullRangeResolver.resolve(xlsf, wb);
+		
+		// Blocks of background colors that follow a color scale of the cells' values are implemented by a conditional formatting rule instead of per-cell styles:
+		resolvedXlsf = XlsFormatterApplyColorScaleDetector.convert(resolvedXlsf, wb, preserveStyles, logger);
+		
 		// Derive and generate necessary POI styles:
-		exec.setProgress("Adding necessary styles...");
-		StyleAnalysisResult analysisResult = deriveNecessaryStyles(wb, xlsf, preserveStyles, exec, logger);
+		exec.setMessage("Adding necessary styles...");
+		StyleAnalysisResult analysisResult = deriveNecessaryStyles(wb, resolvedXlsf, preserveStyles, exec, logger);
 		
 		// Loop all sheets
-		exec.setProgress("Applying formatting instructions...");
-		Sheet defaultSheetIfAddressed = xlsf.sheetStates.containsKey(null) ? wb.getSheetAt(0) : null;
-		for (String sheetName : xlsf.sheetStates.keySet()) {
+		exec.setMessage("Applying formatting instructions...");
+		Sheet defaultSheetIfAddressed = resolvedXlsf.sheetStates.containsKey(null) ? wb.getSheetAt(0) : null;
+		Map<String, XlsFormatterApplyRowBandWriter.RowBandPlan> rowBandPlans = new HashMap<String, XlsFormatterApplyRowBandWriter.RowBandPlan>(); // by sheet part name
+		Map<String, List<String>> headerlessTableColumnNames = new HashMap<String, List<String>>(); // by table part name
+		Set<String> usedTableNames = XlsFormatterApplyTableWriter.getUsedTableNames((XSSFWorkbook)wb);
+		for (String sheetName : resolvedXlsf.sheetStates.keySet()) {
 			
 			// Find the desired sheet
 			Sheet sheet = sheetName == null ? wb.getSheetAt(0) : wb.getSheet(sheetName);
@@ -195,7 +237,47 @@ public class XlsFormatterApplyLogic {
 				throw new Exception("Sheet " + (sheetName == null ? "0" : "\"" + sheetName + "\"") + " not found in file " + inputFile);
 			if (sheetName != null && sheet == defaultSheetIfAddressed)
 				throw new Exception("Default sheet (i.e. first in sequence) and named sheet \"" + sheetName + "\" have been addressed separately. This is not supported as potentially conflicting formatting instructions could be written to the very same sheet.");
-			XlsFormatterState.SheetState xlsfs = xlsf.sheetStates.get(sheetName);
+			XlsFormatterState.SheetState xlsfs = resolvedXlsf.sheetStates.get(sheetName);
+			
+			// uniformly formatted columns and rows get a default style instead of per-cell styles on their empty cells:
+			XlsFormatterApplyDefaultStylePlan defaultStylePlan = XlsFormatterApplyDefaultStylePlan.create(sheet, sheetName, xlsfs, analysisResult);
+			CellMap<Boolean> cellsImplementedByDefaultStyle = new CellMap<Boolean>();
+			if (!defaultStylePlan.isEmpty()) {
+				for (long cellKey : xlsfs.cells.getKeys())
+					if (defaultStylePlan.isImplementedByDefaultStyle(sheet, cellKey, xlsfs))
+						cellsImplementedByDefaultStyle.put(cellKey, Boolean.TRUE);
+				defaultStylePlan.applyDefaultStyles(sheet, analysisResult);
+				logger.debug("Sheet " + (sheetName == null ? "0" : "\"" + sheetName + "\"") + ": " + defaultStylePlan.getColumnCount() + " column(s) and " + defaultStylePlan.getRowCount() +
+						" row(s) formatted via default style, skipping " + cellsImplementedByDefaultStyle.size() + " empty cells.");
+			}
+			
+			// full-column and full-row instructions are implemented as column default style resp. row style:
+			for (Integer column : xlsfs.fullColumns.keySet()) {
+				Integer styleId = analysisResult.mapFullColumnToStyleId.get(Pair.of(sheetName, column));
+				if (styleId != null)
+					sheet.setDefaultColumnStyle(column, analysisResult.mapStyleIdToPoiStyle.get(styleId));
+			}
+			for (Integer rowIndex : xlsfs.fullRows.keySet()) {
+				Integer styleId = analysisResult.mapFullRowToStyleId.get(Pair.of(sheetName, rowIndex));
+				if (styleId != null)
+					safelyGetRow(sheet, rowIndex).setRowStyle(analysisResult.mapStyleIdToPoiStyle.get(styleId));
+			}
+			
+			// very large sheets get their cell styles rendered in parallel row bands after POI has written the workbook:
+			boolean isRowBandRendered = sheet instanceof XSSFSheet && XlsFormatterApplyRowBandWriter.isApplicable(xlsfs);
+			if (isRowBandRendered) {
+				CellMap<Integer> cellToStyleIndex = new CellMap<Integer>(xlsfs.cells.size());
+				for (long cellKey : xlsfs.cells.getKeys()) {
+					if (cellsImplementedByDefaultStyle.containsKey(cellKey))
+						continue;
+					Integer styleId = analysisResult.getCellStyleId(sheetName, cellKey);
+					if (styleId != null)
+						cellToStyleIndex.put(cellKey, Short.toUnsignedInt(analysisResult.mapStyleIdToPoiStyle.get(styleId).getIndex()));
+				}
+				rowBandPlans.put(((XSSFSheet)sheet).getPackagePart().getPartName().getName().substring(1), // zip entry names have no leading slash
+						new XlsFormatterApplyRowBandWriter.RowBandPlan(cellToStyleIndex));
+				logger.debug("Cell styles of sheet " + (sheetName == null ? "0" : "\"" + sheetName + "\"") + " (" + cellToStyleIndex.size() + " cells) will be rendered in parallel row bands.");
+			}
 			
 			// prepare POI workbook level objects for adding drawing (i.e. for cell comments), which will only be instantiated jit:
 			Drawing<?> drawing = null;
@@ -206,68 +288,26 @@ public class XlsFormatterApplyLogic {
 			org.apache.poi.ss.usermodel.Cell cell;
 			boolean hasTypeConversionParsingErrors = false;
 			boolean hasDataTypeInstructionOnNonStringCells = false;
-			int cellCount = xlsfs.cells.size();
-			int cellIterator = 1;
-			for (CellAddress cellAddress : xlsfs.cells.keySet()) {
-				exec.checkCanceled();
-				ProgressTools.showProgressText(exec, "Applying formatting instructions to cell", cellIterator++, cellCount, "...");
+			ProgressReporter progress = new ProgressReporter(exec, "Applying formatting instructions to cell", xlsfs.cells.size(), "...");
+			for (CellMap<FormattingRecord>.Cursor cursor = xlsfs.cells.getRowMajorCursor(); cursor.next(); ) { // row-major order creates the POI rows and cells in sequence
+				progress.advance();
+				long cellKey = cursor.getKey();
+				FormattingRecord state = cursor.getValue();
+				if (cellsImplementedByDefaultStyle.containsKey(cellKey) || // the column's or row's default style applies
+						(isRowBandRendered && !XlsFormatterApplyRowBandWriter.requiresPoiCell(xlsfs, cellKey))) // the style is set while writing
+					continue;
+				CellAddress cellAddress = CellMap.toCellAddress(cellKey);
 				
 				// locate cell in POI model
 				row = safelyGetRow(sheet, cellAddress.getRow());
 				cell = safelyGetColumn(row, cellAddress.getColumn());
 				
 				// if the data type shall be converted from a String cell to something else, do it before setting the style
-				CellState state = xlsfs.cells.get(cellAddress);
 				if (state != null && state.cellDataType != XlsFormatterState.CellDataType.UNMODIFIED) {
-					if (cell.getCellType() == CellType.STRING)
-						switch (state.cellDataType) {
-						case NUMERIC:
-							double value;
-							try {
-								value = Double.parseDouble(cell.getStringCellValue());
-								cell = row.createCell(cellAddress.getColumn());
-								cell.setCellValue(value);
-							} catch (NumberFormatException ne) {
-								logger.warn("Could not parse numeric value \"" + cell.getStringCellValue() + "\" in cell " + cellAddress.toString());
-								hasTypeConversionParsingErrors = true;
-							}
-							break;
-						case BOOLEAN:
-							String strValue = cell.getStringCellValue().trim();
-							switch (strValue) {
-							case "TRUE":
-							case "1":
-								cell = row.createCell(cellAddress.getColumn());
-								cell.setCellValue(true);
-								break;
-							case "FALSE":
-							case "0":
-								cell = row.createCell(cellAddress.getColumn());
-								cell.setCellValue(false);
-								break;
-							default:
-								logger.warn("Could not parse boolean value \"" + cell.getStringCellValue() + "\" in cell " + cellAddress.toString());
-								hasTypeConversionParsingErrors = true;
-							}
-							break;
-						case LOCALDATE:
-						case LOCALDATETIME:
-						case LOCALTIME:
-							Date date;
-							try {
-								date = DateUtils.parseDate(cell.getStringCellValue(), state.cellDataType.getDateTextFormats());
-								cell = row.createCell(cellAddress.getColumn());
-								cell.setCellValue(date);
-							} catch (Exception e) {
-								logger.warn("Could not parse date/time value \"" + cell.getStringCellValue() + "\" (expected format was \""  + state.cellDataType.getDateTextFormat() + "\") in cell " + cellAddress.toString());
-								hasTypeConversionParsingErrors = true;
-							}
-							break;
-						case FORMULA:
-							throw new IllegalArgumentException("Setting formulas is not supported.");
-						default:
-							break;
-						}
+					if (cell.getCellType() == CellType.STRING) {
+						if (!convertStringCellValue(cell, state.cellDataType, cellAddress, logger))
+							hasTypeConversionParsingErrors = true;
+					}
 					else { // non string
 						logger.warn("Could not change data type of cell " + cellAddress.toString() + " since it is not a String cell. Try changing the text format instead of a data type conversion.");
 						hasDataTypeInstructionOnNonStringCells = true;
@@ -275,14 +315,12 @@ public class XlsFormatterApplyLogic {
 				}
 				
 				// if there is a style to set, set it
-				Pair<String, CellAddress> sheetCellAddress = Pair.of(sheetName, cellAddress);
-				if (analysisResult.mapCellAddressToStyleId.containsKey(sheetCellAddress))
-					cell.setCellStyle(
-							analysisResult.mapStyleIdToPoiStyle.get(
-									analysisResult.mapCellAddressToStyleId.get(sheetCellAddress)));
+				Integer styleId = isRowBandRendered ? null : analysisResult.getCellStyleId(sheetName, cellKey);
+				if (styleId != null)
+					cell.setCellStyle(analysisResult.mapStyleIdToPoiStyle.get(styleId));
 				
 				// hyperlink
-				String hyperlink = state.hyperlink;
+				String hyperlink = xlsfs.hyperlinks.get(cellKey);
 				if (hyperlink != null) {
 					XSSFHyperlink link = (XSSFHyperlink)createHelper.createHyperlink(HyperlinkType.URL);
 					link.setAddress(hyperlink);
@@ -290,16 +328,17 @@ public class XlsFormatterApplyLogic {
 				}
 				
 				// comment
-				if (state.comment != null && state.comment.text != null) {
+				XlsFormatterState.Comment cellComment = xlsfs.comments.get(cellKey);
+				if (cellComment != null && cellComment.text != null) {
 					if (drawing == null)
 						drawing = sheet.createDrawingPatriarch();
 					if (clientAnchor == null)
 						clientAnchor = createHelper.createClientAnchor();
 					
 					 org.apache.poi.ss.usermodel.Comment comment = drawing.createCellComment(clientAnchor);
-           RichTextString richString = createHelper.createRichTextString(state.comment.text);
+           RichTextString richString = createHelper.createRichTextString(cellComment.text);
            comment.setString(richString);
-           comment.setAuthor(state.comment.author); // can be null
+           comment.setAuthor(cellComment.author); // can be null
            cell.setCellComment(comment);
 				}
 			} // for each cell
@@ -311,7 +350,7 @@ public class XlsFormatterApplyLogic {
 				warningMessageContainer.addMessage("Data type conversion(s) on non-String cells could not be executed. See log for details.");
 			
 			// Fix window:
-			exec.setProgress("Apply non-cell based features...");
+			exec.setMessage("Apply non-cell based features...");
 			if (xlsfs.freezeSheetAtTopLeftCornerOfCell != null) {
 				boolean errorInRepositioningView = false;
 				if (sheet.getTopRow() != 0 || sheet.getLeftCol() != 0)  { // set the view to beginning of sheet, since the below createFreezePane freezes that view
@@ -353,51 +392,24 @@ public class XlsFormatterApplyLogic {
 					sheet.addMergedRegion(range);
 				}
 			
+			// tables
+			List<TableDefinition> tables = XlsFormatterApplyTableWriter.getApplicableTables((XSSFSheet)sheet, xlsfs, warningMessageContainer, logger);
+			if (tables.size() != 0) {
+				DataFormatter dataFormatter = new DataFormatter();
+				for (TableDefinition table : tables) {
+					List<String> columnNames = XlsFormatterApplyTableWriter.prepareHeaderRow(sheet, table, dataFormatter);
+					XSSFTable xssfTable = XlsFormatterApplyTableWriter.createTable((XSSFSheet)sheet, table, columnNames, usedTableNames);
+					if (!table.hasHeaderRow) // POI would name the columns after the first data row when writing
+						headerlessTableColumnNames.put(xssfTable.getPackagePart().getPartName().getName().substring(1), columnNames);
+				}
+			}
+			
 			// auto-filter range
-			if (xlsfs.autoFilterRange != null)
+			if (xlsfs.autoFilterRange != null && XlsFormatterApplyTableWriter.isAutoFilterApplicable(xlsfs, tables, warningMessageContainer, logger))
 				sheet.setAutoFilter(xlsfs.autoFilterRange);
 			
 			// conditional formatting:
-			Map<String, List<CellAddress>> mapIdenticallyConditionalFormattedCells = new HashMap<String, List<CellAddress>>();
-			for (CellAddress cellAddress : xlsfs.cells.keySet()) {
-				exec.checkCanceled();
-				XlsFormatterState.ConditionalFormattingSet conditionalFormat = xlsfs.cells.get(cellAddress).conditionalFormat; 
-				if (conditionalFormat != null) {
-					String key = conditionalFormat.toString();
-					if (!mapIdenticallyConditionalFormattedCells.containsKey(key))
-						mapIdenticallyConditionalFormattedCells.put(key, new ArrayList<CellAddress>());
-					mapIdenticallyConditionalFormattedCells.get(key).add(cellAddress);
-				}
-			}
-			if (mapIdenticallyConditionalFormattedCells.size() != 0) {
-				SheetConditionalFormatting sheetCF = sheet.getSheetConditionalFormatting();
-				for (String key : mapIdenticallyConditionalFormattedCells.keySet()) {
-					XlsFormatterState.ConditionalFormattingSet conditionalFormat = xlsfs.cells.get(
-							mapIdenticallyConditionalFormattedCells.get(key).get(0)).conditionalFormat;
-					if (conditionalFormat.backgroundScaleFixpoints.size() == 0)
-						continue; // for now, only bgColor is implemented. Skip anything else
-					List<CellRangeAddress> ranges = AddressingTools.getRangesFromAddressList(mapIdenticallyConditionalFormattedCells.get(key), exec, logger);
-					
-					ConditionalFormattingRule ruleColorScale = sheetCF.createConditionalFormattingColorScaleRule();
-					ColorScaleFormatting cs1 = ruleColorScale.getColorScaleFormatting();
-					Color[] bgColors = new Color[conditionalFormat.backgroundScaleFixpoints.size()];
-					for (int x = 0; x < conditionalFormat.backgroundScaleFixpoints.size(); x++) {
-						cs1.getThresholds()[x].setRangeType(RangeType.NUMBER);
-						cs1.getThresholds()[x].setValue(conditionalFormat.backgroundScaleFixpoints.get(x).getLeft());
-						bgColors[x] = ColorTools.getPoiColor(conditionalFormat.backgroundScaleFixpoints.get(x).getRight());
-					}
-					cs1.setColors(bgColors);
-					CellRangeAddress[] rangesArray = new CellRangeAddress[ranges.size()];
-					rangesArray = ranges.toArray(rangesArray);
-					int poiCfId = sheetCF.addConditionalFormatting(rangesArray, ruleColorScale);
-					logger.debug("Setting conditional formatting (POI ID " + poiCfId + ") \"" + key + "\" for " + ranges.size() + " ranges: " + ranges.stream().map(r -> r.formatAsString()).collect(Collectors.joining(";")));
-					int cfAddressFormulaLength = AddressingTools.getFormulaLengthFromRangeList(ranges);
-					if (cfAddressFormulaLength > XlsFormattingStateValidator.MAX_FORMULA_CHARACTERS) {
-						logger.warn("This conditional formatting address range's length exceeds the XLS specification's maximum formula character limit: " + cfAddressFormulaLength + " > " + XlsFormattingStateValidator.MAX_FORMULA_CHARACTERS);
-						warningMessageContainer.addMessage("A conditional formatting range is so jagged that it exceeds the maximum XLS formula length. See log for details.");
-					}
-				}
-			}
+			applyConditionalFormatting(sheet, xlsfs, warningMessageContainer, exec, logger);
 			exec.checkCanceled();
 			
 			// Group columns:
@@ -447,13 +459,198 @@ public class XlsFormatterApplyLogic {
 		}
 		
 		// Write the output to a file:
-		exec.setProgress("Writing output file...");
-		try (OutputStream fileOut = openOutput.get();
-				BufferedOutputStream bufOut = new BufferedOutputStream(fileOut);) {
-			wb.write(bufOut);
+		exec.setMessage("Writing output file...");
+		if (rowBandPlans.size() == 0 && headerlessTableColumnNames.size() == 0) {
+			try (OutputStream fileOut = openOutput.get();
+					BufferedOutputStream bufOut = new BufferedOutputStream(fileOut);) {
+				wb.write(bufOut);
+			}
+		}
+		else { // POI writes to a temporary file, which is then copied with the row band rendered cell styles and the tables' column names
+			Path writtenPackage = Files.createTempFile("xlsformatter", ".xlsx");
+			try {
+				try (OutputStream fileOut = Files.newOutputStream(writtenPackage);
+						BufferedOutputStream bufOut = new BufferedOutputStream(fileOut);) {
+					wb.write(bufOut);
+				}
+				XlsFormatterApplyRowBandWriter.writePackage(writtenPackage, openOutput, rowBandPlans, headerlessTableColumnNames, exec);
+			}
+			finally {
+				Files.deleteIfExists(writtenPackage);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Creates the POI rule implementing a highlight rule, i.e. a cell value comparison or a formula along with its fill and font formatting.
+	 * Relative references of its formulas are shifted by the given offset of the rule's first range from the cell they refer to.
+	 */
+	private static ConditionalFormattingRule createHighlightRule(final SheetConditionalFormatting sheetCF, final HighlightRule highlightRule,
+			final XlsFormatterApplyFormulaShifter shifter, final int rowOffset, final int columnOffset) {
+		ConditionalFormattingRule rule;
+		if (highlightRule.type == HighlightRuleType.CELL_VALUE)
+			rule = sheetCF.createConditionalFormattingRule(XlsFormatterApplyXlsfToPoiConversions.getPoiComparisonOperator(highlightRule.comparison),
+					shifter.shift(highlightRule.formula1, rowOffset, columnOffset),
+					highlightRule.comparison.hasSecondOperand() ? shifter.shift(highlightRule.formula2, rowOffset, columnOffset) : null);
+		else
+			rule = sheetCF.createConditionalFormattingRule(shifter.shift(highlightRule.formula1, rowOffset, columnOffset));
+		if (highlightRule.backgroundColor != null) {
+			PatternFormatting fill = rule.createPatternFormatting();
+			fill.setFillBackgroundColor(ColorTools.getPoiColor(highlightRule.backgroundColor));
+			fill.setFillPattern(PatternFormatting.SOLID_FOREGROUND);
+		}
+		if (highlightRule.fontColor != null || highlightRule.fontBold || highlightRule.fontItalic) {
+			FontFormatting font = rule.createFontFormatting();
+			if (highlightRule.fontBold || highlightRule.fontItalic)
+				font.setFontStyle(highlightRule.fontItalic, highlightRule.fontBold);
+			if (highlightRule.fontColor != null)
+				font.setFontColor(ColorTools.getPoiColor(highlightRule.fontColor));
+		}
+		return rule;
+	}
+	
+	/**
+	 * Creates a POI data bar rule.
+	 */
+	private static ConditionalFormattingRule createDataBarRule(final SheetConditionalFormatting sheetCF, final DataBar dataBar) {
+		ConditionalFormattingRule rule = sheetCF.createConditionalFormattingRule(ColorTools.getPoiColor(dataBar.color));
+		DataBarFormatting formatting = rule.getDataBarFormatting();
+		formatting.getMinThreshold().setRangeType(XlsFormatterApplyXlsfToPoiConversions.getPoiRangeType(dataBar.minType, true));
+		if (dataBar.minType != ConditionalThresholdType.AUTOMATIC) // POI fails to unset a value that has never been set
+			formatting.getMinThreshold().setValue(dataBar.minValue);
+		formatting.getMaxThreshold().setRangeType(XlsFormatterApplyXlsfToPoiConversions.getPoiRangeType(dataBar.maxType, false));
+		if (dataBar.maxType != ConditionalThresholdType.AUTOMATIC)
+			formatting.getMaxThreshold().setValue(dataBar.maxValue);
+		formatting.setIconOnly(!dataBar.showValue);
+		return rule;
+	}
+	
+	/**
+	 * Creates a POI icon set rule. The first icon's threshold is the lowest value, the others are taken from the definition.
+	 */
+	private static ConditionalFormattingRule createIconSetRule(final SheetConditionalFormatting sheetCF, final IconSetDefinition iconSet) {
+		ConditionalFormattingRule rule = sheetCF.createConditionalFormattingRule(XlsFormatterApplyXlsfToPoiConversions.getPoiIconSet(iconSet.style));
+		IconMultiStateFormatting formatting = rule.getMultiStateFormatting();
+		ConditionalFormattingThreshold[] thresholds = formatting.getThresholds();
+		for (int i = 0; i < iconSet.thresholds.size() && i + 1 < thresholds.length; i++) {
+			thresholds[i + 1].setRangeType(XlsFormatterApplyXlsfToPoiConversions.getPoiRangeType(iconSet.thresholdType, false));
+			thresholds[i + 1].setValue(iconSet.thresholds.get(i));
+		}
+		formatting.setReversed(iconSet.reversed);
+		formatting.setIconOnly(!iconSet.showValue);
+		return rule;
+	}
+	
+	/**
+	 * Adds the conditional formatting instructions of a sheet state to a POI sheet, grouping identically formatted cells into common ranges.
+	 */
+	static void applyConditionalFormatting(final Sheet sheet, final SheetState xlsfs, WarningMessageContainer warningMessageContainer,
+			final ProgressMonitor exec, final XlsFormatterLogger logger) throws Exception {
+		Map<String, List<CellAddress>> mapIdenticallyConditionalFormattedCells = new HashMap<String, List<CellAddress>>();
+		Map<ConditionalFormattingSet, String> conditionalFormatKeys = new IdentityHashMap<ConditionalFormattingSet, String>(); // sets are shared by the cells of a formatting record
+		ProgressReporter cancelChecker = ProgressReporter.createCancelChecker(exec);
+		for (CellMap<FormattingRecord>.Cursor cursor = xlsfs.cells.getCursor(); cursor.next(); ) {
+			cancelChecker.advance();
+			long cellKey = cursor.getKey();
+			XlsFormatterState.ConditionalFormattingSet conditionalFormat = cursor.getValue().conditionalFormat;
+			if (conditionalFormat != null) {
+				String key = conditionalFormatKeys.computeIfAbsent(conditionalFormat, ConditionalFormattingSet::toString);
+				if (!mapIdenticallyConditionalFormattedCells.containsKey(key))
+					mapIdenticallyConditionalFormattedCells.put(key, new ArrayList<CellAddress>());
+				mapIdenticallyConditionalFormattedCells.get(key).add(CellMap.toCellAddress(cellKey));
+			}
+		}
+		if (mapIdenticallyConditionalFormattedCells.size() != 0) {
+			SheetConditionalFormatting sheetCF = sheet.getSheetConditionalFormatting();
+			XlsFormatterApplyFormulaShifter shifter = new XlsFormatterApplyFormulaShifter(sheet);
+			for (String key : mapIdenticallyConditionalFormattedCells.keySet()) {
+				XlsFormatterState.ConditionalFormattingSet conditionalFormat = xlsfs.cells.get(
+						mapIdenticallyConditionalFormattedCells.get(key).get(0)).conditionalFormat;
+				
+				// relative references in rule formulas are resolved from the top-left cell of the first range:
+				List<CellRangeAddress> ranges = AddressingTools.getRangesFromAddressList(mapIdenticallyConditionalFormattedCells.get(key), exec, logger);
+				ranges.sort(Comparator.comparingInt(CellRangeAddress::getFirstRow).thenComparingInt(CellRangeAddress::getFirstColumn));
+				
+				// jagged range lists exceeding the maximum formula length are split over several rules, whose formulas are shifted
+				// such that they still refer to the same cells as from the first range's point of view:
+				List<List<CellRangeAddress>> rangePartitions = AddressingTools.partitionRangeListByFormulaLength(ranges, XlsFormattingStateValidator.MAX_FORMULA_CHARACTERS);
+				ConditionalFormattingSet rangeRelativeFormat = null;
+				if (rangePartitions.size() > 1) {
+					logger.debug("Splitting conditional formatting \"" + key + "\" over " + rangePartitions.size() + " rules, since its " + ranges.size() + " ranges exceed the maximum XLS formula length of " + XlsFormattingStateValidator.MAX_FORMULA_CHARACTERS + " characters.");
+					
+					// data bars and icon sets with thresholds relative to the values of their range (e.g. its lowest value or a percentile)
+					// would however be computed per part, hence they are kept as one rule over all ranges:
+					boolean isDataBarRangeRelative = conditionalFormat.dataBar != null &&
+							(conditionalFormat.dataBar.minType != ConditionalThresholdType.NUMBER || conditionalFormat.dataBar.maxType != ConditionalThresholdType.NUMBER);
+					boolean isIconSetRangeRelative = conditionalFormat.iconSet != null && conditionalFormat.iconSet.thresholdType != ConditionalThresholdType.NUMBER;
+					if (isDataBarRangeRelative || isIconSetRangeRelative) {
+						rangeRelativeFormat = new ConditionalFormattingSet();
+						conditionalFormat = conditionalFormat.getShallowCopy();
+						if (isDataBarRangeRelative) {
+							rangeRelativeFormat.dataBar = conditionalFormat.dataBar;
+							conditionalFormat.dataBar = null;
+						}
+						if (isIconSetRangeRelative) {
+							rangeRelativeFormat.iconSet = conditionalFormat.iconSet;
+							conditionalFormat.iconSet = null;
+						}
+						logger.warn("The data bar or icon set of conditional formatting \"" + key + "\" is relative to the values of its " + ranges.size() + " ranges, which are hence kept in one rule although they exceed the maximum XLS formula length of " + XlsFormattingStateValidator.MAX_FORMULA_CHARACTERS + " characters.");
+						warningMessageContainer.addMessage("Data bars or icon sets with thresholds relative to their range have been applied on a very long list of ranges, which the spreadsheet application might not support. See log for details.");
+					}
+				}
+				for (List<CellRangeAddress> partition : rangePartitions) {
+					exec.checkCanceled();
+					int rowOffset = partition.get(0).getFirstRow() - ranges.get(0).getFirstRow();
+					int columnOffset = partition.get(0).getFirstColumn() - ranges.get(0).getFirstColumn();
+					List<ConditionalFormattingRule> rules = createConditionalFormattingRules(sheetCF, conditionalFormat, shifter, rowOffset, columnOffset);
+					if (rules.size() == 0)
+						break;
+					
+					CellRangeAddress[] rangesArray = new CellRangeAddress[partition.size()];
+					rangesArray = partition.toArray(rangesArray);
+					int poiCfId = sheetCF.addConditionalFormatting(rangesArray, rules.toArray(new ConditionalFormattingRule[rules.size()]));
+					logger.debug("Setting conditional formatting (POI ID " + poiCfId + ") \"" + key + "\" for " + partition.size() + " ranges: " + partition.stream().map(r -> r.formatAsString()).collect(Collectors.joining(";")));
+				}
+				if (rangeRelativeFormat != null) {
+					List<ConditionalFormattingRule> rules = createConditionalFormattingRules(sheetCF, rangeRelativeFormat, shifter, 0, 0);
+					int poiCfId = sheetCF.addConditionalFormatting(ranges.toArray(new CellRangeAddress[ranges.size()]), rules.toArray(new ConditionalFormattingRule[rules.size()]));
+					logger.debug("Setting conditional formatting (POI ID " + poiCfId + ") \"" + key + "\" for its data bar or icon set on all " + ranges.size() + " ranges.");
+				}
+			}
 		}
 	}
 	
+	/**
+	 * Creates the POI rules of a conditional formatting set. Highlight rules take precedence over the color scale, data bar
+	 * and icon set, as POI prioritizes rules in the sequence of their creation.
+	 * @param rowOffset The row offset of the rules' first range from the cell that relative references in formulas are resolved from.
+	 * @param columnOffset The respective column offset.
+	 */
+	private static List<ConditionalFormattingRule> createConditionalFormattingRules(final SheetConditionalFormatting sheetCF,
+			final ConditionalFormattingSet conditionalFormat, final XlsFormatterApplyFormulaShifter shifter, final int rowOffset, final int columnOffset) {
+		List<ConditionalFormattingRule> rules = new ArrayList<ConditionalFormattingRule>();
+		for (HighlightRule highlightRule : conditionalFormat.highlightRules)
+			rules.add(createHighlightRule(sheetCF, highlightRule, shifter, rowOffset, columnOffset));
+		if (conditionalFormat.backgroundScaleFixpoints.size() != 0) {
+			ConditionalFormattingRule ruleColorScale = sheetCF.createConditionalFormattingColorScaleRule();
+			ColorScaleFormatting cs1 = ruleColorScale.getColorScaleFormatting();
+			cs1.setNumControlPoints(conditionalFormat.backgroundScaleFixpoints.size()); // POI creates a three-point scale by default
+			Color[] bgColors = new Color[conditionalFormat.backgroundScaleFixpoints.size()];
+			for (int x = 0; x < conditionalFormat.backgroundScaleFixpoints.size(); x++) {
+				cs1.getThresholds()[x].setRangeType(RangeType.NUMBER);
+				cs1.getThresholds()[x].setValue(conditionalFormat.backgroundScaleFixpoints.get(x).getLeft());
+				bgColors[x] = ColorTools.getPoiColor(conditionalFormat.backgroundScaleFixpoints.get(x).getRight());
+			}
+			cs1.setColors(bgColors);
+			rules.add(ruleColorScale);
+		}
+		if (conditionalFormat.dataBar != null)
+			rules.add(createDataBarRule(sheetCF, conditionalFormat.dataBar));
+		if (conditionalFormat.iconSet != null)
+			rules.add(createIconSetRule(sheetCF, conditionalFormat.iconSet));
+		return rules;
+	}
 	
 	/**
 	 * Safely accesses a row on a POI sheet by creating it in case it doesn't exist.
@@ -484,12 +681,12 @@ public class XlsFormatterApplyLogic {
 	 * create all necessary styles in one pass (after analyzing the required styles)
 	 */
 	public static class StyleCreationInstruction {
-		public CellState cellState;
+		public FormattingRecord record;
 		public XSSFFont font;
 		public Integer numberFormatCode; // null means: nothing to tamper with in regards to number formats
 		
-		public StyleCreationInstruction(CellState cellState, XSSFFont font, Integer numberFormatCode) {
-			this.cellState = cellState;
+		public StyleCreationInstruction(FormattingRecord record, XSSFFont font, Integer numberFormatCode) {
+			this.record = record;
 			this.numberFormatCode = numberFormatCode;
 			this.font = font;
 		}
@@ -506,14 +703,34 @@ public class XlsFormatterApplyLogic {
 		XlsArtifactCount xlsArtifactCount = null;
 		
 		/**
-		 * Map connecting a pair of sheet name & cell address to an internal counting ID connecting this map and mapStyleCodeToPoiStyle
+		 * Map connecting a sheet name to the map of its cells to an internal counting ID connecting this map and mapStyleCodeToPoiStyle
 		 */
-		Map<Pair<String, CellAddress>, Integer> mapCellAddressToStyleId = null;
+		Map<String, CellMap<Integer>> mapCellToStyleIdBySheet = null;
 		
 		/**
-		 * Map connecting the internal counting ID of mapCellAddressToStyleCode to the corresponding POI XSSF style
+		 * Map connecting the internal counting ID of mapCellToStyleIdBySheet to the corresponding POI XSSF style
 		 */
 		Map<Integer, XSSFCellStyle> mapStyleIdToPoiStyle = null;
+		
+		/**
+		 * Maps connecting a pair of sheet name & full column resp. row index to an internal counting ID as in mapCellToStyleIdBySheet
+		 */
+		Map<Pair<String, Integer>, Integer> mapFullColumnToStyleId = null;
+		Map<Pair<String, Integer>, Integer> mapFullRowToStyleId = null;
+		
+		/**
+		 * Map connecting a pair of internal style ID (null for the workbook's default style) & date/time type to the internal ID of the
+		 * style's copy with the default number format of that type (only filled for the date/time types passed to deriveNecessaryStyles)
+		 */
+		Map<Pair<Integer, XlsFormatterState.CellDataType>, Integer> mapBaseStyleToDateStyleId = null;
+		
+		/**
+		 * Gets the internal style ID of a cell (see CellMap.toKey) or null, if the cell needs no style.
+		 */
+		Integer getCellStyleId(final String sheetName, final long cellKey) {
+			CellMap<Integer> sheetMap = mapCellToStyleIdBySheet.get(sheetName);
+			return sheetMap == null ? null : sheetMap.get(cellKey);
+		}
 	}
 	
 	/**
@@ -522,133 +739,125 @@ public class XlsFormatterApplyLogic {
 	 * @param xlsArtifactCount A prepared artifact counter that will be modified to reflect the XLS artifact utilization required to implement this XLS Formatting instruction set. Can be null, if this additional return is of no interest.
 	 * @return A StyleAnalysisResult object (with only xlsArtifactCount filled in the case of workbook being null).
 	 */
-	private static StyleAnalysisResult deriveNecessaryStyles(
+	static StyleAnalysisResult deriveNecessaryStyles(
 			final Workbook workbook,
 			final XlsFormatterState xlsf,
 			final boolean preserveStyles,
-			final ExecutionContext exec, final NodeLogger logger) throws Exception {
+			final ProgressMonitor exec, final XlsFormatterLogger logger) throws Exception {
+		return deriveNecessaryStyles(workbook, xlsf, preserveStyles, new HashMap<Integer, Set<XlsFormatterState.CellDataType>>(), exec, logger);
+	}
+	
+	/**
+	 * Analyze the XLS Formatting instructions for common styles and generate these styles, including the copies of the styles without
+	 * number format that date/time values written into their cells need (e.g. by the streaming writer). These copies count towards the
+	 * style limit like any other style, which is hence checked before creating any style.
+	 * @param dateTypesByColumn The date/time types of the values written per column (in all sheets, as the streaming writer only writes
+	 * a single one), only considered if workbook is not null.
+	 */
+	static StyleAnalysisResult deriveNecessaryStyles(
+			final Workbook workbook,
+			final XlsFormatterState xlsf,
+			final boolean preserveStyles,
+			final Map<Integer, Set<XlsFormatterState.CellDataType>> dateTypesByColumn,
+			final ProgressMonitor exec, final XlsFormatterLogger logger) throws Exception {
 		
 		StyleAnalysisResult ret = new StyleAnalysisResult();
 		
-		Map<String, XSSFFont> fontMap = new HashMap<String, XSSFFont>(); // maps font short code to created POI font
-		Map<Integer, StyleCreationInstruction> styleIdToCreationInstructionMap = new HashMap<Integer, StyleCreationInstruction>(); // maps style internal ID to its creation instruction (for later bulk creation of styles)
-		Map<String, Integer> styleCodeToInternalIdMap = new HashMap<String, Integer>(); // maps the style short definition code to the internal ID
-		Map<String, Integer> numberFormatMap = new HashMap<String, Integer>(); // maps number format string to created POI format code
-		if (workbook != null)
-			ret.mapCellAddressToStyleId = new HashMap<Pair<String, CellAddress>, Integer>();
-		int nextFreeStyleId = 0;
+		StyleDerivationContext context = new StyleDerivationContext();
+		Set<XlsFormatterState.CellDataType> allDateTypes = EnumSet.noneOf(XlsFormatterState.CellDataType.class); // of any column, e.g. for full rows
+		if (workbook != null) {
+			ret.mapCellToStyleIdBySheet = new HashMap<String, CellMap<Integer>>();
+			ret.mapFullColumnToStyleId = new HashMap<Pair<String, Integer>, Integer>();
+			ret.mapFullRowToStyleId = new HashMap<Pair<String, Integer>, Integer>();
+			ret.mapBaseStyleToDateStyleId = new HashMap<Pair<Integer, XlsFormatterState.CellDataType>, Integer>();
+			for (Set<XlsFormatterState.CellDataType> dateTypes : dateTypesByColumn.values())
+				allDateTypes.addAll(dateTypes);
+			deriveDateStyleIds(workbook, null, allDateTypes, context, ret);
+		}
 		
-		for (Map.Entry<String, SheetState> sheetStateEntry : xlsf.sheetStates.entrySet())
-			for (CellAddress cellAddress : sheetStateEntry.getValue().cells.keySet()) {
-				try {
-					XlsFormatterState.CellState state = sheetStateEntry.getValue().cells.get(cellAddress);
-					
-					// check whether the cell state requires any formatting:
-					String cellShortString = state.cellFormatToShortString(true, true); 
-					if (cellShortString.equals(XlsFormatterState.CellState.getNonFormattingStateString()))
-						continue;
-					
-					// resolve font:
-					String fontShortString = state.fontDefinitionToShortString();
-					XSSFFont font = null;
-					if (!fontShortString.equals(XlsFormatterState.CellState.getDefaultFontShortString())) {
-						if (fontMap.containsKey(fontShortString))
-							font = fontMap.get(fontShortString);
+		ProgressReporter cancelChecker = ProgressReporter.createCancelChecker(exec);
+		FormattingRecordTable resolvedRecords = new FormattingRecordTable(); // only holds the records of resolved range instructions for deriving their styles, xlsf is not modified
+		for (Map.Entry<String, SheetState> sheetStateEntry : xlsf.sheetStates.entrySet()) {
+			
+			// if only the artifacts are counted, they just depend on the distinct records, which are cheap to get without resolving range instructions:
+			if (workbook == null) {
+				for (FormattingRecord record : sheetStateEntry.getValue().getDistinctResolvedRecords()) {
+					cancelChecker.advance();
+					deriveStyleId(null, sheetStateEntry.getKey(), null, record, false, context);
+				}
+			}
+			else {
+				CellMap<FormattingRecord> cells = sheetStateEntry.getValue().getResolvedCells(resolvedRecords);
+				CellMap<Integer> cellToStyleId = new CellMap<Integer>(cells.size());
+				ret.mapCellToStyleIdBySheet.put(sheetStateEntry.getKey(), cellToStyleId);
+				Map<FormattingRecord, Integer> recordToStyleId = new HashMap<FormattingRecord, Integer>(); // without preserving styles, a record's style is independent of its cell
+				for (CellMap<FormattingRecord>.Cursor cursor = cells.getCursor(); cursor.next(); ) {
+					cancelChecker.advance();
+					long cellKey = cursor.getKey();
+					try {
+						Integer currentStyleId;
+						if (preserveStyles)
+							currentStyleId = deriveStyleId(workbook, sheetStateEntry.getKey(), CellMap.toCellAddress(cellKey), cursor.getValue(), true, context);
+						else if (recordToStyleId.containsKey(cursor.getValue()))
+							currentStyleId = recordToStyleId.get(cursor.getValue());
 						else {
-							font = XlsFormatterApplyXlsfToPoiConversions.createFont(workbook, state);
-							fontMap.put(fontShortString, font);
-						}
-					}
-					
-					// resolve number format:
-					String targetNumberFormat = state.textFormat;
-					if (targetNumberFormat == null) // in case the user didn't define the format, but the data type conversion requires a format, define it here
-						switch (state.cellDataType) {
-						case LOCALDATE:
-						case LOCALDATETIME:
-						case LOCALTIME:
-							targetNumberFormat = state.cellDataType.getDateTextFormat();
-							break;
-						default:
-							break;
-						}
-					if (targetNumberFormat == null && preserveStyles) {  // if still no number format needs to be set, check whether we need to preserve the original one in the source XLS 
-						
-						String prevFormat = null;
-						Sheet tempSheet = workbook.getSheet(sheetStateEntry.getKey());
-						if (tempSheet != null) {
-							Row tempRow = tempSheet.getRow(cellAddress.getRow());
-							if (tempRow != null) {
-								Cell tempCell = tempRow.getCell(cellAddress.getColumn());
-								if (tempCell != null) {
-									CellStyle tempCellStyle = tempCell.getCellStyle();
-									if (tempCellStyle != null)
-										prevFormat = tempCellStyle.getDataFormatString();
-								}
-							}
+							currentStyleId = deriveStyleId(workbook, sheetStateEntry.getKey(), null, cursor.getValue(), false, context);
+							recordToStyleId.put(cursor.getValue(), currentStyleId);
 						}
-						
-						
-						try {
-							prevFormat = workbook.getSheet(sheetStateEntry.getKey()).getRow(cellAddress.getRow()).getCell(cellAddress.getColumn()).getCellStyle().getDataFormatString();
-						} catch (Exception e) {}						
-						if (prevFormat != null && prevFormat != "" && prevFormat != "General")
-							targetNumberFormat = prevFormat;
-					}
-					Integer numberFormatCode = null;
-					if (targetNumberFormat != null) {
-						if (numberFormatMap.containsKey(targetNumberFormat))
-							numberFormatCode = numberFormatMap.get(targetNumberFormat);
-						else {
-							numberFormatCode = workbook == null ? -1 : (int)workbook.createDataFormat().getFormat(targetNumberFormat);
-							numberFormatMap.put(targetNumberFormat, numberFormatCode);
+						if (currentStyleId != null && workbook != null) {
+							cellToStyleId.put(cellKey, currentStyleId);
+							Set<XlsFormatterState.CellDataType> dateTypes = dateTypesByColumn.get(CellMap.getColumn(cellKey));
+							if (dateTypes != null)
+								deriveDateStyleIds(workbook, currentStyleId, dateTypes, context, ret);
 						}
-						
-						// update cellShortString due to style caching below
-						state.textFormat = targetNumberFormat;
-						cellShortString = state.cellFormatToShortString(true, true);
 					}
-					
-					int currentStyleId = -1;
-					if (styleCodeToInternalIdMap.containsKey(cellShortString)) // this style has been seen before and an internal ID hence exists
-						currentStyleId = styleCodeToInternalIdMap.get(cellShortString);
-					else { // this style needs to be newly created
-						currentStyleId = nextFreeStyleId++;
-						styleCodeToInternalIdMap.put(cellShortString, currentStyleId);
-						styleIdToCreationInstructionMap.put(currentStyleId, new StyleCreationInstruction(state, font, numberFormatCode));
+					catch (Exception e) {
+						StringWriter sw = new StringWriter();
+						PrintWriter pw = new PrintWriter(sw);
+						e.printStackTrace(pw);
+						if (logger != null)
+							logger.error(e.getClass().getCanonicalName() + ": " + e.getMessage() + "\n" + sw.toString());
+						throw new Exception(CellMap.toCellAddress(cellKey).formatAsString() + ": " + e.getClass().getCanonicalName() + ":" + e.getMessage(), e);
 					}
-					if (workbook != null)
-						ret.mapCellAddressToStyleId.put(Pair.of(sheetStateEntry.getKey(), cellAddress), currentStyleId);
 				}
-				catch (Exception e) {
-					StringWriter sw = new StringWriter();
-					PrintWriter pw = new PrintWriter(sw);
-					e.printStackTrace(pw);
-					if (logger != null)
-						logger.error(e.getClass().getCanonicalName() + ": " + e.getMessage() + "\n" + sw.toString());
-					throw new Exception(cellAddress.formatAsString() + ": " + e.getClass().getCanonicalName() + ":" + e.getMessage(), e);
+			}
+			
+			// full-column and full-row instructions get their styles derived alike, just without a previous cell style to preserve:
+			for (Map.Entry<Integer, CellState> fullColumn : sheetStateEntry.getValue().fullColumns.entrySet()) {
+				Integer currentStyleId = deriveStyleId(workbook, sheetStateEntry.getKey(), null, new FormattingRecord(fullColumn.getValue()), false, context);
+				if (currentStyleId != null && workbook != null) {
+					ret.mapFullColumnToStyleId.put(Pair.of(sheetStateEntry.getKey(), fullColumn.getKey()), currentStyleId);
+					Set<XlsFormatterState.CellDataType> dateTypes = dateTypesByColumn.get(fullColumn.getKey());
+					if (dateTypes != null)
+						deriveDateStyleIds(workbook, currentStyleId, dateTypes, context, ret);
 				}
-				if (exec != null)
-					exec.checkCanceled();
 			}
+			for (Map.Entry<Integer, CellState> fullRow : sheetStateEntry.getValue().fullRows.entrySet()) {
+				Integer currentStyleId = deriveStyleId(workbook, sheetStateEntry.getKey(), null, new FormattingRecord(fullRow.getValue()), false, context);
+				if (currentStyleId != null && workbook != null) {
+					ret.mapFullRowToStyleId.put(Pair.of(sheetStateEntry.getKey(), fullRow.getKey()), currentStyleId);
+					deriveDateStyleIds(workbook, currentStyleId, allDateTypes, context, ret);
+				}
+			}
+		}
 		
 		// fill the XLS artifact counts via the argument side channel (+ 1 each since the unformatted XLS file already had 1 default style etc.)
 		ret.xlsArtifactCount = new XlsArtifactCount();
-		ret.xlsArtifactCount.StyleCount = styleIdToCreationInstructionMap.size() + 1;
-		ret.xlsArtifactCount.FontCount = fontMap.size() + 1;
-		ret.xlsArtifactCount.NumberFormatCount = numberFormatMap.size() + 1;
+		ret.xlsArtifactCount.StyleCount = context.styleIdToCreationInstructionMap.size() + 1;
+		ret.xlsArtifactCount.FontCount = context.fontMap.size() + 1;
+		ret.xlsArtifactCount.NumberFormatCount = context.numberFormatMap.size() + 1;
+		if (allDateTypes.size() != 0 && ret.xlsArtifactCount.StyleCount > getMaximumDerivedStyleCount())
+			throw new Exception("Writing the date/time values with the instructions of the XLS Formatter port object requires more cell styles (" + ret.xlsArtifactCount.StyleCount + ") than can be implemented in an XLS workbook (" + XlsFormattingStateValidator.MAX_CELL_STYLES_PER_WORKBOOK + ").");
 		
 		// actually create the styles:
 		if (workbook != null) {
 			ret.mapStyleIdToPoiStyle = new HashMap<Integer, XSSFCellStyle>();
 			try {
-				int i = 1;
-				for (Integer styleInternalId : styleIdToCreationInstructionMap.keySet()) {
-					ProgressTools.showProgressText(exec, "Creating XLS style", i++, ret.xlsArtifactCount.StyleCount, null);
-					StyleCreationInstruction instruction = styleIdToCreationInstructionMap.get(styleInternalId);
-					ret.mapStyleIdToPoiStyle.put(styleInternalId, XlsFormatterApplyXlsfToPoiConversions.createCellStyle(workbook, instruction.cellState, instruction.font, instruction.numberFormatCode));
-					if (exec != null)
-						exec.checkCanceled();
+				ProgressReporter progress = new ProgressReporter(exec, "Creating XLS style", ret.xlsArtifactCount.StyleCount, null);
+				for (Integer styleInternalId : context.styleIdToCreationInstructionMap.keySet()) {
+					progress.advance();
+					StyleCreationInstruction instruction = context.styleIdToCreationInstructionMap.get(styleInternalId);
+					ret.mapStyleIdToPoiStyle.put(styleInternalId, XlsFormatterApplyXlsfToPoiConversions.createCellStyle(workbook, instruction.record, instruction.font, instruction.numberFormatCode));
 				}
 			}
 			catch (Exception e) {
@@ -664,11 +873,132 @@ public class XlsFormatterApplyLogic {
 		return ret;
 	}
 	
+	/**
+	 * Derives the internal style ID of a formatting record, registering the style (and its font and number format) for creation if it is new.
+	 * @param cellAddress The cell address for preserving a previous number format or null if not applicable (e.g. for full columns).
+	 * @return The internal style ID or null, if the record requires no formatting.
+	 */
+	private static Integer deriveStyleId(final Workbook workbook, final String sheetName, final CellAddress cellAddress, FormattingRecord state,
+			final boolean preserveStyles, final StyleDerivationContext context) throws Exception {
+		
+		// check whether the cell state requires any formatting:
+		String cellShortString = state.cellFormatToShortString(true, true); 
+		if (cellShortString.equals(XlsFormatterState.CellState.getNonFormattingStateString()))
+			return null;
+		
+		// resolve font:
+		String fontShortString = state.fontDefinitionToShortString();
+		XSSFFont font = null;
+		if (!fontShortString.equals(XlsFormatterState.CellState.getDefaultFontShortString())) {
+			if (context.fontMap.containsKey(fontShortString))
+				font = context.fontMap.get(fontShortString);
+			else {
+				font = XlsFormatterApplyXlsfToPoiConversions.createFont(workbook, state);
+				context.fontMap.put(fontShortString, font);
+			}
+		}
+		
+		// resolve number format:
+		String targetNumberFormat = state.textFormat;
+		if (targetNumberFormat == null) // in case the user didn't define the format, but the data type conversion requires a format, define it here
+			switch (state.cellDataType) {
+			case LOCALDATE:
+			case LOCALDATETIME:
+			case LOCALTIME:
+				targetNumberFormat = state.cellDataType.getDateTextFormat();
+				break;
+			default:
+				break;
+			}
+		if (targetNumberFormat == null && preserveStyles && cellAddress != null) {  // if still no number format needs to be set, check whether we need to preserve the original one in the source XLS 
+			
+			String prevFormat = null;
+			Sheet tempSheet = workbook.getSheet(sheetName);
+			if (tempSheet != null) {
+				Row tempRow = tempSheet.getRow(cellAddress.getRow());
+				if (tempRow != null) {
+					Cell tempCell = tempRow.getCell(cellAddress.getColumn());
+					if (tempCell != null) {
+						CellStyle tempCellStyle = tempCell.getCellStyle();
+						if (tempCellStyle != null)
+							prevFormat = tempCellStyle.getDataFormatString();
+					}
+				}
+			}
+			
+			
+			try {
+				prevFormat = workbook.getSheet(sheetName).getRow(cellAddress.getRow()).getCell(cellAddress.getColumn()).getCellStyle().getDataFormatString();
+			} catch (Exception e) {}						
+			if (prevFormat != null && prevFormat != "" && prevFormat != "General")
+				targetNumberFormat = prevFormat;
+		}
+		Integer numberFormatCode = null;
+		if (targetNumberFormat != null) {
+			if (context.numberFormatMap.containsKey(targetNumberFormat))
+				numberFormatCode = context.numberFormatMap.get(targetNumberFormat);
+			else {
+				numberFormatCode = workbook == null ? -1 : (int)workbook.createDataFormat().getFormat(targetNumberFormat);
+				context.numberFormatMap.put(targetNumberFormat, numberFormatCode);
+			}
+			
+			// derive a record with the number format (the provided one is shared and must not be modified) and update cellShortString due to style caching below
+			if (!targetNumberFormat.equals(state.textFormat)) {
+				CellState derivedState = state.toCellState();
+				derivedState.textFormat = targetNumberFormat;
+				state = new FormattingRecord(derivedState);
+				cellShortString = state.cellFormatToShortString(true, true);
+			}
+		}
+		
+		Integer currentStyleId = context.styleCodeToInternalIdMap.get(cellShortString); // the same boxed ID is shared by all cells of a style
+		if (currentStyleId == null) { // this style needs to be newly created
+			currentStyleId = context.nextFreeStyleId++;
+			context.styleCodeToInternalIdMap.put(cellShortString, currentStyleId);
+			context.styleIdToCreationInstructionMap.put(currentStyleId, new StyleCreationInstruction(state, font, numberFormatCode));
+		}
+		return currentStyleId;
+	}
+	
+	/**
+	 * Derives the internal style IDs of a style's copies with the default number formats of date/time types, unless the style has a number format.
+	 * @param baseStyleId The internal ID of the style or null for the workbook's default style.
+	 */
+	private static void deriveDateStyleIds(final Workbook workbook, final Integer baseStyleId, final Set<XlsFormatterState.CellDataType> dateTypes,
+			final StyleDerivationContext context, final StyleAnalysisResult result) throws Exception {
+		FormattingRecord baseRecord = null;
+		if (baseStyleId != null) {
+			StyleCreationInstruction instruction = context.styleIdToCreationInstructionMap.get(baseStyleId);
+			if (instruction.numberFormatCode != null)
+				return;
+			baseRecord = instruction.record;
+		}
+		for (XlsFormatterState.CellDataType dateType : dateTypes) {
+			Pair<Integer, XlsFormatterState.CellDataType> key = Pair.of(baseStyleId, dateType);
+			if (result.mapBaseStyleToDateStyleId.containsKey(key))
+				continue;
+			CellState dateState = baseRecord == null ? new CellState() : baseRecord.toCellState();
+			dateState.textFormat = dateType.getDateTextFormat();
+			result.mapBaseStyleToDateStyleId.put(key, deriveStyleId(workbook, null, null, new FormattingRecord(dateState), false, context));
+		}
+	}
+	
+	/**
+	 * Intermediate state of the style derivation algorithm, shared by all cell states of all sheets.
+	 */
+	private static class StyleDerivationContext {
+		Map<String, XSSFFont> fontMap = new HashMap<String, XSSFFont>(); // maps font short code to created POI font
+		Map<Integer, StyleCreationInstruction> styleIdToCreationInstructionMap = new HashMap<Integer, StyleCreationInstruction>(); // maps style internal ID to its creation instruction (for later bulk creation of styles)
+		Map<String, Integer> styleCodeToInternalIdMap = new HashMap<String, Integer>(); // maps the style short definition code to the internal ID
+		Map<String, Integer> numberFormatMap = new HashMap<String, Integer>(); // maps number format string to created POI format code
+		int nextFreeStyleId = 0;
+	}
+	
 	/**
 	 * Simulates an application of a XlsFormatterState and calculates the number of required XLS artifacts (such as styles).
 	 * Returns the essential information as a concise message.
 	 */
-	public static String getDerivedStyleComplexityMessage(XlsFormatterState state, final ExecutionContext exec, final NodeLogger logger) {
+	public static String getDerivedStyleComplexityMessage(XlsFormatterState state, final ProgressMonitor exec, final XlsFormatterLogger logger) {
 		
 		StyleAnalysisResult res = null;
 		
@@ -687,17 +1017,24 @@ public class XlsFormatterApplyLogic {
 		return ret;
 	}
 	
+	/**
+	 * Returns the maximum number of cell styles a XlsFormatterState may require to still pass the style complexity check.
+	 */
+	public static int getMaximumDerivedStyleCount() {
+		return XlsFormattingStateValidator.MAX_CELL_STYLES_PER_WORKBOOK - ALLOWED_PREVIOUS_STYLES;
+	}
+	
 	/**
 	 * Simulates an application of a XlsFormatterState and calculates the number of required XLS artifacts (such as styles).
 	 * Throws exceptions or sets warnings if too many artifacts are needed.
 	 */
 	public static void checkDerivedStyleComplexity(XlsFormatterState state, WarningMessageContainer warningMessageContainer,
-			final ExecutionContext exec, final NodeLogger logger) throws Exception {
+			final ProgressMonitor exec, final XlsFormatterLogger logger) throws Exception {
 		
 		StyleAnalysisResult res = null;
 		res = deriveNecessaryStyles(null, state, false, exec, logger); // calling with workbook==null means that only xlsArtifactCount will be populated in the returned analysisResult
 		
-		if (res.xlsArtifactCount.StyleCount > XlsFormattingStateValidator.MAX_CELL_STYLES_PER_WORKBOOK - ALLOWED_PREVIOUS_STYLES)
+		if (res.xlsArtifactCount.StyleCount > getMaximumDerivedStyleCount())
 			throw new Exception("The XLS Formatter port object has been loaded with more instructions / cell styles (" + res.xlsArtifactCount.StyleCount + ") than can be implemented in an XLS workbook (" + XlsFormattingStateValidator.MAX_CELL_STYLES_PER_WORKBOOK + ").");
 		
 		if (res.xlsArtifactCount.FontCount > XlsFormattingStateValidator.MAX_FONTS_PER_WORKBOOK)
@@ -714,11 +1051,60 @@ public class XlsFormatterApplyLogic {
 		logger.debug("XLS Formatter port object validation: " + res.xlsArtifactCount.StyleCount + " of " + XlsFormattingStateValidator.MAX_CELL_STYLES_PER_WORKBOOK + " (" + Math.round(requiredStyleQuotaUsage * 100) + "%) allowed cell styles. Fonts: " + res.xlsArtifactCount.FontCount + " of " + XlsFormattingStateValidator.MAX_FONTS_PER_WORKBOOK + ". Number formats: " + res.xlsArtifactCount.NumberFormatCount + " of " + XlsFormattingStateValidator.MAX_NUMBER_FORMATS_PER_WORKBOOK + ".");
 	}
 	
+	/**
+	 * Converts a String cell's value to the desired data type (shared by the apply and the write node).
+	 * @return false in case of a parsing error, which is logged.
+	 */
+	static boolean convertStringCellValue(Cell cell, XlsFormatterState.CellDataType cellDataType, CellAddress cellAddress, final XlsFormatterLogger logger) {
+		String value = cell.getStringCellValue();
+		switch (cellDataType) {
+		case NUMERIC:
+			try {
+				cell.setCellValue(Double.parseDouble(value));
+			} catch (NumberFormatException ne) {
+				logger.warn("Could not parse numeric value \"" + value + "\" in cell " + cellAddress.toString());
+				return false;
+			}
+			break;
+		case BOOLEAN:
+			switch (value.trim()) {
+			case "TRUE":
+			case "1":
+				cell.setCellValue(true);
+				break;
+			case "FALSE":
+			case "0":
+				cell.setCellValue(false);
+				break;
+			default:
+				logger.warn("Could not parse boolean value \"" + value + "\" in cell " + cellAddress.toString());
+				return false;
+			}
+			break;
+		case LOCALDATE:
+		case LOCALDATETIME:
+		case LOCALTIME:
+			try {
+				Date date = DateUtils.parseDate(value, cellDataType.getDateTextFormats());
+				cell.setCellValue(date);
+			} catch (Exception e) {
+				logger.warn("Could not parse date/time value \"" + value + "\" (expected format was \""  + cellDataType.getDateTextFormat() + "\") in cell " + cellAddress.toString());
+				return false;
+			}
+			break;
+		case FORMULA:
+			throw new IllegalArgumentException("Setting formulas is not supported.");
+		default:
+			break;
+		}
+		return true;
+	}
+
 	/**
 	 * Converts the column width shown in a standard spreadsheet to that required by POI.
 	 * Depends on some font setting, we assume standard here (written by POI, read by POI).
 	 */
-	private static int xlsToPoiStandardColumnWidthConversion(double xlsColumnWidth) {
+	static int xlsToPoiStandardColumnWidthConversion(double xlsColumnWidth) {
 		return (int)Math.round(257.5 * xlsColumnWidth + 165.37); // formula based on own experiment with different settings and linear regression on that
 	}
 	
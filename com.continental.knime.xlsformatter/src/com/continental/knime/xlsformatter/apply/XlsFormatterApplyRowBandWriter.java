@@ -0,0 +1,481 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.continental.knime.xlsformatter.apply;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.poi.ss.util.CellReference;
+import org.knime.filehandling.core.util.CheckedExceptionSupplier;
+
+import com.continental.knime.xlsformatter.commons.ProgressMonitor;
+import com.continental.knime.xlsformatter.porttype.CellMap;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.FormattingRecord;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.SheetState;
+
+/**
+ * Sets the cell styles of very large sheets in parallel instead of via the POI model. POI still creates the styles and writes the workbook,
+ * but the style index of each formatted cell is set afterwards while copying the written package: the sheet's rows are split into bands,
+ * worker threads render each band's row XML with the style indices from a precomputed plan, and the bands are concatenated in order.
+ */
+public class XlsFormatterApplyRowBandWriter {
+
+	/**
+	 * Minimum number of cell instructions on a sheet for its cell styles to be rendered in row bands.
+	 * Below, the overhead of re-writing the package outweighs the gain.
+	 */
+	private final static int MIN_CELLS_FOR_ROW_BANDS = 50000;
+
+	/**
+	 * Number of source rows rendered by one worker task.
+	 */
+	private final static int ROWS_PER_BAND = 1000;
+
+	private final static int READ_BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Checks whether the cell styles of a sheet should be rendered in row bands. This requires a large number of cell instructions
+	 * and no data type conversions, since those change cell values that only the POI model resolves (e.g. shared strings).
+	 */
+	public static boolean isApplicable(final SheetState sheetState) {
+		if (sheetState.cells.size() < MIN_CELLS_FOR_ROW_BANDS)
+			return false;
+		for (CellMap<FormattingRecord>.Cursor cursor = sheetState.cells.getCursor(); cursor.next(); )
+			if (cursor.getValue().cellDataType != null && cursor.getValue().cellDataType != XlsFormatterState.CellDataType.UNMODIFIED)
+				return false;
+		return true;
+	}
+
+	/**
+	 * Checks whether a cell still needs to be located in the POI model for instructions beyond its style.
+	 */
+	static boolean requiresPoiCell(final SheetState sheetState, final long cellKey) {
+		if (sheetState.hyperlinks.containsKey(cellKey))
+			return true;
+		XlsFormatterState.Comment comment = sheetState.comments.get(cellKey);
+		return comment != null && comment.text != null;
+	}
+
+
+	/**
+	 * The precomputed style indices of one sheet's cells, sorted in row-major order.
+	 */
+	public static class RowBandPlan {
+
+		/**
+		 * Row-major sortable cell keys (row << 14 | column), aligned with styleIndices.
+		 */
+		private final long[] cellKeys;
+		private final int[] styleIndices;
+
+		public RowBandPlan(final CellMap<Integer> cellToStyleIndex) {
+			long[] packed = cellToStyleIndex.getKeys();
+			for (int i = 0; i < packed.length; i++) // styles are < 2^16, so they fit below the key in one long for sorting
+				packed[i] = (packed[i] << 16) | cellToStyleIndex.get(packed[i]);
+			Arrays.sort(packed);
+			cellKeys = new long[packed.length];
+			styleIndices = new int[packed.length];
+			for (int i = 0; i < packed.length; i++) {
+				cellKeys[i] = packed[i] >>> 16;
+				styleIndices[i] = (int)(packed[i] & 0xFFFF);
+			}
+		}
+
+		int size() {
+			return cellKeys.length;
+		}
+
+		int getRow(int planIndex) {
+			return (int)(cellKeys[planIndex] >>> 14);
+		}
+
+		int getColumn(int planIndex) {
+			return (int)(cellKeys[planIndex] & 0x3FFF);
+		}
+
+		int getStyleIndex(int planIndex) {
+			return styleIndices[planIndex];
+		}
+
+		/**
+		 * Gets the index of the first plan entry in the given (0-based) row or behind it.
+		 */
+		int getFirstIndexOfRow(int row) {
+			int index = Arrays.binarySearch(cellKeys, CellMap.toKey(row, 0));
+			return index >= 0 ? index : -index - 1;
+		}
+	}
+
+
+	/**
+	 * Copies an xlsx package written by POI to the output, rendering the cell styles of the planned sheet parts in row bands
+	 * and restoring the column names of tables without header row.
+	 *
+	 * @param writtenPackage          the package as written by POI.
+	 * @param openOutput              create the output stream to write to.
+	 * @param partNameToPlan          plans by zip entry name of the sheet part, e.g. xl/worksheets/sheet1.xml.
+	 * @param tablePartToColumnNames  column names by zip entry name of the table part, e.g. xl/tables/table1.xml.
+	 * @param exec                    The progress monitor (for aborting the operation and providing progress information).
+	 */
+	static void writePackage(final Path writtenPackage,
+			final CheckedExceptionSupplier<OutputStream, IOException> openOutput,
+			final Map<String, RowBandPlan> partNameToPlan,
+			final Map<String, List<String>> tablePartToColumnNames,
+			final ProgressMonitor exec) throws Exception {
+
+		int threadCount = Math.max(1, Runtime.getRuntime().availableProcessors());
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+		try (InputStream packageIn = Files.newInputStream(writtenPackage);
+				ZipInputStream zipIn = new ZipInputStream(new BufferedInputStream(packageIn));
+				OutputStream fileOut = openOutput.get();
+				ZipOutputStream zipOut = new ZipOutputStream(new BufferedOutputStream(fileOut))) {
+			ZipEntry entry;
+			while ((entry = zipIn.getNextEntry()) != null) {
+				exec.checkCanceled();
+				zipOut.putNextEntry(new ZipEntry(entry.getName()));
+				RowBandPlan plan = partNameToPlan.get(entry.getName());
+				List<String> columnNames = tablePartToColumnNames.get(entry.getName());
+				if (plan != null) {
+					exec.setMessage("Rendering cell styles of " + entry.getName() + " in row bands on " + threadCount + " threads...");
+					writeSheet(zipIn, zipOut, plan, executor, threadCount * 2, exec);
+				}
+				else if (columnNames != null)
+					XlsFormatterApplyTableWriter.writeTablePart(zipIn, zipOut, columnNames);
+				else
+					zipIn.transferTo(zipOut);
+				zipOut.closeEntry();
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Streams a sheet part, submitting its rows band-wise for rendering and writing the rendered bands in order.
+	 * At most maxBandsInFlight bands are held in memory at a time.
+	 */
+	private static void writeSheet(InputStream in, OutputStream out, RowBandPlan plan, ExecutorService executor, int maxBandsInFlight,
+			ProgressMonitor exec) throws Exception {
+
+		TextScanner scanner = new TextScanner(new InputStreamReader(in, StandardCharsets.UTF_8));
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), READ_BUFFER_SIZE);
+
+		// Copy everything up to the content of sheetData:
+		int sheetDataStart = scanner.indexOf("<sheetData", 0);
+		if (sheetDataStart == -1)
+			throw new IOException("The written sheet part has no (unprefixed) sheetData element.");
+		int sheetDataTagEnd = scanner.indexOf(">", sheetDataStart);
+		boolean isSheetDataEmpty = scanner.charAt(sheetDataTagEnd - 1) == '/';
+		writer.write(scanner.substring(0, isSheetDataEmpty ? sheetDataTagEnd - 1 : sheetDataTagEnd));
+		writer.write('>');
+		scanner.consume(sheetDataTagEnd + 1);
+
+		// Split the rows into bands:
+		ArrayDeque<Future<String>> bandsInFlight = new ArrayDeque<Future<String>>();
+		int lastRow = -1; // 0-based
+		int nextPlanIndex = 0;
+		boolean isSheetDataEnd = isSheetDataEmpty;
+		while (!isSheetDataEnd) {
+			exec.checkCanceled();
+			int rowCount = 0;
+			int bandEnd = 0;
+			while (rowCount < ROWS_PER_BAND) {
+				int tagStart = scanner.indexOf("<", bandEnd);
+				if (tagStart == -1)
+					throw new IOException("Unexpected end of the written sheet part.");
+				if (scanner.startsWith("</sheetData", tagStart)) {
+					isSheetDataEnd = true;
+					break;
+				}
+				if (!scanner.startsWith("<row", tagStart))
+					throw new IOException("Unexpected element in the sheetData of the written sheet part.");
+				int tagEnd = scanner.indexOf(">", tagStart);
+				String rowIndex = getAttribute(scanner.substring(tagStart, tagEnd + 1), "r");
+				lastRow = rowIndex == null ? lastRow + 1 : Integer.parseInt(rowIndex) - 1;
+				bandEnd = scanner.charAt(tagEnd - 1) == '/' ? tagEnd + 1 : scanner.indexOf("</row>", tagEnd) + "</row>".length();
+				rowCount++;
+			}
+
+			final String bandRows = scanner.substring(0, bandEnd);
+			scanner.consume(bandEnd);
+			final int planFrom = nextPlanIndex;
+			final int planTo = isSheetDataEnd ? plan.size() : plan.getFirstIndexOfRow(lastRow + 1); // the last band also creates all rows behind the source rows
+			nextPlanIndex = planTo;
+			bandsInFlight.add(executor.submit(() -> renderBand(bandRows, plan, planFrom, planTo)));
+			while (bandsInFlight.size() >= maxBandsInFlight)
+				writer.write(bandsInFlight.poll().get());
+		}
+		if (isSheetDataEmpty)
+			writer.write(renderBand("", plan, 0, plan.size()));
+		while (bandsInFlight.size() != 0)
+			writer.write(bandsInFlight.poll().get());
+
+		// Copy the rest:
+		if (isSheetDataEmpty)
+			writer.write("</sheetData>");
+		scanner.transferTo(writer);
+		writer.flush();
+	}
+
+	/**
+	 * Renders consecutive rows of a sheet with the plan entries in [planFrom, planTo), which all belong to rows no later than the last source row
+	 * (except for the last band). Existing cells get their style attribute set, missing cells and rows are created.
+	 */
+	static String renderBand(String sourceRows, RowBandPlan plan, int planFrom, int planTo) {
+
+		StringBuilder out = new StringBuilder(sourceRows.length() + (planTo - planFrom) * 24);
+		int p = planFrom;
+		int pos = 0;
+		int lastRow = -1;
+		while (true) {
+			int rowStart = sourceRows.indexOf("<row", pos);
+			if (rowStart == -1)
+				break;
+			out.append(sourceRows, pos, rowStart);
+			int rowTagEnd = sourceRows.indexOf('>', rowStart);
+			String rowTag = sourceRows.substring(rowStart, rowTagEnd + 1);
+			String rowIndex = getAttribute(rowTag, "r");
+			int row = rowIndex == null ? lastRow + 1 : Integer.parseInt(rowIndex) - 1;
+			lastRow = row;
+
+			// rows only present in the plan:
+			while (p < planTo && plan.getRow(p) < row)
+				p = appendNewRow(out, plan, p, planTo);
+
+			boolean isRowEmpty = rowTag.endsWith("/>");
+			if (p >= planTo || plan.getRow(p) != row) { // nothing to do in this row
+				int rowEnd = isRowEmpty ? rowTagEnd + 1 : sourceRows.indexOf("</row>", rowTagEnd) + "</row>".length();
+				out.append(sourceRows, rowStart, rowEnd);
+				pos = rowEnd;
+				continue;
+			}
+
+			rowTag = removeAttribute(rowTag, "spans"); // the span hint might not cover new cells
+			if (isRowEmpty) {
+				out.append(rowTag, 0, rowTag.length() - 2).append('>');
+				while (p < planTo && plan.getRow(p) == row)
+					appendNewCell(out, plan, p++);
+				out.append("</row>");
+				pos = rowTagEnd + 1;
+				continue;
+			}
+
+			out.append(rowTag);
+			pos = rowTagEnd + 1;
+			int lastColumn = -1;
+			while (true) {
+				int tagStart = sourceRows.indexOf('<', pos);
+				out.append(sourceRows, pos, tagStart);
+				if (sourceRows.startsWith("</row>", tagStart)) {
+					while (p < planTo && plan.getRow(p) == row)
+						appendNewCell(out, plan, p++);
+					out.append("</row>");
+					pos = tagStart + "</row>".length();
+					break;
+				}
+				int tagEnd = sourceRows.indexOf('>', tagStart);
+				String tag = sourceRows.substring(tagStart, tagEnd + 1);
+				if (!tag.startsWith("<c ") && !tag.startsWith("<c>") && !tag.startsWith("<c/")) { // e.g. extLst, copy as is
+					out.append(tag);
+					pos = tagEnd + 1;
+					continue;
+				}
+				String cellReference = getAttribute(tag, "r");
+				int column = cellReference == null ? lastColumn + 1 : getColumnIndex(cellReference);
+				lastColumn = column;
+				while (p < planTo && plan.getRow(p) == row && plan.getColumn(p) < column)
+					appendNewCell(out, plan, p++);
+				if (p < planTo && plan.getRow(p) == row && plan.getColumn(p) == column)
+					tag = setAttribute(tag, "s", Integer.toString(plan.getStyleIndex(p++)));
+				out.append(tag);
+				int cellEnd = tag.endsWith("/>") ? tagEnd + 1 : sourceRows.indexOf("</c>", tagEnd) + "</c>".length();
+				out.append(sourceRows, tagEnd + 1, cellEnd);
+				pos = cellEnd;
+			}
+		}
+		out.append(sourceRows, pos, sourceRows.length());
+
+		// rows behind the last source row:
+		while (p < planTo)
+			p = appendNewRow(out, plan, p, planTo);
+		return out.toString();
+	}
+
+	/**
+	 * Appends a row holding only planned cells, starting at plan index p. Returns the plan index behind that row.
+	 */
+	private static int appendNewRow(StringBuilder out, RowBandPlan plan, int p, int planTo) {
+		int row = plan.getRow(p);
+		out.append("<row r=\"").append(row + 1).append("\">");
+		while (p < planTo && plan.getRow(p) == row)
+			appendNewCell(out, plan, p++);
+		out.append("</row>");
+		return p;
+	}
+
+	private static void appendNewCell(StringBuilder out, RowBandPlan plan, int p) {
+		out.append("<c r=\"").append(CellReference.convertNumToColString(plan.getColumn(p))).append(plan.getRow(p) + 1)
+			.append("\" s=\"").append(plan.getStyleIndex(p)).append("\"/>");
+	}
+
+	/**
+	 * Gets the 0-based column index of a cell reference such as AB12.
+	 */
+	private static int getColumnIndex(String cellReference) {
+		int column = 0;
+		for (int i = 0; i < cellReference.length() && Character.isLetter(cellReference.charAt(i)); i++)
+			column = column * 26 + (Character.toUpperCase(cellReference.charAt(i)) - 'A' + 1);
+		return column - 1;
+	}
+
+	/**
+	 * Gets the value of an unprefixed attribute of a start tag, or null.
+	 */
+	private static String getAttribute(String tag, String name) {
+		int start = findAttribute(tag, name);
+		if (start == -1)
+			return null;
+		int valueStart = start + name.length() + 3;
+		return tag.substring(valueStart, tag.indexOf('"', valueStart));
+	}
+
+	private static String setAttribute(String tag, String name, String value) {
+		int start = findAttribute(tag, name);
+		if (start == -1) {
+			int insertAt = tag.endsWith("/>") ? tag.length() - 2 : tag.length() - 1;
+			return tag.substring(0, insertAt) + " " + name + "=\"" + value + "\"" + tag.substring(insertAt);
+		}
+		int valueStart = start + name.length() + 3;
+		return tag.substring(0, valueStart) + value + tag.substring(tag.indexOf('"', valueStart));
+	}
+
+	private static String removeAttribute(String tag, String name) {
+		int start = findAttribute(tag, name);
+		if (start == -1)
+			return tag;
+		int valueStart = start + name.length() + 3;
+		return tag.substring(0, start) + tag.substring(tag.indexOf('"', valueStart) + 1);
+	}
+
+	/**
+	 * Finds the whitespace preceding an unprefixed attribute (with double quotes, as POI writes them) in a start tag.
+	 */
+	private static int findAttribute(String tag, String name) {
+		String pattern = name + "=\"";
+		int index = tag.indexOf(pattern);
+		while (index != -1 && !Character.isWhitespace(tag.charAt(index - 1)))
+			index = tag.indexOf(pattern, index + 1);
+		return index == -1 ? -1 : index - 1;
+	}
+
+
+	/**
+	 * Minimal forward-only scanner over a character stream that keeps the not yet consumed text in a buffer.
+	 */
+	private static class TextScanner {
+		private final Reader reader;
+		private final StringBuilder buffer = new StringBuilder();
+		private final char[] readBuffer = new char[READ_BUFFER_SIZE];
+		private boolean isEndOfStream = false;
+
+		TextScanner(Reader reader) {
+			this.reader = reader;
+		}
+
+		private boolean readMore() throws IOException {
+			if (isEndOfStream)
+				return false;
+			int count = reader.read(readBuffer);
+			if (count == -1) {
+				isEndOfStream = true;
+				return false;
+			}
+			buffer.append(readBuffer, 0, count);
+			return true;
+		}
+
+		/**
+		 * Finds a string in the unconsumed text, reading as far as necessary. Returns -1 if the stream ends before.
+		 */
+		int indexOf(String s, int from) throws IOException {
+			int searchFrom = from;
+			while (true) {
+				int index = buffer.indexOf(s, searchFrom);
+				if (index != -1)
+					return index;
+				searchFrom = Math.max(from, buffer.length() - s.length() + 1);
+				if (!readMore())
+					return -1;
+			}
+		}
+
+		boolean startsWith(String s, int at) throws IOException {
+			while (buffer.length() < at + s.length())
+				if (!readMore())
+					return false;
+			for (int i = 0; i < s.length(); i++)
+				if (buffer.charAt(at + i) != s.charAt(i))
+					return false;
+			return true;
+		}
+
+		char charAt(int index) {
+			return buffer.charAt(index);
+		}
+
+		String substring(int from, int to) {
+			return buffer.substring(from, to);
+		}
+
+		void consume(int count) {
+			buffer.delete(0, count);
+		}
+
+		void transferTo(Writer writer) throws IOException {
+			writer.append(buffer);
+			buffer.setLength(0);
+			int count;
+			while ((count = reader.read(readBuffer)) != -1)
+				writer.write(readBuffer, 0, count);
+		}
+	}
+}
@@ -0,0 +1,897 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.continental.knime.xlsformatter.apply;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
+import org.knime.filehandling.core.util.CheckedExceptionSupplier;
+
+import com.continental.knime.xlsformatter.commons.ProgressMonitor;
+import com.continental.knime.xlsformatter.commons.XlsFormatterLogger;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.SheetState;
+
+/**
+ * Applies XLS Formatter states that only hold sheet-level instructions (freeze, auto-filter, column widths, row heights,
+ * hidden rows and columns, groups) by streaming the xlsx package and patching the affected worksheet XML parts directly.
+ * Neither the POI workbook model is built nor styles.xml touched, which turns minutes into seconds on large files.
+ *
+ * Note that any new cell-related instruction in XlsFormatterState needs to be excluded in isApplicable.
+ */
+public class XlsFormatterApplySheetXmlPatcher {
+
+	private final static String REL_TYPE_OFFICE_DOCUMENT_SUFFIX = "/officeDocument";
+	private final static String REL_TYPE_WORKSHEET_SUFFIX = "/worksheet";
+	private final static String BUILTIN_FILTER_DATABASE_NAME = "_xlnm._FilterDatabase";
+	private final static int MAX_OUTLINE_LEVEL = 7;
+
+	/**
+	 * POI writes this width (sheetFormatPr's baseColWidth default) for column definitions that didn't have one, e.g. after grouping.
+	 */
+	private final static String DEFAULT_BASE_COLUMN_WIDTH = "8";
+
+	/**
+	 * Children of the worksheet element in the sequence required by the SpreadsheetML schema (CT_Worksheet).
+	 */
+	private final static List<String> WORKSHEET_CHILD_SEQUENCE = Arrays.asList(
+			"sheetPr", "dimension", "sheetViews", "sheetFormatPr", "cols", "sheetData", "sheetCalcPr", "sheetProtection",
+			"protectedRanges", "scenarios", "autoFilter", "sortState", "dataConsolidate", "customSheetViews", "mergeCells",
+			"phoneticPr", "conditionalFormatting", "dataValidations", "hyperlinks", "printOptions", "pageMargins", "pageSetup",
+			"headerFooter", "rowBreaks", "colBreaks", "customProperties", "cellWatches", "ignoredErrors", "smartTags", "drawing",
+			"legacyDrawing", "legacyDrawingHF", "drawingHF", "picture", "oleObjects", "controls", "webPublishItems", "tableParts",
+			"extLst");
+
+	/**
+	 * Children of the workbook element in the sequence required by the SpreadsheetML schema (CT_Workbook).
+	 */
+	private final static List<String> WORKBOOK_CHILD_SEQUENCE = Arrays.asList(
+			"fileVersion", "fileSharing", "workbookPr", "workbookProtection", "bookViews", "sheets", "functionGroups",
+			"externalReferences", "definedNames", "calcPr", "oleSize", "customWorkbookViews", "pivotCaches", "smartTagPr",
+			"smartTagTypes", "webPublishing", "fileRecoveryPr", "webPublishObjects", "extLst");
+
+	private final static XMLEventFactory EVENT_FACTORY = XMLEventFactory.newInstance();
+
+	/**
+	 * Checks whether an XLS Formatter state only holds instructions that can be implemented by patching the sheet XML,
+	 * i.e. no cell formatting, no merge ranges (which require cells to be cleared), no tables (which require their own package part)
+	 * and no auto-sized columns (which require font metrics).
+	 */
+	public static boolean isApplicable(final XlsFormatterState xlsf) {
+		for (SheetState sheetState : xlsf.sheetStates.values())
+			if ((sheetState.cells != null && sheetState.cells.size() != 0) ||
+					(sheetState.rangeInstructions != null && sheetState.rangeInstructions.size() != 0) ||
+					(sheetState.mergeRanges != null && sheetState.mergeRanges.size() != 0) ||
+					(sheetState.fullColumns != null && sheetState.fullColumns.size() != 0) ||
+					(sheetState.fullRows != null && sheetState.fullRows.size() != 0) ||
+					(sheetState.tables != null && sheetState.tables.size() != 0) ||
+					(sheetState.columnWidths != null && sheetState.columnWidths.containsValue(null)))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Applies a sheet-level-only XLS Formatting instruction object to an xlsx file by streaming its package parts.
+	 *
+	 * @param inputFile  the input file name.
+	 * @param openInput  creates the input stream to read from (called twice).
+	 * @param openOutput create the output stream to write to.
+	 * @param xlsf       The XLS Formatting instructions object, which needs to pass isApplicable.
+	 * @param exec       The progress monitor (for aborting the operation and
+	 *                   providing progress information).
+	 * @param logger     the logger.
+	 * @return false if the input file is no package that can be patched (e.g. a legacy xls file) and nothing has been written, true otherwise.
+	 */
+	public static boolean apply(
+			final String inputFile,
+			final CheckedExceptionSupplier<InputStream, IOException> openInput,
+			final CheckedExceptionSupplier<OutputStream, IOException> openOutput,
+			final XlsFormatterState xlsf,
+			final ProgressMonitor exec, final XlsFormatterLogger logger) throws Exception {
+
+		// First pass: locate the workbook part and the worksheet parts of all sheets
+		exec.setMessage("Analyzing input file structure...");
+		WorkbookPackageInfo packageInfo = null;
+		try (InputStream inputFileStream = openInput.get()) {
+			packageInfo = readWorkbookPackageInfo(inputFileStream);
+		}
+		catch (Exception e) {
+			throw new IllegalArgumentException("Could not open XLS file (" + inputFile + "): " + e.toString() + ":" + e.getMessage(), e);
+		}
+		if (packageInfo == null) {
+			logger.debug("Input file " + inputFile + " is no xlsx package with a resolvable workbook part.");
+			return false;
+		}
+
+		// Resolve the addressed sheets to their parts
+		Map<String, SheetPatchPlan> partNameToPlan = new HashMap<String, SheetPatchPlan>();
+		Map<Integer, CellRangeAddress> sheetIndexToAutoFilterRange = new HashMap<Integer, CellRangeAddress>();
+		for (String sheetName : xlsf.sheetStates.keySet()) {
+			int sheetIndex = packageInfo.getSheetIndex(sheetName);
+			if (sheetIndex == -1)
+				throw new Exception("Sheet " + (sheetName == null ? "0" : "\"" + sheetName + "\"") + " not found in file " + inputFile);
+			if (sheetName != null && sheetIndex == 0 && xlsf.sheetStates.containsKey(null))
+				throw new Exception("Default sheet (i.e. first in sequence) and named sheet \"" + sheetName + "\" have been addressed separately. This is not supported as potentially conflicting formatting instructions could be written to the very same sheet.");
+			String partName = packageInfo.sheetPartNames.get(sheetIndex);
+			if (partName == null || partNameToPlan.containsKey(partName)) {
+				logger.debug("Sheet " + (sheetName == null ? "0" : "\"" + sheetName + "\"") + " cannot be patched directly since it is no worksheet or has been addressed with differently cased names.");
+				return false;
+			}
+			SheetState sheetState = xlsf.sheetStates.get(sheetName);
+			partNameToPlan.put(partName, new SheetPatchPlan(sheetState, packageInfo.sheetNames.get(sheetIndex)));
+			if (sheetState.autoFilterRange != null)
+				sheetIndexToAutoFilterRange.put(sheetIndex, sheetState.autoFilterRange);
+		}
+
+		// Second pass: copy all parts, patching the addressed worksheets and (for auto-filters) the workbook's defined names
+		exec.setMessage("Patching sheet-level formatting instructions...");
+		try (InputStream inputFileStream = openInput.get();
+				ZipInputStream zipIn = new ZipInputStream(new BufferedInputStream(inputFileStream));
+				OutputStream fileOut = openOutput.get();
+				ZipOutputStream zipOut = new ZipOutputStream(new BufferedOutputStream(fileOut))) {
+			ZipEntry entry;
+			while ((entry = zipIn.getNextEntry()) != null) {
+				exec.checkCanceled();
+				ZipEntry outEntry = new ZipEntry(entry.getName());
+				if (entry.getTime() != -1)
+					outEntry.setTime(entry.getTime());
+				zipOut.putNextEntry(outEntry);
+				SheetPatchPlan plan = partNameToPlan.get(entry.getName());
+				if (plan != null) {
+					exec.setMessage("Patching sheet \"" + plan.sheetName + "\"...");
+					patchWorksheet(zipIn, zipOut, plan, exec);
+				}
+				else if (entry.getName().equals(packageInfo.workbookPartName) && sheetIndexToAutoFilterRange.size() != 0)
+					patchWorkbookDefinedNames(zipIn, zipOut, sheetIndexToAutoFilterRange, packageInfo.sheetNames);
+				else
+					zipIn.transferTo(zipOut);
+				zipOut.closeEntry();
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * Location of the workbook part and its sheets within an xlsx package.
+	 */
+	private static class WorkbookPackageInfo {
+		String workbookPartName = null;
+
+		/**
+		 * Sheet names in workbook sequence.
+		 */
+		List<String> sheetNames = new ArrayList<String>();
+
+		/**
+		 * Part names of the sheets in workbook sequence, null for sheets that are no worksheets (e.g. chart sheets).
+		 */
+		List<String> sheetPartNames = new ArrayList<String>();
+
+		/**
+		 * Gets the index of a sheet like POI does, i.e. null for the first sheet and case-insensitive names otherwise. Returns -1 if not found.
+		 */
+		int getSheetIndex(String sheetName) {
+			if (sheetName == null)
+				return sheetNames.size() == 0 ? -1 : 0;
+			for (int i = 0; i < sheetNames.size(); i++)
+				if (sheetName.equalsIgnoreCase(sheetNames.get(i)))
+					return i;
+			return -1;
+		}
+	}
+
+	/**
+	 * Streams through the package once to find the workbook part and its worksheets.
+	 * @return The package info or null if the stream isn't a resolvable xlsx package.
+	 */
+	private static WorkbookPackageInfo readWorkbookPackageInfo(InputStream inputStream) throws IOException, XMLStreamException {
+
+		Map<String, byte[]> relevantParts = new HashMap<String, byte[]>();
+		String workbookPartName = null;
+		ZipInputStream zipIn = new ZipInputStream(new BufferedInputStream(inputStream));
+		ZipEntry entry;
+		while ((entry = zipIn.getNextEntry()) != null) {
+			String name = entry.getName();
+			if (name.endsWith(".rels") || name.endsWith(".xml") && name.toLowerCase().contains("workbook"))
+				relevantParts.put(name, zipIn.readAllBytes());
+
+			if (workbookPartName == null && relevantParts.containsKey("_rels/.rels"))
+				for (String[] relationship : readRelationships(relevantParts.get("_rels/.rels")).values())
+					if (relationship[0].endsWith(REL_TYPE_OFFICE_DOCUMENT_SUFFIX))
+						workbookPartName = resolvePartName("", relationship[1]);
+			if (workbookPartName != null && relevantParts.containsKey(workbookPartName) && relevantParts.containsKey(getRelationshipsPartName(workbookPartName)))
+				break; // no need to inflate the rest of the package
+		}
+		if (workbookPartName == null || !relevantParts.containsKey(workbookPartName))
+			return null;
+
+		WorkbookPackageInfo ret = new WorkbookPackageInfo();
+		ret.workbookPartName = workbookPartName;
+		byte[] workbookRels = relevantParts.get(getRelationshipsPartName(workbookPartName));
+		Map<String, String[]> relationships = workbookRels == null ? new HashMap<String, String[]>() : readRelationships(workbookRels);
+
+		XMLStreamReader reader = createInputFactory().createXMLStreamReader(new ByteArrayInputStream(relevantParts.get(workbookPartName)));
+		try {
+			while (reader.hasNext())
+				if (reader.next() == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals("sheet")) {
+					String relationshipId = null;
+					for (int i = 0; i < reader.getAttributeCount(); i++)
+						if (reader.getAttributeLocalName(i).equals("id") && reader.getAttributeNamespace(i) != null &&
+								reader.getAttributeNamespace(i).endsWith("/relationships"))
+							relationshipId = reader.getAttributeValue(i);
+					String[] relationship = relationships.get(relationshipId);
+					ret.sheetNames.add(reader.getAttributeValue(null, "name"));
+					ret.sheetPartNames.add(relationship == null || !relationship[0].endsWith(REL_TYPE_WORKSHEET_SUFFIX) ? null :
+						resolvePartName(workbookPartName, relationship[1]));
+				}
+		}
+		finally {
+			reader.close();
+		}
+		return ret;
+	}
+
+	/**
+	 * Reads a relationships part into a map of relationship ID to {type, target}.
+	 */
+	private static Map<String, String[]> readRelationships(byte[] relsPart) throws XMLStreamException {
+		Map<String, String[]> ret = new HashMap<String, String[]>();
+		XMLStreamReader reader = createInputFactory().createXMLStreamReader(new ByteArrayInputStream(relsPart));
+		try {
+			while (reader.hasNext())
+				if (reader.next() == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals("Relationship") &&
+						!"External".equals(reader.getAttributeValue(null, "TargetMode")))
+					ret.put(reader.getAttributeValue(null, "Id"), new String[] {
+							reader.getAttributeValue(null, "Type"), reader.getAttributeValue(null, "Target") });
+		}
+		finally {
+			reader.close();
+		}
+		return ret;
+	}
+
+	/**
+	 * Gets the name of the relationships part belonging to a package part, e.g. xl/_rels/workbook.xml.rels for xl/workbook.xml.
+	 */
+	private static String getRelationshipsPartName(String partName) {
+		int lastSlash = partName.lastIndexOf('/');
+		return partName.substring(0, lastSlash + 1) + "_rels/" + partName.substring(lastSlash + 1) + ".rels";
+	}
+
+	/**
+	 * Resolves a relationship target relative to its source part into a zip entry name.
+	 */
+	private static String resolvePartName(String sourcePartName, String target) {
+		if (target == null)
+			return null;
+		LinkedList<String> segments = new LinkedList<String>();
+		if (!target.startsWith("/")) {
+			segments.addAll(Arrays.asList(sourcePartName.split("/")));
+			segments.removeLast(); // the source part's file name
+		}
+		for (String segment : target.split("/"))
+			if (segment.equals(".."))
+				segments.pollLast();
+			else if (!segment.isEmpty() && !segment.equals("."))
+				segments.add(segment);
+		return String.join("/", segments);
+	}
+
+
+	/**
+	 * Row or column specific patch instruction.
+	 */
+	private static class LinePatch {
+		String size = null; // width in characters for columns, height in points for rows
+		boolean hidden = false;
+		int outlineLevelIncrement = 0;
+		boolean collapsed = false;
+	}
+
+	/**
+	 * Precomputed patch instructions for one worksheet. Row and column keys are 1-based as in the sheet XML.
+	 */
+	private static class SheetPatchPlan {
+		String sheetName;
+		CellAddress freezeSheetAtTopLeftCornerOfCell;
+		CellRangeAddress autoFilterRange;
+		TreeMap<Integer, LinePatch> rows = new TreeMap<Integer, LinePatch>();
+		TreeMap<Integer, LinePatch> columns = new TreeMap<Integer, LinePatch>();
+		int maxRowOutlineLevelIncrement = 0;
+		int maxColumnOutlineLevelIncrement = 0;
+
+		SheetPatchPlan(SheetState sheetState, String sheetName) {
+			this.sheetName = sheetName;
+			freezeSheetAtTopLeftCornerOfCell = sheetState.freezeSheetAtTopLeftCornerOfCell;
+			autoFilterRange = sheetState.autoFilterRange;
+
+			// groups (collapsing hides the group and marks the row / column after it, just as POI does):
+			if (sheetState.columnGroups != null)
+				for (Map.Entry<Pair<Integer, Integer>, Boolean> group : sheetState.columnGroups.entrySet())
+					maxColumnOutlineLevelIncrement = Math.max(maxColumnOutlineLevelIncrement, addGroup(columns, group));
+			if (sheetState.rowGroups != null)
+				for (Map.Entry<Pair<Integer, Integer>, Boolean> group : sheetState.rowGroups.entrySet())
+					maxRowOutlineLevelIncrement = Math.max(maxRowOutlineLevelIncrement, addGroup(rows, group));
+
+			if (sheetState.hiddenColumns != null)
+				for (Integer c : sheetState.hiddenColumns)
+					getLinePatch(columns, c + 1).hidden = true;
+			if (sheetState.hiddenRows != null)
+				for (Integer r : sheetState.hiddenRows)
+					getLinePatch(rows, r + 1).hidden = true;
+			if (sheetState.rowHeights != null)
+				for (Map.Entry<Integer, Double> rowHeight : sheetState.rowHeights.entrySet())
+					getLinePatch(rows, rowHeight.getKey() + 1).size = formatNumber(rowHeight.getValue());
+			if (sheetState.columnWidths != null)
+				for (Map.Entry<Integer, Double> columnWidth : sheetState.columnWidths.entrySet())
+					getLinePatch(columns, columnWidth.getKey() + 1).size = formatNumber(
+							XlsFormatterApplyLogic.xlsToPoiStandardColumnWidthConversion(columnWidth.getValue()) / 256d);
+		}
+
+		/**
+		 * Adds a <<from, to>, isCollapsed> group and returns the highest outline level increment within its range.
+		 */
+		private static int addGroup(TreeMap<Integer, LinePatch> lines, Map.Entry<Pair<Integer, Integer>, Boolean> group) {
+			int maxIncrement = 0;
+			for (int i = group.getKey().getLeft() + 1; i <= group.getKey().getRight() + 1; i++) {
+				LinePatch patch = getLinePatch(lines, i);
+				patch.outlineLevelIncrement++;
+				maxIncrement = Math.max(maxIncrement, patch.outlineLevelIncrement);
+				if (group.getValue())
+					patch.hidden = true;
+			}
+			if (group.getValue())
+				getLinePatch(lines, group.getKey().getRight() + 2).collapsed = true;
+			return maxIncrement;
+		}
+
+		private static LinePatch getLinePatch(TreeMap<Integer, LinePatch> lines, int index) {
+			LinePatch patch = lines.get(index);
+			if (patch == null) {
+				patch = new LinePatch();
+				lines.put(index, patch);
+			}
+			return patch;
+		}
+	}
+
+
+	/**
+	 * Streams a worksheet part from in to out while implementing the plan's instructions.
+	 */
+	private static void patchWorksheet(InputStream in, OutputStream out, SheetPatchPlan plan, ProgressMonitor exec) throws Exception {
+
+		XMLEventReader reader = createInputFactory().createXMLEventReader(shieldFromClosing(in));
+		XMLEventWriter writer = XMLOutputFactory.newInstance().createXMLEventWriter(shieldFromClosing(out), "UTF-8");
+
+		List<String> pendingSections = new ArrayList<String>(); // sections that need to be written if not contained in the source
+		if (plan.freezeSheetAtTopLeftCornerOfCell != null)
+			pendingSections.add("sheetViews");
+		if (plan.maxRowOutlineLevelIncrement != 0 || plan.maxColumnOutlineLevelIncrement != 0)
+			pendingSections.add("sheetFormatPr");
+		if (plan.columns.size() != 0)
+			pendingSections.add("cols");
+		if (plan.autoFilterRange != null)
+			pendingSections.add("autoFilter");
+
+		TreeMap<Integer, LinePatch> pendingRows = new TreeMap<Integer, LinePatch>(plan.rows);
+		QName rootName = null;
+		String baseColumnWidth = DEFAULT_BASE_COLUMN_WIDTH;
+		boolean isSheetDataPassed = false;
+		boolean isInSheetData = false;
+		int lastRowIndex = 0;
+		int depth = 0;
+
+		while (reader.hasNext()) {
+			XMLEvent event = reader.nextEvent();
+
+			if (event.isStartElement()) {
+				StartElement start = event.asStartElement();
+				depth++;
+				String name = start.getName().getLocalPart();
+
+				if (depth == 1)
+					rootName = start.getName();
+
+				else if (depth == 2) {
+					int sequenceIndex = WORKSHEET_CHILD_SEQUENCE.indexOf(name);
+					if (sequenceIndex == -1 && isSheetDataPassed) // e.g. mc:AlternateContent wrapping controls, which are positioned behind the auto-filter
+						sequenceIndex = WORKSHEET_CHILD_SEQUENCE.indexOf("sortState");
+					writePendingWorksheetSections(writer, rootName, pendingSections, sequenceIndex, plan, baseColumnWidth);
+					pendingSections.remove(name);
+
+					switch (name) {
+					case "sheetViews":
+						if (plan.freezeSheetAtTopLeftCornerOfCell != null) {
+							writeFrozenSheetViews(writer, readElement(reader, start), plan.freezeSheetAtTopLeftCornerOfCell);
+							depth--;
+							continue;
+						}
+						break;
+					case "sheetFormatPr":
+						Attribute baseColWidthAttribute = start.getAttributeByName(new QName("baseColWidth"));
+						if (baseColWidthAttribute != null)
+							baseColumnWidth = baseColWidthAttribute.getValue();
+						if (plan.maxRowOutlineLevelIncrement != 0 || plan.maxColumnOutlineLevelIncrement != 0) {
+							Map<QName, String> attributes = getAttributes(start);
+							incrementOutlineLevel(attributes, "outlineLevelRow", plan.maxRowOutlineLevelIncrement);
+							incrementOutlineLevel(attributes, "outlineLevelCol", plan.maxColumnOutlineLevelIncrement);
+							event = createStartElement(start, attributes);
+						}
+						break;
+					case "cols":
+						if (plan.columns.size() != 0) {
+							writeColumns(writer, rootName, readElement(reader, start), plan.columns, baseColumnWidth);
+							depth--;
+							continue;
+						}
+						break;
+					case "sheetData":
+						isInSheetData = true;
+						break;
+					case "autoFilter":
+						if (plan.autoFilterRange != null) { // keep any existing filter criteria, just as POI does
+							Map<QName, String> attributes = getAttributes(start);
+							attributes.put(new QName("ref"), plan.autoFilterRange.formatAsString());
+							event = createStartElement(start, attributes);
+						}
+						break;
+					default:
+						break;
+					}
+				}
+
+				else if (depth == 3 && isInSheetData && name.equals("row")) {
+					exec.checkCanceled();
+					Attribute rowIndexAttribute = start.getAttributeByName(new QName("r"));
+					int rowIndex = rowIndexAttribute == null ? lastRowIndex + 1 : Integer.parseInt(rowIndexAttribute.getValue());
+					while (pendingRows.size() != 0 && pendingRows.firstKey() < rowIndex) { // rows without content in the source
+						Map.Entry<Integer, LinePatch> pendingRow = pendingRows.pollFirstEntry();
+						Map<QName, String> attributes = new LinkedHashMap<QName, String>();
+						attributes.put(new QName("r"), Integer.toString(pendingRow.getKey()));
+						applyLinePatch(attributes, pendingRow.getValue(), "ht", "customHeight");
+						writeEmptyElement(writer, start.getName(), attributes);
+					}
+					LinePatch patch = pendingRows.remove(rowIndex);
+					if (patch != null) {
+						Map<QName, String> attributes = getAttributes(start);
+						applyLinePatch(attributes, patch, "ht", "customHeight");
+						event = createStartElement(start, attributes);
+					}
+					lastRowIndex = rowIndex;
+				}
+			}
+
+			else if (event.isEndElement()) {
+				if (depth == 2 && isInSheetData) {
+					QName rowName = new QName(rootName.getNamespaceURI(), "row", rootName.getPrefix());
+					for (Map.Entry<Integer, LinePatch> pendingRow : pendingRows.entrySet()) {
+						Map<QName, String> attributes = new LinkedHashMap<QName, String>();
+						attributes.put(new QName("r"), Integer.toString(pendingRow.getKey()));
+						applyLinePatch(attributes, pendingRow.getValue(), "ht", "customHeight");
+						writeEmptyElement(writer, rowName, attributes);
+					}
+					pendingRows.clear();
+					isInSheetData = false;
+					isSheetDataPassed = true;
+				}
+				else if (depth == 1)
+					writePendingWorksheetSections(writer, rootName, pendingSections, Integer.MAX_VALUE, plan, baseColumnWidth);
+				depth--;
+			}
+
+			writer.add(event);
+		}
+		writer.flush();
+		writer.close();
+		reader.close();
+	}
+
+	/**
+	 * Writes all pending sections that precede the given schema sequence index and removes them from the list.
+	 */
+	private static void writePendingWorksheetSections(XMLEventWriter writer, QName rootName, List<String> pendingSections,
+			int sequenceIndex, SheetPatchPlan plan, String baseColumnWidth) throws XMLStreamException {
+		Iterator<String> iterator = pendingSections.iterator();
+		while (iterator.hasNext()) {
+			String section = iterator.next();
+			if (WORKSHEET_CHILD_SEQUENCE.indexOf(section) >= sequenceIndex || sequenceIndex == -1)
+				continue;
+			iterator.remove();
+			switch (section) {
+			case "sheetViews":
+				if (plan.freezeSheetAtTopLeftCornerOfCell.getRow() == 0 && plan.freezeSheetAtTopLeftCornerOfCell.getColumn() == 0)
+					break; // freezing at A1 means no pane at all
+				QName sheetViewName = getSiblingName(rootName, "sheetView");
+				List<XMLEvent> sheetViews = new ArrayList<XMLEvent>();
+				Map<QName, String> attributes = new LinkedHashMap<QName, String>();
+				attributes.put(new QName("workbookViewId"), "0");
+				sheetViews.add(EVENT_FACTORY.createStartElement(getSiblingName(rootName, "sheetViews"), null, null));
+				sheetViews.add(EVENT_FACTORY.createStartElement(sheetViewName, createAttributes(attributes).iterator(), null));
+				sheetViews.add(EVENT_FACTORY.createEndElement(sheetViewName, null));
+				sheetViews.add(EVENT_FACTORY.createEndElement(getSiblingName(rootName, "sheetViews"), null));
+				writeFrozenSheetViews(writer, sheetViews, plan.freezeSheetAtTopLeftCornerOfCell);
+				break;
+			case "sheetFormatPr":
+				Map<QName, String> formatAttributes = new LinkedHashMap<QName, String>();
+				formatAttributes.put(new QName("defaultRowHeight"), "15");
+				incrementOutlineLevel(formatAttributes, "outlineLevelRow", plan.maxRowOutlineLevelIncrement);
+				incrementOutlineLevel(formatAttributes, "outlineLevelCol", plan.maxColumnOutlineLevelIncrement);
+				writeEmptyElement(writer, getSiblingName(rootName, "sheetFormatPr"), formatAttributes);
+				break;
+			case "cols":
+				List<XMLEvent> cols = new ArrayList<XMLEvent>();
+				cols.add(EVENT_FACTORY.createStartElement(getSiblingName(rootName, "cols"), null, null));
+				cols.add(EVENT_FACTORY.createEndElement(getSiblingName(rootName, "cols"), null));
+				writeColumns(writer, rootName, cols, plan.columns, baseColumnWidth);
+				break;
+			case "autoFilter":
+				Map<QName, String> filterAttributes = new LinkedHashMap<QName, String>();
+				filterAttributes.put(new QName("ref"), plan.autoFilterRange.formatAsString());
+				writeEmptyElement(writer, getSiblingName(rootName, "autoFilter"), filterAttributes);
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Writes a buffered sheetViews element with the last sheet view (the one POI modifies) frozen at the given cell.
+	 */
+	private static void writeFrozenSheetViews(XMLEventWriter writer, List<XMLEvent> sheetViews, CellAddress freezeAt) throws XMLStreamException {
+
+		int lastSheetViewIndex = -1;
+		for (int i = 0; i < sheetViews.size(); i++)
+			if (sheetViews.get(i).isStartElement() && sheetViews.get(i).asStartElement().getName().getLocalPart().equals("sheetView"))
+				lastSheetViewIndex = i;
+
+		int depth = 0;
+		boolean isInTargetView = false;
+		int skippedElementDepth = -1;
+		for (int i = 0; i < sheetViews.size(); i++) {
+			XMLEvent event = sheetViews.get(i);
+			if (event.isStartElement()) {
+				depth++;
+				StartElement start = event.asStartElement();
+				if (i == lastSheetViewIndex) {
+					isInTargetView = true;
+					Map<QName, String> attributes = getAttributes(start);
+					attributes.remove(new QName("topLeftCell")); // the freeze pane is defined relative to the top left of the sheet
+					writer.add(createStartElement(start, attributes));
+
+					if (freezeAt.getRow() != 0 || freezeAt.getColumn() != 0) {
+						String activePane = freezeAt.getColumn() == 0 ? "bottomLeft" : freezeAt.getRow() == 0 ? "topRight" : "bottomRight";
+						Map<QName, String> paneAttributes = new LinkedHashMap<QName, String>();
+						if (freezeAt.getColumn() != 0)
+							paneAttributes.put(new QName("xSplit"), Integer.toString(freezeAt.getColumn()));
+						if (freezeAt.getRow() != 0)
+							paneAttributes.put(new QName("ySplit"), Integer.toString(freezeAt.getRow()));
+						paneAttributes.put(new QName("topLeftCell"), new CellReference(freezeAt.getRow(), freezeAt.getColumn()).formatAsString());
+						paneAttributes.put(new QName("activePane"), activePane);
+						paneAttributes.put(new QName("state"), "frozen");
+						writeEmptyElement(writer, getSiblingName(start.getName(), "pane"), paneAttributes);
+						Map<QName, String> selectionAttributes = new LinkedHashMap<QName, String>();
+						selectionAttributes.put(new QName("pane"), activePane);
+						writeEmptyElement(writer, getSiblingName(start.getName(), "selection"), selectionAttributes);
+					}
+					continue;
+				}
+				if (isInTargetView && depth == 3 && skippedElementDepth == -1 &&
+						(start.getName().getLocalPart().equals("pane") || start.getName().getLocalPart().equals("selection")))
+					skippedElementDepth = depth; // replaced by the above
+			}
+			boolean isSkipped = skippedElementDepth != -1;
+			if (event.isEndElement()) {
+				if (depth == skippedElementDepth)
+					skippedElementDepth = -1;
+				else if (depth == 2)
+					isInTargetView = false;
+				depth--;
+			}
+			if (!isSkipped)
+				writer.add(event);
+		}
+	}
+
+	/**
+	 * Writes a buffered cols element merged with the plan's column instructions. Column definitions covering several columns
+	 * are split where necessary and adjacent identical definitions joined again.
+	 */
+	private static void writeColumns(XMLEventWriter writer, QName rootName, List<XMLEvent> cols, TreeMap<Integer, LinePatch> columnPatches,
+			String baseColumnWidth) throws XMLStreamException {
+
+		QName minName = new QName("min");
+		QName maxName = new QName("max");
+		QName colName = getSiblingName(rootName, "col");
+		TreeMap<Integer, Map<QName, String>> columns = new TreeMap<Integer, Map<QName, String>>(); // 1-based column to attributes w/o min and max
+		for (XMLEvent event : cols)
+			if (event.isStartElement() && event.asStartElement().getName().getLocalPart().equals("col")) {
+				colName = event.asStartElement().getName();
+				Map<QName, String> attributes = getAttributes(event.asStartElement());
+				int min = Integer.parseInt(attributes.remove(minName));
+				int max = Integer.parseInt(attributes.remove(maxName));
+				for (int c = min; c <= max; c++)
+					columns.put(c, attributes);
+			}
+
+		for (Map.Entry<Integer, LinePatch> columnPatch : columnPatches.entrySet()) {
+			Map<QName, String> attributes = columns.containsKey(columnPatch.getKey()) ?
+					new LinkedHashMap<QName, String>(columns.get(columnPatch.getKey())) : new LinkedHashMap<QName, String>();
+			applyLinePatch(attributes, columnPatch.getValue(), "width", "customWidth");
+			if (!attributes.containsKey(new QName("width")))
+				attributes.put(new QName("width"), baseColumnWidth);
+			columns.put(columnPatch.getKey(), attributes);
+		}
+
+		writer.add(cols.get(0));
+		Map.Entry<Integer, Map<QName, String>> runStart = columns.firstEntry();
+		Map.Entry<Integer, Map<QName, String>> runEnd = runStart;
+		for (Map.Entry<Integer, Map<QName, String>> column : columns.entrySet()) {
+			if (column.getKey().intValue() == runStart.getKey().intValue())
+				continue;
+			if (column.getKey().intValue() == runEnd.getKey().intValue() + 1 && column.getValue().equals(runStart.getValue())) {
+				runEnd = column;
+				continue;
+			}
+			writeColumn(writer, colName, runStart.getKey(), runEnd.getKey(), runStart.getValue());
+			runStart = column;
+			runEnd = column;
+		}
+		writeColumn(writer, colName, runStart.getKey(), runEnd.getKey(), runStart.getValue());
+		writer.add(cols.get(cols.size() - 1));
+	}
+
+	private static void writeColumn(XMLEventWriter writer, QName colName, int min, int max, Map<QName, String> attributes) throws XMLStreamException {
+		Map<QName, String> allAttributes = new LinkedHashMap<QName, String>();
+		allAttributes.put(new QName("min"), Integer.toString(min));
+		allAttributes.put(new QName("max"), Integer.toString(max));
+		allAttributes.putAll(attributes);
+		writeEmptyElement(writer, colName, allAttributes);
+	}
+
+	/**
+	 * Applies a row or column patch to the attributes of a row or col element.
+	 */
+	private static void applyLinePatch(Map<QName, String> attributes, LinePatch patch, String sizeAttribute, String customSizeAttribute) {
+		if (patch.size != null) {
+			attributes.put(new QName(sizeAttribute), patch.size);
+			attributes.put(new QName(customSizeAttribute), "1");
+		}
+		if (patch.hidden)
+			attributes.put(new QName("hidden"), "1");
+		incrementOutlineLevel(attributes, "outlineLevel", patch.outlineLevelIncrement);
+		if (patch.collapsed)
+			attributes.put(new QName("collapsed"), "1");
+	}
+
+	private static void incrementOutlineLevel(Map<QName, String> attributes, String attribute, int increment) {
+		if (increment == 0)
+			return;
+		QName name = new QName(attribute);
+		int level = attributes.containsKey(name) ? Integer.parseInt(attributes.get(name)) : 0;
+		attributes.put(name, Integer.toString(Math.min(MAX_OUTLINE_LEVEL, level + increment)));
+	}
+
+
+	/**
+	 * Streams the workbook part from in to out while (re-)defining the hidden _FilterDatabase names that Excel expects for auto-filters.
+	 */
+	private static void patchWorkbookDefinedNames(InputStream in, OutputStream out, Map<Integer, CellRangeAddress> sheetIndexToAutoFilterRange,
+			List<String> sheetNames) throws XMLStreamException {
+
+		XMLEventReader reader = createInputFactory().createXMLEventReader(shieldFromClosing(in));
+		XMLEventWriter writer = XMLOutputFactory.newInstance().createXMLEventWriter(shieldFromClosing(out), "UTF-8");
+		QName rootName = null;
+		boolean isDefinedNamesWritten = false;
+		int depth = 0;
+
+		while (reader.hasNext()) {
+			XMLEvent event = reader.nextEvent();
+			if (event.isStartElement()) {
+				StartElement start = event.asStartElement();
+				depth++;
+				if (depth == 1)
+					rootName = start.getName();
+				else if (depth == 2 && !isDefinedNamesWritten) {
+					int sequenceIndex = WORKBOOK_CHILD_SEQUENCE.indexOf(start.getName().getLocalPart());
+					if (sequenceIndex > WORKBOOK_CHILD_SEQUENCE.indexOf("definedNames")) {
+						writer.add(EVENT_FACTORY.createStartElement(getSiblingName(rootName, "definedNames"), null, null));
+						writeFilterDatabaseNames(writer, rootName, sheetIndexToAutoFilterRange, sheetNames);
+						writer.add(EVENT_FACTORY.createEndElement(getSiblingName(rootName, "definedNames"), null));
+						isDefinedNamesWritten = true;
+					}
+				}
+				else if (depth == 3 && start.getName().getLocalPart().equals("definedName")) {
+					Attribute name = start.getAttributeByName(new QName("name"));
+					Attribute localSheetId = start.getAttributeByName(new QName("localSheetId"));
+					if (name != null && name.getValue().equals(BUILTIN_FILTER_DATABASE_NAME) && localSheetId != null &&
+							sheetIndexToAutoFilterRange.containsKey(Integer.parseInt(localSheetId.getValue()))) {
+						readElement(reader, start); // replaced below
+						depth--;
+						continue;
+					}
+				}
+			}
+			else if (event.isEndElement()) {
+				if (depth == 2 && event.asEndElement().getName().getLocalPart().equals("definedNames")) {
+					writeFilterDatabaseNames(writer, rootName, sheetIndexToAutoFilterRange, sheetNames);
+					isDefinedNamesWritten = true;
+				}
+				else if (depth == 1 && !isDefinedNamesWritten) {
+					writer.add(EVENT_FACTORY.createStartElement(getSiblingName(rootName, "definedNames"), null, null));
+					writeFilterDatabaseNames(writer, rootName, sheetIndexToAutoFilterRange, sheetNames);
+					writer.add(EVENT_FACTORY.createEndElement(getSiblingName(rootName, "definedNames"), null));
+				}
+				depth--;
+			}
+			writer.add(event);
+		}
+		writer.flush();
+		writer.close();
+		reader.close();
+	}
+
+	private static void writeFilterDatabaseNames(XMLEventWriter writer, QName rootName, Map<Integer, CellRangeAddress> sheetIndexToAutoFilterRange,
+			List<String> sheetNames) throws XMLStreamException {
+		QName definedNameName = getSiblingName(rootName, "definedName");
+		for (Map.Entry<Integer, CellRangeAddress> autoFilter : new TreeMap<Integer, CellRangeAddress>(sheetIndexToAutoFilterRange).entrySet()) {
+			CellRangeAddress range = autoFilter.getValue();
+			Map<QName, String> attributes = new LinkedHashMap<QName, String>();
+			attributes.put(new QName("name"), BUILTIN_FILTER_DATABASE_NAME);
+			attributes.put(new QName("localSheetId"), Integer.toString(autoFilter.getKey()));
+			attributes.put(new QName("hidden"), "1");
+			writer.add(EVENT_FACTORY.createStartElement(definedNameName, createAttributes(attributes).iterator(), null));
+			writer.add(EVENT_FACTORY.createCharacters(
+					new CellReference(sheetNames.get(autoFilter.getKey()), range.getFirstRow(), range.getFirstColumn(), true, true).formatAsString() + ":" +
+					new CellReference(null, range.getLastRow(), range.getLastColumn(), true, true).formatAsString()));
+			writer.add(EVENT_FACTORY.createEndElement(definedNameName, null));
+		}
+	}
+
+
+	/**
+	 * Reads the remainder of an element whose start has just been read, returning all its events incl. start and end.
+	 */
+	private static List<XMLEvent> readElement(XMLEventReader reader, StartElement start) throws XMLStreamException {
+		List<XMLEvent> ret = new ArrayList<XMLEvent>();
+		ret.add(start);
+		int depth = 1;
+		while (depth != 0) {
+			XMLEvent event = reader.nextEvent();
+			if (event.isStartElement())
+				depth++;
+			else if (event.isEndElement())
+				depth--;
+			ret.add(event);
+		}
+		return ret;
+	}
+
+	/**
+	 * Wraps a zip entry stream so that closing an XML reader on it (which some StAX implementations propagate) doesn't close the zip.
+	 */
+	private static InputStream shieldFromClosing(InputStream in) {
+		return new FilterInputStream(in) {
+			@Override
+			public void close() {}
+		};
+	}
+
+	/**
+	 * Wraps a zip entry stream so that closing an XML writer on it doesn't close the zip.
+	 */
+	private static OutputStream shieldFromClosing(OutputStream out) {
+		return new FilterOutputStream(out) {
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len);
+			}
+
+			@Override
+			public void close() throws IOException {
+				flush();
+			}
+		};
+	}
+
+	private static XMLInputFactory createInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		return factory;
+	}
+
+	/**
+	 * Gets the qualified name of an element in the same namespace (and with the same prefix) as the given one.
+	 */
+	private static QName getSiblingName(QName name, String localPart) {
+		return new QName(name.getNamespaceURI(), localPart, name.getPrefix());
+	}
+
+	private static Map<QName, String> getAttributes(StartElement start) {
+		Map<QName, String> ret = new LinkedHashMap<QName, String>();
+		Iterator<Attribute> iterator = start.getAttributes();
+		while (iterator.hasNext()) {
+			Attribute attribute = iterator.next();
+			ret.put(attribute.getName(), attribute.getValue());
+		}
+		return ret;
+	}
+
+	private static List<Attribute> createAttributes(Map<QName, String> attributes) {
+		List<Attribute> ret = new ArrayList<Attribute>();
+		for (Map.Entry<QName, String> attribute : attributes.entrySet())
+			ret.add(EVENT_FACTORY.createAttribute(attribute.getKey(), attribute.getValue()));
+		return ret;
+	}
+
+	private static StartElement createStartElement(StartElement original, Map<QName, String> attributes) {
+		return EVENT_FACTORY.createStartElement(original.getName(), createAttributes(attributes).iterator(), original.getNamespaces());
+	}
+
+	private static void writeEmptyElement(XMLEventWriter writer, QName name, Map<QName, String> attributes) throws XMLStreamException {
+		writer.add(EVENT_FACTORY.createStartElement(name, createAttributes(attributes).iterator(), null));
+		writer.add(EVENT_FACTORY.createEndElement(name, null));
+	}
+
+	/**
+	 * Formats a number for the sheet XML without superfluous decimals.
+	 */
+	private static String formatNumber(double value) {
+		return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+	}
+}
@@ -0,0 +1,483 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.continental.knime.xlsformatter.apply;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.poi.common.usermodel.HyperlinkType;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.ClientAnchor;
+import org.apache.poi.ss.usermodel.CreationHelper;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.Drawing;
+import org.apache.poi.ss.usermodel.Hyperlink;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.knime.filehandling.core.util.CheckedExceptionSupplier;
+
+import com.continental.knime.xlsformatter.commons.ProgressMonitor;
+import com.continental.knime.xlsformatter.commons.ProgressReporter;
+import com.continental.knime.xlsformatter.commons.WarningMessageContainer;
+import com.continental.knime.xlsformatter.commons.XlsFormatterControlTableValidator;
+import com.continental.knime.xlsformatter.commons.XlsFormatterLogger;
+import com.continental.knime.xlsformatter.porttype.CellMap;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.CellDataType;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.CellState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.FormattingRecord;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.SheetState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.TableDefinition;
+
+/**
+ * Holds the logic how to write a data table and collected formatting instructions into a new XLSX file in one sequential pass.
+ * Rows are streamed via POI's SXSSF model, so that only a small window of rows is held in memory at a time and each cell's value
+ * and style are written together.
+ */
+public class XlsFormatterApplyStreamingWriter {
+
+	/**
+	 * Number of rows SXSSF keeps in memory before flushing them to its temporary sheet file.
+	 */
+	private final static int ROW_ACCESS_WINDOW_SIZE = 100;
+
+	/**
+	 * A table to write, whose rows are streamed one at a time (see XlsFormatterApplyDataTableSource for KNIME data tables).
+	 */
+	public interface TableSource {
+
+		int getColumnCount();
+
+		String getColumnName(int column);
+
+		long size();
+
+		/**
+		 * Gets the date/time types of the values a column can hold, which need a date/time number format to be displayed as such.
+		 */
+		Set<CellDataType> getDateTypes(int column);
+
+		/**
+		 * Opens an iterator over the table's rows, which is closed once all rows have been written.
+		 */
+		RowIterator iterator();
+	}
+
+	/**
+	 * An iterator over the rows of a TableSource.
+	 */
+	public interface RowIterator extends Iterator<RowSource>, AutoCloseable {
+
+		@Override
+		void close();
+	}
+
+	/**
+	 * A row of a TableSource.
+	 */
+	public interface RowSource {
+
+		boolean isMissing(int column);
+
+		/**
+		 * Sets the value of a column to a POI cell. Data types without XLS counterpart are written as their String representation.
+		 * @return The date/time type of the written value (requiring a number format to be displayed as such) or null.
+		 */
+		CellDataType setCellValue(int column, Cell cell);
+	}
+
+	/**
+	 * Writes a data table into a new xlsx file with a single sheet, applying an XLS Formatting instruction object on the fly.
+	 * Cell addresses of the formatting instructions refer to the written sheet, i.e. the column header (if written) is in row 1.
+	 *
+	 * @param table             The table to write.
+	 * @param sheetName         The name of the sheet to create.
+	 * @param writeColumnHeader Whether the column names shall be written as the first row.
+	 * @param openOutput        create the output stream to write to.
+	 * @param xlsf              The XLS Formatting instructions object.
+	 * @param exec              The progress monitor (for aborting the operation and
+	 *                          providing progress information).
+	 * @param logger            the logger.
+	 */
+	public static void write(
+			final TableSource table,
+			final String sheetName,
+			final boolean writeColumnHeader,
+			final CheckedExceptionSupplier<OutputStream, IOException> openOutput,
+			final XlsFormatterState xlsf,
+			WarningMessageContainer warningMessageContainer,
+			final ProgressMonitor exec, final XlsFormatterLogger logger) throws Exception {
+
+		// Find the sheet state addressing the written sheet (either the default sheet or the sheet by its name):
+		String sheetStateKey = null;
+		SheetState xlsfs = null;
+		for (String stateSheetName : xlsf.sheetStates.keySet()) {
+			if (stateSheetName != null && !stateSheetName.equalsIgnoreCase(sheetName))
+				throw new Exception("Sheet \"" + stateSheetName + "\" not found in the written file, which only holds sheet \"" + sheetName + "\".");
+			if (xlsfs != null)
+				throw new Exception("Default sheet (i.e. first in sequence) and named sheet \"" + sheetName + "\" have been addressed separately. This is not supported as potentially conflicting formatting instructions could be written to the very same sheet.");
+			sheetStateKey = stateSheetName;
+			xlsfs = xlsf.sheetStates.get(stateSheetName);
+		}
+		if (xlsfs == null)
+			xlsfs = xlsf.new SheetState();
+
+		// Resolve range instructions and the full-column and full-row instructions of cells with instructions of their own (all other written
+		// cells get the instructions of their full row or column while streaming their row):
+		XlsFormatterState resolvedXlsf = XlsFormatterApplyFullRangeResolver.resolve(xlsf);
+		if (resolvedXlsf.sheetStates.containsKey(sheetStateKey))
+			xlsfs = resolvedXlsf.sheetStates.get(sheetStateKey);
+
+		SXSSFWorkbook wb = new SXSSFWorkbook(ROW_ACCESS_WINDOW_SIZE);
+		try {
+			CreationHelper createHelper = wb.getCreationHelper();
+
+			// Derive and generate necessary POI styles (in the backing XSSF workbook, whose style table the streamed sheet refers to), including
+			// the copies with a date/time number format for the styles without number format in columns of date/time values:
+			exec.setMessage("Adding necessary styles...");
+			Map<Integer, Set<CellDataType>> dateTypesByColumn = new HashMap<Integer, Set<CellDataType>>();
+			for (int c = 0; c < table.getColumnCount(); c++)
+				if (table.getDateTypes(c).size() != 0)
+					dateTypesByColumn.put(c, table.getDateTypes(c));
+			XlsFormatterApplyLogic.StyleAnalysisResult analysisResult = XlsFormatterApplyLogic.deriveNecessaryStyles(wb.getXSSFWorkbook(), resolvedXlsf, false, dateTypesByColumn, exec, logger);
+			Map<Long, CellStyle> dateStyles = new HashMap<Long, CellStyle>(); // by base style index << 8 | date/time type ordinal
+			for (Map.Entry<Pair<Integer, CellDataType>, Integer> dateStyle : analysisResult.mapBaseStyleToDateStyleId.entrySet()) {
+				int baseStyleIndex = dateStyle.getKey().getLeft() == null ? 0 : Short.toUnsignedInt(analysisResult.mapStyleIdToPoiStyle.get(dateStyle.getKey().getLeft()).getIndex());
+				dateStyles.put(((long)baseStyleIndex << 8) | dateStyle.getKey().getRight().ordinal(), analysisResult.mapStyleIdToPoiStyle.get(dateStyle.getValue()));
+			}
+			CellMap<Integer> cellToStyleIndex = new CellMap<Integer>(xlsfs.cells.size());
+			for (long cellKey : xlsfs.cells.getKeys()) {
+				Integer styleId = analysisResult.getCellStyleId(sheetStateKey, cellKey);
+				cellToStyleIndex.put(cellKey, styleId == null ? 0 : Short.toUnsignedInt(analysisResult.mapStyleIdToPoiStyle.get(styleId).getIndex()));
+			}
+			XlsFormatterApplyRowBandWriter.RowBandPlan plan = new XlsFormatterApplyRowBandWriter.RowBandPlan(cellToStyleIndex); // row-major order of the cell instructions
+			cellToStyleIndex = null;
+
+			SXSSFSheet sheet = wb.createSheet(sheetName);
+			XSSFSheet backingSheet = wb.getXSSFWorkbook().getSheet(sheetName);
+
+			// full-column instructions are implemented as column default style, full-row instructions as row style while streaming:
+			Map<Integer, CellStyle> columnStyles = new HashMap<Integer, CellStyle>();
+			for (Integer column : xlsfs.fullColumns.keySet()) {
+				Integer styleId = analysisResult.mapFullColumnToStyleId.get(Pair.of(sheetStateKey, column));
+				if (styleId != null) {
+					sheet.setDefaultColumnStyle(column, analysisResult.mapStyleIdToPoiStyle.get(styleId));
+					columnStyles.put(column, analysisResult.mapStyleIdToPoiStyle.get(styleId));
+				}
+			}
+			Map<Integer, CellStyle> rowStyles = new HashMap<Integer, CellStyle>();
+			for (Integer rowIndex : xlsfs.fullRows.keySet()) {
+				Integer styleId = analysisResult.mapFullRowToStyleId.get(Pair.of(sheetStateKey, rowIndex));
+				if (styleId != null)
+					rowStyles.put(rowIndex, analysisResult.mapStyleIdToPoiStyle.get(styleId));
+			}
+
+			// columns to auto-size need to be tracked before their rows are flushed:
+			for (Map.Entry<Integer, Double> columnWidth : xlsfs.columnWidths.entrySet())
+				if (columnWidth.getValue() == null)
+					sheet.trackColumnForAutoSizing(columnWidth.getKey());
+
+			// merge ranges by first row, in order to blank their covered cells while streaming:
+			List<CellRangeAddress> pendingMergeRanges = new ArrayList<CellRangeAddress>(xlsfs.mergeRanges);
+			pendingMergeRanges.sort(Comparator.comparingInt(CellRangeAddress::getFirstRow));
+			List<CellRangeAddress> activeMergeRanges = new ArrayList<CellRangeAddress>();
+			int nextMergeRange = 0;
+
+			// row groups by first row alike, in order to derive the outline level of each row from the groups covering it:
+			List<Map.Entry<Pair<Integer, Integer>, Boolean>> pendingRowGroups = new ArrayList<Map.Entry<Pair<Integer, Integer>, Boolean>>(xlsfs.rowGroups.entrySet()); // <from, to>, collapsed
+			pendingRowGroups.sort(Comparator.comparingInt(group -> group.getKey().getLeft()));
+			List<Map.Entry<Pair<Integer, Integer>, Boolean>> activeRowGroups = new ArrayList<Map.Entry<Pair<Integer, Integer>, Boolean>>();
+			int nextRowGroup = 0;
+
+			// tables, whose header cells are validated while streaming their header row:
+			List<TableDefinition> tables = XlsFormatterApplyTableWriter.getApplicableTables(backingSheet, xlsfs, warningMessageContainer, logger);
+			List<List<String>> tableColumnNames = new ArrayList<List<String>>(tables.size());
+			Map<Integer, List<Integer>> tablesByHeaderRow = new HashMap<Integer, List<Integer>>();
+			DataFormatter dataFormatter = new DataFormatter();
+			for (int i = 0; i < tables.size(); i++) {
+				TableDefinition tableDefinition = tables.get(i);
+				tableColumnNames.add(tableDefinition.hasHeaderRow ? null : XlsFormatterApplyTableWriter.prepareHeaderRow(sheet, tableDefinition, dataFormatter));
+				if (tableDefinition.hasHeaderRow)
+					tablesByHeaderRow.computeIfAbsent(tableDefinition.range.getFirstRow(), k -> new ArrayList<Integer>()).add(i);
+			}
+
+			// derive the range of rows to write:
+			int columnCount = table.getColumnCount();
+			int firstDataRow = writeColumnHeader ? 1 : 0;
+			long lastRowLong = firstDataRow + table.size() - 1;
+			if (lastRowLong >= XlsFormatterControlTableValidator.XLS_SIZE_LIMIT_MAX_ROWS)
+				throw new IllegalArgumentException("The input table has more rows (" + table.size() + ") than fit into an XLS sheet.");
+			if (columnCount > XlsFormatterControlTableValidator.XLS_SIZE_LIMIT_MAX_COLUMNS)
+				throw new IllegalArgumentException("The input table has more columns (" + columnCount + ") than fit into an XLS sheet.");
+			int lastRow = (int)lastRowLong;
+			if (plan.size() != 0)
+				lastRow = Math.max(lastRow, plan.getRow(plan.size() - 1));
+			for (Integer r : xlsfs.rowHeights.keySet())
+				lastRow = Math.max(lastRow, r);
+			for (Integer r : rowStyles.keySet())
+				lastRow = Math.max(lastRow, r);
+			for (Integer r : xlsfs.hiddenRows)
+				lastRow = Math.max(lastRow, r);
+			for (Map.Entry<Pair<Integer, Integer>, Boolean> group : xlsfs.rowGroups.entrySet()) // a collapsed group marks the row behind it
+				lastRow = Math.max(lastRow, Math.min(XlsFormatterControlTableValidator.XLS_SIZE_LIMIT_MAX_ROWS - 1, group.getKey().getRight() + (group.getValue() ? 1 : 0)));
+			for (CellRangeAddress range : xlsfs.mergeRanges)
+				lastRow = Math.max(lastRow, range.getLastRow());
+			for (Integer r : tablesByHeaderRow.keySet())
+				lastRow = Math.max(lastRow, r);
+
+			// prepare POI workbook level objects for adding drawing (i.e. for cell comments), which will only be instantiated jit:
+			Drawing<?> drawing = null;
+			ClientAnchor clientAnchor = null;
+
+			CellDataType[] dateTypes = new CellDataType[columnCount]; // date/time type of the current row's values
+
+			// Stream all rows:
+			exec.setMessage("Writing rows...");
+			try (RowIterator rowIterator = table.iterator()) {
+				int planIndex = 0;
+				ProgressReporter progress = new ProgressReporter(exec, "Writing row", lastRow + 1, "...");
+				for (int r = 0; r <= lastRow; r++) {
+					progress.advance();
+
+					// update the merge ranges covering this row:
+					final int currentRow = r;
+					activeMergeRanges.removeIf(range -> range.getLastRow() < currentRow);
+					while (nextMergeRange < pendingMergeRanges.size() && pendingMergeRanges.get(nextMergeRange).getFirstRow() <= r)
+						activeMergeRanges.add(pendingMergeRanges.get(nextMergeRange++));
+
+					// row level instructions:
+					Double rowHeight = xlsfs.rowHeights.get(r);
+					CellStyle rowStyle = rowStyles.get(r);
+					boolean isHidden = xlsfs.hiddenRows.contains(r);
+					boolean isCollapsed = false; // a collapsed group marks the row behind it, i.e. the row after which it is no longer active
+					for (Iterator<Map.Entry<Pair<Integer, Integer>, Boolean>> it = activeRowGroups.iterator(); it.hasNext(); ) {
+						Map.Entry<Pair<Integer, Integer>, Boolean> group = it.next();
+						if (group.getKey().getRight() < r) {
+							isCollapsed |= group.getValue();
+							it.remove();
+						}
+					}
+					while (nextRowGroup < pendingRowGroups.size() && pendingRowGroups.get(nextRowGroup).getKey().getLeft() <= r)
+						activeRowGroups.add(pendingRowGroups.get(nextRowGroup++));
+					int outlineLevel = activeRowGroups.size();
+					for (Map.Entry<Pair<Integer, Integer>, Boolean> group : activeRowGroups)
+						isHidden |= group.getValue();
+
+					RowSource dataRow = r >= firstDataRow && r <= lastRowLong ? rowIterator.next() : null;
+					boolean hasCellInstructions = planIndex < plan.size() && plan.getRow(planIndex) == r;
+					List<Integer> headedTables = tablesByHeaderRow.get(r);
+					if (dataRow == null && !hasCellInstructions && !(writeColumnHeader && r == 0) && headedTables == null &&
+							rowHeight == null && rowStyle == null && !isHidden && outlineLevel == 0 && !isCollapsed)
+						continue;
+
+					Row row = sheet.createRow(r);
+					if (rowHeight != null)
+						row.setHeightInPoints((float)(double)rowHeight);
+					if (rowStyle != null)
+						row.setRowStyle(rowStyle);
+					if (isHidden)
+						row.setZeroHeight(true);
+					if (outlineLevel != 0)
+						sheet.setRowOutlineLevel(r, outlineLevel);
+					if (isCollapsed)
+						((org.apache.poi.xssf.streaming.SXSSFRow)row).setCollapsed(true);
+
+					// values:
+					if (writeColumnHeader && r == 0)
+						for (int c = 0; c < columnCount; c++) {
+							if (!isCoveredByMergeRange(activeMergeRanges, r, c))
+								row.createCell(c).setCellValue(table.getColumnName(c));
+						}
+					else if (dataRow != null)
+						for (int c = 0; c < columnCount; c++) {
+							dateTypes[c] = null;
+							if (dataRow.isMissing(c) || isCoveredByMergeRange(activeMergeRanges, r, c))
+								continue;
+							Cell cell = row.createCell(c);
+							dateTypes[c] = dataRow.setCellValue(c, cell);
+							if (dateTypes[c] != null) // date/time values are numbers in XLS and need a number format to be displayed as such
+								cell.setCellStyle(getDateStyle(dateStyles, wb.getCellStyleAt(0), dateTypes[c]));
+						}
+
+					// the written cells' own styles hide the column default style and row style, hence those without instructions of their
+					// own get the instructions of their full row or column (which only hold formatting, no hyperlinks or comments):
+					CellState fullRow = xlsfs.fullRows.get(r);
+					if ((fullRow != null || xlsfs.fullColumns.size() != 0) && (dataRow != null || (writeColumnHeader && r == 0)))
+						for (int c = 0; c < columnCount; c++) {
+							CellState fullRange = fullRow != null ? fullRow : xlsfs.fullColumns.get(c);
+							Cell cell = row.getCell(c);
+							if (fullRange == null || cell == null || xlsfs.cells.containsKey(r, c))
+								continue;
+							if (fullRange.cellDataType != null && fullRange.cellDataType != CellDataType.UNMODIFIED)
+								convertCellValue(cell, fullRange.cellDataType, new CellAddress(r, c), warningMessageContainer, logger);
+							CellStyle style = fullRow != null ? rowStyle : columnStyles.get(c);
+							if (style != null)
+								cell.setCellStyle(dataRow != null && style.getDataFormat() == 0 ? getDateStyle(dateStyles, style, dateTypes[c]) : style);
+						}
+
+					// cell instructions:
+					for (; planIndex < plan.size() && plan.getRow(planIndex) == r; planIndex++) {
+						int c = plan.getColumn(planIndex);
+						long cellKey = CellMap.toKey(r, c);
+						FormattingRecord state = xlsfs.cells.get(cellKey);
+						boolean isCovered = isCoveredByMergeRange(activeMergeRanges, r, c);
+						boolean hasPayload = !isCovered && XlsFormatterApplyRowBandWriter.requiresPoiCell(xlsfs, cellKey);
+						Cell cell = row.getCell(c);
+
+						// if the data type shall be converted from a String cell to something else, do it before setting the style
+						if (cell != null && state.cellDataType != null && state.cellDataType != CellDataType.UNMODIFIED)
+							convertCellValue(cell, state.cellDataType, new CellAddress(r, c), warningMessageContainer, logger);
+
+						int styleIndex = plan.getStyleIndex(planIndex);
+						if (cell == null && styleIndex == 0 && !hasPayload)
+							continue;
+						if (cell == null)
+							cell = row.createCell(c);
+						if (styleIndex != 0) {
+							CellStyle style = wb.getCellStyleAt(styleIndex);
+							if (dataRow != null && c < columnCount && style.getDataFormat() == 0) // keep the date/time number format of the value
+								style = getDateStyle(dateStyles, style, dateTypes[c]);
+							cell.setCellStyle(style);
+						}
+						if (!hasPayload)
+							continue;
+
+						// hyperlink
+						String hyperlink = xlsfs.hyperlinks.get(cellKey);
+						if (hyperlink != null) {
+							Hyperlink link = createHelper.createHyperlink(HyperlinkType.URL);
+							link.setAddress(hyperlink);
+							cell.setHyperlink(link);
+						}
+
+						// comment
+						XlsFormatterState.Comment cellComment = xlsfs.comments.get(cellKey);
+						if (cellComment != null && cellComment.text != null) {
+							if (drawing == null)
+								drawing = sheet.createDrawingPatriarch();
+							if (clientAnchor == null)
+								clientAnchor = createHelper.createClientAnchor();
+							org.apache.poi.ss.usermodel.Comment comment = drawing.createCellComment(clientAnchor);
+							comment.setString(createHelper.createRichTextString(cellComment.text));
+							comment.setAuthor(cellComment.author); // can be null
+							comment.setAddress(cell.getAddress()); // unlike XSSF, streamed cells do not re-address the comment
+							cell.setCellComment(comment);
+						}
+					}
+
+					// table header cells need to hold the column names:
+					if (headedTables != null)
+						for (Integer i : headedTables)
+							tableColumnNames.set(i, XlsFormatterApplyTableWriter.prepareHeaderRow(sheet, tables.get(i), dataFormatter));
+				}
+			}
+
+			// Sheet level instructions:
+			exec.setMessage("Apply non-cell based features...");
+			if (xlsfs.freezeSheetAtTopLeftCornerOfCell != null)
+				sheet.createFreezePane(
+						xlsfs.freezeSheetAtTopLeftCornerOfCell.getColumn(),
+						xlsfs.freezeSheetAtTopLeftCornerOfCell.getRow());
+			for (CellRangeAddress range : xlsfs.mergeRanges)
+				sheet.addMergedRegion(range);
+			if (tables.size() != 0) {
+				Set<String> usedTableNames = new HashSet<String>();
+				for (int i = 0; i < tables.size(); i++)
+					XlsFormatterApplyTableWriter.createTable(backingSheet, tables.get(i), tableColumnNames.get(i), usedTableNames);
+			}
+			if (xlsfs.autoFilterRange != null && XlsFormatterApplyTableWriter.isAutoFilterApplicable(xlsfs, tables, warningMessageContainer, logger))
+				sheet.setAutoFilter(xlsfs.autoFilterRange);
+			XlsFormatterApplyLogic.applyConditionalFormatting(sheet, xlsfs, warningMessageContainer, exec, logger);
+			exec.checkCanceled();
+			for (Map.Entry<Pair<Integer, Integer>, Boolean> group : xlsfs.columnGroups.entrySet()) { // <from, to>, collapsed
+				sheet.groupColumn(group.getKey().getLeft(), group.getKey().getRight());
+				sheet.setColumnGroupCollapsed(group.getKey().getLeft(), group.getValue());
+			}
+			for (Integer c : xlsfs.hiddenColumns)
+				sheet.setColumnHidden(c, true);
+			for (Map.Entry<Integer, Double> columnWidth : xlsfs.columnWidths.entrySet())
+				if (columnWidth.getValue() == null)
+					sheet.autoSizeColumn(columnWidth.getKey());
+				else
+					sheet.setColumnWidth(columnWidth.getKey(), XlsFormatterApplyLogic.xlsToPoiStandardColumnWidthConversion(columnWidth.getValue()));
+			exec.checkCanceled();
+
+			// Write the output to a file:
+			exec.setMessage("Writing output file...");
+			try (OutputStream fileOut = openOutput.get();
+					BufferedOutputStream bufOut = new BufferedOutputStream(fileOut);) {
+				wb.write(bufOut);
+			}
+		}
+		finally {
+			wb.close();
+			wb.dispose(); // deletes the temporary sheet files
+		}
+	}
+
+	/**
+	 * Checks whether a cell is part of one of the given merge ranges, but not its top-left cell (which alone keeps its content when merging).
+	 */
+	private static boolean isCoveredByMergeRange(List<CellRangeAddress> activeMergeRanges, int row, int column) {
+		for (CellRangeAddress range : activeMergeRanges)
+			if (range.isInRange(row, column))
+				return row != range.getFirstRow() || column != range.getFirstColumn();
+		return false;
+	}
+
+	/**
+	 * Converts a written cell's value to the desired data type, which is only possible for String cells.
+	 */
+	private static void convertCellValue(Cell cell, CellDataType cellDataType, CellAddress cellAddress, WarningMessageContainer warningMessageContainer, final XlsFormatterLogger logger) {
+		if (cell.getCellType() == CellType.STRING) {
+			if (!XlsFormatterApplyLogic.convertStringCellValue(cell, cellDataType, cellAddress, logger))
+				warningMessageContainer.addMessage("Parsing error(s) during cell data type conversion. See log for details.");
+		}
+		else {
+			logger.warn("Could not change data type of cell " + cellAddress.toString() + " since it is not a String cell. Try changing the text format instead of a data type conversion.");
+			warningMessageContainer.addMessage("Data type conversion(s) on non-String cells could not be executed. See log for details.");
+		}
+	}
+
+	/**
+	 * Gets the copy of a base style with the default number format of a date/time type (as derived in advance, see TableSource.getDateTypes).
+	 */
+	private static CellStyle getDateStyle(Map<Long, CellStyle> dateStyles, CellStyle baseStyle, CellDataType dateType) {
+		if (dateType == null)
+			return baseStyle;
+		CellStyle style = dateStyles.get(((long)Short.toUnsignedInt(baseStyle.getIndex()) << 8) | dateType.ordinal());
+		return style == null ? baseStyle : style;
+	}
+}
@@ -0,0 +1,235 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.continental.knime.xlsformatter.apply;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.AreaReference;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFTable;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTTable;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTTableStyleInfo;
+
+import com.continental.knime.xlsformatter.commons.WarningMessageContainer;
+import com.continental.knime.xlsformatter.commons.XlsFormatterLogger;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.SheetState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.TableDefinition;
+
+/**
+ * Implements table definitions as native Excel tables (i.e. table parts of the sheet). The table style, banding and filter buttons
+ * are then rendered by Excel itself, so no cell needs to be styled and the formatting stays correct when sorting or filtering.
+ */
+class XlsFormatterApplyTableWriter {
+
+	/**
+	 * Maximum length of a table column name.
+	 */
+	private final static int MAX_COLUMN_NAME_LENGTH = 255;
+
+	/**
+	 * Ensures that the header cells of a table hold valid column names, i.e. non-empty and (case-insensitively) unique Strings, as Excel
+	 * would otherwise refuse to open the file. Header cells violating this are overwritten with the column name Excel would derive itself.
+	 * For tables without header row, the default column names are returned without touching any cell.
+	 * @return The table's column names.
+	 */
+	static List<String> prepareHeaderRow(final Sheet sheet, final TableDefinition table, final DataFormatter formatter) {
+		List<String> ret = new ArrayList<String>(table.range.getLastColumn() - table.range.getFirstColumn() + 1);
+		Set<String> usedNames = new HashSet<String>();
+		Row row = null;
+		if (table.hasHeaderRow) {
+			row = sheet.getRow(table.range.getFirstRow());
+			if (row == null)
+				row = sheet.createRow(table.range.getFirstRow());
+		}
+		for (int c = table.range.getFirstColumn(); c <= table.range.getLastColumn(); c++) {
+			Cell cell = row == null ? null : row.getCell(c);
+			String name = cell == null ? "" : formatter.formatCellValue(cell);
+			if (name.length() > MAX_COLUMN_NAME_LENGTH)
+				name = name.substring(0, MAX_COLUMN_NAME_LENGTH);
+			if (name.trim().length() == 0)
+				name = "Column" + (c - table.range.getFirstColumn() + 1);
+			if (usedNames.contains(name.toLowerCase(Locale.ROOT))) {
+				int suffix = 2;
+				while (usedNames.contains((name + suffix).toLowerCase(Locale.ROOT)))
+					suffix++;
+				name = name + suffix;
+			}
+			usedNames.add(name.toLowerCase(Locale.ROOT));
+			ret.add(name);
+
+			if (row != null && (cell == null || cell.getCellType() != CellType.STRING || !cell.getStringCellValue().equals(name))) {
+				if (cell == null)
+					cell = row.createCell(c);
+				cell.setCellValue(name);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Gets the names of all tables in a workbook in lower case, in order to check new table names for uniqueness.
+	 */
+	static Set<String> getUsedTableNames(final XSSFWorkbook wb) {
+		Set<String> ret = new HashSet<String>();
+		for (int i = 0; i < wb.getNumberOfSheets(); i++)
+			for (XSSFTable table : wb.getSheetAt(i).getTables())
+				ret.add(table.getName().toLowerCase(Locale.ROOT));
+		return ret;
+	}
+
+	/**
+	 * Checks a sheet's table definitions against its other instructions and the existing tables of the sheet. Tables must neither
+	 * contain merged cells nor overlap a sheet auto filter or another table. Conflicting tables are skipped with a warning.
+	 * @return The tables to create.
+	 */
+	static List<TableDefinition> getApplicableTables(final XSSFSheet sheet, final SheetState xlsfs,
+			WarningMessageContainer warningMessageContainer, final XlsFormatterLogger logger) {
+		List<CellRangeAddress> blockingRanges = new ArrayList<CellRangeAddress>(xlsfs.mergeRanges);
+		for (int i = 0; i < sheet.getNumMergedRegions(); i++)
+			blockingRanges.add(sheet.getMergedRegion(i));
+		for (XSSFTable existingTable : sheet.getTables())
+			blockingRanges.add(new CellRangeAddress(existingTable.getStartRowIndex(), existingTable.getEndRowIndex(),
+					existingTable.getStartColIndex(), existingTable.getEndColIndex()));
+
+		List<TableDefinition> ret = new ArrayList<TableDefinition>(xlsfs.tables.size());
+		for (TableDefinition table : xlsfs.tables) {
+			CellRangeAddress conflict = null;
+			for (CellRangeAddress range : blockingRanges)
+				if (range.intersects(table.range)) {
+					conflict = range;
+					break;
+				}
+			if (conflict != null) {
+				logger.warn("Table " + table.range.formatAsString() + " overlaps the merged cells or existing table " + conflict.formatAsString() + ".");
+				warningMessageContainer.addMessage("Table(s) overlapping merged cells or existing tables have been skipped. See log for details.");
+				continue;
+			}
+			ret.add(table);
+		}
+		return ret;
+	}
+
+	/**
+	 * Checks whether a sheet's auto filter range can be applied next to its tables (which bring their own filter).
+	 */
+	static boolean isAutoFilterApplicable(final SheetState xlsfs, final List<TableDefinition> tables,
+			WarningMessageContainer warningMessageContainer, final XlsFormatterLogger logger) {
+		for (TableDefinition table : tables)
+			if (table.range.intersects(xlsfs.autoFilterRange)) {
+				logger.warn("The auto filter range " + xlsfs.autoFilterRange.formatAsString() + " overlaps table " + table.range.formatAsString() + ".");
+				warningMessageContainer.addMessage("The sheet's auto filter has been skipped since it overlaps a table, which has its own filter. See log for details.");
+				return false;
+			}
+		return true;
+	}
+
+	/**
+	 * Creates a native Excel table.
+	 * @param sheet The XSSF sheet (for streamed sheets, the backing sheet of the SXSSF workbook).
+	 * @param table The table definition.
+	 * @param columnNames The column names as returned by prepareHeaderRow.
+	 * @param usedTableNames The lower case names of the workbook's tables, to which the new table's name is added.
+	 * @return The created table.
+	 */
+	static XSSFTable createTable(final XSSFSheet sheet, final TableDefinition table, final List<String> columnNames, final Set<String> usedTableNames) {
+		String name = table.name;
+		if (name == null) {
+			int i = 1;
+			while (usedTableNames.contains(("Table" + i).toLowerCase(Locale.ROOT)))
+				i++;
+			name = "Table" + i;
+		}
+		else if (usedTableNames.contains(name.toLowerCase(Locale.ROOT)))
+			throw new IllegalArgumentException("The table name \"" + name + "\" is already used by another table of the workbook.");
+		usedTableNames.add(name.toLowerCase(Locale.ROOT));
+
+		XSSFTable xssfTable = sheet.createTable(new AreaReference(
+				new CellReference(table.range.getFirstRow(), table.range.getFirstColumn()),
+				new CellReference(table.range.getLastRow(), table.range.getLastColumn()),
+				SpreadsheetVersion.EXCEL2007));
+		xssfTable.setName(name);
+		xssfTable.setDisplayName(name);
+
+		CTTable ctTable = xssfTable.getCTTable();
+		for (int i = 0; i < columnNames.size(); i++)
+			ctTable.getTableColumns().getTableColumnArray(i).setName(columnNames.get(i));
+		if (table.hasHeaderRow) // the filter buttons are shown in the header row and cover the data rows only
+			ctTable.addNewAutoFilter().setRef(new CellRangeAddress(table.range.getFirstRow(), table.range.getLastRow() - (table.hasTotalsRow ? 1 : 0),
+					table.range.getFirstColumn(), table.range.getLastColumn()).formatAsString());
+		else
+			ctTable.setHeaderRowCount(0);
+		if (table.hasTotalsRow) {
+			ctTable.setTotalsRowCount(1);
+			ctTable.setTotalsRowShown(true);
+		}
+		else
+			ctTable.setTotalsRowShown(false);
+
+		CTTableStyleInfo styleInfo = ctTable.addNewTableStyleInfo();
+		if (table.styleName != null)
+			styleInfo.setName(table.styleName);
+		styleInfo.setShowRowStripes(table.showBandedRows);
+		styleInfo.setShowColumnStripes(table.showBandedColumns);
+		styleInfo.setShowFirstColumn(table.highlightFirstColumn);
+		styleInfo.setShowLastColumn(table.highlightLastColumn);
+		return xssfTable;
+	}
+
+	/**
+	 * Copies a table part as written by POI, restoring the given column names. POI names the columns after the cells of the table's
+	 * first row when writing, which for tables without header row are data cells whose values need not be unique or valid column names.
+	 * @param in The written table part.
+	 * @param out The stream to write the table part to.
+	 * @param columnNames The column names as returned by prepareHeaderRow.
+	 */
+	static void writeTablePart(final InputStream in, final OutputStream out, final List<String> columnNames) throws IOException {
+		String part = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		StringBuilder ret = new StringBuilder(part.length());
+		int pos = 0;
+		for (String columnName : columnNames) {
+			int tagStart = part.indexOf("<tableColumn ", pos);
+			int nameStart = tagStart == -1 ? -1 : part.indexOf(" name=\"", tagStart);
+			if (nameStart == -1 || nameStart > part.indexOf('>', tagStart))
+				throw new IOException("The written table part lacks the (unprefixed) tableColumn element of column " + columnName + ".");
+			int valueStart = nameStart + " name=\"".length();
+			ret.append(part, pos, valueStart);
+			ret.append(columnName.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;"));
+			pos = part.indexOf('"', valueStart);
+		}
+		ret.append(part, pos, part.length());
+		out.write(ret.toString().getBytes(StandardCharsets.UTF_8));
+	}
+}
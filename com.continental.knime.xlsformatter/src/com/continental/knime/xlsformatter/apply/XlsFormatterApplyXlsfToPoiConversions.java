@@ -21,8 +21,11 @@ package com.continental.knime.xlsformatter.apply;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.apache.poi.ss.usermodel.ComparisonOperator;
+import org.apache.poi.ss.usermodel.ConditionalFormattingThreshold.RangeType;
 import org.apache.poi.ss.usermodel.FillPatternType;
 import org.apache.poi.ss.usermodel.HorizontalAlignment;
+import org.apache.poi.ss.usermodel.IconMultiStateFormatting.IconSet;
 import org.apache.poi.ss.usermodel.VerticalAlignment;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.xssf.usermodel.XSSFCellStyle;
@@ -35,9 +38,12 @@ import com.continental.knime.xlsformatter.commons.ColorTools;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterState;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterState.CellAlignmentHorizontal;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterState.CellAlignmentVertical;
-import com.continental.knime.xlsformatter.porttype.XlsFormatterState.CellState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.CellValueComparison;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.ConditionalThresholdType;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterState.FillPattern;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterState.FormattingFlag;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.FormattingRecord;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.IconSetStyle;
 
 
 /**
@@ -46,37 +52,37 @@ import com.continental.knime.xlsformatter.porttype.XlsFormatterState.FormattingF
 public class XlsFormatterApplyXlsfToPoiConversions {
     
 	/**
-	 * Creates a POI font based on an XLS Formatting cell state.
+	 * Creates a POI font based on an XLS Formatting record.
 	 */
-	public static XSSFFont createFont(Workbook workbook, CellState cellState) {
+	public static XSSFFont createFont(Workbook workbook, FormattingRecord record) {
 		
 		if (workbook == null)
 			return null;
 		
 		XSSFFont font = ((XSSFWorkbook)workbook).createFont();
 		
-		if (cellState.fontSize != null)
-			font.setFontHeightInPoints((short)(int)cellState.fontSize);
+		if (record.fontSize != null)
+			font.setFontHeightInPoints((short)(int)record.fontSize);
 		
-		if (cellState.fontBold != FormattingFlag.UNMODIFIED)
-			font.setBold(cellState.fontBold == FormattingFlag.ON);
+		if (record.fontBold != FormattingFlag.UNMODIFIED)
+			font.setBold(record.fontBold == FormattingFlag.ON);
     
-		if (cellState.fontUnderline != FormattingFlag.UNMODIFIED)
-			font.setUnderline(cellState.fontUnderline == FormattingFlag.ON ? XSSFFont.U_SINGLE : XSSFFont.U_NONE);
+		if (record.fontUnderline != FormattingFlag.UNMODIFIED)
+			font.setUnderline(record.fontUnderline == FormattingFlag.ON ? XSSFFont.U_SINGLE : XSSFFont.U_NONE);
 		
-		if (cellState.fontItalic != FormattingFlag.UNMODIFIED)
-			font.setItalic(cellState.fontItalic == FormattingFlag.ON);
+		if (record.fontItalic != FormattingFlag.UNMODIFIED)
+			font.setItalic(record.fontItalic == FormattingFlag.ON);
 		
-		if (cellState.fontColor != null)
-			font.setColor(ColorTools.getPoiColor(cellState.fontColor));
+		if (record.fontColor != null)
+			font.setColor(ColorTools.getPoiColor(record.fontColor));
 		
 		return font;
 	}
 	
 	/**
-	 * Creates a POI cell style, based on XLS Formatting cell state, a pre-generated POI font (can be null), and a pre-generated POI number format (can be null).
+	 * Creates a POI cell style, based on an XLS Formatting record, a pre-generated POI font (can be null), and a pre-generated POI number format (can be null).
 	 */
-	public static XSSFCellStyle createCellStyle(Workbook workbook, CellState cellState, XSSFFont font, Integer numberFormatCode) {
+	public static XSSFCellStyle createCellStyle(Workbook workbook, FormattingRecord record, XSSFFont font, Integer numberFormatCode) {
 		
 		if (workbook == null)
 			return null;
@@ -85,54 +91,54 @@ public class XlsFormatterApplyXlsfToPoiConversions {
 		
 		XSSFColor poiBackgroundColor = null;
 		
-		if (cellState.backgroundColor != null) {
-			poiBackgroundColor = ColorTools.getPoiColor(cellState.backgroundColor);
+		if (record.backgroundColor != null) {
+			poiBackgroundColor = ColorTools.getPoiColor(record.backgroundColor);
 			style.setFillBackgroundColor(poiBackgroundColor);
 		}
 		
-		if (cellState.backgroundColor != null && cellState.fillPattern == FillPattern.SOLID_BACKGROUND_COLOR) {
+		if (record.backgroundColor != null && record.fillPattern == FillPattern.SOLID_BACKGROUND_COLOR) {
 			style.setFillForegroundColor(poiBackgroundColor);
 			style.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-		} else if (cellState.fillForegroundColor != null)
-			style.setFillForegroundColor(ColorTools.getPoiColor(cellState.fillForegroundColor));
+		} else if (record.fillForegroundColor != null)
+			style.setFillForegroundColor(ColorTools.getPoiColor(record.fillForegroundColor));
 		
-		if (cellState.fillPattern == FillPattern.NONE)
+		if (record.fillPattern == FillPattern.NONE)
 			style.setFillPattern(FillPatternType.NO_FILL);
-		else if (cellState.fillPattern != FillPattern.UNMODIFIED && cellState.fillPattern != FillPattern.SOLID_BACKGROUND_COLOR)
-			style.setFillPattern(getFillPatternXlsfToPoi(cellState.fillPattern));
+		else if (record.fillPattern != FillPattern.UNMODIFIED && record.fillPattern != FillPattern.SOLID_BACKGROUND_COLOR)
+			style.setFillPattern(getFillPatternXlsfToPoi(record.fillPattern));
 		
 		
-		if (cellState.cellHorizontalAlignment != CellAlignmentHorizontal.UNMODIFIED)
-			style.setAlignment(getHorizontalAlignmentXlsfToPoi(cellState.cellHorizontalAlignment));
+		if (record.cellHorizontalAlignment != CellAlignmentHorizontal.UNMODIFIED)
+			style.setAlignment(getHorizontalAlignmentXlsfToPoi(record.cellHorizontalAlignment));
 		
-		if (cellState.cellVerticalAlignment != CellAlignmentVertical.UNMODIFIED)
-			style.setVerticalAlignment(getVerticalAlignmentXlsfToPoi(cellState.cellVerticalAlignment));
+		if (record.cellVerticalAlignment != CellAlignmentVertical.UNMODIFIED)
+			style.setVerticalAlignment(getVerticalAlignmentXlsfToPoi(record.cellVerticalAlignment));
 		
-		if (cellState.wrapText != FormattingFlag.UNMODIFIED)
-			style.setWrapText(cellState.wrapText == FormattingFlag.ON);
+		if (record.wrapText != FormattingFlag.UNMODIFIED)
+			style.setWrapText(record.wrapText == FormattingFlag.ON);
 		
-		if (cellState.textTiltDegree != null)
-			style.setRotation((short)(int)cellState.textTiltDegree);
+		if (record.textTiltDegree != null)
+			style.setRotation((short)(int)record.textTiltDegree);
 		
-		if (cellState.borderTop != null && cellState.borderTop.style != XlsFormatterState.BorderStyle.UNMODIFIED)
-			style.setBorderTop(getBorderStyleXlsfToPoi(cellState.borderTop.style));
-		if (cellState.borderTop != null && cellState.borderTop.color != null)
-			style.setBorderColor(BorderSide.TOP, ColorTools.getPoiColor(cellState.borderTop.color));
+		if (record.borderTop != null && record.borderTop.style != XlsFormatterState.BorderStyle.UNMODIFIED)
+			style.setBorderTop(getBorderStyleXlsfToPoi(record.borderTop.style));
+		if (record.borderTop != null && record.borderTop.color != null)
+			style.setBorderColor(BorderSide.TOP, ColorTools.getPoiColor(record.borderTop.color));
 		
-		if (cellState.borderLeft != null && cellState.borderLeft.style != XlsFormatterState.BorderStyle.UNMODIFIED)
-			style.setBorderLeft(getBorderStyleXlsfToPoi(cellState.borderLeft.style));
-		if (cellState.borderLeft != null && cellState.borderLeft.color != null)
-			style.setBorderColor(BorderSide.LEFT, ColorTools.getPoiColor(cellState.borderLeft.color));
+		if (record.borderLeft != null && record.borderLeft.style != XlsFormatterState.BorderStyle.UNMODIFIED)
+			style.setBorderLeft(getBorderStyleXlsfToPoi(record.borderLeft.style));
+		if (record.borderLeft != null && record.borderLeft.color != null)
+			style.setBorderColor(BorderSide.LEFT, ColorTools.getPoiColor(record.borderLeft.color));
 		
-		if (cellState.borderBottom != null && cellState.borderBottom.style != XlsFormatterState.BorderStyle.UNMODIFIED)
-			style.setBorderBottom(getBorderStyleXlsfToPoi(cellState.borderBottom.style));
-		if (cellState.borderBottom != null && cellState.borderBottom.color != null)
-			style.setBorderColor(BorderSide.BOTTOM, ColorTools.getPoiColor(cellState.borderBottom.color));
+		if (record.borderBottom != null && record.borderBottom.style != XlsFormatterState.BorderStyle.UNMODIFIED)
+			style.setBorderBottom(getBorderStyleXlsfToPoi(record.borderBottom.style));
+		if (record.borderBottom != null && record.borderBottom.color != null)
+			style.setBorderColor(BorderSide.BOTTOM, ColorTools.getPoiColor(record.borderBottom.color));
 		
-		if (cellState.borderRight != null && cellState.borderRight.style != XlsFormatterState.BorderStyle.UNMODIFIED)
-			style.setBorderRight(getBorderStyleXlsfToPoi(cellState.borderRight.style));
-		if (cellState.borderRight != null && cellState.borderRight.color != null)
-			style.setBorderColor(BorderSide.RIGHT, ColorTools.getPoiColor(cellState.borderRight.color));
+		if (record.borderRight != null && record.borderRight.style != XlsFormatterState.BorderStyle.UNMODIFIED)
+			style.setBorderRight(getBorderStyleXlsfToPoi(record.borderRight.style));
+		if (record.borderRight != null && record.borderRight.color != null)
+			style.setBorderColor(BorderSide.RIGHT, ColorTools.getPoiColor(record.borderRight.color));
 		
 		if (numberFormatCode != null)
 			style.setDataFormat(numberFormatCode);		
@@ -194,5 +200,42 @@ public class XlsFormatterApplyXlsfToPoiConversions {
 			// unmodified, none, and solid_background_color shall never be looked up here but caught in the calling logic
 		}
 		return _mapFillPatternXlsfToPoi.get(value);
-	}	
+	}
+	
+	private static Map<CellValueComparison, Byte> _mapComparisonXlsfToPoi = null;
+	static byte getPoiComparisonOperator(CellValueComparison value) {
+		if (_mapComparisonXlsfToPoi == null) {
+			_mapComparisonXlsfToPoi = new HashMap<CellValueComparison, Byte>();
+			_mapComparisonXlsfToPoi.put(CellValueComparison.BETWEEN, ComparisonOperator.BETWEEN);
+			_mapComparisonXlsfToPoi.put(CellValueComparison.NOT_BETWEEN, ComparisonOperator.NOT_BETWEEN);
+			_mapComparisonXlsfToPoi.put(CellValueComparison.EQUAL, ComparisonOperator.EQUAL);
+			_mapComparisonXlsfToPoi.put(CellValueComparison.NOT_EQUAL, ComparisonOperator.NOT_EQUAL);
+			_mapComparisonXlsfToPoi.put(CellValueComparison.GREATER_THAN, ComparisonOperator.GT);
+			_mapComparisonXlsfToPoi.put(CellValueComparison.LESS_THAN, ComparisonOperator.LT);
+			_mapComparisonXlsfToPoi.put(CellValueComparison.GREATER_OR_EQUAL, ComparisonOperator.GE);
+			_mapComparisonXlsfToPoi.put(CellValueComparison.LESS_OR_EQUAL, ComparisonOperator.LE);
+		}
+		return _mapComparisonXlsfToPoi.get(value);
+	}
+	
+	/**
+	 * Gets the POI range type of a data bar or icon set threshold. For type AUTOMATIC, the lower respectively upper bound
+	 * of a data bar is distinguished by the isMin flag.
+	 */
+	static RangeType getPoiRangeType(ConditionalThresholdType value, boolean isMin) {
+		switch (value) {
+		case AUTOMATIC:
+			return isMin ? RangeType.MIN : RangeType.MAX;
+		case PERCENT:
+			return RangeType.PERCENT;
+		case PERCENTILE:
+			return RangeType.PERCENTILE;
+		default:
+			return RangeType.NUMBER;
+		}
+	}
+	
+	static IconSet getPoiIconSet(IconSetStyle value) {
+		return IconSet.valueOf(value.name()); // the names are identical
+	}
 }
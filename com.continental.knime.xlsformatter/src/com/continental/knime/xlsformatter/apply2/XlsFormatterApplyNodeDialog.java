@@ -31,6 +31,7 @@ import org.knime.core.node.NodeSettingsRO;
 import org.knime.core.node.NodeSettingsWO;
 import org.knime.core.node.NotConfigurableException;
 import org.knime.core.node.defaultnodesettings.DialogComponentBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
 import org.knime.core.node.port.PortObjectSpec;
 import org.knime.core.node.util.SharedIcons;
 import org.knime.filehandling.core.data.location.variable.FSLocationVariableType;
@@ -40,6 +41,8 @@ import org.knime.filehandling.core.defaultnodesettings.filechooser.writer.Dialog
 import org.knime.filehandling.core.defaultnodesettings.filechooser.writer.SettingsModelWriterFileChooser;
 import org.knime.filehandling.core.util.GBCBuilder;
 
+import com.continental.knime.xlsformatter.commons.OutputFileTools;
+
 final class XlsFormatterApplyNodeDialog extends NodeDialogPane {
 
 	private final DialogComponentReaderFileChooser m_source;
@@ -51,6 +54,9 @@ final class XlsFormatterApplyNodeDialog extends NodeDialogPane {
 	
 	private final DialogComponentBoolean m_preserveSourceNumberFormats;
 	
+	private final DialogComponentBoolean m_writeOutputFile;
+	
+	private final boolean m_hasWorkbookOutputPort;
 
 	XlsFormatterApplyNodeDialog(final XlsFormatterApplySettings settings) {
 		final SettingsModelReaderFileChooser srcFileChooser = settings.getSrcFileChooser();
@@ -64,8 +70,12 @@ final class XlsFormatterApplyNodeDialog extends NodeDialogPane {
 		m_openOutputFile = new DialogComponentBoolean(settings.getOpenOutputFileSettingsModel(),
 				"open output file after execution");
 		m_openOutputFileLbl = new JLabel("");
+		m_writeOutputFile = new DialogComponentBoolean(settings.getWriteOutputFileSettingsModel(),
+				"write output file (besides the formatted workbook output port)");
+		m_hasWorkbookOutputPort = settings.hasWorkbookOutputPort();
 
 		m_target.getModel().addChangeListener(l -> toggleOpenFileAfterExecOption());
+		m_writeOutputFile.getModel().addChangeListener(l -> toggleWriteOutputFileOption());
 		addTab("Settings", createSettingsPanel());
 
 	}
@@ -75,7 +85,10 @@ final class XlsFormatterApplyNodeDialog extends NodeDialogPane {
 		GBCBuilder gbc = new GBCBuilder().anchorLineStart().weight(1, 0).resetPos().setWidth(2).fillHorizontal()
 				.insetLeft(5);
 		p.add(createSourcePanel(), gbc.build());
-		p.add(createDestinationPanel(), gbc.incY().build());
+		if (m_hasWorkbookOutputPort)
+			p.add(m_writeOutputFile.getComponentPanel(),
+					gbc.incY().setWidth(1).setWeightX(0).fillNone().insetLeft(0).build());
+		p.add(createDestinationPanel(), gbc.incY().setWidth(2).setWeightX(1).fillHorizontal().insetLeft(5).build());
 		p.add(m_preserveSourceNumberFormats.getComponentPanel(),
 				gbc.incY().setWidth(1).setWeightX(0).fillNone().insetLeft(0).build());
 		p.add(m_openOutputFile.getComponentPanel(),
@@ -101,12 +114,21 @@ final class XlsFormatterApplyNodeDialog extends NodeDialogPane {
 		return panel;
 	}
 
+	private void toggleWriteOutputFileOption() {
+		final boolean writeOutputFile = !m_hasWorkbookOutputPort
+				|| ((SettingsModelBoolean)m_writeOutputFile.getModel()).getBooleanValue();
+		m_target.getModel().setEnabled(writeOutputFile);
+		toggleOpenFileAfterExecOption();
+	}
+
 	private void toggleOpenFileAfterExecOption() {
 		// cannot be headless as we'd not have a dialog in this case
-		final boolean isRemote = XlsFormatterApplyNodeModel.isHeadlessOrRemote();
-		final boolean categorySupported = XlsFormatterApplyNodeModel
+		final boolean isRemote = OutputFileTools.isHeadlessOrRemote();
+		final boolean categorySupported = OutputFileTools
 				.categoryIsSupported(m_target.getSettingsModel().getLocation().getFSCategory());
-		m_openOutputFile.getModel().setEnabled(!isRemote && categorySupported);
+		final boolean writeOutputFile = !m_hasWorkbookOutputPort
+				|| ((SettingsModelBoolean)m_writeOutputFile.getModel()).getBooleanValue();
+		m_openOutputFile.getModel().setEnabled(writeOutputFile && !isRemote && categorySupported);
 		if (isRemote) {
 			m_openOutputFileLbl.setIcon(SharedIcons.INFO_BALLOON.get());
 			m_openOutputFileLbl.setText("Not support in remote job view");
@@ -125,6 +147,7 @@ final class XlsFormatterApplyNodeDialog extends NodeDialogPane {
 		m_target.saveSettingsTo(settings);
 		m_openOutputFile.saveSettingsTo(settings);
 		m_preserveSourceNumberFormats.saveSettingsTo(settings);
+		m_writeOutputFile.saveSettingsTo(settings);
 	}
 
 	@Override
@@ -134,7 +157,8 @@ final class XlsFormatterApplyNodeDialog extends NodeDialogPane {
 		m_target.loadSettingsFrom(settings, specs);
 		m_openOutputFile.loadSettingsFrom(settings, specs);
 		m_preserveSourceNumberFormats.loadSettingsFrom(settings, specs);
-		toggleOpenFileAfterExecOption();
+		m_writeOutputFile.loadSettingsFrom(settings, specs);
+		toggleWriteOutputFileOption();
 	}
 
 	@Override
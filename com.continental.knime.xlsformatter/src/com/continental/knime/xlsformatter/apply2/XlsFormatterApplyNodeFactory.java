@@ -20,6 +20,7 @@ package com.continental.knime.xlsformatter.apply2;
 
 import java.util.Optional;
 
+import org.knime.core.node.BufferedDataTable;
 import org.knime.core.node.ConfigurableNodeFactory;
 import org.knime.core.node.NodeDialogPane;
 import org.knime.core.node.NodeView;
@@ -40,19 +41,28 @@ public final class XlsFormatterApplyNodeFactory extends ConfigurableNodeFactory<
 	/** The name of the xls formatter input port group. */
 	private static final String FORMATTER_STATE_GRP_NAME = "XLS Formatter";
 
+	/** The name of the extendable input port group of further xls formatters to apply in the same pass. */
+	private static final String ADDITIONAL_FORMATTER_STATES_GRP_NAME = "Additional XLS Formatter";
+
+	/** The name of the optional output port group holding the formatted workbook as binary object. */
+	private static final String WORKBOOK_OUTPUT_GRP_NAME = "Formatted Workbook";
+
 	@Override
 	protected Optional<PortsConfigurationBuilder> createPortsConfigBuilder() {
 		final PortsConfigurationBuilder b = new PortsConfigurationBuilder();
 		b.addOptionalInputPortGroup(CONNECTION_SOURCE_PORT_GRP_NAME, FileSystemPortObject.TYPE);
 		b.addFixedInputPortGroup(FORMATTER_STATE_GRP_NAME, XlsFormatterState.TYPE);
+		b.addExtendableInputPortGroup(ADDITIONAL_FORMATTER_STATES_GRP_NAME, XlsFormatterState.TYPE);
 		b.addOptionalInputPortGroup(CONNECTION_DESTINATION_PORT_GRP_NAME, FileSystemPortObject.TYPE);
+		b.addOptionalOutputPortGroup(WORKBOOK_OUTPUT_GRP_NAME, BufferedDataTable.TYPE);
 		return Optional.of(b);
 	}
 
 	@Override
 	protected XlsFormatterApplyNodeModel createNodeModel(NodeCreationConfiguration creationConfig) {
 		final PortsConfiguration portsCfg = getPortsCfg(creationConfig);
-		return new XlsFormatterApplyNodeModel(portsCfg, createSettings(portsCfg), getFormatterIdx(portsCfg));
+		return new XlsFormatterApplyNodeModel(portsCfg, createSettings(portsCfg), getFormatterIdxs(portsCfg),
+				getWorkbookOutputIdx(portsCfg));
 	}
 
 	@Override
@@ -82,10 +92,28 @@ public final class XlsFormatterApplyNodeFactory extends ConfigurableNodeFactory<
 
 	private static XlsFormatterApplySettings createSettings(final PortsConfiguration portsCfg) {
 		return new XlsFormatterApplySettings(portsCfg, CONNECTION_SOURCE_PORT_GRP_NAME,
-				CONNECTION_DESTINATION_PORT_GRP_NAME);
+				CONNECTION_DESTINATION_PORT_GRP_NAME, getWorkbookOutputIdx(portsCfg) != -1);
+	}
+
+	/**
+	 * Gets the indices of the xls formatter input ports, the fixed one first.
+	 */
+	private static int[] getFormatterIdxs(final PortsConfiguration portsCfg) {
+		final int formatterIdx = portsCfg.getInputPortLocation().get(FORMATTER_STATE_GRP_NAME)[0];
+		final int[] additionalIdxs = portsCfg.getInputPortLocation().get(ADDITIONAL_FORMATTER_STATES_GRP_NAME);
+		if (additionalIdxs == null)
+			return new int[] { formatterIdx };
+		final int[] idxs = new int[additionalIdxs.length + 1];
+		idxs[0] = formatterIdx;
+		System.arraycopy(additionalIdxs, 0, idxs, 1, additionalIdxs.length);
+		return idxs;
 	}
 
-	private static int getFormatterIdx(final PortsConfiguration portsCfg) {
-		return portsCfg.getInputPortLocation().get(FORMATTER_STATE_GRP_NAME)[0];
+	/**
+	 * Gets the index of the formatted workbook output port or -1 if the optional port has not been added.
+	 */
+	private static int getWorkbookOutputIdx(final PortsConfiguration portsCfg) {
+		final int[] location = portsCfg.getOutputPortLocation().get(WORKBOOK_OUTPUT_GRP_NAME);
+		return location == null || location.length == 0 ? -1 : location[0];
 	}
 }
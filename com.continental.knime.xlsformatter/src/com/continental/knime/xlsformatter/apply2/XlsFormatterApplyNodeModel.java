@@ -19,14 +19,28 @@
 package com.continental.knime.xlsformatter.apply2;
 
 import java.io.File;
-import java.io.IOException;
-import java.net.MalformedURLException;
-import java.net.URISyntaxException;
-import java.net.URL;
-import java.nio.file.AccessDeniedException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayList;
 import java.util.EnumSet;
-import java.util.Optional;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.RowKey;
+import org.knime.core.data.blob.BinaryObjectCellFactory;
+import org.knime.core.data.blob.BinaryObjectDataCell;
+import org.knime.core.data.blob.BinaryObjectDataValue;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.node.BufferedDataContainer;
+import org.knime.core.node.BufferedDataTable;
 import org.knime.core.node.ExecutionContext;
 import org.knime.core.node.ExecutionMonitor;
 import org.knime.core.node.InvalidSettingsException;
@@ -37,24 +51,19 @@ import org.knime.core.node.NodeSettingsWO;
 import org.knime.core.node.context.ports.PortsConfiguration;
 import org.knime.core.node.port.PortObject;
 import org.knime.core.node.port.PortObjectSpec;
-import org.knime.core.util.DesktopUtil;
-import org.knime.core.util.FileUtil;
-import org.knime.filehandling.core.connections.FSCategory;
-import org.knime.filehandling.core.connections.FSConnection;
 import org.knime.filehandling.core.connections.FSFiles;
 import org.knime.filehandling.core.connections.FSPath;
-import org.knime.filehandling.core.connections.uriexport.URIExporter;
 import org.knime.filehandling.core.defaultnodesettings.filechooser.reader.ReadPathAccessor;
-import org.knime.filehandling.core.defaultnodesettings.filechooser.writer.FileOverwritePolicy;
-import org.knime.filehandling.core.defaultnodesettings.filechooser.writer.SettingsModelWriterFileChooser;
 import org.knime.filehandling.core.defaultnodesettings.filechooser.writer.WritePathAccessor;
 import org.knime.filehandling.core.defaultnodesettings.status.NodeModelStatusConsumer;
 import org.knime.filehandling.core.defaultnodesettings.status.StatusMessage.MessageType;
-import org.knime.filehandling.core.util.CheckNodeContextUtil;
 
 import com.continental.knime.xlsformatter.apply.XlsFormatterApplyLogic;
+import com.continental.knime.xlsformatter.commons.KnimeAdapters;
+import com.continental.knime.xlsformatter.commons.OutputFileTools;
 import com.continental.knime.xlsformatter.commons.WarningMessageContainer;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterStateMerger;
 
 final class XlsFormatterApplyNodeModel extends NodeModel {
 
@@ -63,119 +72,176 @@ final class XlsFormatterApplyNodeModel extends NodeModel {
 	
 	private final XlsFormatterApplySettings m_settings;
 
-	private final int m_formatterIdx;
+	private final int[] m_formatterIdxs; // the fixed port first, then the additional ones
+
+	private final int m_workbookOutputIdx; // -1 if the optional port has not been added
 
 	private final NodeModelStatusConsumer m_statusConsumer;
 
-	XlsFormatterApplyNodeModel(PortsConfiguration portsCfg, XlsFormatterApplySettings settings, int formatterIdx) {
+	/** Name of the binary object column holding the formatted workbook at the workbook output port. */
+	private static final String WORKBOOK_COLUMN_NAME = "Formatted workbook";
+
+	/** Size of the buffer between writing the formatted workbook and reading it into the binary object cell. */
+	private static final int WORKBOOK_PIPE_SIZE = 1 << 16;
+
+	XlsFormatterApplyNodeModel(PortsConfiguration portsCfg, XlsFormatterApplySettings settings, int[] formatterIdxs,
+			int workbookOutputIdx) {
 		super(portsCfg.getInputPorts(), portsCfg.getOutputPorts());
 		m_settings = settings;
-		m_formatterIdx = formatterIdx;
+		m_formatterIdxs = formatterIdxs;
+		m_workbookOutputIdx = workbookOutputIdx;
 		m_statusConsumer = new NodeModelStatusConsumer(EnumSet.of(MessageType.WARNING, MessageType.ERROR));
 	}
 
 	@Override
 	protected PortObjectSpec[] configure(PortObjectSpec[] inSpecs) throws InvalidSettingsException {
 		m_settings.getSrcFileChooser().configureInModel(inSpecs, m_statusConsumer);
-		m_settings.getTgtFileChooser().configureInModel(inSpecs, m_statusConsumer);
+		if (m_settings.isWriteOutputFile())
+			m_settings.getTgtFileChooser().configureInModel(inSpecs, m_statusConsumer);
 		m_statusConsumer.setWarningsIfRequired(this::setWarningMessage);
-		return new PortObjectSpec[] {};
+		if (m_workbookOutputIdx == -1)
+			return new PortObjectSpec[] {};
+		final PortObjectSpec[] outSpecs = new PortObjectSpec[m_workbookOutputIdx + 1];
+		outSpecs[m_workbookOutputIdx] = createWorkbookSpec();
+		return outSpecs;
 	}
 
 	@Override
 	protected PortObject[] execute(PortObject[] inObjects, ExecutionContext exec) throws Exception {
-		final XlsFormatterState state = (XlsFormatterState) inObjects[m_formatterIdx];
+		final XlsFormatterState state = getFormatterState(inObjects, exec);
+		BufferedDataTable workbookTable = null;
 		if (state.isEmpty()) {
 			setWarningMessage("The XLS Formatter Port input is empty, hence nothing could be applied.");
+			if (m_workbookOutputIdx != -1) { // the unmodified input file is the formatted workbook
+				try (final ReadPathAccessor readAccessor = m_settings.getSrcFileChooser().createReadPathAccessor()) {
+					final FSPath inputPath = readAccessor.getFSPaths(m_statusConsumer).get(0);
+					try (final InputStream inputStream = FSFiles.newInputStream(inputPath)) {
+						workbookTable = createWorkbookTable(new BinaryObjectCellFactory(exec).create(inputStream), exec);
+					}
+				}
+			}
 		} else {
 			try (final ReadPathAccessor readAccessor = m_settings.getSrcFileChooser().createReadPathAccessor();
 					final WritePathAccessor writeAccessor = m_settings.getTgtFileChooser().createWritePathAccessor()) {
 				final FSPath inputPath = readAccessor.getFSPaths(m_statusConsumer).get(0);
-				final FSPath outputPath = writeAccessor.getOutputPath(m_statusConsumer);
-				m_statusConsumer.setWarningsIfRequired(this::setWarningMessage);
-				createParentDirectories(outputPath);
-				// since the remainder is rather costly we do this check here
-				checkOverwrite(outputPath);
+				final FSPath outputPath = m_settings.isWriteOutputFile() ? writeAccessor.getOutputPath(m_statusConsumer) : null;
 				m_statusConsumer.setWarningsIfRequired(this::setWarningMessage);
+				if (outputPath != null) {
+					OutputFileTools.createParentDirectories(outputPath, m_settings.getTgtFileChooser());
+					// since the remainder is rather costly we do this check here
+					OutputFileTools.checkOverwrite(outputPath, m_settings.getTgtFileChooser());
+					m_statusConsumer.setWarningsIfRequired(this::setWarningMessage);
+				}
 
-				// used to sneak out a warning from apply()
-				XlsFormatterApplyLogic.apply(inputPath.toString(),
-						() -> FSFiles.newInputStream(inputPath),
-						() -> FSFiles.newOutputStream(outputPath,
-								m_settings.getTgtFileChooser().getFileOverwritePolicy().getOpenOptions()),
-						state,
-						m_settings.getPreserveSourceNumberFormatsSettingsModel().getBooleanValue(),
-						warningMessageContainer,
-						exec,
-						LOGGER);
-				if (m_settings.getOpenOutputFileSettingsModel().getBooleanValue() && !isHeadlessOrRemote()
-						&& categoryIsSupported(outputPath.toFSLocation().getFSCategory())) {
-					openFile(m_settings.getTgtFileChooser(), outputPath);
+				if (m_workbookOutputIdx == -1) {
+					// used to sneak out a warning from apply()
+					XlsFormatterApplyLogic.apply(inputPath.toString(),
+							() -> FSFiles.newInputStream(inputPath),
+							() -> FSFiles.newOutputStream(outputPath,
+									m_settings.getTgtFileChooser().getFileOverwritePolicy().getOpenOptions()),
+							state,
+							m_settings.getPreserveSourceNumberFormatsSettingsModel().getBooleanValue(),
+							warningMessageContainer,
+							KnimeAdapters.of(exec),
+							KnimeAdapters.of(LOGGER));
+				}
+				else { // the workbook is streamed once into the binary object cell (in memory or in a file store), which then feeds the output file
+					final PipedInputStream workbookInput = new PipedInputStream(WORKBOOK_PIPE_SIZE);
+					final PipedOutputStream workbookOutput = new PipedOutputStream(workbookInput);
+					final ExecutorService cellCreator = Executors.newSingleThreadExecutor();
+					try {
+						final Future<DataCell> futureWorkbookCell = cellCreator.submit(() -> { // reads the workbook while it is written
+							try (final InputStream inputStream = workbookInput) {
+								return new BinaryObjectCellFactory(exec).create(inputStream);
+							}
+						});
+						try {
+							XlsFormatterApplyLogic.apply(inputPath.toString(),
+									() -> FSFiles.newInputStream(inputPath),
+									() -> workbookOutput,
+									state,
+									m_settings.getPreserveSourceNumberFormatsSettingsModel().getBooleanValue(),
+									warningMessageContainer,
+									KnimeAdapters.of(exec),
+									KnimeAdapters.of(LOGGER));
+						}
+						catch (Exception e) {
+							workbookOutput.close(); // ends the cell's input
+							getWorkbookCell(futureWorkbookCell); // a failed cell creation closes the pipe, which then is the actual cause
+							throw e;
+						}
+						workbookOutput.close();
+						final DataCell workbookCell = getWorkbookCell(futureWorkbookCell);
+						if (outputPath != null) {
+							exec.setProgress("Copying formatted workbook to output file...");
+							try (final InputStream inputStream = ((BinaryObjectDataValue)workbookCell).openInputStream();
+									final OutputStream outputStream = FSFiles.newOutputStream(outputPath,
+											m_settings.getTgtFileChooser().getFileOverwritePolicy().getOpenOptions())) {
+								inputStream.transferTo(outputStream);
+							}
+						}
+						workbookTable = createWorkbookTable(workbookCell, exec);
+					}
+					finally {
+						cellCreator.shutdownNow();
+					}
+				}
+				if (outputPath != null && m_settings.getOpenOutputFileSettingsModel().getBooleanValue() && !OutputFileTools.isHeadlessOrRemote()
+						&& OutputFileTools.categoryIsSupported(outputPath.toFSLocation().getFSCategory())) {
+					OutputFileTools.openFile(m_settings.getTgtFileChooser(), outputPath, warningMessageContainer);
 				}
 				if (warningMessageContainer.hasMessage()) {
 					setWarningMessage(warningMessageContainer.getMessage());
 				}
 			}
 		}
-		return new PortObject[] {};
-	}
-
-	private void createParentDirectories(final FSPath outpath) throws IOException {
-		final FSPath parentPath = (FSPath) outpath.getParent();
-		if (parentPath != null && !FSFiles.exists(parentPath)) {
-			if (m_settings.getTgtFileChooser().isCreateMissingFolders()) {
-				FSFiles.createDirectories(parentPath);
-			} else {
-				throw new IOException(String.format(
-						"The directory '%s' does not exist and must not be created due to user settings.", parentPath));
-			}
-		}
-	}
-
-	private void checkOverwrite(final FSPath outpath) throws AccessDeniedException, IOException {
-		final FileOverwritePolicy fileOverwritePolicy = m_settings.getTgtFileChooser().getFileOverwritePolicy();
-		if (fileOverwritePolicy == FileOverwritePolicy.FAIL && FSFiles.exists(outpath)) {
-			throw new IOException("Output file '" + outpath.toString()
-					+ "' exists and must not be overwritten due to user settings.");
-		}
+		if (m_workbookOutputIdx == -1)
+			return new PortObject[] {};
+		final PortObject[] outObjects = new PortObject[m_workbookOutputIdx + 1];
+		outObjects[m_workbookOutputIdx] = workbookTable;
+		return outObjects;
 	}
 
-	static boolean isHeadlessOrRemote() {
-		return Boolean.getBoolean("java.awt.headless") || CheckNodeContextUtil.isRemoteWorkflowContext();
+	/**
+	 * Gets the formatter state to apply. Multiple xls formatter inputs are combined, so that all of them are implemented
+	 * in a single open and write cycle of the workbook.
+	 */
+	private XlsFormatterState getFormatterState(final PortObject[] inObjects, final ExecutionContext exec) throws Exception {
+		if (m_formatterIdxs.length == 1)
+			return (XlsFormatterState) inObjects[m_formatterIdxs[0]];
+		final List<XlsFormatterState> states = new ArrayList<XlsFormatterState>();
+		for (final int formatterIdx : m_formatterIdxs)
+			states.add((XlsFormatterState) inObjects[formatterIdx]);
+		return XlsFormatterStateMerger.combineFormatterStates(states, KnimeAdapters.of(exec), KnimeAdapters.of(LOGGER));
 	}
 
-	static boolean categoryIsSupported(final FSCategory fsCategory) {
-		return fsCategory == FSCategory.LOCAL
-				|| fsCategory == FSCategory.RELATIVE
-				|| fsCategory == FSCategory.CUSTOM_URL;
+	private static DataTableSpec createWorkbookSpec() {
+		return new DataTableSpec(new DataColumnSpecCreator(WORKBOOK_COLUMN_NAME, BinaryObjectDataCell.TYPE).createSpec());
 	}
 
-	private void openFile(final SettingsModelWriterFileChooser fileChooser, final FSPath outputPath)
-			throws IOException {
-		try (final FSConnection connection = fileChooser.getConnection()) {
-			final Optional<File> file = toFile(outputPath, connection);
-			if (file.isPresent()) {
-				DesktopUtil.open(file.get());
-			} else {
-				warningMessageContainer.addMessage("Non local files cannot be opened after node execution.");
-			}
+	/**
+	 * Gets the binary object cell holding the formatted workbook once its creation has completed.
+	 */
+	private static DataCell getWorkbookCell(final Future<DataCell> futureWorkbookCell) throws Exception {
+		try {
+			return futureWorkbookCell.get();
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception)
+				throw (Exception)e.getCause();
+			throw e;
 		}
 	}
 
-	private static Optional<File> toFile(final FSPath outputPath, final FSConnection fsConnection) {
-		final FSCategory fsCategory = outputPath.toFSLocation().getFSCategory();
-		if (fsCategory == FSCategory.LOCAL) {
-			return Optional.of(outputPath.toAbsolutePath().toFile());
-		}
-		try {
-			final URIExporter uriExporter = fsConnection.getDefaultURIExporterFactory().getExporter();
-			final String uri = uriExporter.toUri(outputPath).toString();
-			final URL url = FileUtil.toURL(uri);
-			return Optional.ofNullable(FileUtil.getFileFromURL(url));
-		} catch (final MalformedURLException | IllegalArgumentException | URISyntaxException e) {
-			LOGGER.debug("Unable to resolve custom URL", e);
-			return Optional.empty();
-		}
+	/**
+	 * Creates the single cell table holding the formatted workbook. Depending on its size, the binary object cell keeps
+	 * the bytes in memory or in a file store.
+	 */
+	private static BufferedDataTable createWorkbookTable(final DataCell workbookCell, final ExecutionContext exec) {
+		final BufferedDataContainer container = exec.createDataContainer(createWorkbookSpec());
+		container.addRowToTable(new DefaultRow(RowKey.createRowKey(0L), workbookCell));
+		container.close();
+		return container.getTable();
 	}
 
 	@Override
@@ -41,7 +41,12 @@ final class XlsFormatterApplySettings {
 	
 	private final SettingsModelBoolean m_preserveSourceNumberFormats;
 
-	XlsFormatterApplySettings(final PortsConfiguration portsCfg, final String srcGrpName, final String tgtGrpName) {
+	private final SettingsModelBoolean m_writeOutputFile;
+
+	private final boolean m_hasWorkbookOutputPort;
+
+	XlsFormatterApplySettings(final PortsConfiguration portsCfg, final String srcGrpName, final String tgtGrpName,
+			final boolean hasWorkbookOutputPort) {
 		m_source = new SettingsModelReaderFileChooser("InputFile", portsCfg, srcGrpName,
 				EnumConfig.create(FilterMode.FILE), FILE_EXTENSION);
 		m_target = new SettingsModelWriterFileChooser("OutputFile", portsCfg, tgtGrpName,
@@ -49,6 +54,8 @@ final class XlsFormatterApplySettings {
 				EnumConfig.create(FileOverwritePolicy.FAIL, FileOverwritePolicy.OVERWRITE), FILE_EXTENSION);
 		m_openOutputFile = new SettingsModelBoolean("OpenOutputFile", false);
 		m_preserveSourceNumberFormats = new SettingsModelBoolean("PreserveSourceNumberFormats", true);
+		m_writeOutputFile = new SettingsModelBoolean("WriteOutputFile", true);
+		m_hasWorkbookOutputPort = hasWorkbookOutputPort;
 	}
 
 	SettingsModelReaderFileChooser getSrcFileChooser() {
@@ -67,11 +74,27 @@ final class XlsFormatterApplySettings {
 		return m_preserveSourceNumberFormats;
 	}
 
+	SettingsModelBoolean getWriteOutputFileSettingsModel() {
+		return m_writeOutputFile;
+	}
+
+	boolean hasWorkbookOutputPort() {
+		return m_hasWorkbookOutputPort;
+	}
+
+	/**
+	 * Checks whether the formatted workbook shall be written to the output file. Without the workbook output port, this is always the case.
+	 */
+	boolean isWriteOutputFile() {
+		return !m_hasWorkbookOutputPort || m_writeOutputFile.getBooleanValue();
+	}
+
 	void saveSettingsInModel(final NodeSettingsWO settings) {
 		m_source.saveSettingsTo(settings);
 		m_target.saveSettingsTo(settings);
 		m_openOutputFile.saveSettingsTo(settings);
 		m_preserveSourceNumberFormats.saveSettingsTo(settings);
+		m_writeOutputFile.saveSettingsTo(settings);
 	}
 
 	void validateSettingsInModel(final NodeSettingsRO settings) throws InvalidSettingsException {
@@ -82,6 +105,8 @@ final class XlsFormatterApplySettings {
 			m_preserveSourceNumberFormats.validateSettings(settings);
 		else
 			m_preserveSourceNumberFormats.setBooleanValue(false);  // ensures that workflows saved before August 2024 still behave consistently
+		if (settings.containsKey("WriteOutputFile"))
+			m_writeOutputFile.validateSettings(settings);
 	}
 
 	void loadSettingsInModel(final NodeSettingsRO settings) throws InvalidSettingsException {
@@ -92,5 +117,9 @@ final class XlsFormatterApplySettings {
 			m_preserveSourceNumberFormats.loadSettingsFrom(settings);
 		else
 			m_preserveSourceNumberFormats.setBooleanValue(false);  // ensures that workflows saved before August 2024 still behave consistently
+		if (settings.containsKey("WriteOutputFile"))
+			m_writeOutputFile.loadSettingsFrom(settings);
+		else
+			m_writeOutputFile.setBooleanValue(true);  // workflows saved before the workbook output port existed always wrote the output file
 	}
 }
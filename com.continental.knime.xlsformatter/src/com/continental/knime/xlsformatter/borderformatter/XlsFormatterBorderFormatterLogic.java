@@ -18,6 +18,8 @@
 
 package com.continental.knime.xlsformatter.borderformatter;
 
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -27,21 +29,23 @@ import org.apache.poi.ss.util.CellAddress;
 import org.knime.core.node.ExecutionContext;
 
 import com.continental.knime.xlsformatter.commons.AddressingTools;
+import com.continental.knime.xlsformatter.commons.KnimeAdapters;
 import com.continental.knime.xlsformatter.commons.XlsFormatterControlTableValidator;
+import com.continental.knime.xlsformatter.commons.XlsFormatterLogger;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterState;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterState.BorderEdge;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterState.BorderStyle;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterState.CellState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.SheetState;
 
 public class XlsFormatterBorderFormatterLogic {
 
 	private enum BorderPosition { TOP, LEFT, BOTTOM, RIGHT, INNER_VERTICAL, INNER_HORIZONTAL }
 	
 	/**
-	 * The cell-based part of a XlsFormatterState mapping cell addresses to cell states.
-	 * Will be modified by the border logic.
+	 * The sheet state whose cells will be modified by the border logic.
 	 */
-	private Map<CellAddress, CellState> _cellsMap;
+	private SheetState _sheetState;
 	
 	/**
 	 * A list of cell addresses that match the searched tag, hence representing the border target area.
@@ -58,15 +62,20 @@ public class XlsFormatterBorderFormatterLogic {
 	 */
 	private Set<CellAddress> _matchingCellsSet;
 	
+	/**
+	 * The cells whose state's border edge of a position is to be set, collected to be recorded as one range instruction per position.
+	 */
+	private Map<BorderPosition, List<CellAddress>> _cellsToUpdate;
+	
 	/**
 	 * 
-	 * @param cellsMap The cell-based part of a XlsFormatterState mapping cell addresses to cell states.
+	 * @param sheetState The sheet state whose cells will be modified by the border logic.
 	 * @param matchingCells A list of cell addresses that match the searched tag, hence representing the border target area.
 	 * @param borderEdge The requested border format (style and color).
 	 */
-	public XlsFormatterBorderFormatterLogic(Map<CellAddress, CellState> cellsMap, List<CellAddress> matchingCells,
+	public XlsFormatterBorderFormatterLogic(SheetState sheetState, List<CellAddress> matchingCells,
 			XlsFormatterState.BorderEdge borderEdge) {
-		_cellsMap = cellsMap;
+		_sheetState = sheetState;
 		_matchingCells = matchingCells;
 		_borderEdge = borderEdge;
 		_matchingCellsSet = new HashSet<CellAddress>(matchingCells);
@@ -86,6 +95,7 @@ public class XlsFormatterBorderFormatterLogic {
 		if (_borderEdge == null || (_borderEdge.style == BorderStyle.UNMODIFIED && _borderEdge.color == null)) // nothing to do
 				return;
 		
+		_cellsToUpdate = new EnumMap<BorderPosition, List<CellAddress>>(BorderPosition.class);
 		for (CellAddress cell : _matchingCells) {
 			exec.checkCanceled();
 			
@@ -102,6 +112,12 @@ public class XlsFormatterBorderFormatterLogic {
 			if (innerHorizontal)
 				setCellBorderAndNeighbors(cell, BorderPosition.INNER_HORIZONTAL);
 		}
+		
+		for (Map.Entry<BorderPosition, List<CellAddress>> cells : _cellsToUpdate.entrySet()) {
+			exec.checkCanceled();
+			_sheetState.addRangeInstruction(AddressingTools.getRangesFromAddressList(cells.getValue(), KnimeAdapters.of(exec), XlsFormatterLogger.NONE),
+					state -> updateStatesBorder(state, cells.getKey()));
+		}
 	}
 	
 	/**
@@ -112,50 +128,50 @@ public class XlsFormatterBorderFormatterLogic {
 		switch (borderPosition) {
 		case TOP: // if there is no further matching cell above, set this outer top border (and the respective identical one of the top neighbor cell)
 			if (!isRelativeCellAMatch(cell, 0, -1)) {
-				updateStatesBorder(AddressingTools.safelyGetCellInMap(_cellsMap, cell), BorderPosition.TOP);
+				updateStatesBorder(cell, BorderPosition.TOP);
 				setRelativePositionedSharedCellBorderEdge(cell, 0, -1);
 			}
 			break;
 
 		case BOTTOM: // if there is no further matching cell underneath, set this outer bottom border (and the respective identical one of the bottom neighbor cell)
 			if (!isRelativeCellAMatch(cell, 0, 1)) {
-				updateStatesBorder(AddressingTools.safelyGetCellInMap(_cellsMap, cell), BorderPosition.BOTTOM);
+				updateStatesBorder(cell, BorderPosition.BOTTOM);
 				setRelativePositionedSharedCellBorderEdge(cell, 0, 1);
 			}
 			break;
 
 		case LEFT: // if there is no further matching cell to the left, set this outer left border (and the respective identical one of the left neighbor cell)
 			if (!isRelativeCellAMatch(cell, -1, 0)) {
-				updateStatesBorder(AddressingTools.safelyGetCellInMap(_cellsMap, cell), BorderPosition.LEFT);
+				updateStatesBorder(cell, BorderPosition.LEFT);
 				setRelativePositionedSharedCellBorderEdge(cell, -1, 0);
 			}
 			break;
 
 		case RIGHT: // if there is no further matching cell to the right, set this outer right border (and the respective identical one of the right neighbor cell)
 			if (!isRelativeCellAMatch(cell, 1, 0)) {
-				updateStatesBorder(AddressingTools.safelyGetCellInMap(_cellsMap, cell), BorderPosition.RIGHT);
+				updateStatesBorder(cell, BorderPosition.RIGHT);
 				setRelativePositionedSharedCellBorderEdge(cell, 1, 0);
 			}
 			break;
 
 		case INNER_VERTICAL: // if there is an also matching neighbor cell to the left/right, set this inner left/right border (and the respective identical one of the left/right neighbor cell)
 			if (isRelativeCellAMatch(cell, -1, 0)) {
-				updateStatesBorder(AddressingTools.safelyGetCellInMap(_cellsMap, cell), BorderPosition.LEFT);
+				updateStatesBorder(cell, BorderPosition.LEFT);
 				setRelativePositionedSharedCellBorderEdge(cell, -1, 0);
 			}
 			if (isRelativeCellAMatch(cell, 1, 0)) {
-				updateStatesBorder(AddressingTools.safelyGetCellInMap(_cellsMap, cell), BorderPosition.RIGHT);
+				updateStatesBorder(cell, BorderPosition.RIGHT);
 				setRelativePositionedSharedCellBorderEdge(cell, 1, 0);
 			}
 			break;
 			
 		case INNER_HORIZONTAL: // if there is an also matching neighbor cell above/underneath, set this inner top/bottom border (and the respective identical one of the top/bottom neighbor cell)
 			if (isRelativeCellAMatch(cell, 0, -1)) {
-				updateStatesBorder(AddressingTools.safelyGetCellInMap(_cellsMap, cell), BorderPosition.TOP);
+				updateStatesBorder(cell, BorderPosition.TOP);
 				setRelativePositionedSharedCellBorderEdge(cell, 0, -1);
 			}
 			if (isRelativeCellAMatch(cell, 0, 1)) {
-				updateStatesBorder(AddressingTools.safelyGetCellInMap(_cellsMap, cell), BorderPosition.BOTTOM);
+				updateStatesBorder(cell, BorderPosition.BOTTOM);
 				setRelativePositionedSharedCellBorderEdge(cell, 0, 1);
 			}
 			break;
@@ -173,16 +189,16 @@ public class XlsFormatterBorderFormatterLogic {
 	private void setRelativePositionedSharedCellBorderEdge(final CellAddress cell,
 			final int diffX, final int diffY) throws Exception {
 		
-		CellState neighborState = AddressingTools.safelyGetCellWithNegativeCheck(_cellsMap, cell.getColumn() + diffX, cell.getRow() + diffY);
-		if (neighborState != null) { // null would mean e.g. we looked left of cell A1
+		if (AddressingTools.isCellAddressInSpec(cell.getColumn() + diffX, cell.getRow() + diffY)) { // not e.g. when we looked left of cell A1
+			CellAddress neighbor = new CellAddress(cell.getRow() + diffY, cell.getColumn() + diffX);
 			if (diffX == -1 && diffY == 0)
-				updateStatesBorder(neighborState, BorderPosition.RIGHT);
+				updateStatesBorder(neighbor, BorderPosition.RIGHT);
 			else if (diffX == 1 && diffY == 0)
-				updateStatesBorder(neighborState, BorderPosition.LEFT);
+				updateStatesBorder(neighbor, BorderPosition.LEFT);
 			else if (diffX == 0 && diffY == -1)
-				updateStatesBorder(neighborState, BorderPosition.BOTTOM);
+				updateStatesBorder(neighbor, BorderPosition.BOTTOM);
 			else if (diffX == 0 && diffY == 1)
-				updateStatesBorder(neighborState, BorderPosition.TOP);
+				updateStatesBorder(neighbor, BorderPosition.TOP);
 			else
 				throw new Exception("Coding issue: relative border setting with invalid jump.");
 		}
@@ -197,6 +213,13 @@ public class XlsFormatterBorderFormatterLogic {
 	}
 	
 	
+	/**
+	 * Marks a cell's border edge of a position to be set.
+	 */
+	private void updateStatesBorder(CellAddress cell, BorderPosition position) {
+		_cellsToUpdate.computeIfAbsent(position, p -> new ArrayList<CellAddress>()).add(cell);
+	}
+	
 	private void updateStatesBorder(CellState state, BorderPosition position) throws Exception {
 		switch (position) {
 		case TOP:
@@ -41,6 +41,7 @@ import org.knime.core.node.port.PortObject;
 import org.knime.core.node.port.PortObjectSpec;
 import org.knime.core.node.port.PortType;
 
+import com.continental.knime.xlsformatter.commons.KnimeAdapters;
 import com.continental.knime.xlsformatter.commons.TagBasedXlsCellFormatterNodeModel;
 import com.continental.knime.xlsformatter.commons.WarningMessageContainer;
 import com.continental.knime.xlsformatter.commons.XlsFormatterControlTableAnalysisTools;
@@ -133,17 +134,17 @@ public class XlsFormatterBorderFormatterNodeModel extends TagBasedXlsCellFormatt
 				m_allTags.getBooleanValue() ? ControlTableType.STRING_WITHOUT_CONTENT_CHECK : ControlTableType.STRING, exec, logger))
 			throw new IllegalArgumentException("The provided input table is not a valid XLS control table. See log for details.");
 
-		XlsFormatterState xlsf = XlsFormatterState.getDeepClone(inObjects[1]);
+		XlsFormatterState xlsf = XlsFormatterState.getModifiableCopy(inObjects[1]);
 
 		List<List<CellAddress>> passes;
 		if (m_allTags.getBooleanValue()) {
-			passes = XlsFormatterControlTableAnalysisTools.getCellsListForEachTagCombination((BufferedDataTable)inObjects[0], exec, logger);
+			passes = XlsFormatterControlTableAnalysisTools.getCellsListForEachTagCombination((BufferedDataTable)inObjects[0], KnimeAdapters.of(exec), KnimeAdapters.of(logger));
 			if (passes.size() == 0)
 				setWarningMessage("Control table is empty, no tag found.");
 		}
 		else {
 			List<CellAddress> targetCells =
-					XlsFormatterControlTableAnalysisTools.getCellsMatchingTag((BufferedDataTable)inObjects[0], m_tag.getStringValue().trim(), exec, logger);
+					XlsFormatterControlTableAnalysisTools.getCellsMatchingTag((BufferedDataTable)inObjects[0], m_tag.getStringValue().trim(), KnimeAdapters.of(exec), KnimeAdapters.of(logger));
 			warnOnNoMatchingTags(targetCells, m_tag.getStringValue().trim());
 			passes = new ArrayList<List<CellAddress>>();
 			passes.add(targetCells); // just 1 pass in this case
@@ -151,7 +152,7 @@ public class XlsFormatterBorderFormatterNodeModel extends TagBasedXlsCellFormatt
 
 		for (List<CellAddress> pass : passes) {
 			XlsFormatterBorderFormatterLogic borderLogic = new XlsFormatterBorderFormatterLogic(
-					xlsf.getCurrentSheetStateForModification().cells,
+					xlsf.getCurrentSheetStateForModification(),
 					pass,
 					new XlsFormatterState.BorderEdge(
 							XlsFormatterState.BorderStyle.valueOf(m_borderStyle.getStringValue().toUpperCase()),
@@ -168,10 +169,11 @@ public class XlsFormatterBorderFormatterNodeModel extends TagBasedXlsCellFormatt
 		}
 
 		WarningMessageContainer warningMessageContainer = new WarningMessageContainer(); 
-		XlsFormattingStateValidator.validateState(xlsf, ValidationModes.STYLES, warningMessageContainer, exec, logger);
+		XlsFormattingStateValidator.validateState(xlsf, ValidationModes.STYLES, warningMessageContainer, KnimeAdapters.of(exec), KnimeAdapters.of(logger));
 		if (warningMessageContainer.hasMessage())
 			setWarningMessage(warningMessageContainer.getMessage());
 			
+		xlsf.moveSheetsToFileStore(exec);
 		return new PortObject[] { xlsf };
 	}
 
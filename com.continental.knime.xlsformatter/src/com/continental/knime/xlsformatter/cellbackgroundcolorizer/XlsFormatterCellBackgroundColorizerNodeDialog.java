@@ -29,13 +29,16 @@ import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
 import org.knime.core.node.defaultnodesettings.DialogComponentBoolean;
 import org.knime.core.node.defaultnodesettings.DialogComponentButtonGroup;
 import org.knime.core.node.defaultnodesettings.DialogComponentColorChooser;
+import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
 import org.knime.core.node.defaultnodesettings.DialogComponentString;
 import org.knime.core.node.defaultnodesettings.DialogComponentStringSelection;
 import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
 import org.knime.core.node.defaultnodesettings.SettingsModelColor;
+import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
 import org.knime.core.node.defaultnodesettings.SettingsModelString;
 import org.knime.core.node.port.PortObjectSpec;
 
+import com.continental.knime.xlsformatter.apply.XlsFormatterApplyLogic;
 import com.continental.knime.xlsformatter.commons.UiValidation;
 import com.continental.knime.xlsformatter.commons.XlsFormatterUiOptions;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterState;
@@ -49,6 +52,8 @@ public class XlsFormatterCellBackgroundColorizerNodeDialog extends DefaultNodeSe
 	SettingsModelString backgroundPattern;
 	SettingsModelBoolean changeBackgroundPatternColor;
 	SettingsModelColor backgroundPatternColor;
+	SettingsModelBoolean quantizeColors;
+	SettingsModelIntegerBounded styleBudget;
 
 	ChangeListener changeListener = new BackgroundColorizerDialogChangeListener();
 	
@@ -102,11 +107,26 @@ public class XlsFormatterCellBackgroundColorizerNodeDialog extends DefaultNodeSe
 		backgroundPatternColor = new SettingsModelColor(XlsFormatterCellBackgroundColorizerNodeModel.CFGKEY_BACKGROUND_PATTERN_COLOR, XlsFormatterCellBackgroundColorizerNodeModel.DEFAULT_BACKGROUND_PATTERN_COLOR);
 		this.addDialogComponent(new DialogComponentColorChooser(
 				backgroundPatternColor, "color", true));
+		this.setHorizontalPlacement(false);
+
+		
+		this.createNewGroup("Color Quantization (direct mode only)");
+		this.setHorizontalPlacement(true);
+		quantizeColors = new SettingsModelBoolean(XlsFormatterCellBackgroundColorizerNodeModel.CFGKEY_QUANTIZE_COLORS, XlsFormatterCellBackgroundColorizerNodeModel.DEFAULT_QUANTIZE_COLORS);
+		DialogComponentBoolean quantizeColorsComponent = new DialogComponentBoolean(
+				quantizeColors, "merge similar colors to fit style budget?");
+		quantizeColorsComponent.setToolTipText("Merge perceptually near-identical colors until the required cell styles fit the style budget. The maximum color error is reported as node warning.");
+		this.addDialogComponent(quantizeColorsComponent);
+		
+		styleBudget = new SettingsModelIntegerBounded(XlsFormatterCellBackgroundColorizerNodeModel.CFGKEY_STYLE_BUDGET, XlsFormatterCellBackgroundColorizerNodeModel.DEFAULT_STYLE_BUDGET, 1, XlsFormatterApplyLogic.getMaximumDerivedStyleCount());
+		this.addDialogComponent(new DialogComponentNumber(
+				styleBudget, "style budget", 1000, 7));
 
 		controlTableStyle.addChangeListener(changeListener);
 		changeBackgroundColor.addChangeListener(changeListener);
 		backgroundPattern.addChangeListener(changeListener);
 		changeBackgroundPatternColor.addChangeListener(changeListener);
+		quantizeColors.addChangeListener(changeListener);
 	}
 
 	class BackgroundColorizerDialogChangeListener implements ChangeListener {
@@ -120,6 +140,8 @@ public class XlsFormatterCellBackgroundColorizerNodeDialog extends DefaultNodeSe
 			backgroundColor.setEnabled(isStandardMode && changeBackgroundColor.getBooleanValue());
 			changeBackgroundPatternColor.setEnabled(isStandardMode && isPatternChangeChosen);
 			backgroundPatternColor.setEnabled(isStandardMode && isPatternChangeChosen && changeBackgroundPatternColor.getBooleanValue());
+			quantizeColors.setEnabled(!isStandardMode);
+			styleBudget.setEnabled(!isStandardMode && quantizeColors.getBooleanValue());
 		}
 	}
 	
@@ -21,11 +21,16 @@ package com.continental.knime.xlsformatter.cellbackgroundcolorizer;
 import java.awt.Color;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.ss.util.CellRangeAddress;
 import org.knime.core.data.DataTableSpec;
 import org.knime.core.node.BufferedDataTable;
 import org.knime.core.node.CanceledExecutionException;
@@ -37,13 +42,17 @@ import org.knime.core.node.NodeSettingsRO;
 import org.knime.core.node.NodeSettingsWO;
 import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
 import org.knime.core.node.defaultnodesettings.SettingsModelColor;
+import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
 import org.knime.core.node.defaultnodesettings.SettingsModelString;
 import org.knime.core.node.port.PortObject;
 import org.knime.core.node.port.PortObjectSpec;
 import org.knime.core.node.port.PortType;
 
+import com.continental.knime.xlsformatter.apply.XlsFormatterApplyLogic;
 import com.continental.knime.xlsformatter.commons.AddressingTools;
+import com.continental.knime.xlsformatter.commons.ColorQuantizer;
 import com.continental.knime.xlsformatter.commons.ColorTools;
+import com.continental.knime.xlsformatter.commons.KnimeAdapters;
 import com.continental.knime.xlsformatter.commons.TagBasedXlsCellFormatterNodeModel;
 import com.continental.knime.xlsformatter.commons.WarningMessageContainer;
 import com.continental.knime.xlsformatter.commons.XlsFormatterControlTableAnalysisTools;
@@ -52,8 +61,12 @@ import com.continental.knime.xlsformatter.commons.XlsFormatterControlTableValida
 import com.continental.knime.xlsformatter.commons.XlsFormatterUiOptions;
 import com.continental.knime.xlsformatter.commons.XlsFormattingStateValidator;
 import com.continental.knime.xlsformatter.commons.XlsFormattingStateValidator.ValidationModes;
+import com.continental.knime.xlsformatter.porttype.CellMap;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.CellState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.CellStateModification;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterState.FillPattern;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.FormattingRecord;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterStateSpec;
 
 
@@ -107,6 +120,18 @@ public class XlsFormatterCellBackgroundColorizerNodeModel extends TagBasedXlsCel
 	final SettingsModelColor m_backgroundPatternColor =
 			new SettingsModelColor(CFGKEY_BACKGROUND_PATTERN_COLOR, DEFAULT_BACKGROUND_PATTERN_COLOR);
 
+	//Color quantization selection (direct mode only)
+	static final String CFGKEY_QUANTIZE_COLORS = "QuantizeColors";
+	static final boolean DEFAULT_QUANTIZE_COLORS = false;
+	final SettingsModelBoolean m_quantizeColors =
+			new SettingsModelBoolean(CFGKEY_QUANTIZE_COLORS, DEFAULT_QUANTIZE_COLORS);
+
+	//Style budget for color quantization
+	static final String CFGKEY_STYLE_BUDGET = "StyleBudget";
+	static final int DEFAULT_STYLE_BUDGET = 60000;
+	final SettingsModelIntegerBounded m_styleBudget =
+			new SettingsModelIntegerBounded(CFGKEY_STYLE_BUDGET, DEFAULT_STYLE_BUDGET, 1, XlsFormatterApplyLogic.getMaximumDerivedStyleCount());
+
 
 	public static List<String> fillPatternDropdownOptions = null;
 
@@ -138,24 +163,26 @@ public class XlsFormatterCellBackgroundColorizerNodeModel extends TagBasedXlsCel
 			throw new IllegalArgumentException("The provided input table is not a valid XLS control table. See log for details.");
 		
 
-		XlsFormatterState xlsf = XlsFormatterState.getDeepClone(inObjects[1]);
+		XlsFormatterState xlsf = XlsFormatterState.getModifiableCopy(inObjects[1]);
 		XlsFormatterState.SheetState xlsfs = xlsf.getCurrentSheetStateForModification();
 		WarningMessageContainer warningMessageContainer = new WarningMessageContainer();
 
 		// differentiate two modes of operation: standard (i.e. via a tag) or direct RGB values
 		if (m_controlTableStyle.getStringValue().equals(OPTION_CONTROLTABLESTYLE_STANDARD)) {
 			List<CellAddress> targetCells =
-					XlsFormatterControlTableAnalysisTools.getCellsMatchingTag((BufferedDataTable)inObjects[0], m_tag.getStringValue().trim(), exec, logger);
-			warnOnNoMatchingTags(targetCells, m_tag.getStringValue().trim(), warningMessageContainer);
+					XlsFormatterControlTableAnalysisTools.getCellsMatchingTag((BufferedDataTable)inObjects[0], m_tag.getStringValue().trim(), KnimeAdapters.of(exec), KnimeAdapters.of(logger));
+			List<CellRangeAddress> targetFullRanges =
+					XlsFormatterControlTableAnalysisTools.getFullRangesMatchingTag(((BufferedDataTable)inObjects[0]).getSpec(), m_tag.getStringValue().trim(), KnimeAdapters.of(logger));
+			if (targetFullRanges.size() == 0)
+				warnOnNoMatchingTags(targetCells, m_tag.getStringValue().trim(), warningMessageContainer);
 			
 			// check for a partly overlap of these target cells with a previously merged range and warn
-			String mergeOverlapRanges = XlsFormatterControlTableAnalysisTools.getOverlappingRanges(targetCells, xlsfs.mergeRanges, exec, logger);
+			String mergeOverlapRanges = XlsFormatterControlTableAnalysisTools.getOverlappingRanges(targetCells, xlsfs.mergeRanges, KnimeAdapters.of(exec), KnimeAdapters.of(logger));
 			if (mergeOverlapRanges != null)
 				warningMessageContainer.addMessage("Modification on parts of previously merged range(s) (" + mergeOverlapRanges + ") will have no effect.");
 
-			// modify each target cell at a time
-			for (CellAddress cell : targetCells) {
-				XlsFormatterState.CellState cellState = AddressingTools.safelyGetCellInMap(xlsfs.cells, cell);
+			// modify the target cells (once per distinct formatting) and the lazily kept full columns / rows
+			CellStateModification modification = cellState -> {
 
 				FillPattern fillPatternSelection = FillPattern.valueOf(m_backgroundPattern.getStringValue().toUpperCase());
 
@@ -172,12 +199,19 @@ public class XlsFormatterCellBackgroundColorizerNodeModel extends TagBasedXlsCel
 					if (m_changeBackgroundPatternColor.getBooleanValue()) // since v0.8.1: allow pattern fill color changes only for a change of pattern (not for pattern unmodified)
 						cellState.fillForegroundColor = m_backgroundPatternColor.getColorValue();
 				}
-			}
+			};
+			// unless a color change falls back to a solid fill pattern (which depends on a cell's current pattern), the target cells
+			// are recorded as range instructions that are resolved only when applied:
+			if (!m_changeBackgroundColor.getBooleanValue() || FillPattern.valueOf(m_backgroundPattern.getStringValue().toUpperCase()) != FillPattern.UNMODIFIED)
+				xlsfs.addRangeInstruction(AddressingTools.getRangesFromAddressList(targetCells, KnimeAdapters.of(exec), KnimeAdapters.of(logger)), modification);
+			else
+				xlsfs.modifyCells(targetCells, modification);
+			xlsfs.modifyFullRanges(targetFullRanges, modification);
 		}
 		else { // option direct RGB values in control table instead of tags
 			boolean checkPartialOverlapWithMergeRanges = xlsfs.mergeRanges != null && xlsfs.mergeRanges.size() != 0;
 			XlsFormatterControlTableAnalysisTools.CellStringMaps cellValueMaps =
-					XlsFormatterControlTableAnalysisTools.getCellStringMaps((BufferedDataTable)inObjects[0], checkPartialOverlapWithMergeRanges, exec, logger);
+					XlsFormatterControlTableAnalysisTools.getCellStringMaps((BufferedDataTable)inObjects[0], checkPartialOverlapWithMergeRanges, KnimeAdapters.of(exec), KnimeAdapters.of(logger));
 
 			// check for a partly overlap of these target cells with a previously merged range and warn
 			if (checkPartialOverlapWithMergeRanges) {
@@ -185,7 +219,7 @@ public class XlsFormatterCellBackgroundColorizerNodeModel extends TagBasedXlsCel
 				Set<String> warnedMergeRanges = new HashSet<String>(); // keep track of the merge ranges that was already warned about on the log to avoid duplicate warnings 
 				for (String distinctValue : cellValueMaps.stringValueToCellAddressesMap.keySet()) {
 					List<CellAddress> targetCells = cellValueMaps.stringValueToCellAddressesMap.get(distinctValue);
-					String overlap = XlsFormatterControlTableAnalysisTools.getOverlappingRanges(targetCells, xlsfs.mergeRanges, exec, logger);
+					String overlap = XlsFormatterControlTableAnalysisTools.getOverlappingRanges(targetCells, xlsfs.mergeRanges, KnimeAdapters.of(exec), KnimeAdapters.of(logger));
 					if (overlap != null && !warnedMergeRanges.contains(overlap)) {
 						logger.warn("Formatting of parts of previously merged range(s) will have no effect: Merge range " + overlap + " changed partly " + targetCells.toString() + " to " + distinctValue + ".");
 						warnedMergeRanges.add(overlap);
@@ -195,32 +229,161 @@ public class XlsFormatterCellBackgroundColorizerNodeModel extends TagBasedXlsCel
 				if (showWarning)
 					warningMessageContainer.addMessage("Formatting of parts of previously merged range(s) will have no effect. See log for details.");
 			}
-			
-			
-			for (CellAddress cell : cellValueMaps.cellAddressToStringValueMap.keySet()) {
-				XlsFormatterState.CellState cellState;
-				if (xlsfs.cells.containsKey(cell))
-					cellState = xlsfs.cells.get(cell);
-				else {
-					cellState = new XlsFormatterState.CellState();
-					xlsfs.cells.put(cell, cellState);
-				}
 
-				String value = cellValueMaps.cellAddressToStringValueMap.get(cell);
-				if (!value.trim().equals("")) {
-					cellState.backgroundColor = ColorTools.anyColorCodeToXlsfColor(value);
+			// group the cells by their color, so that each distinct color is derived only once per distinct formatting
+			Map<Color, List<CellAddress>> colorizedCells = new HashMap<Color, List<CellAddress>>();
+			List<CellAddress> uncolorizedCells = new ArrayList<CellAddress>();
+			Map<String, Color> parsedColors = new HashMap<String, Color>();
+			for (Map.Entry<CellAddress, String> cell : cellValueMaps.cellAddressToStringValueMap.entrySet()) {
+				String value = cell.getValue();
+				if (value.trim().equals(""))
+					uncolorizedCells.add(cell.getKey());
+				else
+					colorizedCells.computeIfAbsent(parsedColors.computeIfAbsent(value, ColorTools::anyColorCodeToXlsfColor),
+							c -> new ArrayList<CellAddress>()).add(cell.getKey());
+			}
+			xlsfs.modifyCells(uncolorizedCells, cellState -> { });
+			for (Map.Entry<Color, List<CellAddress>> cells : colorizedCells.entrySet()) {
+				Color color = cells.getKey();
+				xlsfs.modifyCells(cells.getValue(), cellState -> {
+					cellState.backgroundColor = color;
 					cellState.fillPattern = FillPattern.SOLID_BACKGROUND_COLOR;
-				}
+				});
 			}
+
+			if (m_quantizeColors.getBooleanValue())
+				quantizeColors(xlsf, xlsfs, colorizedCells, m_styleBudget.getIntValue(), warningMessageContainer, exec);
 		}
 
-		XlsFormattingStateValidator.validateState(xlsf, ValidationModes.STYLES, warningMessageContainer, exec, logger);
+		XlsFormattingStateValidator.validateState(xlsf, ValidationModes.STYLES, warningMessageContainer, KnimeAdapters.of(exec), KnimeAdapters.of(logger));
 		if (warningMessageContainer.hasMessage())
 			setWarningMessage(warningMessageContainer.getMessage());
 
+		xlsf.moveSheetsToFileStore(exec);
 		return new PortObject[] { xlsf };
 	}
 
+	/**
+	 * Merges near-identical colors of the cells colorized by this node until the state's cell styles fit the style budget.
+	 * The styles are counted from the sheet's distinct records and full columns / rows, one per distinct POI relevant
+	 * formatting (so records differing only by a date type's default number format may be counted twice, which only
+	 * overestimates). For each quantization step, only the styles of the recolored cells are updated. Merging colors may
+	 * also merge the styles of other cells, so the style count need not shrink with the number of colors: all steps are
+	 * counted and the largest number of colors fitting the budget is taken.
+	 */
+	private static void quantizeColors(final XlsFormatterState xlsf, final XlsFormatterState.SheetState xlsfs, final Map<Color, List<CellAddress>> colorizedCells,
+			final int styleBudget, final WarningMessageContainer warningMessageContainer, final ExecutionContext exec) throws Exception {
+
+		// the styles of all other cells (of the only sheet of a state that is modified), which the colorized cells are removed from:
+		XlsFormatterState.SheetState otherCells = xlsf.new SheetState();
+		otherCells.cells = new CellMap<FormattingRecord>(xlsfs.cells);
+		for (List<CellAddress> cells : colorizedCells.values())
+			for (CellAddress cell : cells)
+				otherCells.cells.remove(CellMap.toKey(cell));
+		otherCells.rangeInstructions = xlsfs.rangeInstructions; // they don't cover the colorized cells, see SheetState.modifyCells()
+		StyleCount styleCount = new StyleCount();
+		for (FormattingRecord record : otherCells.getDistinctResolvedRecords())
+			styleCount.addFixedStyle(record);
+		for (CellState fullRange : xlsfs.fullColumns.values())
+			styleCount.addFixedStyle(new FormattingRecord(fullRange));
+		for (CellState fullRange : xlsfs.fullRows.values())
+			styleCount.addFixedStyle(new FormattingRecord(fullRange));
+
+		// the styles of the colorized cells, by color:
+		Map<Color, Set<String>> colorizedStyles = new HashMap<Color, Set<String>>();
+		Map<FormattingRecord, String> recordStyles = new HashMap<FormattingRecord, String>();
+		Map<Color, Color> representatives = new HashMap<Color, Color>();
+		Map<Color, Long> colorWeights = new HashMap<Color, Long>();
+		for (Map.Entry<Color, List<CellAddress>> cells : colorizedCells.entrySet()) {
+			Set<String> styles = new HashSet<String>();
+			for (CellAddress cell : cells.getValue())
+				styles.add(recordStyles.computeIfAbsent(xlsfs.cells.get(CellMap.toKey(cell)), StyleCount::getStyleWithoutBackground));
+			for (String style : styles)
+				styleCount.addColorizedStyle(style, cells.getKey());
+			colorizedStyles.put(cells.getKey(), styles);
+			representatives.put(cells.getKey(), cells.getKey());
+			colorWeights.put(cells.getKey(), (long)cells.getValue().size());
+		}
+		if (styleCount.get() <= styleBudget)
+			return;
+
+		List<ColorQuantizer.QuantizationStep> steps = ColorQuantizer.getQuantizationSteps(colorWeights, colorWeights.size());
+		int bestColorCount = 0, bestStyleCount = 0;
+		for (int i = 0; i < steps.size(); i++) {
+			exec.checkCanceled();
+			for (ColorQuantizer.ColorGroup group : steps.get(i).groups)
+				for (Color color : group.colors) {
+					Color previousRepresentative = representatives.put(color, group.representative);
+					for (String style : colorizedStyles.get(color)) {
+						styleCount.removeColorizedStyle(style, previousRepresentative);
+						styleCount.addColorizedStyle(style, group.representative);
+					}
+				}
+			if (styleCount.get() <= styleBudget) {
+				bestColorCount = i + 1;
+				bestStyleCount = styleCount.get();
+			}
+		}
+
+		if (bestColorCount == 0) { // not even a single color fits, so leave the colors as they are and let the validation fail
+			warningMessageContainer.addMessage("Color quantization could not reduce the number of cell styles to the style budget of " + styleBudget + ".");
+			return;
+		}
+		ColorQuantizer.QuantizationResult result = ColorQuantizer.quantize(steps, bestColorCount);
+		logger.debug("Color quantization to " + result.colorCount + " colors requires " + bestStyleCount + " cell styles (budget " + styleBudget + ").");
+		for (Map.Entry<Color, List<CellAddress>> cells : colorizedCells.entrySet()) {
+			Color color = result.colorMap.get(cells.getKey());
+			xlsfs.modifyCells(cells.getValue(), cellState -> cellState.backgroundColor = color);
+		}
+		warningMessageContainer.addMessage(String.format("Quantized %d distinct background colors to %d to fit the style budget of %d cell styles (maximum color error: delta E %.2f).",
+				colorWeights.size(), result.colorCount, styleBudget, result.maxColorError));
+	}
+
+	/**
+	 * Counts the distinct cell styles of fixed records and of colorized records, whose background colors change during the
+	 * quantization. A style is keyed by its POI relevant formatting without the background color plus the background color,
+	 * so that recoloring a record doesn't need to derive a new record.
+	 */
+	private static class StyleCount {
+
+		private final Set<Pair<String, Color>> m_fixedStyles = new HashSet<Pair<String, Color>>();
+		private final Map<Pair<String, Color>, Integer> m_colorizedStyleReferences = new HashMap<Pair<String, Color>, Integer>();
+		private int m_count = 1; // the default style of a workbook
+
+		static String getStyleWithoutBackground(final FormattingRecord record) {
+			CellState cellState = record.toCellState();
+			cellState.backgroundColor = null;
+			return new FormattingRecord(cellState).cellFormatToShortString(true, true);
+		}
+
+		void addFixedStyle(final FormattingRecord record) {
+			if (record.cellFormatToShortString(true, true).equals(CellState.getNonFormattingStateString()))
+				return;
+			Pair<String, Color> style = Pair.of(getStyleWithoutBackground(record), record.backgroundColor);
+			if (m_fixedStyles.add(style) && !m_colorizedStyleReferences.containsKey(style))
+				m_count++;
+		}
+
+		void addColorizedStyle(final String styleWithoutBackground, final Color backgroundColor) {
+			Pair<String, Color> style = Pair.of(styleWithoutBackground, backgroundColor);
+			if (m_colorizedStyleReferences.merge(style, 1, Integer::sum) == 1 && !m_fixedStyles.contains(style))
+				m_count++;
+		}
+
+		void removeColorizedStyle(final String styleWithoutBackground, final Color backgroundColor) {
+			Pair<String, Color> style = Pair.of(styleWithoutBackground, backgroundColor);
+			if (m_colorizedStyleReferences.merge(style, -1, Integer::sum) == 0) {
+				m_colorizedStyleReferences.remove(style);
+				if (!m_fixedStyles.contains(style))
+					m_count--;
+			}
+		}
+
+		int get() {
+			return m_count;
+		}
+	}
+
 	@Override
 	protected PortObjectSpec[] configure(final PortObjectSpec[] inSpecs)
 			throws InvalidSettingsException {
@@ -254,6 +417,8 @@ public class XlsFormatterCellBackgroundColorizerNodeModel extends TagBasedXlsCel
 		m_backgroundPatternColor.saveSettingsTo(settings);
 		m_backgroundPattern.saveSettingsTo(settings);
 		m_changeBackgroundColor.saveSettingsTo(settings);
+		m_quantizeColors.saveSettingsTo(settings);
+		m_styleBudget.saveSettingsTo(settings);
 
 	}
 
@@ -271,6 +436,10 @@ public class XlsFormatterCellBackgroundColorizerNodeModel extends TagBasedXlsCel
 		m_backgroundPatternColor.loadSettingsFrom(settings);
 		m_backgroundPattern.loadSettingsFrom(settings);
 		m_changeBackgroundColor.loadSettingsFrom(settings);
+		if (settings.containsKey(CFGKEY_QUANTIZE_COLORS))
+			m_quantizeColors.loadSettingsFrom(settings);
+		if (settings.containsKey(CFGKEY_STYLE_BUDGET))
+			m_styleBudget.loadSettingsFrom(settings);
 
 	}
 
@@ -288,6 +457,10 @@ public class XlsFormatterCellBackgroundColorizerNodeModel extends TagBasedXlsCel
 		m_backgroundPatternColor.validateSettings(settings);
 		m_backgroundPattern.validateSettings(settings);
 		m_changeBackgroundColor.validateSettings(settings);
+		if (settings.containsKey(CFGKEY_QUANTIZE_COLORS))
+			m_quantizeColors.validateSettings(settings);
+		if (settings.containsKey(CFGKEY_STYLE_BUDGET))
+			m_styleBudget.validateSettings(settings);
 
 
 	}
@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.util.List;
 
 import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.ss.util.CellRangeAddress;
 import org.knime.core.data.DataTableSpec;
 import org.knime.core.node.BufferedDataTable;
 import org.knime.core.node.CanceledExecutionException;
@@ -39,6 +40,7 @@ import org.knime.core.node.port.PortObjectSpec;
 import org.knime.core.node.port.PortType;
 
 import com.continental.knime.xlsformatter.commons.AddressingTools;
+import com.continental.knime.xlsformatter.commons.KnimeAdapters;
 import com.continental.knime.xlsformatter.commons.TagBasedXlsCellFormatterNodeModel;
 import com.continental.knime.xlsformatter.commons.WarningMessageContainer;
 import com.continental.knime.xlsformatter.commons.XlsFormatterControlTableAnalysisTools;
@@ -47,6 +49,7 @@ import com.continental.knime.xlsformatter.commons.XlsFormatterUiOptions;
 import com.continental.knime.xlsformatter.commons.XlsFormattingStateValidator;
 import com.continental.knime.xlsformatter.commons.XlsFormattingStateValidator.ValidationModes;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.CellStateModification;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterState.FormattingFlag;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterStateSpec;
 
@@ -174,21 +177,24 @@ public class XlsFormatterCellFormatterNodeModel extends TagBasedXlsCellFormatter
 		if (!XlsFormatterControlTableValidator.isControlTable((BufferedDataTable)inObjects[0], exec, logger))
 			throw new IllegalArgumentException("The provided input table is not a valid XLS control table. See log for details.");
 
-		XlsFormatterState xlsf = XlsFormatterState.getDeepClone(inObjects[1]);
+		XlsFormatterState xlsf = XlsFormatterState.getModifiableCopy(inObjects[1]);
 		XlsFormatterState.SheetState xlsfs = xlsf.getCurrentSheetStateForModification();
 		WarningMessageContainer warningMessageContainer = new WarningMessageContainer();
 
 		List<CellAddress> targetCells =
-				XlsFormatterControlTableAnalysisTools.getCellsMatchingTag((BufferedDataTable)inObjects[0], m_tag.getStringValue().trim(), exec, logger);
-		warnOnNoMatchingTags(targetCells, m_tag.getStringValue().trim(), warningMessageContainer);
+				XlsFormatterControlTableAnalysisTools.getCellsMatchingTag((BufferedDataTable)inObjects[0], m_tag.getStringValue().trim(), KnimeAdapters.of(exec), KnimeAdapters.of(logger));
+		List<CellRangeAddress> targetFullRanges =
+				XlsFormatterControlTableAnalysisTools.getFullRangesMatchingTag(((BufferedDataTable)inObjects[0]).getSpec(), m_tag.getStringValue().trim(), KnimeAdapters.of(logger));
+		if (targetFullRanges.size() == 0)
+			warnOnNoMatchingTags(targetCells, m_tag.getStringValue().trim(), warningMessageContainer);
 
 		// check for a partly overlap of these target cells with a previously merged range and warn
-		String mergeOverlapRanges = XlsFormatterControlTableAnalysisTools.getOverlappingRanges(targetCells, xlsfs.mergeRanges, exec, logger);
+		String mergeOverlapRanges = XlsFormatterControlTableAnalysisTools.getOverlappingRanges(targetCells, xlsfs.mergeRanges, KnimeAdapters.of(exec), KnimeAdapters.of(logger));
 		if (mergeOverlapRanges != null)
 			warningMessageContainer.addMessage("Modification on parts of previously merged range(s) (" + mergeOverlapRanges + ") will have no effect.");
 		
-		for (CellAddress cell : targetCells) {
-			XlsFormatterState.CellState cellState = AddressingTools.safelyGetCellInMap(xlsfs.cells, cell);
+		// record the target cells as range instructions (resolved only when applied) and modify the lazily kept full columns / rows
+		CellStateModification modification = cellState -> {
 
 			FormattingFlag flag = FormattingFlag.UNMODIFIED;
 			if(m_wordWrap.getBooleanValue())
@@ -224,12 +230,15 @@ public class XlsFormatterCellFormatterNodeModel extends TagBasedXlsCellFormatter
 			XlsFormatterState.CellDataType dataType = XlsFormatterUiOptions.getEnumEntryFromString(XlsFormatterState.CellDataType.values(), m_cellStyle.getStringValue());
 			if (dataType != XlsFormatterState.CellDataType.UNMODIFIED)
 				cellState.cellDataType = dataType;
-		}
+		};
+		xlsfs.addRangeInstruction(AddressingTools.getRangesFromAddressList(targetCells, KnimeAdapters.of(exec), KnimeAdapters.of(logger)), modification);
+		xlsfs.modifyFullRanges(targetFullRanges, modification);
 
-		XlsFormattingStateValidator.validateState(xlsf, ValidationModes.STYLES, warningMessageContainer, exec, logger);
+		XlsFormattingStateValidator.validateState(xlsf, ValidationModes.STYLES, warningMessageContainer, KnimeAdapters.of(exec), KnimeAdapters.of(logger));
 		if (warningMessageContainer.hasMessage())
 			setWarningMessage(warningMessageContainer.getMessage());
 
+		xlsf.moveSheetsToFileStore(exec);
 		return new PortObject[] { xlsf };
 	}
 
@@ -42,11 +42,13 @@ import org.knime.core.node.port.PortObjectSpec;
 import org.knime.core.node.port.PortType;
 
 import com.continental.knime.xlsformatter.commons.AddressingTools;
+import com.continental.knime.xlsformatter.commons.KnimeAdapters;
 import com.continental.knime.xlsformatter.commons.TagBasedXlsCellFormatterNodeModel;
 import com.continental.knime.xlsformatter.commons.WarningMessageContainer;
 import com.continental.knime.xlsformatter.commons.XlsFormatterControlTableAnalysisTools;
 import com.continental.knime.xlsformatter.commons.XlsFormatterControlTableValidator;
 import com.continental.knime.xlsformatter.commons.XlsFormatterControlTableValidator.ControlTableType;
+import com.continental.knime.xlsformatter.porttype.CellMap;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterState;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterState.CellState;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterStateSpec;
@@ -89,13 +91,13 @@ public class XlsFormatterCellMergerNodeModel extends TagBasedXlsCellFormatterNod
 				m_allTags.getBooleanValue() ? ControlTableType.STRING_WITHOUT_CONTENT_CHECK : ControlTableType.STRING, exec, logger))
 			throw new IllegalArgumentException("The provided input table is not a valid XLS control table. See log for details.");
 
-		XlsFormatterState xlsf = XlsFormatterState.getDeepClone(inObjects[1]);
+		XlsFormatterState xlsf = XlsFormatterState.getModifiableCopy(inObjects[1]);
 		XlsFormatterState.SheetState xlsfs = xlsf.getCurrentSheetStateForModification();
 		
 		// define list of to merge tags
 		List<String> tagsToMerge = new ArrayList<String>();
 		if (m_allTags.getBooleanValue())
-			tagsToMerge = XlsFormatterControlTableAnalysisTools.getAllFullCellContentTags((BufferedDataTable)inObjects[0], exec, logger); 
+			tagsToMerge = XlsFormatterControlTableAnalysisTools.getAllFullCellContentTags((BufferedDataTable)inObjects[0], KnimeAdapters.of(exec), KnimeAdapters.of(logger)); 
 		else
 			tagsToMerge.add(m_tag.getStringValue());
 		
@@ -105,14 +107,14 @@ public class XlsFormatterCellMergerNodeModel extends TagBasedXlsCellFormatterNod
 		List<CellRangeAddress> newRanges = new ArrayList<CellRangeAddress>(); 
 		for (String tag : tagsToMerge) {
 			List<CellRangeAddress> mergeRanges = XlsFormatterControlTableAnalysisTools.getRangesFromTag((BufferedDataTable)inObjects[0], tag, m_allTags.getBooleanValue(), 
-					false, warningMessage, exec, logger);
+					false, warningMessage, KnimeAdapters.of(exec), KnimeAdapters.of(logger));
 			if (mergeRanges.size() != 0)
 				logger.debug("Detected merge ranges for tag \"" + tag + "\" as: " + mergeRanges.stream().map(r -> r.formatAsString()).collect(Collectors.joining(";")));
-			if (AddressingTools.hasOverlap(newRanges, mergeRanges, exec, logger))
+			if (AddressingTools.hasOverlap(newRanges, mergeRanges, KnimeAdapters.of(exec), KnimeAdapters.of(logger)))
 				throw new IllegalArgumentException("The provided merge ranges overlap with eachother. See log for details.");
 			newRanges.addAll(mergeRanges);
 		}
-		if (AddressingTools.hasOverlap(xlsf.getCurrentSheetStateForModification().mergeRanges, newRanges, exec, logger))
+		if (AddressingTools.hasOverlap(xlsf.getCurrentSheetStateForModification().mergeRanges, newRanges, KnimeAdapters.of(exec), KnimeAdapters.of(logger)))
 			throw new IllegalArgumentException("The provided merge ranges overlap with previously defined ranges. See log for details.");
 		
 		// check whether an individual merge range will loose prior defined varying formatting instructions
@@ -123,15 +125,14 @@ public class XlsFormatterCellMergerNodeModel extends TagBasedXlsCellFormatterNod
 			CellAddress topLeftCellAddress = new CellAddress(mergeRange.getFirstRow(), mergeRange.getFirstColumn());
 			for (int r = mergeRange.getFirstRow(); r <= mergeRange.getLastRow(); r++) {
 				for (int c = mergeRange.getFirstColumn(); c <= mergeRange.getLastColumn(); c++) {
-					CellAddress cellAddress = new CellAddress(r, c);
-					CellState cellState = xlsfs.cells.containsKey(cellAddress) ? xlsfs.cells.get(cellAddress) : null;
+					CellState cellState = xlsfs.getCellState(CellMap.toKey(r, c));
 					String cellShortString = cellState == null ? "[na]" : cellState.cellFormatToShortString(false, false);
 					if (topLeftCellFormat == null) // this means we are at the beginning of the loop, i.e. at the top-left cell
 						topLeftCellFormat = cellShortString;
 					else // topLeftCellFormat was already set, we now search for a deviation from it
 						if (cellState != null && !cellShortString.equals(topLeftCellFormat)) {
 							showWarningAboutMergeFormattingLoss = true;
-							logger.debug("For merge range " + mergeRange.formatAsString() + ", cell " + cellAddress.formatAsString() + " has different formatting instructions (not considering border formats) than the top-left cell " + topLeftCellAddress.formatAsString() + ".");
+							logger.debug("For merge range " + mergeRange.formatAsString() + ", cell " + new CellAddress(r, c).formatAsString() + " has different formatting instructions (not considering border formats) than the top-left cell " + topLeftCellAddress.formatAsString() + ".");
 						}
 				}
 			}
@@ -144,6 +145,7 @@ public class XlsFormatterCellMergerNodeModel extends TagBasedXlsCellFormatterNod
 			setWarningMessage(warningMessage.getMessage());
 		xlsfs.mergeRanges.addAll(newRanges);
 
+		xlsf.moveSheetsToFileStore(exec);
 		return new PortObject[] { xlsf };
 	}
 
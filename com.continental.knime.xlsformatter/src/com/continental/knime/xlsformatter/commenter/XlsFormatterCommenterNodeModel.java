@@ -40,12 +40,13 @@ import org.knime.core.node.port.PortObject;
 import org.knime.core.node.port.PortObjectSpec;
 import org.knime.core.node.port.PortType;
 
+import com.continental.knime.xlsformatter.commons.KnimeAdapters;
 import com.continental.knime.xlsformatter.commons.WarningMessageContainer;
 import com.continental.knime.xlsformatter.commons.XlsFormatterControlTableAnalysisTools;
 import com.continental.knime.xlsformatter.commons.XlsFormatterControlTableValidator;
 import com.continental.knime.xlsformatter.commons.XlsFormatterControlTableValidator.ControlTableType;
+import com.continental.knime.xlsformatter.porttype.CellMap;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterState;
-import com.continental.knime.xlsformatter.porttype.XlsFormatterState.CellState;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterState.Comment;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterStateSpec;
 
@@ -79,40 +80,34 @@ public class XlsFormatterCommenterNodeModel extends NodeModel {
 		if (!XlsFormatterControlTableValidator.isControlTable((BufferedDataTable)inObjects[0], ControlTableType.STRING_WITHOUT_CONTENT_CHECK, exec, logger))
 			throw new IllegalArgumentException("The provided input table is not a valid XLS control table. See log for details.");
 
-		XlsFormatterState xlsf = XlsFormatterState.getDeepClone(inObjects[1]);
+		XlsFormatterState xlsf = XlsFormatterState.getModifiableCopy(inObjects[1]);
 		XlsFormatterState.SheetState xlsfs = xlsf.getCurrentSheetStateForModification();
 		WarningMessageContainer warningMessageContainer = new WarningMessageContainer();
 
 		Map<CellAddress, String> commentMap =
-				XlsFormatterControlTableAnalysisTools.getCellStringMaps((BufferedDataTable)inObjects[0], false, exec, logger).cellAddressToStringValueMap;
+				XlsFormatterControlTableAnalysisTools.getCellStringMaps((BufferedDataTable)inObjects[0], false, KnimeAdapters.of(exec), KnimeAdapters.of(logger)).cellAddressToStringValueMap;
 		
 		if (commentMap.size() == 0)
 			warningMessageContainer.addMessage("No comments found in input table.");
 		else {
 			
 			// check for a partly overlap of these target cells with a previously merged range and warn
-			String mergeOverlapRanges = XlsFormatterControlTableAnalysisTools.getOverlappingRanges(new ArrayList<CellAddress>(commentMap.keySet()), xlsfs.mergeRanges, exec, logger);
+			String mergeOverlapRanges = XlsFormatterControlTableAnalysisTools.getOverlappingRanges(new ArrayList<CellAddress>(commentMap.keySet()), xlsfs.mergeRanges, KnimeAdapters.of(exec), KnimeAdapters.of(logger));
 			if (mergeOverlapRanges != null)
 				warningMessageContainer.addMessage("Modification on parts of previously merged range(s) (" + mergeOverlapRanges + ") will have no effect.");
 		}
 
 		for (Entry<CellAddress, String> entry : commentMap.entrySet()) {
-			CellState cellState = null;
-			if (xlsfs.cells.containsKey(entry.getKey()))
-				cellState = xlsfs.cells.get(entry.getKey());
-			else {
-				cellState = new CellState();
-				xlsfs.cells.put(entry.getKey(), cellState);
-			}
-			
-			cellState.comment = new Comment();
-			cellState.comment.author = m_author.getStringValue();
-			cellState.comment.text = entry.getValue();
+			Comment comment = new Comment();
+			comment.author = m_author.getStringValue();
+			comment.text = entry.getValue();
+			xlsfs.setComment(CellMap.toKey(entry.getKey()), comment);
 		}
 		
 		if (warningMessageContainer.hasMessage())
 			setWarningMessage(warningMessageContainer.getMessage());
 
+		xlsf.moveSheetsToFileStore(exec);
 		return new PortObject[] { xlsf };
 	}
 
@@ -20,29 +20,19 @@ package com.continental.knime.xlsformatter.commons;
 
 import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.poi.ss.util.CellAddress;
 import org.apache.poi.ss.util.CellRangeAddress;
-import org.knime.core.data.DataCell;
-import org.knime.core.data.DataRow;
-import org.knime.core.data.MissingCell;
-import org.knime.core.data.RowKey;
-import org.knime.core.data.def.DefaultRow;
-import org.knime.core.data.def.StringCell;
-import org.knime.core.node.BufferedDataContainer;
-import org.knime.core.node.BufferedDataTable;
 import org.knime.core.node.CanceledExecutionException;
-import org.knime.core.node.ExecutionContext;
-import org.knime.core.node.NodeLogger;
 
 import com.continental.knime.xlsformatter.porttype.XlsFormatterState;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterState.CellState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.SheetState;
 
 public class AddressingTools {
 	
@@ -50,6 +40,14 @@ public class AddressingTools {
 	 * Parses an XLS range (can consist of a single cell as well), e.g. A1:D2, or R1C1:R2C2
 	 */
 	public static CellRangeAddress parseRange(String value) throws IllegalArgumentException {
+		return parseRange(value, false);
+	}
+	
+	/**
+	 * Parses an XLS range (can consist of a single cell as well), e.g. A1:D2, or R1C1:R2C2, and optionally also
+	 * full column or row ranges such as A:B or 3:5. The latter are returned with -1 as their undefined row resp. column indices.
+	 */
+	public static CellRangeAddress parseRange(String value, boolean allowFullColumnOrRowRanges) throws IllegalArgumentException {
 		CellRangeAddress ret;
 		Pattern r1c1RegexPattern = Pattern.compile("^R([0-9]{1,7})C([0-9]{1,5})(?:\\:R([0-9]{1,7})C([0-9]{1,5}))?$");
 		Matcher match = r1c1RegexPattern.matcher(value);
@@ -72,12 +70,22 @@ public class AddressingTools {
 				throw new IllegalArgumentException("Could not parse range \"" + value + "\". Expected something like \"A1:D2\".");
 			}
 			
-			if (ret.isFullColumnRange() || ret.isFullRowRange())
-	  		throw new IllegalArgumentException("Full column or row ranges are not yet supported. Please specify a range from cell to cell.");
+			if ((ret.isFullColumnRange() || ret.isFullRowRange()) && !allowFullColumnOrRowRanges)
+	  		throw new IllegalArgumentException("Full column or row ranges are not supported here. Please specify a range from cell to cell.");
+			if (!isFullColumnOrRowRange(ret) && (ret.getFirstRow() < 0 || ret.getFirstColumn() < 0))
+				throw new IllegalArgumentException("Could not parse range \"" + value + "\". Expected something like \"A1:D2\"" + (allowFullColumnOrRowRanges ? ", \"A:B\" or \"3:5\"." : "."));
 		}
 		return ret;
 	}
 	
+	/**
+	 * Checks whether a range addresses full columns (e.g. A:B) or full rows (e.g. 3:5), as returned by parseRange.
+	 */
+	public static boolean isFullColumnOrRowRange(CellRangeAddress range) {
+		return (range.getFirstRow() == -1 && range.getLastRow() == -1 && range.getFirstColumn() >= 0) ||
+				(range.getFirstColumn() == -1 && range.getLastColumn() == -1 && range.getFirstRow() >= 0);
+	}
+	
 	/**
 	 * Parse a single R1C1-syntax range coming from a regex match and check for conformance with sheet size limits.
 	 * Returns null in case of failure.
@@ -94,40 +102,32 @@ public class AddressingTools {
 		}
 	}
 	
-	/**
-	 * Identifies (or creates) a cell in a map.
-	 * @param cellMap The map of cell address and state that can but needs not contain the searched cell already.
-	 * @param column The 0-based column id of the cell.
-	 * @param row The 0-based row id of the cell.
-	 * @return The searched cell's CellState or null, if the searched cell is outside the XLS sheet (e.g. left neighbor of A1).
-	 */
-	public static CellState safelyGetCellWithNegativeCheck(Map<CellAddress, CellState> cellMap, int column, int row) {
-		if (!isCellAddressInSpec(column, row))
-			return null;
-		
-		CellAddress searchedAddress = new CellAddress(row, column);
-		return safelyGetCellInMap(cellMap, searchedAddress);
-	}
-	
-	
 	public static boolean isCellAddressInSpec(int column, int row) {
 		return !((column < 0 || XlsFormatterControlTableValidator.XLS_SIZE_LIMIT_MAX_COLUMNS <= column ||
 				row < 0 || XlsFormatterControlTableValidator.XLS_SIZE_LIMIT_MAX_ROWS <= row));
 	}
 	
 	/**
-	 * 
-	 * @param cellsMap
-	 * @param cell
-	 * @return
+	 * Identifies (or creates) the lazily kept cell states of full-column and full-row ranges, as returned by
+	 * XlsFormatterControlTableAnalysisTools.getFullRangesMatchingTag, in a sheet state.
 	 */
-	public static CellState safelyGetCellInMap(Map<CellAddress, CellState> cellsMap, CellAddress cell) {
-		XlsFormatterState.CellState cellState;
-		if (cellsMap.containsKey(cell))
-			cellState = cellsMap.get(cell);
-		else {
+	public static List<CellState> safelyGetFullRangeCellStates(SheetState sheetState, List<CellRangeAddress> fullRanges) {
+		List<CellState> ret = new ArrayList<CellState>();
+		for (CellRangeAddress range : fullRanges)
+			if (range.getFirstRow() == -1) // full columns
+				for (int c = range.getFirstColumn(); c <= range.getLastColumn(); c++)
+					ret.add(safelyGetCellInMap(sheetState.fullColumns, c));
+			else // full rows
+				for (int r = range.getFirstRow(); r <= range.getLastRow(); r++)
+					ret.add(safelyGetCellInMap(sheetState.fullRows, r));
+		return ret;
+	}
+	
+	private static <K> CellState safelyGetCellInMap(Map<K, CellState> map, K key) {
+		CellState cellState = map.get(key);
+		if (cellState == null) {
 			cellState = new XlsFormatterState.CellState();
-			cellsMap.put(cell, cellState);
+			map.put(key, cellState);
 		}
 		return cellState;
 	}
@@ -136,10 +136,11 @@ public class AddressingTools {
 	 * Checks two lists of cell ranges for an overlap in any pair of ranges between both lists.
 	 * Will NOT detect overlaps in pairs of one list.
 	 */
-	public static boolean hasOverlap(List<CellRangeAddress> list1, List<CellRangeAddress> list2, final ExecutionContext exec, final NodeLogger logger) throws CanceledExecutionException {
+	public static boolean hasOverlap(List<CellRangeAddress> list1, List<CellRangeAddress> list2, final ProgressMonitor exec, final XlsFormatterLogger logger) throws CanceledExecutionException {
+		ProgressReporter cancelChecker = ProgressReporter.createCancelChecker(exec);
 		for (CellRangeAddress range1 : list1)
 			for (CellRangeAddress range2 : list2) {
-				exec.checkCanceled();
+				cancelChecker.advance();
 				if (range1.intersects(range2)) {
 					logger.warn("Cell range overlap detected between " + range1.formatAsString() + " and " + range2.formatAsString() + ".");
 					return true;
@@ -151,13 +152,32 @@ public class AddressingTools {
 	/**
 	 * From a list of CellAddresses, determine rectangular ranges, which may be adjacent to each other. 
 	 */
-	public static List<CellRangeAddress> getRangesFromAddressList(final List<CellAddress> addresses, final ExecutionContext exec, final NodeLogger logger) throws Exception {
-		String tag = "x";
+	public static List<CellRangeAddress> getRangesFromAddressList(final List<CellAddress> addresses, final ProgressMonitor exec, final XlsFormatterLogger logger) throws Exception {
 		if (addresses.size() == 0)
 			return new ArrayList<CellRangeAddress>(0);
 		
-		return XlsFormatterControlTableAnalysisTools.getRangesFromTag(
-				getControlTableFromAddressList(addresses, tag, exec, logger), tag, false, true, null, exec, logger);
+		addresses.sort(null); // use default row-major, column-minor sorting of CellAddress implementation
+		final int rowCount = addresses.get(addresses.size()-1).getRow() + 1;
+		final int columnCount = addresses.stream().map(ca -> ca.getColumn()).max(Comparator.comparing(Integer::valueOf)).get() + 1;
+		
+		// the sorted addresses are turned into one row of match flags after the other, as if a control table tagged them:
+		Iterable<boolean[]> matchRows = () -> new Iterator<boolean[]>() {
+			private int r = 0;
+			private int i = 0;
+			
+			public boolean hasNext() {
+				return r < rowCount;
+			}
+			
+			public boolean[] next() {
+				boolean[] isMatch = new boolean[columnCount];
+				for (; i < addresses.size() && addresses.get(i).getRow() == r; i++)
+					isMatch[addresses.get(i).getColumn()] = true;
+				r++;
+				return isMatch;
+			}
+		};
+		return XlsFormatterControlTableAnalysisTools.getRangesFromMatchingCells(matchRows, columnCount, "x", true, null, exec, logger);
 	}
 	
 	/**
@@ -171,31 +191,28 @@ public class AddressingTools {
 	}
 	
 	/**
-	 * From a list of CellAddresses, create a matching control table.
+	 * Partitions a list of ranges into consecutive sub-lists whose formula lengths (see getFormulaLengthFromRangeList) do not exceed
+	 * the given maximum. Each sub-list is filled as far as possible before the next one is started, which yields the fewest sub-lists
+	 * among all partitionings into consecutive sub-lists. Partitionings that reorder the ranges may need fewer sub-lists, but keeping
+	 * the order also keeps neighboring ranges in the same sub-list.
 	 */
-	private static BufferedDataTable getControlTableFromAddressList(final List<CellAddress> addresses, final String tag, final ExecutionContext exec, final NodeLogger logger) throws Exception {
-		addresses.sort(null); // use default row-major, column-minor sorting of CellAddress implementation
-		exec.checkCanceled();
-		int rowCount = addresses.get(addresses.size()-1).getRow() + 1;
-		int columnCount = addresses.stream().map(ca -> ca.getColumn()).max(Comparator.comparing(Integer::valueOf)).get() + 1;
-		exec.checkCanceled();
-		Set<CellAddress> addressSet = new HashSet<CellAddress>(addresses);
-		exec.checkCanceled();
-		
-		// prepare output table:
-		BufferedDataContainer outBuffer = XlsFormatterControlTableCreateTools.getNewBufferedDataContainer(columnCount, exec, logger);
-		RowKey[] rowKeyArr = XlsFormatterControlTableCreateTools.getRowkeyArray(rowCount, exec, logger);
-		
-		for (int r = 0; r < rowCount; r++) {
-			DataCell[] cells = new DataCell[columnCount];
-			for (int c = 0; c < columnCount; c++) {
-				exec.checkCanceled();
-				cells[c] = addressSet.contains(new CellAddress(r, c)) ? new StringCell(tag) : new MissingCell(null);
+	public static List<List<CellRangeAddress>> partitionRangeListByFormulaLength(List<CellRangeAddress> ranges, int maxFormulaLength) {
+		List<List<CellRangeAddress>> ret = new ArrayList<List<CellRangeAddress>>();
+		List<CellRangeAddress> current = new ArrayList<CellRangeAddress>();
+		int currentLength = 0;
+		for (CellRangeAddress range : ranges) {
+			int rangeLength = range.formatAsString().length() + (range.getNumberOfCells() == 1 ? 2 : 4); // see getFormulaLengthFromRangeList
+			int newLength = current.size() == 0 ? 1 + rangeLength : currentLength + 1 + rangeLength; // = sign respectively separator
+			if (current.size() != 0 && newLength > maxFormulaLength) {
+				ret.add(current);
+				current = new ArrayList<CellRangeAddress>();
+				newLength = 1 + rangeLength;
 			}
-			DataRow rowOut = new DefaultRow(rowKeyArr[r], cells);
-			outBuffer.addRowToTable(rowOut);
+			current.add(range);
+			currentLength = newLength;
 		}
-		outBuffer.close();
-		return outBuffer.getTable();
+		if (current.size() != 0)
+			ret.add(current);
+		return ret;
 	}
 }
@@ -0,0 +1,276 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.continental.knime.xlsformatter.commons;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Reduces a set of colors to a given number of representative colors by clustering near-identical colors in the
+ * perceptual CIELAB color space (weighted median cut), so that visually similar colors are merged first.
+ */
+public class ColorQuantizer {
+
+	/**
+	 * Result of a quantization: the mapping of each original color to its representative color and the maximum
+	 * color error (CIE76 delta E, i.e. the euclidean distance in CIELAB space) introduced by this mapping.
+	 */
+	public static class QuantizationResult {
+		public final Map<Color, Color> colorMap;
+		public final int colorCount;
+		public final double maxColorError;
+
+		QuantizationResult(Map<Color, Color> colorMap, int colorCount, double maxColorError) {
+			this.colorMap = colorMap;
+			this.colorCount = colorCount;
+			this.maxColorError = maxColorError;
+		}
+	}
+
+	/**
+	 * A distinct input color in CIELAB space along with its weight (e.g. the number of cells using it).
+	 */
+	private static class LabColor {
+		final Color color;
+		final double[] lab;
+		final long weight;
+
+		LabColor(Color color, long weight) {
+			this.color = color;
+			this.lab = rgbToLab(color);
+			this.weight = weight;
+		}
+	}
+
+	/**
+	 * A box of the median cut, i.e. a cluster of colors that will share one representative color.
+	 */
+	private static class Box {
+		final List<LabColor> colors;
+		final double[] mean = new double[3];
+		double squaredError = 0d; // weighted sum of squared distances to the mean
+		int widestAxis = 0;
+
+		Box(List<LabColor> colors) {
+			this.colors = colors;
+			long totalWeight = 0;
+			for (LabColor c : colors) {
+				totalWeight += c.weight;
+				for (int i = 0; i < 3; i++)
+					mean[i] += c.lab[i] * c.weight;
+			}
+			for (int i = 0; i < 3; i++)
+				mean[i] /= totalWeight;
+			double[] axisError = new double[3];
+			for (LabColor c : colors)
+				for (int i = 0; i < 3; i++)
+					axisError[i] += (c.lab[i] - mean[i]) * (c.lab[i] - mean[i]) * c.weight;
+			for (int i = 0; i < 3; i++) {
+				squaredError += axisError[i];
+				if (axisError[i] > axisError[widestAxis])
+					widestAxis = i;
+			}
+		}
+
+		boolean isSplittable() {
+			return colors.size() > 1 && squaredError > 0d;
+		}
+
+		/**
+		 * Splits the box at the weighted median of its widest axis. Both halves are guaranteed to be non-empty.
+		 */
+		Box[] split() {
+			final int axis = widestAxis;
+			colors.sort(Comparator.comparingDouble(c -> c.lab[axis]));
+			long totalWeight = 0;
+			for (LabColor c : colors)
+				totalWeight += c.weight;
+			long cumulatedWeight = 0;
+			int splitIndex = 1;
+			for (int i = 0; i < colors.size() - 1; i++) {
+				cumulatedWeight += colors.get(i).weight;
+				splitIndex = i + 1;
+				if (cumulatedWeight * 2 >= totalWeight)
+					break;
+			}
+			return new Box[] {
+					new Box(new ArrayList<LabColor>(colors.subList(0, splitIndex))),
+					new Box(new ArrayList<LabColor>(colors.subList(splitIndex, colors.size())))};
+		}
+	}
+
+	/**
+	 * A group of colors sharing one representative color, i.e. a box of the median cut.
+	 */
+	public static class ColorGroup {
+		public final List<Color> colors;
+		public final Color representative;
+
+		ColorGroup(Box box) {
+			colors = new ArrayList<Color>(box.colors.size());
+			for (LabColor c : box.colors)
+				colors.add(c.color);
+			representative = labToRgb(box.mean);
+		}
+	}
+
+	/**
+	 * A step of the median cut, which assigns new representatives to some colors: the first step maps all colors to one
+	 * representative, every further step splits one group of colors into two. Applying the first n steps in order yields
+	 * the quantization to n colors.
+	 */
+	public static class QuantizationStep {
+		public final List<ColorGroup> groups;
+
+		QuantizationStep(List<ColorGroup> groups) {
+			this.groups = groups;
+		}
+	}
+
+	/**
+	 * Quantizes the provided colors to at most maxColorCount representative colors.
+	 * @param colorWeights Maps each distinct color to its weight (e.g. number of occurrences). Colors with higher weight get
+	 * represented more accurately.
+	 * @param maxColorCount The maximum number of distinct colors after quantization (at least 1).
+	 */
+	public static QuantizationResult quantize(final Map<Color, Long> colorWeights, final int maxColorCount) {
+		if (maxColorCount < 1)
+			throw new IllegalArgumentException("The number of colors to quantize to needs to be at least 1.");
+
+		if (colorWeights.size() <= maxColorCount) {
+			Map<Color, Color> colorMap = new HashMap<Color, Color>();
+			for (Color color : colorWeights.keySet())
+				colorMap.put(color, color);
+			return new QuantizationResult(colorMap, colorWeights.size(), 0d);
+		}
+		return quantize(getQuantizationSteps(colorWeights, maxColorCount), maxColorCount);
+	}
+
+	/**
+	 * Quantizes colors by applying the first maxColorCount of their quantization steps (see getQuantizationSteps()).
+	 */
+	public static QuantizationResult quantize(final List<QuantizationStep> steps, final int maxColorCount) {
+		Map<Color, Color> colorMap = new HashMap<Color, Color>();
+		for (QuantizationStep step : steps.subList(0, Math.min(maxColorCount, steps.size())))
+			for (ColorGroup group : step.groups)
+				for (Color color : group.colors)
+					colorMap.put(color, group.representative);
+
+		double maxColorError = 0d;
+		Map<Color, double[]> representativeLabs = new HashMap<Color, double[]>();
+		for (Map.Entry<Color, Color> entry : colorMap.entrySet())
+			maxColorError = Math.max(maxColorError, getDistance(rgbToLab(entry.getKey()),
+					representativeLabs.computeIfAbsent(entry.getValue(), ColorQuantizer::rgbToLab)));
+		// representatives are rounded to RGB, hence the means of different groups may end up as the same color
+		return new QuantizationResult(colorMap, new HashSet<Color>(colorMap.values()).size(), maxColorError);
+	}
+
+	/**
+	 * Gets the steps of the median cut of the provided colors, i.e. the sequence of their quantizations to 1, 2, ... colors.
+	 * The sequence ends when maxStepCount steps are reached or no group can be split further, which for distinct colors
+	 * is when each color is represented on its own.
+	 * @param colorWeights See quantize().
+	 */
+	public static List<QuantizationStep> getQuantizationSteps(final Map<Color, Long> colorWeights, final int maxStepCount) {
+		List<QuantizationStep> steps = new ArrayList<QuantizationStep>();
+		if (colorWeights.isEmpty() || maxStepCount < 1)
+			return steps;
+
+		List<LabColor> labColors = new ArrayList<LabColor>(colorWeights.size());
+		for (Map.Entry<Color, Long> entry : colorWeights.entrySet())
+			labColors.add(new LabColor(entry.getKey(), Math.max(1l, entry.getValue())));
+		Box root = new Box(labColors);
+		steps.add(new QuantizationStep(List.of(new ColorGroup(root))));
+
+		// always split the box contributing most to the total error next (hence the boxes for n colors are a refinement of those for n - 1 colors):
+		PriorityQueue<Box> splittableBoxes = new PriorityQueue<Box>(Comparator.comparingDouble((Box b) -> b.squaredError).reversed());
+		if (root.isSplittable())
+			splittableBoxes.add(root);
+		while (steps.size() < maxStepCount && !splittableBoxes.isEmpty()) {
+			Box[] halves = splittableBoxes.poll().split();
+			for (Box half : halves)
+				if (half.isSplittable())
+					splittableBoxes.add(half);
+			steps.add(new QuantizationStep(List.of(new ColorGroup(halves[0]), new ColorGroup(halves[1]))));
+		}
+		return steps;
+	}
+
+	private static double getDistance(final double[] a, final double[] b) {
+		double sum = 0d;
+		for (int i = 0; i < 3; i++)
+			sum += (a[i] - b[i]) * (a[i] - b[i]);
+		return Math.sqrt(sum);
+	}
+
+	// D65 reference white
+	private static final double XN = 0.95047d;
+	private static final double YN = 1d;
+	private static final double ZN = 1.08883d;
+
+	/**
+	 * Converts an sRGB color to CIELAB (D65).
+	 */
+	static double[] rgbToLab(final Color color) {
+		double r = srgbToLinear(color.getRed() / 255d);
+		double g = srgbToLinear(color.getGreen() / 255d);
+		double b = srgbToLinear(color.getBlue() / 255d);
+		double fx = labF((0.4124564d * r + 0.3575761d * g + 0.1804375d * b) / XN);
+		double fy = labF((0.2126729d * r + 0.7151522d * g + 0.0721750d * b) / YN);
+		double fz = labF((0.0193339d * r + 0.1191920d * g + 0.9503041d * b) / ZN);
+		return new double[] { 116d * fy - 16d, 500d * (fx - fy), 200d * (fy - fz) };
+	}
+
+	/**
+	 * Converts a CIELAB (D65) color to the nearest sRGB color.
+	 */
+	static Color labToRgb(final double[] lab) {
+		double fy = (lab[0] + 16d) / 116d;
+		double x = XN * labFInverse(fy + lab[1] / 500d);
+		double y = YN * labFInverse(fy);
+		double z = ZN * labFInverse(fy - lab[2] / 200d);
+		return new Color(
+				linearToSrgbComponent( 3.2404542d * x - 1.5371385d * y - 0.4985314d * z),
+				linearToSrgbComponent(-0.9692660d * x + 1.8760108d * y + 0.0415560d * z),
+				linearToSrgbComponent( 0.0556434d * x - 0.2040259d * y + 1.0572252d * z));
+	}
+
+	private static double srgbToLinear(final double c) {
+		return c <= 0.04045d ? c / 12.92d : Math.pow((c + 0.055d) / 1.055d, 2.4d);
+	}
+
+	private static int linearToSrgbComponent(final double c) {
+		double srgb = c <= 0.0031308d ? 12.92d * c : 1.055d * Math.pow(c, 1d / 2.4d) - 0.055d;
+		return (int)Math.max(0, Math.min(255, Math.round(srgb * 255d)));
+	}
+
+	private static double labF(final double t) {
+		return t > 216d / 24389d ? Math.cbrt(t) : (24389d / 27d * t + 16d) / 116d;
+	}
+
+	private static double labFInverse(final double t) {
+		return t > 6d / 29d ? t * t * t : (116d * t - 16d) * 27d / 24389d;
+	}
+}
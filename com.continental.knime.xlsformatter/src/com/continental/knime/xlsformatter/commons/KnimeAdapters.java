@@ -0,0 +1,69 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.continental.knime.xlsformatter.commons;
+
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.NodeLogger;
+
+/**
+ * Adapts the KNIME execution monitor and node logger to the interfaces the XLS Formatter logic reports to,
+ * so that the logic itself can also run outside of a KNIME node.
+ */
+public final class KnimeAdapters {
+	
+	private KnimeAdapters() { }
+	
+	/**
+	 * @return A progress monitor forwarding to the execution monitor, or null if exec is null.
+	 */
+	public static ProgressMonitor of(final ExecutionMonitor exec) {
+		if (exec == null)
+			return null;
+		return new ProgressMonitor() {
+			public void setProgress(final double fraction, final String message) {
+				exec.setProgress(fraction, message);
+			}
+			public void setMessage(final String message) {
+				exec.setMessage(message);
+			}
+			public void checkCanceled() throws CanceledExecutionException {
+				exec.checkCanceled();
+			}
+		};
+	}
+	
+	/**
+	 * @return A logger forwarding to the node logger, or null if logger is null.
+	 */
+	public static XlsFormatterLogger of(final NodeLogger logger) {
+		if (logger == null)
+			return null;
+		return new XlsFormatterLogger() {
+			public void debug(final String message) {
+				logger.debug(message);
+			}
+			public void warn(final String message) {
+				logger.warn(message);
+			}
+			public void error(final String message) {
+				logger.error(message);
+			}
+		};
+	}
+}
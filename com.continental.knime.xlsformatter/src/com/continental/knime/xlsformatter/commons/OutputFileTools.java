@@ -0,0 +1,106 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.continental.knime.xlsformatter.commons;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.AccessDeniedException;
+import java.util.Optional;
+
+import org.knime.core.node.NodeLogger;
+import org.knime.core.util.DesktopUtil;
+import org.knime.core.util.FileUtil;
+import org.knime.filehandling.core.connections.FSCategory;
+import org.knime.filehandling.core.connections.FSConnection;
+import org.knime.filehandling.core.connections.FSFiles;
+import org.knime.filehandling.core.connections.FSPath;
+import org.knime.filehandling.core.connections.uriexport.URIExporter;
+import org.knime.filehandling.core.defaultnodesettings.filechooser.writer.FileOverwritePolicy;
+import org.knime.filehandling.core.defaultnodesettings.filechooser.writer.SettingsModelWriterFileChooser;
+import org.knime.filehandling.core.util.CheckNodeContextUtil;
+
+/**
+ * Static methods shared by the nodes writing an xlsx file to a path of a writer file chooser.
+ */
+public final class OutputFileTools {
+
+	private static final NodeLogger LOGGER = NodeLogger.getLogger(OutputFileTools.class);
+
+	private OutputFileTools() { }
+
+	public static void createParentDirectories(final FSPath outpath, final SettingsModelWriterFileChooser fileChooser) throws IOException {
+		final FSPath parentPath = (FSPath) outpath.getParent();
+		if (parentPath != null && !FSFiles.exists(parentPath)) {
+			if (fileChooser.isCreateMissingFolders()) {
+				FSFiles.createDirectories(parentPath);
+			} else {
+				throw new IOException(String.format(
+						"The directory '%s' does not exist and must not be created due to user settings.", parentPath));
+			}
+		}
+	}
+
+	public static void checkOverwrite(final FSPath outpath, final SettingsModelWriterFileChooser fileChooser) throws AccessDeniedException, IOException {
+		final FileOverwritePolicy fileOverwritePolicy = fileChooser.getFileOverwritePolicy();
+		if (fileOverwritePolicy == FileOverwritePolicy.FAIL && FSFiles.exists(outpath)) {
+			throw new IOException("Output file '" + outpath.toString()
+					+ "' exists and must not be overwritten due to user settings.");
+		}
+	}
+
+	public static boolean isHeadlessOrRemote() {
+		return Boolean.getBoolean("java.awt.headless") || CheckNodeContextUtil.isRemoteWorkflowContext();
+	}
+
+	public static boolean categoryIsSupported(final FSCategory fsCategory) {
+		return fsCategory == FSCategory.LOCAL
+				|| fsCategory == FSCategory.RELATIVE
+				|| fsCategory == FSCategory.CUSTOM_URL;
+	}
+
+	public static void openFile(final SettingsModelWriterFileChooser fileChooser, final FSPath outputPath,
+			final WarningMessageContainer warningMessageContainer) throws IOException {
+		try (final FSConnection connection = fileChooser.getConnection()) {
+			final Optional<File> file = toFile(outputPath, connection);
+			if (file.isPresent()) {
+				DesktopUtil.open(file.get());
+			} else {
+				warningMessageContainer.addMessage("Non local files cannot be opened after node execution.");
+			}
+		}
+	}
+
+	private static Optional<File> toFile(final FSPath outputPath, final FSConnection fsConnection) {
+		final FSCategory fsCategory = outputPath.toFSLocation().getFSCategory();
+		if (fsCategory == FSCategory.LOCAL) {
+			return Optional.of(outputPath.toAbsolutePath().toFile());
+		}
+		try {
+			final URIExporter uriExporter = fsConnection.getDefaultURIExporterFactory().getExporter();
+			final String uri = uriExporter.toUri(outputPath).toString();
+			final URL url = FileUtil.toURL(uri);
+			return Optional.ofNullable(FileUtil.getFileFromURL(url));
+		} catch (final MalformedURLException | IllegalArgumentException | URISyntaxException e) {
+			LOGGER.debug("Unable to resolve custom URL", e);
+			return Optional.empty();
+		}
+	}
+}
@@ -0,0 +1,51 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.continental.knime.xlsformatter.commons;
+
+import org.knime.core.node.CanceledExecutionException;
+
+/**
+ * Receives the progress of a long running XLS Formatter operation and tells it whether it has been canceled.
+ * KNIME nodes pass their execution context via KnimeAdapters, embedding code can pass NONE or an implementation of its own.
+ */
+public interface ProgressMonitor {
+	
+	/**
+	 * A monitor that ignores all progress information and never cancels.
+	 */
+	public static final ProgressMonitor NONE = new ProgressMonitor() {
+		public void setProgress(final double fraction, final String message) { }
+		public void setMessage(final String message) { }
+		public void checkCanceled() { }
+	};
+	
+	/**
+	 * Sets the progress fraction (0 to 1) together with a status message.
+	 */
+	public void setProgress(final double fraction, final String message);
+	
+	/**
+	 * Sets a status message without changing the progress fraction.
+	 */
+	public void setMessage(final String message);
+	
+	/**
+	 * @throws CanceledExecutionException If the operation has been canceled.
+	 */
+	public void checkCanceled() throws CanceledExecutionException;
+}
@@ -0,0 +1,117 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.continental.knime.xlsformatter.commons;
+
+import org.knime.core.node.CanceledExecutionException;
+
+/**
+ * Reports the progress of a loop over a known number of items as a node operation status message of the form
+ * "text 1 of 2 (50%) text" and checks for cancellation on the way.
+ * Progress messages are throttled by item count (at most MAX_REPORTS_PER_RUN per loop) and by time (at most one per
+ * MIN_REPORT_INTERVAL_NANOS), and cancellation is checked every cancelCheckInterval items. Apart from these
+ * occasions, advancing the reporter only counts the item, so it can be called in loops over millions of cells.
+ */
+public class ProgressReporter {
+	
+	public static final int DEFAULT_CANCEL_CHECK_INTERVAL = 256;
+	
+	private static final int MAX_REPORTS_PER_RUN = 100;
+	
+	private static final long MIN_REPORT_INTERVAL_NANOS = 250_000_000L;
+	
+	private final ProgressMonitor m_exec;
+	private final String m_prefix;
+	private final String m_postfix;
+	private final long m_total;
+	private final int m_cancelCheckInterval;
+	private final long m_reportInterval;
+	
+	private long m_current = 0;
+	private int m_itemsUntilCancelCheck;
+	private long m_nextReportCheckpoint;
+	private long m_lastReportNanos;
+	
+	/**
+	 * Creates a progress reporter checking for cancellation every DEFAULT_CANCEL_CHECK_INTERVAL items.
+	 * @param exec The monitor to show the progress message in. Can be null, the reporter has no effect in this case.
+	 * @param prefix The text to show before the figures, or null to only check for cancellation without reporting progress.
+	 * @param total The total number of items to process.
+	 * @param postfix The text to show behind the figures.
+	 */
+	public ProgressReporter(final ProgressMonitor exec, final String prefix, final long total, final String postfix) {
+		this(exec, prefix, total, postfix, DEFAULT_CANCEL_CHECK_INTERVAL);
+	}
+	
+	/**
+	 * Creates a progress reporter.
+	 * @param cancelCheckInterval The number of items after which cancellation is checked (1 for every item).
+	 */
+	public ProgressReporter(final ProgressMonitor exec, final String prefix, final long total, final String postfix, final int cancelCheckInterval) {
+		m_exec = exec;
+		m_prefix = prefix == null ? null : prefix.length() != 0 && !prefix.endsWith(" ") ? prefix + " " : prefix;
+		m_postfix = postfix == null ? "" : postfix.length() != 0 && !postfix.startsWith(" ") ? " " + postfix : postfix;
+		m_total = total;
+		m_cancelCheckInterval = Math.max(1, cancelCheckInterval);
+		m_itemsUntilCancelCheck = 1; // check right at the first item
+		m_reportInterval = Math.max(1, total / MAX_REPORTS_PER_RUN);
+		m_nextReportCheckpoint = exec == null || m_prefix == null ? Long.MAX_VALUE : 1;
+		m_lastReportNanos = System.nanoTime() - MIN_REPORT_INTERVAL_NANOS;
+	}
+	
+	/**
+	 * Creates a reporter that only checks for cancellation every DEFAULT_CANCEL_CHECK_INTERVAL items, e.g. for helper loops
+	 * whose caller reports the progress itself.
+	 */
+	public static ProgressReporter createCancelChecker(final ProgressMonitor exec) {
+		return new ProgressReporter(exec, null, 0, null);
+	}
+	
+	/**
+	 * Counts one processed item.
+	 * @throws CanceledExecutionException If the node execution has been canceled.
+	 */
+	public void advance() throws CanceledExecutionException {
+		m_current++;
+		if (--m_itemsUntilCancelCheck == 0) {
+			m_itemsUntilCancelCheck = m_cancelCheckInterval;
+			if (m_exec != null)
+				m_exec.checkCanceled();
+		}
+		if (m_current >= m_nextReportCheckpoint)
+			reportIfDue();
+	}
+	
+	/**
+	 * Gets the number of items counted so far.
+	 */
+	public long getCurrent() {
+		return m_current;
+	}
+	
+	private void reportIfDue() {
+		m_nextReportCheckpoint = m_current + m_reportInterval;
+		long now = System.nanoTime();
+		if (now - m_lastReportNanos < MIN_REPORT_INTERVAL_NANOS)
+			return;
+		m_lastReportNanos = now;
+		long percent = m_total <= 0 ? 0 : Math.min(100, m_current * 100 / m_total);
+		m_exec.setProgress(m_total <= 0 ? 0d : Math.min(1d, (double)m_current / m_total),
+				m_prefix + m_current + " of " + m_total + " (" + percent + "%)" + m_postfix);
+	}
+}
@@ -21,6 +21,7 @@ package com.continental.knime.xlsformatter.commons;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -38,8 +39,6 @@ import org.knime.core.data.def.DoubleCell;
 import org.knime.core.data.def.IntCell;
 import org.knime.core.data.def.StringCell;
 import org.knime.core.node.BufferedDataTable;
-import org.knime.core.node.ExecutionContext;
-import org.knime.core.node.NodeLogger;
 
 public class XlsFormatterControlTableAnalysisTools {
 
@@ -69,7 +68,7 @@ public class XlsFormatterControlTableAnalysisTools {
 	 * Returns -1 if the spec is not a long control table or the number of columns (3 for standard, 8 for extended), if so.
 	 * Warns if it is deemed likely that the user actually intended this to be a long control table spec.
 	 */
-	public static int isLongControlTableSpec(DataTableSpec spec, WarningMessageContainer warningMessageContainer, NodeLogger logger) {
+	public static int isLongControlTableSpec(DataTableSpec spec, WarningMessageContainer warningMessageContainer, XlsFormatterLogger logger) {
 		
 		int countOfFoundStandardColumnNames = 0;
 		int countOfFoundExtendedColumnNames = 0;
@@ -155,7 +154,7 @@ public class XlsFormatterControlTableAnalysisTools {
 		
 		return -1; // because in the end, this is not a 100% compliant long/unpivoted table spec
 	}
-	private static String printReasonToDebugLog(String reason, String previousReason, NodeLogger logger) {
+	private static String printReasonToDebugLog(String reason, String previousReason, XlsFormatterLogger logger) {
 		logger.debug("Check for long/unpivoted control table detection was negative: " + reason);
 		return previousReason == null ? reason : previousReason;
 	}
@@ -164,13 +163,14 @@ public class XlsFormatterControlTableAnalysisTools {
 	 * Gets a list of cells matching a specified tag
 	 */
 	public static List<CellAddress> getCellsMatchingTag(
-			final BufferedDataTable dataTable, final String tag, final ExecutionContext exec, final NodeLogger logger) throws Exception {
+			final BufferedDataTable dataTable, final String tag, final ProgressMonitor exec, final XlsFormatterLogger logger) throws Exception {
 		
 		List<CellAddress> ret = new ArrayList<CellAddress>();
 		int colCount = dataTable.getSpec().getNumColumns();
 		int r = 0;
+		ProgressReporter progress = new ProgressReporter(exec, "Analyzing control table row", dataTable.size(), "...");
 		for (DataRow dataRow : dataTable) {
-			exec.checkCanceled();
+			progress.advance();
 			for (int c = 0; c < colCount; c++) {
 				DataCell cell = dataRow.getCell(c);
 				String cellTags = cell == null || cell.isMissing() ? null : cell.toString();
@@ -182,20 +182,43 @@ public class XlsFormatterControlTableAnalysisTools {
 		return ret;
 	}
 	
+	/**
+	 * Gets a list of full-column (e.g. A:B) and full-row (e.g. 3:5) ranges matching a specified tag, which a control table
+	 * carries in its spec instead of materialized cells. Their undefined row resp. column indices are -1.
+	 */
+	public static List<CellRangeAddress> getFullRangesMatchingTag(
+			final DataTableSpec spec, final String tag, final XlsFormatterLogger logger) {
+		
+		List<CellRangeAddress> ret = new ArrayList<CellRangeAddress>();
+		for (Map.Entry<String, String> entry : XlsFormatterControlTableCreateTools.getFullRangeTags(spec).entrySet())
+			if (XlsFormatterTagTools.doesTagMatch(entry.getValue(), tag)) {
+				CellRangeAddress range = null;
+				try {
+					range = AddressingTools.parseRange(entry.getKey(), true);
+				} catch (IllegalArgumentException iae) { }
+				if (range != null && AddressingTools.isFullColumnOrRowRange(range))
+					ret.add(range);
+				else
+					logger.warn("Ignoring invalid full column or row range \"" + entry.getKey() + "\" in control table specification.");
+			}
+		return ret;
+	}
+	
 	/**
 	 * Gets a list of CellAddress lists, especially useful for functionality that shall be executed on a
 	 * pseudo-range for each tag appearing in the control table. Tag combination here means that the
 	 * full String cell content is used, not the split result of separating the comma-separated tag list.
 	 */
 	public static List<List<CellAddress>> getCellsListForEachTagCombination(
-			final BufferedDataTable dataTable, final ExecutionContext exec, final NodeLogger logger) throws Exception {
+			final BufferedDataTable dataTable, final ProgressMonitor exec, final XlsFormatterLogger logger) throws Exception {
 		
 		List<List<CellAddress>> ret = new ArrayList<List<CellAddress>>();
 		Map<String, List<CellAddress>> mapTagToList = new HashMap<String, List<CellAddress>>();
 		int colCount = dataTable.getSpec().getNumColumns();
 		int r = 0;
+		ProgressReporter progress = new ProgressReporter(exec, "Analyzing control table row", dataTable.size(), "...");
 		for (DataRow dataRow : dataTable) {
-			exec.checkCanceled();
+			progress.advance();
 			for (int c = 0; c < colCount; c++) {
 				DataCell cell = dataRow.getCell(c);
 				if (cell == null || cell.isMissing())
@@ -219,13 +242,14 @@ public class XlsFormatterControlTableAnalysisTools {
 	 * logic, pure cell content is used here).
 	 */
 	public static List<String> getAllFullCellContentTags(
-			final BufferedDataTable dataTable, final ExecutionContext exec, final NodeLogger logger) throws Exception {
+			final BufferedDataTable dataTable, final ProgressMonitor exec, final XlsFormatterLogger logger) throws Exception {
 		
 		Set<String> tags = new HashSet<String>();
 		
 		int colCount = dataTable.getSpec().getNumColumns();
+		ProgressReporter progress = new ProgressReporter(exec, "Analyzing control table row", dataTable.size(), "...");
 		for (DataRow dataRow : dataTable) {
-			exec.checkCanceled();
+			progress.advance();
 			for (int c = 0; c < colCount; c++) {
 				DataCell cell = dataRow.getCell(c);
 				if (cell == null || cell.isMissing())
@@ -246,7 +270,7 @@ public class XlsFormatterControlTableAnalysisTools {
 	 * @param fillStringToCellAddressesMap If false, the returned object's stringValueToCellAddressesMap is not filled for performance reasons.
 	 */
 	public static CellStringMaps getCellStringMaps(
-			final BufferedDataTable dataTable, final boolean fillStringToCellAddressesMap, final ExecutionContext exec, final NodeLogger logger) throws Exception {
+			final BufferedDataTable dataTable, final boolean fillStringToCellAddressesMap, final ProgressMonitor exec, final XlsFormatterLogger logger) throws Exception {
 		
 		CellStringMaps ret = new CellStringMaps();
 		int colCount = dataTable.getSpec().getNumColumns();
@@ -274,7 +298,7 @@ public class XlsFormatterControlTableAnalysisTools {
 	 * Gets a map of non-null cells and their double values
 	 */
 	public static Map<CellAddress, Double> getCellsWithDoubleValues(
-			final BufferedDataTable dataTable, final ExecutionContext exec, final NodeLogger logger) throws Exception {
+			final BufferedDataTable dataTable, final ProgressMonitor exec, final XlsFormatterLogger logger) throws Exception {
 		
 		Map<CellAddress, Double> ret = new HashMap<CellAddress, Double>();
 		int colCount = dataTable.getSpec().getNumColumns();
@@ -298,9 +322,37 @@ public class XlsFormatterControlTableAnalysisTools {
 	 */
 	public static List<CellRangeAddress> getRangesFromTag (
 			final BufferedDataTable dataTable, final String tag, boolean fullCellContentInsteadOfTag, boolean adjacentRangesAllowed,
-			WarningMessageContainer warningMessage,	final ExecutionContext exec, final NodeLogger logger) throws Exception {
+			WarningMessageContainer warningMessage,	final ProgressMonitor exec, final XlsFormatterLogger logger) throws Exception {
 		
-		int colCount = dataTable.getSpec().getNumColumns();
+		final int colCount = dataTable.getSpec().getNumColumns();
+		Iterable<boolean[]> matchRows = () -> new Iterator<boolean[]>() {
+			private final Iterator<DataRow> rowIterator = dataTable.iterator();
+			
+			public boolean hasNext() {
+				return rowIterator.hasNext();
+			}
+			
+			public boolean[] next() {
+				DataRow dataRow = rowIterator.next();
+				boolean[] isMatch = new boolean[colCount];
+				for (int c = 0; c < colCount; c++) {
+					DataCell dataCell = dataRow == null ? null : dataRow.getCell(c);
+					String cellTags = dataCell == null || dataCell.isMissing() ? null : dataCell.toString();
+					isMatch[c] = cellTags == null ? false :
+						(fullCellContentInsteadOfTag ? cellTags.equals(tag) : XlsFormatterTagTools.doesTagMatch(cellTags, tag));
+				}
+				return isMatch;
+			}
+		};
+		return getRangesFromMatchingCells(matchRows, colCount, tag, adjacentRangesAllowed, warningMessage, exec, logger);
+	}
+	
+	/**
+	 * Gets a list of rectangular cell ranges from a row-wise sequence of flags telling which cells match, see getRangesFromTag.
+	 * @param matchRows One array of colCount flags per row, starting with the sheet's first row.
+	 */
+	static List<CellRangeAddress> getRangesFromMatchingCells(final Iterable<boolean[]> matchRows, final int colCount, final String tag,
+			boolean adjacentRangesAllowed, WarningMessageContainer warningMessage, final ProgressMonitor exec, final XlsFormatterLogger logger) throws Exception {
 		
 		// prepare variables for searching the entire sheet for rectangular areas:
 		Map<Integer, CellRangeAddress> mapColumnToCurrentlyOpenRange = new HashMap<Integer, CellRangeAddress>();
@@ -308,13 +360,12 @@ public class XlsFormatterControlTableAnalysisTools {
 
 		int r = 0;
 		boolean hasAnyMatch = false;
-		for (DataRow dataRow : dataTable) {
+		ProgressReporter cancelChecker = ProgressReporter.createCancelChecker(exec);
+		for (boolean[] matchRow : matchRows) {
+			cancelChecker.advance();
 			CellRangeAddress leftNeighborsNewRange = null; // only important for the top row of a range, subsequent rows are handled via the map
 			for (int c = 0; c < colCount; c++) {
-				DataCell dataCell = dataRow == null ? null : dataRow.getCell(c);
-				String cellTags = dataCell == null || dataCell.isMissing() ? null : dataCell.toString();
-				boolean isMatch = cellTags == null ? false :
-					(fullCellContentInsteadOfTag ? cellTags.equals(tag) : XlsFormatterTagTools.doesTagMatch(cellTags, tag));
+				boolean isMatch = matchRow[c];
 				hasAnyMatch |= isMatch;
 				
 				CellRangeAddress range = mapColumnToCurrentlyOpenRange.get(c);
@@ -414,7 +465,7 @@ public class XlsFormatterControlTableAnalysisTools {
 	 * @return null, if no partly overlap was found, or a comma-separated list of the overlapped range(s)
 	 */
 	public static String getOverlappingRanges(List<CellAddress> targetCells, List<CellRangeAddress> ranges,
-			final ExecutionContext exec, final NodeLogger logger) {
+			final ProgressMonitor exec, final XlsFormatterLogger logger) {
 		if (ranges == null || ranges.size() == 0)
 			return null;
 		
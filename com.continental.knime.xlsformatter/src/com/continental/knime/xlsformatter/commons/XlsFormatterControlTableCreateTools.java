@@ -18,11 +18,17 @@
 
 package com.continental.knime.xlsformatter.commons;
 
+import java.util.Enumeration;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.poi.ss.util.CellReference;
 import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnProperties;
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataColumnSpecCreator;
 import org.knime.core.data.DataRow;
 import org.knime.core.data.DataTableSpec;
 import org.knime.core.data.DataType;
@@ -38,6 +44,12 @@ import org.knime.core.node.ExecutionContext;
 import org.knime.core.node.NodeLogger;
 
 public class XlsFormatterControlTableCreateTools {
+	
+	/**
+	 * Prefix of the column property keys (followed by the range, e.g. A:B or 3:5) under which a control table carries the tags of
+	 * full-column and full-row ranges in the spec of its first column, instead of materializing all of their cells.
+	 */
+	public final static String FULL_RANGE_TAGS_PROPERTY_PREFIX = "xlsformatter.fullRange.";
 
 	/**
 	 * Generates a column specification conform to the Xls Formatting Control Table specification and derives a BufferedDataContainer from it.
@@ -48,6 +60,9 @@ public class XlsFormatterControlTableCreateTools {
 	public static BufferedDataContainer getNewBufferedDataContainer(final int columnCount, final ExecutionContext exec, final NodeLogger logger) {	
 		return exec.createDataContainer(createDataTableSpec(columnCount, StringCell.TYPE));
 	}
+	public static BufferedDataContainer getNewBufferedDataContainer(final int columnCount, final Map<String, String> fullRangeTags, final ExecutionContext exec, final NodeLogger logger) {	
+		return exec.createDataContainer(createDataTableSpec(columnCount, StringCell.TYPE, fullRangeTags));
+	}
 	
 	/**
 	 * Creates a DataTableSpec of a XLS Formatting Control Table header of defined width.
@@ -65,6 +80,63 @@ public class XlsFormatterControlTableCreateTools {
 		return createDataTableSpec(columnCount, StringCell.TYPE);
 	}
 	
+	/**
+	 * Creates a DataTableSpec of a XLS Formatting Control Table header of defined width, whose first column additionally carries
+	 * the tags of full-column and full-row ranges (map of range, e.g. A:B or 3:5, to comma-separated tags).
+	 */
+	public static DataTableSpec createDataTableSpec(final int columnCount, final DataType dataType, final Map<String, String> fullRangeTags) {
+		DataTableSpec spec = createDataTableSpec(columnCount, dataType);
+		if (fullRangeTags == null || fullRangeTags.size() == 0)
+			return spec;
+		
+		Map<String, String> properties = new LinkedHashMap<String, String>();
+		for (Map.Entry<String, String> entry : fullRangeTags.entrySet())
+			properties.put(FULL_RANGE_TAGS_PROPERTY_PREFIX + entry.getKey(), entry.getValue());
+		DataColumnSpec[] columnSpecs = new DataColumnSpec[spec.getNumColumns()];
+		for (int c = 0; c < columnSpecs.length; c++)
+			columnSpecs[c] = spec.getColumnSpec(c);
+		DataColumnSpecCreator creator = new DataColumnSpecCreator(columnSpecs[0]);
+		creator.setProperties(new DataColumnProperties(properties));
+		columnSpecs[0] = creator.createSpec();
+		return new DataTableSpec(columnSpecs);
+	}
+	
+	/**
+	 * Gets the tags of full-column and full-row ranges that a control table carries in the spec of its first column
+	 * as map of range (e.g. A:B or 3:5) to comma-separated tags.
+	 */
+	public static Map<String, String> getFullRangeTags(final DataTableSpec spec) {
+		Map<String, String> ret = new LinkedHashMap<String, String>();
+		if (spec == null || spec.getNumColumns() == 0)
+			return ret;
+		DataColumnProperties properties = spec.getColumnSpec(0).getProperties();
+		Enumeration<String> keys = properties.properties();
+		while (keys.hasMoreElements()) {
+			String key = keys.nextElement();
+			if (key.startsWith(FULL_RANGE_TAGS_PROPERTY_PREFIX))
+				ret.put(key.substring(FULL_RANGE_TAGS_PROPERTY_PREFIX.length()), properties.getProperty(key));
+		}
+		return ret;
+	}
+	
+	/**
+	 * Merges the full-column and full-row range tags of two XLS Formatter Control Tables the same way as their cells.
+	 */
+	public static Map<String, String> mergeFullRangeTags(
+			final Map<String, String> primaryFullRangeTags,
+			final Map<String, String> secondaryFullRangeTags,
+			final boolean overwriteInsteadOfAppend) {
+		
+		Map<String, String> ret = new LinkedHashMap<String, String>(primaryFullRangeTags);
+		for (Map.Entry<String, String> entry : secondaryFullRangeTags.entrySet()) {
+			if (!ret.containsKey(entry.getKey()) || overwriteInsteadOfAppend)
+				ret.put(entry.getKey(), removeDuplicateTags(entry.getValue()));
+			else
+				ret.put(entry.getKey(), removeDuplicateTags(ret.get(entry.getKey()) + "," + entry.getValue()));
+		}
+		return ret;
+	}
+	
 	/**
 	 * Generates a RowKey array conform to the Xls Formatting Control Table specification.
 	 */
@@ -92,15 +164,17 @@ public class XlsFormatterControlTableCreateTools {
   	int width = Math.max(topWidth, bottomWidth);
   	int height = Math.max(topHeight, bottomHeight);
   	
-  	// prepare output table:
-  	BufferedDataContainer outBuffer = XlsFormatterControlTableCreateTools.getNewBufferedDataContainer(width, exec, logger);
+  	// prepare output table (with the full-column and full-row ranges merged in its spec):
+  	Map<String, String> fullRangeTags = mergeFullRangeTags(getFullRangeTags(primaryInputTable.getSpec()), getFullRangeTags(secondaryInputTable.getSpec()), overwriteInsteadOfAppend);
+  	BufferedDataContainer outBuffer = XlsFormatterControlTableCreateTools.getNewBufferedDataContainer(width, fullRangeTags, exec, logger);
   	RowKey[] rowKeyArr = XlsFormatterControlTableCreateTools.getRowkeyArray(height, exec, logger);
   	
   	// fill output table:
   	try (CloseableRowIterator iteratorTop = primaryInputTable.iterator();
   			CloseableRowIterator iteratorBottom = secondaryInputTable.iterator()) {
+  	ProgressReporter progress = new ProgressReporter(KnimeAdapters.of(exec), "Merging control table row", height, "...");
     	for (int r = 0; r < height; r++) {
-    		exec.checkCanceled();
+    		progress.advance();
     		DataRow rowTop;
     		DataRow rowBottom;
     		if (iteratorTop.hasNext())
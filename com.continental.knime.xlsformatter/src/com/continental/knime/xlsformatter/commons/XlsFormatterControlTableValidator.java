@@ -69,8 +69,9 @@ public class XlsFormatterControlTableValidator {
 		
 		// check row IDs and cell contents for invalid characters
 		long currentRow = 0;
+		ProgressReporter progress = new ProgressReporter(KnimeAdapters.of(exec), "Validating control table row", dataTable.size(), "...");
 		for (DataRow row : dataTable) {
-			exec.checkCanceled();
+			progress.advance();
 			int rowIndex;
 			try {
 				rowIndex = Integer.parseInt(row.getKey().getString());
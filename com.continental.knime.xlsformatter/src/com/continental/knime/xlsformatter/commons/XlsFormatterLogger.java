@@ -0,0 +1,40 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.continental.knime.xlsformatter.commons;
+
+/**
+ * Receives the log messages of XLS Formatter operations. KNIME nodes pass their node logger via KnimeAdapters,
+ * embedding code can pass NONE or an implementation of its own.
+ */
+public interface XlsFormatterLogger {
+	
+	/**
+	 * A logger that discards all messages.
+	 */
+	public static final XlsFormatterLogger NONE = new XlsFormatterLogger() {
+		public void debug(final String message) { }
+		public void warn(final String message) { }
+		public void error(final String message) { }
+	};
+	
+	public void debug(final String message);
+	
+	public void warn(final String message);
+	
+	public void error(final String message);
+}
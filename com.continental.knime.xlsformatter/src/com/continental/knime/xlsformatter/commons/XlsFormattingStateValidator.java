@@ -18,8 +18,6 @@
 
 package com.continental.knime.xlsformatter.commons;
 
-import org.knime.core.node.ExecutionContext;
-import org.knime.core.node.NodeLogger;
 
 import com.continental.knime.xlsformatter.apply.XlsFormatterApplyLogic;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterState;
@@ -48,7 +46,7 @@ public class XlsFormattingStateValidator {
 	}
 	
 	public static void validateState(final XlsFormatterState state, final ValidationModes validationMode,
-			WarningMessageContainer warningMessageContainer, final ExecutionContext exec, final NodeLogger logger) throws Exception {
+			WarningMessageContainer warningMessageContainer, final ProgressMonitor exec, final XlsFormatterLogger logger) throws Exception {
 		
 		if (validationMode != ValidationModes.LINKS)
 			XlsFormatterApplyLogic.checkDerivedStyleComplexity(state, warningMessageContainer, exec, logger);
@@ -56,9 +54,7 @@ public class XlsFormattingStateValidator {
 		if (validationMode != ValidationModes.STYLES) {
 			int numberOfHyperlinks = 0;
 			for (XlsFormatterState.SheetState xlsfs : state.sheetStates.values())
-				for (XlsFormatterState.CellState cellState : xlsfs.cells.values())
-					if (cellState.hyperlink != null)
-						numberOfHyperlinks++;
+				numberOfHyperlinks += xlsfs.hyperlinks.size();
 			if (numberOfHyperlinks > MAX_HYPERLINKS_PER_WORKBOOK_EFFECTIVE)
 				throw new Exception("The XLS Formatter port object has been loaded with more hyperlinks than allowed (" + MAX_HYPERLINKS_PER_WORKBOOK_EFFECTIVE + ").");
 		}
@@ -27,9 +27,11 @@ import org.knime.core.node.NodeSettingsWO;
 import org.knime.core.node.NotConfigurableException;
 import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
 import org.knime.core.node.defaultnodesettings.DialogComponentBoolean;
+import org.knime.core.node.defaultnodesettings.DialogComponentButtonGroup;
 import org.knime.core.node.defaultnodesettings.DialogComponentColorChooser;
 import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
 import org.knime.core.node.defaultnodesettings.DialogComponentString;
+import org.knime.core.node.defaultnodesettings.DialogComponentStringSelection;
 import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
 import org.knime.core.node.defaultnodesettings.SettingsModelColor;
 import org.knime.core.node.defaultnodesettings.SettingsModelDouble;
@@ -38,10 +40,19 @@ import org.knime.core.node.port.PortObjectSpec;
 
 import com.continental.knime.xlsformatter.commons.UiValidation;
 import com.continental.knime.xlsformatter.commons.XlsFormatterUiOptions;
+import com.continental.knime.xlsformatter.conditionalformatter.XlsFormatterConditionalFormatterNodeModel.IconSetOptions;
+import com.continental.knime.xlsformatter.conditionalformatter.XlsFormatterConditionalFormatterNodeModel.IconThresholdTypeOptions;
+import com.continental.knime.xlsformatter.conditionalformatter.XlsFormatterConditionalFormatterNodeModel.VisualizationOptions;
 
 public class XlsFormatterConditionalFormatterNodeDialog extends DefaultNodeSettingsPane {
 
+	private static String[] visualizationOptions = XlsFormatterUiOptions.getDropdownArrayFromEnum(VisualizationOptions.values(), false);
+	private static String[] iconSetOptions = XlsFormatterUiOptions.getDropdownArrayFromEnum(IconSetOptions.values(), false);
+	private static String[] iconThresholdTypeOptions = XlsFormatterUiOptions.getDropdownArrayFromEnum(IconThresholdTypeOptions.values(), false);
+
 	SettingsModelString tag;
+	SettingsModelString visualization;
+	SettingsModelBoolean showValue;
 	SettingsModelBoolean midScalePointActive;
 	SettingsModelDouble min;
 	SettingsModelColor minColor;
@@ -49,6 +60,12 @@ public class XlsFormatterConditionalFormatterNodeDialog extends DefaultNodeSetti
 	SettingsModelColor midColor;
 	SettingsModelDouble max;
 	SettingsModelColor maxColor;
+	SettingsModelColor dataBarColor;
+	SettingsModelBoolean dataBarAutomaticBounds;
+	SettingsModelString iconSet;
+	SettingsModelString iconThresholdType;
+	SettingsModelString iconThresholds;
+	SettingsModelBoolean reverseIcons;
 	
 	ChangeListener changeListener = new ConditionalFormatDialogChangeListener();
 	
@@ -60,6 +77,15 @@ public class XlsFormatterConditionalFormatterNodeDialog extends DefaultNodeSetti
 		this.addDialogComponent(new DialogComponentString(tag, XlsFormatterUiOptions.UI_LABEL_SINGLE_TAG, true, 10));
 
 
+		this.createNewGroup("Visualization");
+		this.setHorizontalPlacement(true);
+		visualization = new SettingsModelString(XlsFormatterConditionalFormatterNodeModel.CFGKEY_VISUALIZATION, XlsFormatterConditionalFormatterNodeModel.DEFAULT_VISUALIZATION);
+		this.addDialogComponent(new DialogComponentButtonGroup(visualization, "", false, visualizationOptions, visualizationOptions));
+		showValue = new SettingsModelBoolean(XlsFormatterConditionalFormatterNodeModel.CFGKEY_SHOW_VALUE, XlsFormatterConditionalFormatterNodeModel.DEFAULT_SHOW_VALUE);
+		this.addDialogComponent(new DialogComponentBoolean(showValue, "show cell value"));
+		this.setHorizontalPlacement(false);
+
+
 		this.createNewGroup("Conditional Formatting Settings");
 		midScalePointActive = new SettingsModelBoolean(XlsFormatterConditionalFormatterNodeModel.CFGKEY_MIDSCALEPOINT_ACTIVE,XlsFormatterConditionalFormatterNodeModel.DEFAULT_MIDSCALEPOINT_ACTIVE);
 		this.addDialogComponent(new DialogComponentBoolean( 
@@ -92,13 +118,58 @@ public class XlsFormatterConditionalFormatterNodeDialog extends DefaultNodeSetti
 				maxColor, "max color",true));
 		this.setHorizontalPlacement(false);
 
+
+		this.createNewGroup("Data Bar Settings");
+		this.setHorizontalPlacement(true);
+		dataBarColor = new SettingsModelColor(XlsFormatterConditionalFormatterNodeModel.CFGKEY_DATABAR_COLOR, XlsFormatterConditionalFormatterNodeModel.DEFAULT_DATABAR_COLOR);
+		this.addDialogComponent(new DialogComponentColorChooser(
+				dataBarColor, "bar color", true));
+		dataBarAutomaticBounds = new SettingsModelBoolean(XlsFormatterConditionalFormatterNodeModel.CFGKEY_DATABAR_AUTOMATIC_BOUNDS, XlsFormatterConditionalFormatterNodeModel.DEFAULT_DATABAR_AUTOMATIC_BOUNDS);
+		this.addDialogComponent(new DialogComponentBoolean(
+				dataBarAutomaticBounds, "lowest to highest value (otherwise min to max)"));
+		this.setHorizontalPlacement(false);
+
+
+		this.createNewGroup("Icon Set Settings");
+		this.setHorizontalPlacement(true);
+		iconSet = new SettingsModelString(XlsFormatterConditionalFormatterNodeModel.CFGKEY_ICONSET, XlsFormatterConditionalFormatterNodeModel.DEFAULT_ICONSET);
+		this.addDialogComponent(new DialogComponentStringSelection(iconSet, "icon set", iconSetOptions));
+		reverseIcons = new SettingsModelBoolean(XlsFormatterConditionalFormatterNodeModel.CFGKEY_REVERSE_ICONS, XlsFormatterConditionalFormatterNodeModel.DEFAULT_REVERSE_ICONS);
+		this.addDialogComponent(new DialogComponentBoolean(reverseIcons, "reverse icon order"));
+		this.setHorizontalPlacement(false);
+
+		this.setHorizontalPlacement(true);
+		iconThresholdType = new SettingsModelString(XlsFormatterConditionalFormatterNodeModel.CFGKEY_ICON_THRESHOLD_TYPE, XlsFormatterConditionalFormatterNodeModel.DEFAULT_ICON_THRESHOLD_TYPE);
+		this.addDialogComponent(new DialogComponentStringSelection(iconThresholdType, "thresholds as", iconThresholdTypeOptions));
+		iconThresholds = new SettingsModelString(XlsFormatterConditionalFormatterNodeModel.CFGKEY_ICON_THRESHOLDS, XlsFormatterConditionalFormatterNodeModel.DEFAULT_ICON_THRESHOLDS);
+		this.addDialogComponent(new DialogComponentString(iconThresholds, "thresholds (semicolon separated)", true, 15));
+		this.setHorizontalPlacement(false);
+
+		visualization.addChangeListener(changeListener);
 		midScalePointActive.addChangeListener(changeListener);
+		dataBarAutomaticBounds.addChangeListener(changeListener);
 	}
 	
 	class ConditionalFormatDialogChangeListener implements ChangeListener {
 		public void stateChanged(final ChangeEvent e) {
-			mid.setEnabled(midScalePointActive.getBooleanValue());
-			midColor.setEnabled(midScalePointActive.getBooleanValue());
+			VisualizationOptions selectedVisualization = VisualizationOptions.getFromString(visualization.getStringValue());
+			boolean isColorScale = selectedVisualization == VisualizationOptions.COLOR_SCALE;
+			boolean isDataBar = selectedVisualization == VisualizationOptions.DATA_BAR;
+			boolean isIconSet = selectedVisualization == VisualizationOptions.ICON_SET;
+			showValue.setEnabled(!isColorScale);
+			midScalePointActive.setEnabled(isColorScale);
+			mid.setEnabled(isColorScale && midScalePointActive.getBooleanValue());
+			midColor.setEnabled(isColorScale && midScalePointActive.getBooleanValue());
+			min.setEnabled(isColorScale || (isDataBar && !dataBarAutomaticBounds.getBooleanValue()));
+			max.setEnabled(isColorScale || (isDataBar && !dataBarAutomaticBounds.getBooleanValue()));
+			minColor.setEnabled(isColorScale);
+			maxColor.setEnabled(isColorScale);
+			dataBarColor.setEnabled(isDataBar);
+			dataBarAutomaticBounds.setEnabled(isDataBar);
+			iconSet.setEnabled(isIconSet);
+			iconThresholdType.setEnabled(isIconSet);
+			iconThresholds.setEnabled(isIconSet);
+			reverseIcons.setEnabled(isIconSet);
 		}
 	}
 	
@@ -108,7 +179,14 @@ public class XlsFormatterConditionalFormatterNodeDialog extends DefaultNodeSetti
 		
 		UiValidation.validateTagField(tag);
 		
-		if (min.getDoubleValue() > max.getDoubleValue() ||
+		VisualizationOptions selectedVisualization = VisualizationOptions.getFromString(visualization.getStringValue());
+		if (selectedVisualization == VisualizationOptions.ICON_SET)
+			XlsFormatterConditionalFormatterNodeModel.parseIconThresholds(iconThresholds.getStringValue(), IconSetOptions.getFromString(iconSet.getStringValue()).getStyle());
+		else if (selectedVisualization == VisualizationOptions.DATA_BAR) {
+			if (!dataBarAutomaticBounds.getBooleanValue() && min.getDoubleValue() >= max.getDoubleValue())
+				throw new InvalidSettingsException("Min must be smaller than max value.");
+		}
+		else if (min.getDoubleValue() > max.getDoubleValue() ||
 				(midScalePointActive.getBooleanValue() && (min.getDoubleValue() > mid.getDoubleValue() || mid.getDoubleValue() > max.getDoubleValue())))
 			throw new InvalidSettingsException(midScalePointActive.getBooleanValue() ?
 					"Min must be smaller than mid, and mid must be smaller than max value." :
@@ -21,7 +21,10 @@ package com.continental.knime.xlsformatter.conditionalformatter;
 import java.awt.Color;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.poi.ss.util.CellAddress;
@@ -42,13 +45,18 @@ import org.knime.core.node.port.PortObject;
 import org.knime.core.node.port.PortObjectSpec;
 import org.knime.core.node.port.PortType;
 
-import com.continental.knime.xlsformatter.commons.AddressingTools;
+import com.continental.knime.xlsformatter.commons.KnimeAdapters;
 import com.continental.knime.xlsformatter.commons.TagBasedXlsCellFormatterNodeModel;
 import com.continental.knime.xlsformatter.commons.WarningMessageContainer;
 import com.continental.knime.xlsformatter.commons.XlsFormatterControlTableAnalysisTools;
 import com.continental.knime.xlsformatter.commons.XlsFormatterControlTableValidator;
+import com.continental.knime.xlsformatter.commons.XlsFormatterUiOptions;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterState;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterState.ConditionalFormattingSet;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.ConditionalThresholdType;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.DataBar;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.IconSetDefinition;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.IconSetStyle;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterStateSpec;
 
 public class XlsFormatterConditionalFormatterNodeModel extends TagBasedXlsCellFormatterNodeModel {
@@ -98,6 +106,135 @@ public class XlsFormatterConditionalFormatterNodeModel extends TagBasedXlsCellFo
 	final SettingsModelColor m_maxColor =
 			new SettingsModelColor(CFGKEY_MAX_COLOR, DEFAULT_MAX_COLOR);
 
+	public enum VisualizationOptions {
+		COLOR_SCALE("color scale"),
+		DATA_BAR("data bar"),
+		ICON_SET("icon set");
+
+		private final String label;
+
+		VisualizationOptions(String label) {
+			this.label = label;
+		}
+
+		@Override
+		public String toString() {
+			return label;
+		}
+
+		public static VisualizationOptions getFromString(String value) {
+			return XlsFormatterUiOptions.getEnumEntryFromString(VisualizationOptions.values(), value);
+		}
+	}
+
+	static final String CFGKEY_VISUALIZATION = "Visualization";
+	static final String DEFAULT_VISUALIZATION = VisualizationOptions.COLOR_SCALE.toString();
+	final SettingsModelString m_visualization =
+			new SettingsModelString(CFGKEY_VISUALIZATION, DEFAULT_VISUALIZATION);
+
+	static final String CFGKEY_DATABAR_COLOR = "DataBarColor";
+	static final Color DEFAULT_DATABAR_COLOR = new Color(99, 142, 198);
+	final SettingsModelColor m_dataBarColor =
+			new SettingsModelColor(CFGKEY_DATABAR_COLOR, DEFAULT_DATABAR_COLOR);
+
+	static final String CFGKEY_DATABAR_AUTOMATIC_BOUNDS = "DataBarAutomaticBounds";
+	static final boolean DEFAULT_DATABAR_AUTOMATIC_BOUNDS = true;
+	final SettingsModelBoolean m_dataBarAutomaticBounds =
+			new SettingsModelBoolean(CFGKEY_DATABAR_AUTOMATIC_BOUNDS, DEFAULT_DATABAR_AUTOMATIC_BOUNDS);
+
+	public enum IconSetOptions {
+		ARROWS_3_COLORED(IconSetStyle.GYR_3_ARROW, "3 arrows (colored)"),
+		ARROWS_3_GRAY(IconSetStyle.GREY_3_ARROWS, "3 arrows (gray)"),
+		FLAGS_3(IconSetStyle.GYR_3_FLAGS, "3 flags"),
+		TRAFFIC_LIGHTS_3(IconSetStyle.GYR_3_TRAFFIC_LIGHTS, "3 traffic lights (unrimmed)"),
+		TRAFFIC_LIGHTS_3_RIMMED(IconSetStyle.GYR_3_TRAFFIC_LIGHTS_BOX, "3 traffic lights (rimmed)"),
+		SIGNS_3(IconSetStyle.GYR_3_SHAPES, "3 signs"),
+		SYMBOLS_3_CIRCLED(IconSetStyle.GYR_3_SYMBOLS_CIRCLE, "3 symbols (circled)"),
+		SYMBOLS_3(IconSetStyle.GYR_3_SYMBOLS, "3 symbols (uncircled)"),
+		ARROWS_4_COLORED(IconSetStyle.GYR_4_ARROWS, "4 arrows (colored)"),
+		ARROWS_4_GRAY(IconSetStyle.GREY_4_ARROWS, "4 arrows (gray)"),
+		RED_TO_BLACK_4(IconSetStyle.RB_4_TRAFFIC_LIGHTS, "4 circles (red to black)"),
+		RATINGS_4(IconSetStyle.RATINGS_4, "4 ratings"),
+		TRAFFIC_LIGHTS_4(IconSetStyle.GYRB_4_TRAFFIC_LIGHTS, "4 traffic lights"),
+		ARROWS_5_COLORED(IconSetStyle.GYYYR_5_ARROWS, "5 arrows (colored)"),
+		ARROWS_5_GRAY(IconSetStyle.GREY_5_ARROWS, "5 arrows (gray)"),
+		RATINGS_5(IconSetStyle.RATINGS_5, "5 ratings"),
+		QUARTERS_5(IconSetStyle.QUARTERS_5, "5 quarters");
+
+		private final IconSetStyle style;
+		private final String label;
+
+		IconSetOptions(IconSetStyle style, String label) {
+			this.style = style;
+			this.label = label;
+		}
+
+		public IconSetStyle getStyle() {
+			return style;
+		}
+
+		@Override
+		public String toString() {
+			return label;
+		}
+
+		public static IconSetOptions getFromString(String value) {
+			return XlsFormatterUiOptions.getEnumEntryFromString(IconSetOptions.values(), value);
+		}
+	}
+
+	static final String CFGKEY_ICONSET = "IconSet";
+	static final String DEFAULT_ICONSET = IconSetOptions.TRAFFIC_LIGHTS_3.toString();
+	final SettingsModelString m_iconSet =
+			new SettingsModelString(CFGKEY_ICONSET, DEFAULT_ICONSET);
+
+	public enum IconThresholdTypeOptions {
+		PERCENT(ConditionalThresholdType.PERCENT, "percent"),
+		PERCENTILE(ConditionalThresholdType.PERCENTILE, "percentile"),
+		NUMBER(ConditionalThresholdType.NUMBER, "number");
+
+		private final ConditionalThresholdType type;
+		private final String label;
+
+		IconThresholdTypeOptions(ConditionalThresholdType type, String label) {
+			this.type = type;
+			this.label = label;
+		}
+
+		public ConditionalThresholdType getType() {
+			return type;
+		}
+
+		@Override
+		public String toString() {
+			return label;
+		}
+
+		public static IconThresholdTypeOptions getFromString(String value) {
+			return XlsFormatterUiOptions.getEnumEntryFromString(IconThresholdTypeOptions.values(), value);
+		}
+	}
+
+	static final String CFGKEY_ICON_THRESHOLD_TYPE = "IconThresholdType";
+	static final String DEFAULT_ICON_THRESHOLD_TYPE = IconThresholdTypeOptions.PERCENT.toString();
+	final SettingsModelString m_iconThresholdType =
+			new SettingsModelString(CFGKEY_ICON_THRESHOLD_TYPE, DEFAULT_ICON_THRESHOLD_TYPE);
+
+	static final String CFGKEY_ICON_THRESHOLDS = "IconThresholds";
+	static final String DEFAULT_ICON_THRESHOLDS = "33;67";
+	final SettingsModelString m_iconThresholds =
+			new SettingsModelString(CFGKEY_ICON_THRESHOLDS, DEFAULT_ICON_THRESHOLDS);
+
+	static final String CFGKEY_REVERSE_ICONS = "ReverseIcons";
+	static final boolean DEFAULT_REVERSE_ICONS = false;
+	final SettingsModelBoolean m_reverseIcons =
+			new SettingsModelBoolean(CFGKEY_REVERSE_ICONS, DEFAULT_REVERSE_ICONS);
+
+	static final String CFGKEY_SHOW_VALUE = "ShowValue";
+	static final boolean DEFAULT_SHOW_VALUE = true;
+	final SettingsModelBoolean m_showValue =
+			new SettingsModelBoolean(CFGKEY_SHOW_VALUE, DEFAULT_SHOW_VALUE);
+
 	/**
 	 * Constructor for the node model.
 	 */
@@ -117,38 +254,93 @@ public class XlsFormatterConditionalFormatterNodeModel extends TagBasedXlsCellFo
 		if (!XlsFormatterControlTableValidator.isControlTable((BufferedDataTable)inObjects[0], exec, logger))
 			throw new IllegalArgumentException("The provided input table is not a valid XLS control table. See log for details.");
 
-		XlsFormatterState xlsf = XlsFormatterState.getDeepClone(inObjects[1]);
+		XlsFormatterState xlsf = XlsFormatterState.getModifiableCopy(inObjects[1]);
 		XlsFormatterState.SheetState xlsfs = xlsf.getCurrentSheetStateForModification();
 		WarningMessageContainer warningMessageContainer = new WarningMessageContainer();
 
 		List<CellAddress> targetCells =
-				XlsFormatterControlTableAnalysisTools.getCellsMatchingTag((BufferedDataTable)inObjects[0], m_tag.getStringValue().trim(), exec, logger);
+				XlsFormatterControlTableAnalysisTools.getCellsMatchingTag((BufferedDataTable)inObjects[0], m_tag.getStringValue().trim(), KnimeAdapters.of(exec), KnimeAdapters.of(logger));
 		warnOnNoMatchingTags(targetCells, m_tag.getStringValue().trim(), warningMessageContainer);
 
 		// check for a partly overlap of these target cells with a previously merged range and warn
-		String mergeOverlapRanges = XlsFormatterControlTableAnalysisTools.getOverlappingRanges(targetCells, xlsfs.mergeRanges, exec, logger);
+		String mergeOverlapRanges = XlsFormatterControlTableAnalysisTools.getOverlappingRanges(targetCells, xlsfs.mergeRanges, KnimeAdapters.of(exec), KnimeAdapters.of(logger));
 		if (mergeOverlapRanges != null)
 			warningMessageContainer.addMessage("Modification on parts of previously merged range(s) (" + mergeOverlapRanges + ") will have no effect.");
 		
 		// translate UI conditional format definition to internal representation:
 		ConditionalFormattingSet condFormatSet = new ConditionalFormattingSet();
-		condFormatSet.backgroundScaleFixpoints.add(Pair.of(m_minThreshold.getDoubleValue(), m_minColor.getColorValue()));
-		if (m_midScalePointActive.getBooleanValue())
-			condFormatSet.backgroundScaleFixpoints.add(Pair.of(m_midThreshold.getDoubleValue(), m_midColor.getColorValue()));
-		condFormatSet.backgroundScaleFixpoints.add(Pair.of(m_maxThreshold.getDoubleValue(), m_maxColor.getColorValue()));
+		switch (VisualizationOptions.getFromString(m_visualization.getStringValue())) {
+		case DATA_BAR:
+			DataBar dataBar = new DataBar();
+			dataBar.color = m_dataBarColor.getColorValue();
+			if (!m_dataBarAutomaticBounds.getBooleanValue()) {
+				dataBar.minType = ConditionalThresholdType.NUMBER;
+				dataBar.minValue = m_minThreshold.getDoubleValue();
+				dataBar.maxType = ConditionalThresholdType.NUMBER;
+				dataBar.maxValue = m_maxThreshold.getDoubleValue();
+			}
+			dataBar.showValue = m_showValue.getBooleanValue();
+			condFormatSet.dataBar = dataBar;
+			break;
+		case ICON_SET:
+			IconSetDefinition iconSet = new IconSetDefinition();
+			iconSet.style = IconSetOptions.getFromString(m_iconSet.getStringValue()).getStyle();
+			iconSet.thresholdType = IconThresholdTypeOptions.getFromString(m_iconThresholdType.getStringValue()).getType();
+			iconSet.thresholds = parseIconThresholds(m_iconThresholds.getStringValue(), iconSet.style);
+			iconSet.reversed = m_reverseIcons.getBooleanValue();
+			iconSet.showValue = m_showValue.getBooleanValue();
+			condFormatSet.iconSet = iconSet;
+			break;
+		default:
+			condFormatSet.backgroundScaleFixpoints.add(Pair.of(m_minThreshold.getDoubleValue(), m_minColor.getColorValue()));
+			if (m_midScalePointActive.getBooleanValue())
+				condFormatSet.backgroundScaleFixpoints.add(Pair.of(m_midThreshold.getDoubleValue(), m_midColor.getColorValue()));
+			condFormatSet.backgroundScaleFixpoints.add(Pair.of(m_maxThreshold.getDoubleValue(), m_maxColor.getColorValue()));
+		}
 		
 		
-		for (CellAddress cell : targetCells) {
-			XlsFormatterState.CellState cellState = AddressingTools.safelyGetCellInMap(xlsfs.cells, cell);
-			cellState.conditionalFormat = condFormatSet; // note that we share the ConditionalFormattingSet object here across cells!
-		}
+		// highlight rules previously defined for a cell are kept, the set holding them is again shared by all cells that shared the previous set:
+		Map<ConditionalFormattingSet, ConditionalFormattingSet> combinedSets = new IdentityHashMap<ConditionalFormattingSet, ConditionalFormattingSet>();
+		xlsfs.modifyCells(targetCells, cellState -> {
+			if (cellState.conditionalFormat == null || cellState.conditionalFormat.highlightRules.size() == 0)
+				cellState.conditionalFormat = condFormatSet; // note that we share the ConditionalFormattingSet object here across cells!
+			else
+				cellState.conditionalFormat = combinedSets.computeIfAbsent(cellState.conditionalFormat, previousSet -> {
+					ConditionalFormattingSet combinedSet = condFormatSet.getShallowCopy();
+					combinedSet.highlightRules.addAll(previousSet.highlightRules);
+					return combinedSet;
+				});
+		});
 		
 		if (warningMessageContainer.hasMessage())
 			setWarningMessage(warningMessageContainer.getMessage());
 		
+		xlsf.moveSheetsToFileStore(exec);
 		return new PortObject[] { xlsf };
 	}
 
+	/**
+	 * Parses the semicolon separated icon thresholds, which need to be ascending and one less than the icon set's number of icons.
+	 */
+	static List<Double> parseIconThresholds(String value, IconSetStyle style) throws InvalidSettingsException {
+		List<Double> ret = new ArrayList<Double>();
+		for (String threshold : value.split(";")) {
+			if (threshold.trim().equals(""))
+				continue;
+			try {
+				ret.add(Double.parseDouble(threshold.trim()));
+			} catch (NumberFormatException e) {
+				throw new InvalidSettingsException("The icon threshold \"" + threshold.trim() + "\" is not a number.");
+			}
+			if (ret.size() > 1 && ret.get(ret.size() - 2) > ret.get(ret.size() - 1))
+				throw new InvalidSettingsException("The icon thresholds need to be in ascending order.");
+		}
+		if (ret.size() != style.getIconCount() - 1)
+			throw new InvalidSettingsException("The selected icon set has " + style.getIconCount() + " icons and thus needs " + (style.getIconCount() - 1) +
+					" semicolon separated thresholds, but " + ret.size() + " were provided.");
+		return ret;
+	}
+
 	@Override
 	protected PortObjectSpec[] configure(final PortObjectSpec[] inSpecs)
 			throws InvalidSettingsException {   	
@@ -156,6 +348,9 @@ public class XlsFormatterConditionalFormatterNodeModel extends TagBasedXlsCellFo
 		if (!XlsFormatterControlTableValidator.isControlTableSpec((DataTableSpec)inSpecs[0], logger))
 			throw new InvalidSettingsException("The configured input table header is not that of a valid XLS Formatting control table. See log for details.");
 
+		if (VisualizationOptions.getFromString(m_visualization.getStringValue()) == VisualizationOptions.ICON_SET)
+			parseIconThresholds(m_iconThresholds.getStringValue(), IconSetOptions.getFromString(m_iconSet.getStringValue()).getStyle());
+
 		return new PortObjectSpec[] { inSpecs[1] == null ? XlsFormatterStateSpec.getEmptySpec() : ((XlsFormatterStateSpec)inSpecs[1]).getCopy() };
 	}
 
@@ -180,6 +375,14 @@ public class XlsFormatterConditionalFormatterNodeModel extends TagBasedXlsCellFo
 		m_midColor.saveSettingsTo(settings);
 		m_maxThreshold.saveSettingsTo(settings);
 		m_maxColor.saveSettingsTo(settings);
+		m_visualization.saveSettingsTo(settings);
+		m_dataBarColor.saveSettingsTo(settings);
+		m_dataBarAutomaticBounds.saveSettingsTo(settings);
+		m_iconSet.saveSettingsTo(settings);
+		m_iconThresholdType.saveSettingsTo(settings);
+		m_iconThresholds.saveSettingsTo(settings);
+		m_reverseIcons.saveSettingsTo(settings);
+		m_showValue.saveSettingsTo(settings);
 	}
 
 	/**
@@ -197,6 +400,22 @@ public class XlsFormatterConditionalFormatterNodeModel extends TagBasedXlsCellFo
 		m_midColor.loadSettingsFrom(settings);
 		m_maxThreshold.loadSettingsFrom(settings);
 		m_maxColor.loadSettingsFrom(settings);
+		if (settings.containsKey(CFGKEY_VISUALIZATION))
+			m_visualization.loadSettingsFrom(settings);
+		if (settings.containsKey(CFGKEY_DATABAR_COLOR))
+			m_dataBarColor.loadSettingsFrom(settings);
+		if (settings.containsKey(CFGKEY_DATABAR_AUTOMATIC_BOUNDS))
+			m_dataBarAutomaticBounds.loadSettingsFrom(settings);
+		if (settings.containsKey(CFGKEY_ICONSET))
+			m_iconSet.loadSettingsFrom(settings);
+		if (settings.containsKey(CFGKEY_ICON_THRESHOLD_TYPE))
+			m_iconThresholdType.loadSettingsFrom(settings);
+		if (settings.containsKey(CFGKEY_ICON_THRESHOLDS))
+			m_iconThresholds.loadSettingsFrom(settings);
+		if (settings.containsKey(CFGKEY_REVERSE_ICONS))
+			m_reverseIcons.loadSettingsFrom(settings);
+		if (settings.containsKey(CFGKEY_SHOW_VALUE))
+			m_showValue.loadSettingsFrom(settings);
 	}
 
 	/**
@@ -214,6 +433,22 @@ public class XlsFormatterConditionalFormatterNodeModel extends TagBasedXlsCellFo
 		m_midColor.validateSettings(settings);
 		m_maxThreshold.validateSettings(settings);
 		m_maxColor.validateSettings(settings);
+		if (settings.containsKey(CFGKEY_VISUALIZATION))
+			m_visualization.validateSettings(settings);
+		if (settings.containsKey(CFGKEY_DATABAR_COLOR))
+			m_dataBarColor.validateSettings(settings);
+		if (settings.containsKey(CFGKEY_DATABAR_AUTOMATIC_BOUNDS))
+			m_dataBarAutomaticBounds.validateSettings(settings);
+		if (settings.containsKey(CFGKEY_ICONSET))
+			m_iconSet.validateSettings(settings);
+		if (settings.containsKey(CFGKEY_ICON_THRESHOLD_TYPE))
+			m_iconThresholdType.validateSettings(settings);
+		if (settings.containsKey(CFGKEY_ICON_THRESHOLDS))
+			m_iconThresholds.validateSettings(settings);
+		if (settings.containsKey(CFGKEY_REVERSE_ICONS))
+			m_reverseIcons.validateSettings(settings);
+		if (settings.containsKey(CFGKEY_SHOW_VALUE))
+			m_showValue.validateSettings(settings);
 	}
 
 	/**
@@ -0,0 +1,153 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.continental.knime.xlsformatter.conditionalruleformatter;
+
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.NotConfigurableException;
+import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
+import org.knime.core.node.defaultnodesettings.DialogComponentBoolean;
+import org.knime.core.node.defaultnodesettings.DialogComponentButtonGroup;
+import org.knime.core.node.defaultnodesettings.DialogComponentColorChooser;
+import org.knime.core.node.defaultnodesettings.DialogComponentString;
+import org.knime.core.node.defaultnodesettings.DialogComponentStringSelection;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelColor;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+import org.knime.core.node.port.PortObjectSpec;
+
+import com.continental.knime.xlsformatter.commons.UiValidation;
+import com.continental.knime.xlsformatter.commons.XlsFormatterUiOptions;
+import com.continental.knime.xlsformatter.conditionalruleformatter.XlsFormatterConditionalRuleFormatterNodeModel.ComparisonOptions;
+import com.continental.knime.xlsformatter.conditionalruleformatter.XlsFormatterConditionalRuleFormatterNodeModel.RuleTypeOptions;
+
+public class XlsFormatterConditionalRuleFormatterNodeDialog extends DefaultNodeSettingsPane {
+
+	private static String[] ruleTypeOptions = XlsFormatterUiOptions.getDropdownArrayFromEnum(RuleTypeOptions.values(), false);
+	private static String[] comparisonOptions = XlsFormatterUiOptions.getDropdownArrayFromEnum(ComparisonOptions.values(), false);
+
+	SettingsModelString tag;
+	SettingsModelString ruleType;
+	SettingsModelString comparison;
+	SettingsModelString value1;
+	SettingsModelString value2;
+	SettingsModelString formula;
+	SettingsModelBoolean changeBackground;
+	SettingsModelColor backgroundColor;
+	SettingsModelBoolean changeFontColor;
+	SettingsModelColor fontColor;
+	SettingsModelBoolean bold;
+	SettingsModelBoolean italic;
+
+	ChangeListener changeListener = new ConditionalRuleDialogChangeListener();
+
+	protected XlsFormatterConditionalRuleFormatterNodeDialog() {
+		super();
+
+		this.createNewGroup("Tag Selection");
+		tag = new SettingsModelString(XlsFormatterConditionalRuleFormatterNodeModel.CFGKEY_TAG, XlsFormatterConditionalRuleFormatterNodeModel.DEFAULT_TAG);
+		this.addDialogComponent(new DialogComponentString(tag, XlsFormatterUiOptions.UI_LABEL_SINGLE_TAG, true, 10));
+
+
+		this.createNewGroup("Rule");
+		ruleType = new SettingsModelString(XlsFormatterConditionalRuleFormatterNodeModel.CFGKEY_RULETYPE, XlsFormatterConditionalRuleFormatterNodeModel.DEFAULT_RULETYPE);
+		this.addDialogComponent(new DialogComponentButtonGroup(ruleType, "", false, ruleTypeOptions, ruleTypeOptions));
+
+		this.setHorizontalPlacement(true);
+		comparison = new SettingsModelString(XlsFormatterConditionalRuleFormatterNodeModel.CFGKEY_COMPARISON, XlsFormatterConditionalRuleFormatterNodeModel.DEFAULT_COMPARISON);
+		this.addDialogComponent(new DialogComponentStringSelection(comparison, "cell value is", comparisonOptions));
+		value1 = new SettingsModelString(XlsFormatterConditionalRuleFormatterNodeModel.CFGKEY_VALUE1, XlsFormatterConditionalRuleFormatterNodeModel.DEFAULT_VALUE1);
+		this.addDialogComponent(new DialogComponentString(value1, "value", true, 10));
+		value2 = new SettingsModelString(XlsFormatterConditionalRuleFormatterNodeModel.CFGKEY_VALUE2, XlsFormatterConditionalRuleFormatterNodeModel.DEFAULT_VALUE2);
+		this.addDialogComponent(new DialogComponentString(value2, "and", false, 10));
+		this.setHorizontalPlacement(false);
+
+		formula = new SettingsModelString(XlsFormatterConditionalRuleFormatterNodeModel.CFGKEY_FORMULA, XlsFormatterConditionalRuleFormatterNodeModel.DEFAULT_FORMULA);
+		this.addDialogComponent(new DialogComponentString(formula, "formula", true, 30));
+
+
+		this.createNewGroup("Formatting");
+		this.setHorizontalPlacement(true);
+		changeBackground = new SettingsModelBoolean(XlsFormatterConditionalRuleFormatterNodeModel.CFGKEY_CHANGEBACKGROUND, XlsFormatterConditionalRuleFormatterNodeModel.DEFAULT_CHANGEBACKGROUND);
+		this.addDialogComponent(new DialogComponentBoolean(changeBackground, "Change background?"));
+		backgroundColor = new SettingsModelColor(XlsFormatterConditionalRuleFormatterNodeModel.CFGKEY_BACKGROUNDCOLOR, XlsFormatterConditionalRuleFormatterNodeModel.DEFAULT_BACKGROUNDCOLOR);
+		this.addDialogComponent(new DialogComponentColorChooser(backgroundColor, "background color", true));
+		this.setHorizontalPlacement(false);
+
+		this.setHorizontalPlacement(true);
+		changeFontColor = new SettingsModelBoolean(XlsFormatterConditionalRuleFormatterNodeModel.CFGKEY_CHANGEFONTCOLOR, XlsFormatterConditionalRuleFormatterNodeModel.DEFAULT_CHANGEFONTCOLOR);
+		this.addDialogComponent(new DialogComponentBoolean(changeFontColor, "Change font color?"));
+		fontColor = new SettingsModelColor(XlsFormatterConditionalRuleFormatterNodeModel.CFGKEY_FONTCOLOR, XlsFormatterConditionalRuleFormatterNodeModel.DEFAULT_FONTCOLOR);
+		this.addDialogComponent(new DialogComponentColorChooser(fontColor, "font color", true));
+		this.setHorizontalPlacement(false);
+
+		this.setHorizontalPlacement(true);
+		bold = new SettingsModelBoolean(XlsFormatterConditionalRuleFormatterNodeModel.CFGKEY_BOLD, XlsFormatterConditionalRuleFormatterNodeModel.DEFAULT_BOLD);
+		this.addDialogComponent(new DialogComponentBoolean(bold, "bold"));
+		italic = new SettingsModelBoolean(XlsFormatterConditionalRuleFormatterNodeModel.CFGKEY_ITALIC, XlsFormatterConditionalRuleFormatterNodeModel.DEFAULT_ITALIC);
+		this.addDialogComponent(new DialogComponentBoolean(italic, "italic"));
+		this.setHorizontalPlacement(false);
+
+		ruleType.addChangeListener(changeListener);
+		comparison.addChangeListener(changeListener);
+		changeBackground.addChangeListener(changeListener);
+		changeFontColor.addChangeListener(changeListener);
+	}
+
+	class ConditionalRuleDialogChangeListener implements ChangeListener {
+		public void stateChanged(final ChangeEvent e) {
+			boolean isFormula = RuleTypeOptions.getFromString(ruleType.getStringValue()) == RuleTypeOptions.FORMULA;
+			comparison.setEnabled(!isFormula);
+			value1.setEnabled(!isFormula);
+			value2.setEnabled(!isFormula && ComparisonOptions.getFromString(comparison.getStringValue()).getComparison().hasSecondOperand());
+			formula.setEnabled(isFormula);
+			backgroundColor.setEnabled(changeBackground.getBooleanValue());
+			fontColor.setEnabled(changeFontColor.getBooleanValue());
+		}
+	}
+
+	@Override
+	public void saveAdditionalSettingsTo(NodeSettingsWO settings) throws InvalidSettingsException {
+		super.saveAdditionalSettingsTo(settings);
+
+		UiValidation.validateTagField(tag);
+
+		if (RuleTypeOptions.getFromString(ruleType.getStringValue()) == RuleTypeOptions.FORMULA)
+			XlsFormatterConditionalRuleFormatterNodeModel.validateFormula(formula.getStringValue(), "formula");
+		else {
+			XlsFormatterConditionalRuleFormatterNodeModel.validateFormula(value1.getStringValue(), "value");
+			if (ComparisonOptions.getFromString(comparison.getStringValue()).getComparison().hasSecondOperand())
+				XlsFormatterConditionalRuleFormatterNodeModel.validateFormula(value2.getStringValue(), "second value");
+		}
+
+		if (!changeBackground.getBooleanValue() && !changeFontColor.getBooleanValue() && !bold.getBooleanValue() && !italic.getBooleanValue())
+			throw new InvalidSettingsException("One of the formatting options needs to be active, otherwise this node would not have any effect.");
+	}
+
+	@Override
+	public void loadAdditionalSettingsFrom(NodeSettingsRO settings, PortObjectSpec[] specs)
+			throws NotConfigurableException {
+		super.loadAdditionalSettingsFrom(settings, specs);
+		changeListener.stateChanged(null);
+	}
+}
@@ -0,0 +1,388 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.continental.knime.xlsformatter.conditionalruleformatter;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.ss.formula.FormulaParseException;
+import org.apache.poi.ss.formula.FormulaParser;
+import org.apache.poi.ss.formula.FormulaType;
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.xssf.usermodel.XSSFEvaluationWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelColor;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+import org.knime.core.node.port.PortObject;
+import org.knime.core.node.port.PortObjectSpec;
+import org.knime.core.node.port.PortType;
+
+import com.continental.knime.xlsformatter.commons.KnimeAdapters;
+import com.continental.knime.xlsformatter.commons.TagBasedXlsCellFormatterNodeModel;
+import com.continental.knime.xlsformatter.commons.WarningMessageContainer;
+import com.continental.knime.xlsformatter.commons.XlsFormatterControlTableAnalysisTools;
+import com.continental.knime.xlsformatter.commons.XlsFormatterControlTableValidator;
+import com.continental.knime.xlsformatter.commons.XlsFormatterUiOptions;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.CellValueComparison;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.ConditionalFormattingSet;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.HighlightRule;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.HighlightRuleType;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterStateSpec;
+
+public class XlsFormatterConditionalRuleFormatterNodeModel extends TagBasedXlsCellFormatterNodeModel {
+
+	// the logger instance
+	private static final NodeLogger logger = NodeLogger
+			.getLogger(XlsFormatterConditionalRuleFormatterNodeModel.class);
+
+	static final String CFGKEY_TAG = "Tag";
+	static final String DEFAULT_TAG = "data";
+	final SettingsModelString m_tag =
+			new SettingsModelString(CFGKEY_TAG, DEFAULT_TAG);
+
+	public enum RuleTypeOptions {
+		CELL_VALUE,
+		FORMULA;
+
+		@Override
+		public String toString() {
+			switch (this) {
+			case CELL_VALUE:
+				return "cell value comparison";
+			case FORMULA:
+				return "formula";
+			default:
+				return this.name().toLowerCase();
+			}
+		}
+
+		public static RuleTypeOptions getFromString(String value) {
+			return XlsFormatterUiOptions.getEnumEntryFromString(RuleTypeOptions.values(), value);
+		}
+	}
+
+	static final String CFGKEY_RULETYPE = "RuleType";
+	static final String DEFAULT_RULETYPE = RuleTypeOptions.CELL_VALUE.toString();
+	final SettingsModelString m_ruleType =
+			new SettingsModelString(CFGKEY_RULETYPE, DEFAULT_RULETYPE);
+
+	public enum ComparisonOptions {
+		BETWEEN(CellValueComparison.BETWEEN, "between"),
+		NOT_BETWEEN(CellValueComparison.NOT_BETWEEN, "not between"),
+		EQUAL(CellValueComparison.EQUAL, "equal to"),
+		NOT_EQUAL(CellValueComparison.NOT_EQUAL, "not equal to"),
+		GREATER_THAN(CellValueComparison.GREATER_THAN, "greater than"),
+		LESS_THAN(CellValueComparison.LESS_THAN, "less than"),
+		GREATER_OR_EQUAL(CellValueComparison.GREATER_OR_EQUAL, "greater than or equal to"),
+		LESS_OR_EQUAL(CellValueComparison.LESS_OR_EQUAL, "less than or equal to");
+
+		private final CellValueComparison comparison;
+		private final String label;
+
+		ComparisonOptions(CellValueComparison comparison, String label) {
+			this.comparison = comparison;
+			this.label = label;
+		}
+
+		public CellValueComparison getComparison() {
+			return comparison;
+		}
+
+		@Override
+		public String toString() {
+			return label;
+		}
+
+		public static ComparisonOptions getFromString(String value) {
+			return XlsFormatterUiOptions.getEnumEntryFromString(ComparisonOptions.values(), value);
+		}
+	}
+
+	static final String CFGKEY_COMPARISON = "Comparison";
+	static final String DEFAULT_COMPARISON = ComparisonOptions.LESS_THAN.toString();
+	final SettingsModelString m_comparison =
+			new SettingsModelString(CFGKEY_COMPARISON, DEFAULT_COMPARISON);
+
+	static final String CFGKEY_VALUE1 = "Value1";
+	static final String DEFAULT_VALUE1 = "0";
+	final SettingsModelString m_value1 =
+			new SettingsModelString(CFGKEY_VALUE1, DEFAULT_VALUE1);
+
+	static final String CFGKEY_VALUE2 = "Value2";
+	static final String DEFAULT_VALUE2 = "1";
+	final SettingsModelString m_value2 =
+			new SettingsModelString(CFGKEY_VALUE2, DEFAULT_VALUE2);
+
+	static final String CFGKEY_FORMULA = "Formula";
+	static final String DEFAULT_FORMULA = "MOD(ROW(),2)=0";
+	final SettingsModelString m_formula =
+			new SettingsModelString(CFGKEY_FORMULA, DEFAULT_FORMULA);
+
+	static final String CFGKEY_CHANGEBACKGROUND = "ChangeBackground";
+	static final boolean DEFAULT_CHANGEBACKGROUND = true;
+	final SettingsModelBoolean m_changeBackground =
+			new SettingsModelBoolean(CFGKEY_CHANGEBACKGROUND, DEFAULT_CHANGEBACKGROUND);
+
+	static final String CFGKEY_BACKGROUNDCOLOR = "BackgroundColor";
+	static final Color DEFAULT_BACKGROUNDCOLOR = new Color(242, 242, 242);
+	final SettingsModelColor m_backgroundColor =
+			new SettingsModelColor(CFGKEY_BACKGROUNDCOLOR, DEFAULT_BACKGROUNDCOLOR);
+
+	static final String CFGKEY_CHANGEFONTCOLOR = "ChangeFontColor";
+	static final boolean DEFAULT_CHANGEFONTCOLOR = false;
+	final SettingsModelBoolean m_changeFontColor =
+			new SettingsModelBoolean(CFGKEY_CHANGEFONTCOLOR, DEFAULT_CHANGEFONTCOLOR);
+
+	static final String CFGKEY_FONTCOLOR = "FontColor";
+	static final Color DEFAULT_FONTCOLOR = new Color(255, 0, 0);
+	final SettingsModelColor m_fontColor =
+			new SettingsModelColor(CFGKEY_FONTCOLOR, DEFAULT_FONTCOLOR);
+
+	static final String CFGKEY_BOLD = "Bold";
+	static final boolean DEFAULT_BOLD = false;
+	final SettingsModelBoolean m_bold =
+			new SettingsModelBoolean(CFGKEY_BOLD, DEFAULT_BOLD);
+
+	static final String CFGKEY_ITALIC = "Italic";
+	static final boolean DEFAULT_ITALIC = false;
+	final SettingsModelBoolean m_italic =
+			new SettingsModelBoolean(CFGKEY_ITALIC, DEFAULT_ITALIC);
+
+
+	/**
+	 * Constructor for the node model.
+	 */
+	protected XlsFormatterConditionalRuleFormatterNodeModel() {
+
+		super(
+				new PortType[] { BufferedDataTable.TYPE, XlsFormatterState.TYPE_OPTIONAL },
+				new PortType[] { XlsFormatterState.TYPE });
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	protected PortObject[] execute(PortObject[] inObjects,
+			final ExecutionContext exec) throws Exception {
+
+		if (!XlsFormatterControlTableValidator.isControlTable((BufferedDataTable)inObjects[0], exec, logger))
+			throw new IllegalArgumentException("The provided input table is not a valid XLS control table. See log for details.");
+
+		XlsFormatterState xlsf = XlsFormatterState.getModifiableCopy(inObjects[1]);
+		XlsFormatterState.SheetState xlsfs = xlsf.getCurrentSheetStateForModification();
+		WarningMessageContainer warningMessageContainer = new WarningMessageContainer();
+
+		List<CellAddress> targetCells =
+				XlsFormatterControlTableAnalysisTools.getCellsMatchingTag((BufferedDataTable)inObjects[0], m_tag.getStringValue().trim(), KnimeAdapters.of(exec), KnimeAdapters.of(logger));
+		warnOnNoMatchingTags(targetCells, m_tag.getStringValue().trim(), warningMessageContainer);
+
+		// check for a partly overlap of these target cells with a previously merged range and warn
+		String mergeOverlapRanges = XlsFormatterControlTableAnalysisTools.getOverlappingRanges(targetCells, xlsfs.mergeRanges, KnimeAdapters.of(exec), KnimeAdapters.of(logger));
+		if (mergeOverlapRanges != null)
+			warningMessageContainer.addMessage("Modification on parts of previously merged range(s) (" + mergeOverlapRanges + ") will have no effect.");
+
+		// translate UI rule definition to internal representation:
+		HighlightRule rule = getHighlightRule();
+		ConditionalFormattingSet condFormatSet = new ConditionalFormattingSet();
+		condFormatSet.highlightRules.add(rule);
+
+		// the rule takes precedence over previously defined conditional formatting of a cell, which is kept otherwise; the
+		// set holding both is again shared by all cells that shared the previous set:
+		Map<ConditionalFormattingSet, ConditionalFormattingSet> combinedSets = new IdentityHashMap<ConditionalFormattingSet, ConditionalFormattingSet>();
+		xlsfs.modifyCells(targetCells, cellState -> {
+			if (cellState.conditionalFormat == null)
+				cellState.conditionalFormat = condFormatSet; // note that we share the ConditionalFormattingSet object here across cells!
+			else
+				cellState.conditionalFormat = combinedSets.computeIfAbsent(cellState.conditionalFormat, previousSet -> {
+					ConditionalFormattingSet combinedSet = previousSet.getShallowCopy();
+					combinedSet.highlightRules.add(0, rule);
+					return combinedSet;
+				});
+		});
+
+		if (warningMessageContainer.hasMessage())
+			setWarningMessage(warningMessageContainer.getMessage());
+
+		xlsf.moveSheetsToFileStore(exec);
+		return new PortObject[] { xlsf };
+	}
+
+	/**
+	 * Derives the internal highlight rule from the node settings.
+	 */
+	private HighlightRule getHighlightRule() {
+		HighlightRule rule = new HighlightRule();
+		if (RuleTypeOptions.getFromString(m_ruleType.getStringValue()) == RuleTypeOptions.FORMULA) {
+			rule.type = HighlightRuleType.FORMULA;
+			rule.formula1 = getFormulaWithoutEqualSign(m_formula.getStringValue());
+		}
+		else {
+			rule.type = HighlightRuleType.CELL_VALUE;
+			rule.comparison = ComparisonOptions.getFromString(m_comparison.getStringValue()).getComparison();
+			rule.formula1 = getFormulaWithoutEqualSign(m_value1.getStringValue());
+			if (rule.comparison.hasSecondOperand())
+				rule.formula2 = getFormulaWithoutEqualSign(m_value2.getStringValue());
+		}
+		rule.backgroundColor = m_changeBackground.getBooleanValue() ? m_backgroundColor.getColorValue() : null;
+		rule.fontColor = m_changeFontColor.getBooleanValue() ? m_fontColor.getColorValue() : null;
+		rule.fontBold = m_bold.getBooleanValue();
+		rule.fontItalic = m_italic.getBooleanValue();
+		return rule;
+	}
+
+	private static String getFormulaWithoutEqualSign(String formula) {
+		formula = formula.trim();
+		return formula.startsWith("=") ? formula.substring(1).trim() : formula;
+	}
+
+	/**
+	 * Checks that a formula or comparison operand is valid XLS formula syntax.
+	 */
+	static void validateFormula(String formula, String fieldName) throws InvalidSettingsException {
+		formula = getFormulaWithoutEqualSign(formula);
+		if (formula.equals(""))
+			throw new InvalidSettingsException("The " + fieldName + " cannot be empty.");
+		try (XSSFWorkbook wb = new XSSFWorkbook()) {
+			FormulaParser.parse(formula, XSSFEvaluationWorkbook.create(wb), FormulaType.CELL, 0);
+		} catch (FormulaParseException | IOException e) {
+			throw new InvalidSettingsException("The " + fieldName + " \"" + formula + "\" is not a valid XLS formula: " + e.getMessage());
+		}
+	}
+
+	@Override
+	protected PortObjectSpec[] configure(final PortObjectSpec[] inSpecs)
+			throws InvalidSettingsException {
+
+		if (!XlsFormatterControlTableValidator.isControlTableSpec((DataTableSpec)inSpecs[0], logger))
+			throw new InvalidSettingsException("The configured input table header is not that of a valid XLS Formatting control table. See log for details.");
+
+		if (RuleTypeOptions.getFromString(m_ruleType.getStringValue()) == RuleTypeOptions.FORMULA)
+			validateFormula(m_formula.getStringValue(), "formula");
+		else {
+			validateFormula(m_value1.getStringValue(), "value");
+			if (ComparisonOptions.getFromString(m_comparison.getStringValue()).getComparison().hasSecondOperand())
+				validateFormula(m_value2.getStringValue(), "second value");
+		}
+
+		if (!m_changeBackground.getBooleanValue() && !m_changeFontColor.getBooleanValue() && !m_bold.getBooleanValue() && !m_italic.getBooleanValue())
+			throw new InvalidSettingsException("At least one formatting option needs to be active, otherwise this node would not have any effect.");
+
+		return new PortObjectSpec[] { inSpecs[1] == null ? XlsFormatterStateSpec.getEmptySpec() : ((XlsFormatterStateSpec)inSpecs[1]).getCopy() };
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void reset() {
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void saveSettingsTo(final NodeSettingsWO settings) {
+
+		m_tag.saveSettingsTo(settings);
+		m_ruleType.saveSettingsTo(settings);
+		m_comparison.saveSettingsTo(settings);
+		m_value1.saveSettingsTo(settings);
+		m_value2.saveSettingsTo(settings);
+		m_formula.saveSettingsTo(settings);
+		m_changeBackground.saveSettingsTo(settings);
+		m_backgroundColor.saveSettingsTo(settings);
+		m_changeFontColor.saveSettingsTo(settings);
+		m_fontColor.saveSettingsTo(settings);
+		m_bold.saveSettingsTo(settings);
+		m_italic.saveSettingsTo(settings);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void loadValidatedSettingsFrom(final NodeSettingsRO settings)
+			throws InvalidSettingsException {
+
+		m_tag.loadSettingsFrom(settings);
+		m_ruleType.loadSettingsFrom(settings);
+		m_comparison.loadSettingsFrom(settings);
+		m_value1.loadSettingsFrom(settings);
+		m_value2.loadSettingsFrom(settings);
+		m_formula.loadSettingsFrom(settings);
+		m_changeBackground.loadSettingsFrom(settings);
+		m_backgroundColor.loadSettingsFrom(settings);
+		m_changeFontColor.loadSettingsFrom(settings);
+		m_fontColor.loadSettingsFrom(settings);
+		m_bold.loadSettingsFrom(settings);
+		m_italic.loadSettingsFrom(settings);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void validateSettings(final NodeSettingsRO settings)
+			throws InvalidSettingsException {
+
+		m_tag.validateSettings(settings);
+		m_ruleType.validateSettings(settings);
+		m_comparison.validateSettings(settings);
+		m_value1.validateSettings(settings);
+		m_value2.validateSettings(settings);
+		m_formula.validateSettings(settings);
+		m_changeBackground.validateSettings(settings);
+		m_backgroundColor.validateSettings(settings);
+		m_changeFontColor.validateSettings(settings);
+		m_fontColor.validateSettings(settings);
+		m_bold.validateSettings(settings);
+		m_italic.validateSettings(settings);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void loadInternals(final File internDir,
+			final ExecutionMonitor exec) throws IOException, CanceledExecutionException {
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void saveInternals(final File internDir,
+			final ExecutionMonitor exec) throws IOException, CanceledExecutionException {
+	}
+}
@@ -39,14 +39,15 @@ import org.knime.core.node.port.PortObject;
 import org.knime.core.node.port.PortObjectSpec;
 import org.knime.core.node.port.PortType;
 
+import com.continental.knime.xlsformatter.commons.KnimeAdapters;
 import com.continental.knime.xlsformatter.commons.WarningMessageContainer;
 import com.continental.knime.xlsformatter.commons.XlsFormatterControlTableAnalysisTools;
 import com.continental.knime.xlsformatter.commons.XlsFormatterControlTableValidator;
 import com.continental.knime.xlsformatter.commons.XlsFormattingStateValidator;
 import com.continental.knime.xlsformatter.commons.XlsFormatterControlTableValidator.ControlTableType;
 import com.continental.knime.xlsformatter.commons.XlsFormattingStateValidator.ValidationModes;
+import com.continental.knime.xlsformatter.porttype.CellMap;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterState;
-import com.continental.knime.xlsformatter.porttype.XlsFormatterState.CellState;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterStateSpec;
 
 public class XlsFormatterHyperlinkerNodeModel extends NodeModel {
@@ -74,42 +75,34 @@ public class XlsFormatterHyperlinkerNodeModel extends NodeModel {
 		if (!XlsFormatterControlTableValidator.isControlTable((BufferedDataTable)inObjects[0], ControlTableType.STRING_WITHOUT_CONTENT_CHECK, exec, logger))
 			throw new IllegalArgumentException("The provided input table is not a valid XLS control table. See log for details.");
 
-		XlsFormatterState xlsf = XlsFormatterState.getDeepClone(inObjects[1]);
+		XlsFormatterState xlsf = XlsFormatterState.getModifiableCopy(inObjects[1]);
 		XlsFormatterState.SheetState xlsfs = xlsf.getCurrentSheetStateForModification();
 		WarningMessageContainer warningMessageContainer = new WarningMessageContainer();
 
 		Map<CellAddress, String> hyperlinkMap =
-				XlsFormatterControlTableAnalysisTools.getCellStringMaps((BufferedDataTable)inObjects[0], false, exec, logger).cellAddressToStringValueMap;
+				XlsFormatterControlTableAnalysisTools.getCellStringMaps((BufferedDataTable)inObjects[0], false, KnimeAdapters.of(exec), KnimeAdapters.of(logger)).cellAddressToStringValueMap;
 		
 		if (hyperlinkMap.size() == 0)
 			warningMessageContainer.addMessage("No hyperlinks found in input table.");
 		else {
 			
 			// check for a partly overlap of these target cells with a previously merged range and warn
-			String mergeOverlapRanges = XlsFormatterControlTableAnalysisTools.getOverlappingRanges(new ArrayList<CellAddress>(hyperlinkMap.keySet()), xlsfs.mergeRanges, exec, logger);
+			String mergeOverlapRanges = XlsFormatterControlTableAnalysisTools.getOverlappingRanges(new ArrayList<CellAddress>(hyperlinkMap.keySet()), xlsfs.mergeRanges, KnimeAdapters.of(exec), KnimeAdapters.of(logger));
 			if (mergeOverlapRanges != null)
 				warningMessageContainer.addMessage("Modification on parts of previously merged range(s) (" + mergeOverlapRanges + ") will have no effect.");
 		}
 
 		XlsFormatterHyperlinkerPreCheck.validateHyperlinks(hyperlinkMap.entrySet());
 		
-		for (Entry<CellAddress, String> entry : hyperlinkMap.entrySet()) {
-			CellState cellState = null;
-			if (xlsfs.cells.containsKey(entry.getKey()))
-				cellState = xlsfs.cells.get(entry.getKey());
-			else {
-				cellState = new CellState();
-				xlsfs.cells.put(entry.getKey(), cellState);
-			}
-			
-			cellState.hyperlink = entry.getValue();
-		}
+		for (Entry<CellAddress, String> entry : hyperlinkMap.entrySet())
+			xlsfs.setHyperlink(CellMap.toKey(entry.getKey()), entry.getValue());
 		
-		XlsFormattingStateValidator.validateState(xlsf, ValidationModes.LINKS, warningMessageContainer, exec, logger);
+		XlsFormattingStateValidator.validateState(xlsf, ValidationModes.LINKS, warningMessageContainer, KnimeAdapters.of(exec), KnimeAdapters.of(logger));
 		
 		if (warningMessageContainer.hasMessage())
 			setWarningMessage(warningMessageContainer.getMessage());
 
+		xlsf.moveSheetsToFileStore(exec);
 		return new PortObject[] { xlsf };
 	}
 
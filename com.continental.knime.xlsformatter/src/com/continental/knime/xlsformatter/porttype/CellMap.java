@@ -0,0 +1,595 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.continental.knime.xlsformatter.porttype;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+import org.apache.poi.ss.util.CellAddress;
+
+/**
+ * A map of cells to values, specialized for the potentially millions of cells of a sheet state. Cells are keyed by a packed
+ * long (row << 14 | column, see toKey) in an open addressing hash table with linear probing, so no CellAddress object, map
+ * node or boxed hash is held per cell. Since the key sorts like row-major order, getRowMajorCursor
+ * provides a sorted iteration sequence cheaply.
+ * Copies (see the copy constructor) share the table with their original until either of them is modified, so copying the
+ * cells of a state that a node only partly modifies costs nothing.
+ * A hash of the map's content is maintained with every modification (see getContentHash), so that comparing two maps of
+ * millions of cells is usually decided in constant time.
+ * The class also implements Map<CellAddress, V> for compatibility, whose views create a CellAddress per visited entry. Code
+ * looping over many cells should use the long-keyed methods instead. Null values are permitted, null keys are not.
+ */
+public class CellMap<V> extends AbstractMap<CellAddress, V> {
+	
+	private static final int COLUMN_BITS = 14; // an xlsx sheet has 16384 columns
+	private static final long COLUMN_MASK = (1L << COLUMN_BITS) - 1;
+	private static final long FREE = -1L; // valid keys are never negative
+	private static final int MINIMUM_CAPACITY = 16;
+	private static final int MAXIMUM_CAPACITY = 1 << 29; // so that key (34 bits) and slot fit into one positive long for sorting
+	
+	private long[] m_keys;
+	private Object[] m_values;
+	private int m_size = 0;
+	private int m_resizeThreshold;
+	private int m_modCount = 0;
+	
+	/**
+	 * Whether the table arrays might be shared with a copy of this map (or its original) and need to be copied before writing.
+	 */
+	private boolean m_shared = false;
+	
+	/**
+	 * The sum of the hashes of all entries, see getEntryHash().
+	 */
+	private long m_contentHash = 0;
+	
+	private Set<Map.Entry<CellAddress, V>> m_entrySet = null;
+	
+	public CellMap() {
+		this(MINIMUM_CAPACITY / 2);
+	}
+	
+	/**
+	 * Creates a map that can hold expectedSize cells without rehashing.
+	 */
+	public CellMap(final int expectedSize) {
+		allocate(getCapacity(expectedSize));
+	}
+	
+	/**
+	 * Creates a map holding the entries of the provided map. A provided CellMap shares its table with the new map until
+	 * either of both is modified.
+	 */
+	public CellMap(final Map<CellAddress, ? extends V> map) {
+		if (map instanceof CellMap) {
+			CellMap<?> other = (CellMap<?>)map;
+			other.m_shared = true;
+			m_shared = true;
+			m_keys = other.m_keys;
+			m_values = other.m_values;
+			m_size = other.m_size;
+			m_resizeThreshold = other.m_resizeThreshold;
+			m_contentHash = other.m_contentHash;
+		}
+		else {
+			allocate(getCapacity(map.size()));
+			putAll(map);
+		}
+	}
+	
+	/**
+	 * Packs a cell's 0-based row and column index into a key of this map.
+	 */
+	public static long toKey(final int row, final int column) {
+		return ((long)row << COLUMN_BITS) | column;
+	}
+	
+	public static long toKey(final CellAddress cellAddress) {
+		return toKey(cellAddress.getRow(), cellAddress.getColumn());
+	}
+	
+	public static int getRow(final long key) {
+		return (int)(key >>> COLUMN_BITS);
+	}
+	
+	public static int getColumn(final long key) {
+		return (int)(key & COLUMN_MASK);
+	}
+	
+	public static CellAddress toCellAddress(final long key) {
+		return new CellAddress(getRow(key), getColumn(key));
+	}
+	
+	private static int getCapacity(final int expectedSize) {
+		long capacity = MINIMUM_CAPACITY;
+		while (capacity < MAXIMUM_CAPACITY && capacity * 3 / 4 < expectedSize) // load factor below 0.75
+			capacity <<= 1;
+		return (int)capacity;
+	}
+	
+	private void allocate(final int capacity) {
+		m_keys = new long[capacity];
+		Arrays.fill(m_keys, FREE);
+		m_values = new Object[capacity];
+		m_resizeThreshold = capacity == MAXIMUM_CAPACITY ? MAXIMUM_CAPACITY - 1 : capacity / 4 * 3;
+		m_shared = false;
+	}
+	
+	/**
+	 * Copies the table arrays before their first modification, if they might be shared with another map.
+	 */
+	private void ensureUnshared() {
+		if (m_shared) {
+			m_keys = m_keys.clone();
+			m_values = m_values.clone();
+			m_shared = false;
+		}
+	}
+	
+	private static int getSlot(final long key, final int mask) {
+		long hash = key * 0x9E3779B97F4A7C15L; // spread neighboring cells over the table (Fibonacci hashing)
+		return (int)(hash ^ (hash >>> 32)) & mask;
+	}
+	
+	/**
+	 * Hashes an entry, such that the sum over all entries (unlike a XOR) changes when a value moves to another cell or
+	 * is added twice.
+	 */
+	private static long getEntryHash(final long key, final Object value) {
+		long hash = key * 0x9E3779B97F4A7C15L + Objects.hashCode(value);
+		hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+		return hash ^ (hash >>> 33);
+	}
+	
+	/**
+	 * Finds the slot of a key, or returns -(slot + 1) of the free slot where it would be inserted.
+	 */
+	private int findSlot(final long key) {
+		int mask = m_keys.length - 1;
+		int slot = getSlot(key, mask);
+		while (true) {
+			long current = m_keys[slot];
+			if (current == key)
+				return slot;
+			if (current == FREE)
+				return -(slot + 1);
+			slot = (slot + 1) & mask;
+		}
+	}
+	
+	private static long toCheckedKey(final int row, final int column) {
+		if (row < 0 || column < 0 || column > COLUMN_MASK)
+			throw new IllegalArgumentException("Invalid cell address (row " + row + ", column " + column + ").");
+		return toKey(row, column);
+	}
+	
+	@SuppressWarnings("unchecked")
+	public V get(final long key) {
+		int slot = findSlot(key);
+		return slot >= 0 ? (V)m_values[slot] : null;
+	}
+	
+	public V get(final int row, final int column) {
+		return get(toKey(row, column));
+	}
+	
+	public boolean containsKey(final long key) {
+		return findSlot(key) >= 0;
+	}
+	
+	public boolean containsKey(final int row, final int column) {
+		return containsKey(toKey(row, column));
+	}
+	
+	/**
+	 * Puts a value for a cell key.
+	 * @return The previous value of the cell or null, if there was none.
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(final long key, final V value) {
+		int slot = findSlot(key);
+		if (slot >= 0) {
+			V previous = (V)m_values[slot];
+			ensureUnshared();
+			m_values[slot] = value;
+			m_contentHash += getEntryHash(key, value) - getEntryHash(key, previous);
+			return previous;
+		}
+		if (key < 0)
+			throw new IllegalArgumentException("Invalid cell key " + key + ".");
+		if (m_size >= m_resizeThreshold) {
+			rehash(m_keys.length << 1);
+			slot = findSlot(key);
+		}
+		ensureUnshared();
+		slot = -slot - 1;
+		m_keys[slot] = key;
+		m_values[slot] = value;
+		m_contentHash += getEntryHash(key, value);
+		m_size++;
+		m_modCount++;
+		return null;
+	}
+	
+	public V put(final int row, final int column, final V value) {
+		return put(toCheckedKey(row, column), value);
+	}
+	
+	/**
+	 * Removes a cell.
+	 * @return The removed value or null, if the cell was not contained.
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(final long key) {
+		int slot = findSlot(key);
+		if (slot < 0)
+			return null;
+		V previous = (V)m_values[slot];
+		ensureUnshared();
+		removeSlot(slot);
+		m_contentHash -= getEntryHash(key, previous);
+		return previous;
+	}
+	
+	/**
+	 * Empties a slot and moves later entries of the same probe sequence into the gap (backward shift deletion), so that
+	 * no tombstones are needed.
+	 */
+	private void removeSlot(int slot) {
+		int mask = m_keys.length - 1;
+		int next = (slot + 1) & mask;
+		while (m_keys[next] != FREE) {
+			int home = getSlot(m_keys[next], mask);
+			// move the entry if its home slot is not cyclically within (slot, next]
+			if (((next - home) & mask) >= ((next - slot) & mask)) {
+				m_keys[slot] = m_keys[next];
+				m_values[slot] = m_values[next];
+				slot = next;
+			}
+			next = (next + 1) & mask;
+		}
+		m_keys[slot] = FREE;
+		m_values[slot] = null;
+		m_size--;
+		m_modCount++;
+	}
+	
+	private void rehash(final int capacity) {
+		if (capacity > MAXIMUM_CAPACITY || capacity <= 0)
+			throw new IllegalStateException("Too many cells (" + m_size + ") in one cell map.");
+		long[] oldKeys = m_keys;
+		Object[] oldValues = m_values;
+		allocate(capacity);
+		int mask = capacity - 1;
+		for (int i = 0; i < oldKeys.length; i++)
+			if (oldKeys[i] != FREE) {
+				int slot = getSlot(oldKeys[i], mask);
+				while (m_keys[slot] != FREE)
+					slot = (slot + 1) & mask;
+				m_keys[slot] = oldKeys[i];
+				m_values[slot] = oldValues[i];
+			}
+		m_modCount++;
+	}
+	
+	/**
+	 * Gets the keys of all cells, in no particular order.
+	 */
+	public long[] getKeys() {
+		long[] ret = new long[m_size];
+		int i = 0;
+		for (long key : m_keys)
+			if (key != FREE)
+				ret[i++] = key;
+		return ret;
+	}
+	
+	/**
+	 * Gets a cursor over all cells, in no particular order.
+	 */
+	public Cursor getCursor() {
+		return new Cursor(null);
+	}
+	
+	/**
+	 * Gets a cursor over all cells sorted by row and then by column.
+	 */
+	public Cursor getRowMajorCursor() {
+		// the slots are sorted as packed (key, slot) longs, so the values need no second lookup:
+		long[] keys = m_keys;
+		int slotBits = Integer.numberOfTrailingZeros(keys.length);
+		long slotMask = (1L << slotBits) - 1;
+		int minRow = Integer.MAX_VALUE, maxRow = -1;
+		for (int slot = 0; slot < keys.length; slot++)
+			if (keys[slot] != FREE) {
+				int row = getRow(keys[slot]);
+				minRow = Math.min(minRow, row);
+				maxRow = Math.max(maxRow, row);
+			}
+		long[] sorted = new long[m_size];
+		
+		if (maxRow != -1 && (long)maxRow - minRow < 4L * m_size) {
+			// rows are populated densely, as usual: bucket the cells by row (counting sort) and sort each row's columns
+			int[] rowStart = new int[maxRow - minRow + 2];
+			for (int slot = 0; slot < keys.length; slot++)
+				if (keys[slot] != FREE)
+					rowStart[getRow(keys[slot]) - minRow + 1]++;
+			for (int r = 1; r < rowStart.length; r++)
+				rowStart[r] += rowStart[r - 1];
+			int[] nextInRow = Arrays.copyOf(rowStart, rowStart.length - 1);
+			for (int slot = 0; slot < keys.length; slot++)
+				if (keys[slot] != FREE)
+					sorted[nextInRow[getRow(keys[slot]) - minRow]++] = ((long)getColumn(keys[slot]) << slotBits) | slot;
+			for (int r = 0; r < rowStart.length - 1; r++)
+				if (rowStart[r + 1] - rowStart[r] > 1)
+					Arrays.sort(sorted, rowStart[r], rowStart[r + 1]);
+		}
+		else {
+			int i = 0;
+			for (int slot = 0; slot < keys.length; slot++)
+				if (keys[slot] != FREE)
+					sorted[i++] = (keys[slot] << slotBits) | slot;
+			Arrays.sort(sorted);
+		}
+		
+		int[] slots = new int[m_size];
+		for (int i = 0; i < slots.length; i++)
+			slots[i] = (int)(sorted[i] & slotMask);
+		return new Cursor(slots);
+	}
+	
+	/**
+	 * Iterates the cells of the map without creating objects per cell:
+	 * <pre>for (CellMap&lt;V&gt;.Cursor cursor = map.getCursor(); cursor.next(); ) use(cursor.getKey(), cursor.getValue());</pre>
+	 * The map must not be structurally modified (i.e. cells added or removed) while iterating, but values may be replaced.
+	 */
+	public class Cursor {
+		
+		private final int[] m_slotSequence; // null for table order
+		private final int m_expectedModCount = m_modCount;
+		private int m_position = -1;
+		private int m_slot = -1;
+		
+		private Cursor(final int[] slotSequence) {
+			m_slotSequence = slotSequence;
+		}
+		
+		/**
+		 * Moves to the next cell.
+		 * @return false, if there is no further cell.
+		 */
+		public boolean next() {
+			if (m_modCount != m_expectedModCount)
+				throw new ConcurrentModificationException();
+			if (m_slotSequence != null) {
+				if (++m_position >= m_slotSequence.length)
+					return false;
+				m_slot = m_slotSequence[m_position];
+				return true;
+			}
+			do
+				m_slot++;
+			while (m_slot < m_keys.length && m_keys[m_slot] == FREE);
+			return m_slot < m_keys.length;
+		}
+		
+		public long getKey() {
+			return m_keys[m_slot];
+		}
+		
+		public int getRow() {
+			return CellMap.getRow(m_keys[m_slot]);
+		}
+		
+		public int getColumn() {
+			return CellMap.getColumn(m_keys[m_slot]);
+		}
+		
+		@SuppressWarnings("unchecked")
+		public V getValue() {
+			return (V)m_values[m_slot];
+		}
+		
+		public void setValue(final V value) {
+			ensureUnshared();
+			m_contentHash += getEntryHash(m_keys[m_slot], value) - getEntryHash(m_keys[m_slot], m_values[m_slot]);
+			m_values[m_slot] = value;
+		}
+	}
+	
+	@Override
+	public int size() {
+		return m_size;
+	}
+	
+	@Override
+	public boolean isEmpty() {
+		return m_size == 0;
+	}
+	
+	@Override
+	public void clear() {
+		if (m_size == 0)
+			return;
+		if (m_shared)
+			allocate(m_keys.length);
+		else {
+			Arrays.fill(m_keys, FREE);
+			Arrays.fill(m_values, null);
+		}
+		m_contentHash = 0;
+		m_size = 0;
+		m_modCount++;
+	}
+	
+	/**
+	 * Gets a hash of all entries, which is maintained with every modification and hence available in constant time. Maps
+	 * with equal entries have equal content hashes (given their values are not modified in place).
+	 */
+	public long getContentHash() {
+		return m_contentHash;
+	}
+	
+	/**
+	 * Compares the entries with those of another map. Another CellMap with a differing content hash is rejected in constant
+	 * time, and so is one still sharing the table with this map (see the copy constructor) accepted.
+	 */
+	@Override
+	public boolean equals(final Object o) {
+		if (o == this)
+			return true;
+		if (!(o instanceof CellMap))
+			return super.equals(o);
+		CellMap<?> other = (CellMap<?>)o;
+		if (m_size != other.m_size || m_contentHash != other.m_contentHash)
+			return false;
+		if (m_keys == other.m_keys && m_values == other.m_values)
+			return true;
+		for (int slot = 0; slot < m_keys.length; slot++)
+			if (m_keys[slot] != FREE) {
+				int otherSlot = other.findSlot(m_keys[slot]);
+				if (otherSlot < 0 || !Objects.equals(m_values[slot], other.m_values[otherSlot]))
+					return false;
+			}
+		return true;
+	}
+	
+	@Override
+	public int hashCode() {
+		return super.hashCode(); // as specified by Map, also for maps not being a CellMap
+	}
+	
+	@Override
+	public V get(final Object key) {
+		return key instanceof CellAddress ? get(toKey((CellAddress)key)) : null;
+	}
+	
+	@Override
+	public boolean containsKey(final Object key) {
+		return key instanceof CellAddress && containsKey(toKey((CellAddress)key));
+	}
+	
+	@Override
+	public V put(final CellAddress key, final V value) {
+		return put(toCheckedKey(key.getRow(), key.getColumn()), value);
+	}
+	
+	@Override
+	public V remove(final Object key) {
+		return key instanceof CellAddress ? remove(toKey((CellAddress)key)) : null;
+	}
+	
+	/**
+	 * The entries of this map. Their keys are created on access, and the iterator does not support removal.
+	 */
+	@Override
+	public Set<Map.Entry<CellAddress, V>> entrySet() {
+		if (m_entrySet == null)
+			m_entrySet = new AbstractSet<Map.Entry<CellAddress, V>>() {
+				@Override
+				public Iterator<Map.Entry<CellAddress, V>> iterator() {
+					return new EntryIterator();
+				}
+				@Override
+				public int size() {
+					return m_size;
+				}
+			};
+		return m_entrySet;
+	}
+	
+	private class EntryIterator implements Iterator<Map.Entry<CellAddress, V>> {
+		
+		private final int m_expectedModCount = m_modCount;
+		private int m_nextSlot = findOccupiedSlot(0);
+		
+		private int findOccupiedSlot(int slot) {
+			while (slot < m_keys.length && m_keys[slot] == FREE)
+				slot++;
+			return slot;
+		}
+		
+		@Override
+		public boolean hasNext() {
+			return m_nextSlot < m_keys.length;
+		}
+		
+		@Override
+		public Map.Entry<CellAddress, V> next() {
+			if (m_modCount != m_expectedModCount)
+				throw new ConcurrentModificationException();
+			if (!hasNext())
+				throw new NoSuchElementException();
+			int slot = m_nextSlot;
+			m_nextSlot = findOccupiedSlot(slot + 1);
+			return new Entry(slot);
+		}
+	}
+	
+	private class Entry implements Map.Entry<CellAddress, V> {
+		
+		private final int m_slot;
+		private final CellAddress m_key;
+		
+		Entry(final int slot) {
+			m_slot = slot;
+			m_key = toCellAddress(m_keys[slot]);
+		}
+		
+		@Override
+		public CellAddress getKey() {
+			return m_key;
+		}
+		
+		@Override
+		@SuppressWarnings("unchecked")
+		public V getValue() {
+			return (V)m_values[m_slot];
+		}
+		
+		@Override
+		public V setValue(final V value) {
+			V previous = getValue();
+			ensureUnshared();
+			m_contentHash += getEntryHash(m_keys[m_slot], value) - getEntryHash(m_keys[m_slot], previous);
+			m_values[m_slot] = value;
+			return previous;
+		}
+		
+		@Override
+		public boolean equals(final Object o) {
+			if (!(o instanceof Map.Entry))
+				return false;
+			Map.Entry<?, ?> other = (Map.Entry<?, ?>)o;
+			return m_key.equals(other.getKey()) && Objects.equals(getValue(), other.getValue());
+		}
+		
+		@Override
+		public int hashCode() {
+			return m_key.hashCode() ^ Objects.hashCode(getValue());
+		}
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.continental.knime.xlsformatter.porttype;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.CellState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.FormattingRecord;
+
+/**
+ * The deduplicated table of formatting records of a XlsFormatterState. Each distinct formatting is held once and
+ * shared by all cells carrying it, which is typical for millions of cells formatted by a few formatter nodes.
+ * A table is only written while its state is built (e.g. by a node modifying its copy of the input state) and is not
+ * synchronized. States passed on as port objects are shared between nodes, so records are never added to the table of
+ * another state. For the same reason, a copy of a state starts with an empty table instead of one inheriting all
+ * records ever interned upstream: the records its cells refer to are shared anyway and stay equal by value.
+ */
+public class FormattingRecordTable {
+	
+	private final Map<FormattingRecord, FormattingRecord> m_records = new HashMap<FormattingRecord, FormattingRecord>();
+	
+	public FormattingRecordTable() {
+		m_records.put(FormattingRecord.EMPTY, FormattingRecord.EMPTY);
+	}
+	
+	/**
+	 * Returns the record of this table equal to the provided one, adding the provided one if there is none yet.
+	 */
+	public FormattingRecord intern(final FormattingRecord record) {
+		FormattingRecord ret = m_records.putIfAbsent(record, record);
+		return ret == null ? record : ret;
+	}
+	
+	/**
+	 * Returns the record of this table holding the formatting of the provided cell state.
+	 */
+	public FormattingRecord intern(final CellState cellState) {
+		return intern(new FormattingRecord(cellState));
+	}
+	
+	/**
+	 * Gets the number of distinct records of this table.
+	 */
+	public int size() {
+		return m_records.size();
+	}
+}
@@ -0,0 +1,270 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.continental.knime.xlsformatter.porttype;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.CellState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.FormattingRecord;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.RangeInstruction;
+
+/**
+ * Resolves the range instructions of a sheet state (see SheetState.rangeInstructions) into the formatting records of their cells.
+ * A sweep line over the rows partitions the instructions' ranges into regions: between two consecutive row boundaries of the ranges,
+ * the covering instructions only change at the column boundaries of the ranges active in these rows. All cells of a region are
+ * covered by the same instructions, hence their records are overlaid once per distinct record instead of once per cell.
+ */
+final class RangeInstructionResolver {
+	
+	/**
+	 * A rectangular part of the instructions' ranges whose cells are all covered by the same instructions.
+	 */
+	private static final class Region {
+		final int firstRow;
+		final int lastRow;
+		final int firstColumn;
+		final int lastColumn;
+		final List<FormattingRecord> deltas; // of the covering instructions, the highest sequence number first
+		long numberOfCellsWithRecord = 0;
+		
+		Region(final int firstRow, final int lastRow, final int firstColumn, final int lastColumn, final List<FormattingRecord> deltas) {
+			this.firstRow = firstRow;
+			this.lastRow = lastRow;
+			this.firstColumn = firstColumn;
+			this.lastColumn = lastColumn;
+			this.deltas = deltas;
+		}
+		
+		long getNumberOfCells() {
+			return (lastRow - firstRow + 1L) * (lastColumn - firstColumn + 1L);
+		}
+	}
+	
+	private RangeInstructionResolver() { }
+	
+	/**
+	 * Puts the resolved record of every cell covered by the instructions into target, which may be the cells map itself.
+	 * @param cells The cells' records underlying the instructions.
+	 * @param instructions The instructions in ascending order of their sequence number.
+	 */
+	static void resolve(final CellMap<FormattingRecord> cells, final List<RangeInstruction> instructions,
+			final CellMap<FormattingRecord> target, final FormattingRecordTable formattingRecords) {
+		
+		Map<List<FormattingRecord>, Map<FormattingRecord, FormattingRecord>> overlaidRecords = new HashMap<List<FormattingRecord>, Map<FormattingRecord, FormattingRecord>>();
+		for (Region region : getRegions(instructions)) {
+			Map<FormattingRecord, FormattingRecord> regionRecords = overlaidRecords.computeIfAbsent(region.deltas, d -> new HashMap<FormattingRecord, FormattingRecord>());
+			for (int r = region.firstRow; r <= region.lastRow; r++)
+				for (int c = region.firstColumn; c <= region.lastColumn; c++) {
+					long cellKey = CellMap.toKey(r, c);
+					FormattingRecord record = cells.get(cellKey);
+					target.put(cellKey, regionRecords.computeIfAbsent(record == null ? FormattingRecord.EMPTY : record,
+							underlyingRecord -> formattingRecords.intern(getOverlaidCellState(region.deltas, underlyingRecord))));
+				}
+		}
+	}
+	
+	/**
+	 * Gets the distinct records the cells would have after resolving the instructions, without resolving them cell by cell.
+	 */
+	static Collection<FormattingRecord> getDistinctRecords(final CellMap<FormattingRecord> cells, final List<RangeInstruction> instructions) {
+		Set<FormattingRecord> ret = new HashSet<FormattingRecord>();
+		if (instructions.size() == 0) {
+			for (CellMap<FormattingRecord>.Cursor cursor = cells.getCursor(); cursor.next(); )
+				ret.add(cursor.getValue());
+			return ret;
+		}
+		
+		// the regions of each row band by their first column, for locating the region of a cell:
+		TreeMap<Integer, TreeMap<Integer, Region>> regionsByRowAndColumn = new TreeMap<Integer, TreeMap<Integer, Region>>();
+		List<Region> regions = getRegions(instructions);
+		for (Region region : regions)
+			regionsByRowAndColumn.computeIfAbsent(region.firstRow, r -> new TreeMap<Integer, Region>()).put(region.firstColumn, region);
+		
+		Map<List<FormattingRecord>, Map<FormattingRecord, FormattingRecord>> overlaidRecords = new HashMap<List<FormattingRecord>, Map<FormattingRecord, FormattingRecord>>();
+		for (CellMap<FormattingRecord>.Cursor cursor = cells.getCursor(); cursor.next(); ) {
+			Region region = null;
+			Map.Entry<Integer, TreeMap<Integer, Region>> band = regionsByRowAndColumn.floorEntry(cursor.getRow());
+			if (band != null) {
+				Map.Entry<Integer, Region> candidate = band.getValue().floorEntry(cursor.getColumn());
+				if (candidate != null && candidate.getValue().lastRow >= cursor.getRow() && candidate.getValue().lastColumn >= cursor.getColumn())
+					region = candidate.getValue();
+			}
+			if (region == null)
+				ret.add(cursor.getValue());
+			else {
+				region.numberOfCellsWithRecord++;
+				ret.add(getOverlaidRecord(overlaidRecords, region.deltas, cursor.getValue()));
+			}
+		}
+		
+		// the cells of a region without a record of their own get the instructions' formatting only:
+		for (Region region : regions)
+			if (region.numberOfCellsWithRecord < region.getNumberOfCells())
+				ret.add(getOverlaidRecord(overlaidRecords, region.deltas, FormattingRecord.EMPTY));
+		return ret;
+	}
+	
+	private static FormattingRecord getOverlaidRecord(final Map<List<FormattingRecord>, Map<FormattingRecord, FormattingRecord>> overlaidRecords,
+			final List<FormattingRecord> deltas, final FormattingRecord record) {
+		return overlaidRecords.computeIfAbsent(deltas, d -> new HashMap<FormattingRecord, FormattingRecord>())
+				.computeIfAbsent(record, r -> new FormattingRecord(getOverlaidCellState(deltas, r)));
+	}
+	
+	/**
+	 * Gets the deltas of the instructions covering a cell, the highest sequence number first.
+	 */
+	static List<FormattingRecord> getCoveringDeltas(final List<RangeInstruction> instructions, final int row, final int column) {
+		List<FormattingRecord> ret = new ArrayList<FormattingRecord>();
+		for (int i = instructions.size() - 1; i >= 0; i--)
+			for (CellRangeAddress range : instructions.get(i).ranges)
+				if (range.isInRange(row, column)) {
+					ret.add(instructions.get(i).delta);
+					break;
+				}
+		return ret;
+	}
+	
+	/**
+	 * Overlays a record by the provided deltas, of which earlier ones are superior to later ones.
+	 * @param record The underlying record or null.
+	 */
+	static CellState getOverlaidCellState(final List<FormattingRecord> deltas, final FormattingRecord record) {
+		CellState[] states = new CellState[deltas.size() + 1];
+		for (int i = 0; i < deltas.size(); i++)
+			states[i] = deltas.get(i).toCellState();
+		states[deltas.size()] = record == null ? null : record.toCellState();
+		return XlsFormatterStateMerger.getOverlaidCellState(states);
+	}
+	
+	/**
+	 * Resolves the instructions for the cells of an area into the cells map and returns the instructions without these cells.
+	 */
+	static List<RangeInstruction> resolveArea(final CellMap<FormattingRecord> cells, final List<RangeInstruction> instructions,
+			final List<CellRangeAddress> area, final FormattingRecordTable formattingRecords) {
+		
+		List<RangeInstruction> clippedInstructions = new ArrayList<RangeInstruction>();
+		List<RangeInstruction> ret = new ArrayList<RangeInstruction>(instructions.size());
+		for (RangeInstruction instruction : instructions) {
+			List<CellRangeAddress> inside = new ArrayList<CellRangeAddress>();
+			List<CellRangeAddress> outside = instruction.ranges;
+			for (CellRangeAddress areaRange : area) {
+				List<CellRangeAddress> remainder = new ArrayList<CellRangeAddress>();
+				for (CellRangeAddress range : outside)
+					if (range.intersects(areaRange)) {
+						inside.add(new CellRangeAddress(
+								Math.max(range.getFirstRow(), areaRange.getFirstRow()), Math.min(range.getLastRow(), areaRange.getLastRow()),
+								Math.max(range.getFirstColumn(), areaRange.getFirstColumn()), Math.min(range.getLastColumn(), areaRange.getLastColumn())));
+						subtract(range, areaRange, remainder);
+					}
+					else
+						remainder.add(range);
+				outside = remainder;
+			}
+			if (inside.size() == 0)
+				ret.add(instruction);
+			else {
+				clippedInstructions.add(new RangeInstruction(inside, instruction.delta, instruction.sequenceNumber));
+				if (outside.size() != 0)
+					ret.add(new RangeInstruction(outside, instruction.delta, instruction.sequenceNumber));
+			}
+		}
+		if (clippedInstructions.size() != 0)
+			resolve(cells, clippedInstructions, cells, formattingRecords);
+		return ret;
+	}
+	
+	/**
+	 * Adds the up to four ranges covering a range except for its intersection with another one (above, below, left and right of it).
+	 */
+	private static void subtract(final CellRangeAddress range, final CellRangeAddress hole, final List<CellRangeAddress> ret) {
+		int firstRow = Math.max(range.getFirstRow(), hole.getFirstRow());
+		int lastRow = Math.min(range.getLastRow(), hole.getLastRow());
+		if (range.getFirstRow() < firstRow)
+			ret.add(new CellRangeAddress(range.getFirstRow(), firstRow - 1, range.getFirstColumn(), range.getLastColumn()));
+		if (range.getLastRow() > lastRow)
+			ret.add(new CellRangeAddress(lastRow + 1, range.getLastRow(), range.getFirstColumn(), range.getLastColumn()));
+		if (range.getFirstColumn() < hole.getFirstColumn())
+			ret.add(new CellRangeAddress(firstRow, lastRow, range.getFirstColumn(), hole.getFirstColumn() - 1));
+		if (range.getLastColumn() > hole.getLastColumn())
+			ret.add(new CellRangeAddress(firstRow, lastRow, hole.getLastColumn() + 1, range.getLastColumn()));
+	}
+	
+	/**
+	 * Partitions the instructions' ranges into regions by a sweep line over the rows.
+	 */
+	private static List<Region> getRegions(final List<RangeInstruction> instructions) {
+		
+		// the ranges of all instructions as {firstRow, lastRow, firstColumn, lastColumn, instruction index} in order of their first row:
+		List<int[]> ranges = new ArrayList<int[]>();
+		TreeSet<Integer> rowBoundaries = new TreeSet<Integer>();
+		for (int i = 0; i < instructions.size(); i++)
+			for (CellRangeAddress range : instructions.get(i).ranges) {
+				ranges.add(new int[] { range.getFirstRow(), range.getLastRow(), range.getFirstColumn(), range.getLastColumn(), i });
+				rowBoundaries.add(range.getFirstRow());
+				rowBoundaries.add(range.getLastRow() + 1);
+			}
+		ranges.sort((a, b) -> Integer.compare(a[0], b[0]));
+		
+		List<Region> ret = new ArrayList<Region>();
+		List<int[]> activeRanges = new ArrayList<int[]>();
+		int nextRange = 0;
+		Integer bandFirstRow = rowBoundaries.pollFirst();
+		while (!rowBoundaries.isEmpty()) {
+			int firstRow = bandFirstRow;
+			int lastRow = rowBoundaries.first() - 1;
+			activeRanges.removeIf(range -> range[1] < firstRow);
+			while (nextRange < ranges.size() && ranges.get(nextRange)[0] == firstRow)
+				activeRanges.add(ranges.get(nextRange++));
+			
+			// within the row band, the covering instructions only change at the active ranges' column boundaries:
+			TreeSet<Integer> columnBoundaries = new TreeSet<Integer>();
+			for (int[] range : activeRanges) {
+				columnBoundaries.add(range[2]);
+				columnBoundaries.add(range[3] + 1);
+			}
+			Integer firstColumn = columnBoundaries.pollFirst();
+			while (!columnBoundaries.isEmpty()) {
+				int column = firstColumn;
+				TreeSet<Integer> coveringInstructions = new TreeSet<Integer>();
+				for (int[] range : activeRanges)
+					if (range[2] <= column && range[3] >= column)
+						coveringInstructions.add(range[4]);
+				if (coveringInstructions.size() != 0) {
+					List<FormattingRecord> deltas = new ArrayList<FormattingRecord>(coveringInstructions.size());
+					for (int i : coveringInstructions.descendingSet())
+						deltas.add(instructions.get(i).delta);
+					ret.add(new Region(firstRow, lastRow, column, columnBoundaries.first() - 1, deltas));
+				}
+				firstColumn = columnBoundaries.pollFirst();
+			}
+			bandFirstRow = rowBoundaries.pollFirst();
+		}
+		return ret;
+	}
+}
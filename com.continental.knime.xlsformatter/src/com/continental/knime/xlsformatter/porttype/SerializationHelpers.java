@@ -19,9 +19,12 @@
 package com.continental.knime.xlsformatter.porttype;
 
 import java.awt.Color;
+import java.io.DataOutput;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
 import java.util.Map;
 
 import org.apache.commons.lang3.tuple.Pair;
@@ -55,6 +58,75 @@ public class SerializationHelpers {
 		return new CellAddress(row, input.readInt()); // row, column
 	}
 	
+	/**
+	 * Writes a CellMap key in the byte layout of writeCellAddress.
+	 */
+	public static void writeCellKey(long key, ObjectOutput output, int serializationVersion) throws IOException {
+		output.writeInt(CellMap.getRow(key));
+		output.writeInt(CellMap.getColumn(key));
+	}
+	
+	/**
+	 * Reads a cell address written by writeCellAddress or writeCellKey as CellMap key.
+	 */
+	public static long readCellKey(ObjectInput input, int serializationVersion) throws IOException {
+		int row = input.readInt();
+		int column = input.readInt();
+		if (row < 0 || column < 0 || column >= 1 << 14)
+			throw new IOException("Invalid persisted XLS Formatting state, cell address out of range (row " + row + ", column " + column + ").");
+		return CellMap.toKey(row, column);
+	}
+	
+	/**
+	 * Writes a CellMap key relative to the key written before it in a row-major sequence (or -1 for the first key of a sequence):
+	 * the row difference and, if still in the same row, the column difference, otherwise the column (each as var int).
+	 * Neighboring cells hence take two bytes instead of eight.
+	 */
+	public static void writeCellKeyDelta(long key, long previousKey, ObjectOutput output, int serializationVersion) throws IOException {
+		int previousRow = previousKey < 0 ? 0 : CellMap.getRow(previousKey);
+		int previousColumn = previousKey < 0 ? -1 : CellMap.getColumn(previousKey);
+		int rowDelta = CellMap.getRow(key) - previousRow;
+		writeVarInt(rowDelta, output, serializationVersion);
+		writeVarInt(rowDelta == 0 ? CellMap.getColumn(key) - previousColumn - 1 : CellMap.getColumn(key), output, serializationVersion);
+	}
+	
+	/**
+	 * Reads a CellMap key written by writeCellKeyDelta.
+	 */
+	public static long readCellKeyDelta(long previousKey, ObjectInput input, int serializationVersion) throws IOException {
+		int previousRow = previousKey < 0 ? 0 : CellMap.getRow(previousKey);
+		int previousColumn = previousKey < 0 ? -1 : CellMap.getColumn(previousKey);
+		int rowDelta = readVarInt(input, serializationVersion);
+		int row = previousRow + rowDelta;
+		int column = readVarInt(input, serializationVersion) + (rowDelta == 0 ? previousColumn + 1 : 0);
+		if (row < 0 || column < 0 || column >= 1 << 14)
+			throw new IOException("Invalid persisted XLS Formatting state, cell address out of range (row " + row + ", column " + column + ").");
+		return CellMap.toKey(row, column);
+	}
+	
+	
+	/**
+	 * Writes a non-negative int in groups of 7 bits, least significant first, so that values below 128 take a single byte.
+	 */
+	public static void writeVarInt(int value, ObjectOutput output, int serializationVersion) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			output.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		output.writeByte(value);
+	}
+	
+	public static int readVarInt(ObjectInput input, int serializationVersion) throws IOException {
+		int ret = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			byte b = input.readByte();
+			ret |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return ret;
+		}
+		throw new IOException("Invalid persisted XLS Formatting state, malformed variable-length number.");
+	}
+	
 	
 	public static void writeNullableInt(Integer value, ObjectOutput output, int serializationVersion) throws IOException {
 		output.writeBoolean(value != null);
@@ -107,4 +179,47 @@ public class SerializationHelpers {
 			return new Color(input.readInt(), true); // version with alpha as this is also written out
 		return null;
 	}
+	
+	
+	/**
+	 * Writes the remaining bytes of a buffer (e.g. a sheet's byte block) in chunks, without moving its position.
+	 */
+	public static void writeByteBuffer(ByteBuffer value, DataOutput output) throws IOException {
+		ByteBuffer source = value.duplicate();
+		byte[] chunk = new byte[(int)Math.min(source.remaining(), 64 * 1024)];
+		while (source.hasRemaining()) {
+			int length = Math.min(source.remaining(), chunk.length);
+			source.get(chunk, 0, length);
+			output.write(chunk, 0, length);
+		}
+	}
+	
+	/**
+	 * Returns a stream reading the remaining bytes of a buffer (e.g. a sheet's byte block), without moving its position.
+	 */
+	public static InputStream getInputStream(ByteBuffer value) {
+		ByteBuffer source = value.duplicate();
+		return new InputStream() {
+			@Override
+			public int read() {
+				return source.hasRemaining() ? source.get() & 0xFF : -1;
+			}
+			
+			@Override
+			public int read(byte[] b, int off, int len) {
+				if (len == 0)
+					return 0;
+				if (!source.hasRemaining())
+					return -1;
+				len = Math.min(len, source.remaining());
+				source.get(b, off, len);
+				return len;
+			}
+			
+			@Override
+			public int available() {
+				return source.remaining();
+			}
+		};
+	}
 }
@@ -20,20 +20,39 @@ package com.continental.knime.xlsformatter.porttype;
 
 import java.awt.BorderLayout;
 import java.awt.Color;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.Externalizable;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutput;
 import java.io.ObjectOutputStream;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import javax.swing.JComponent;
 import javax.swing.JLabel;
@@ -44,14 +63,20 @@ import org.apache.commons.lang3.tuple.Pair;
 import org.apache.poi.ss.util.CellAddress;
 import org.apache.poi.ss.util.CellRangeAddress;
 import org.apache.poi.ss.util.CellReference;
+import org.knime.core.node.ExecutionContext;
 import org.knime.core.node.port.PortObject;
 import org.knime.core.node.port.PortObjectSpec;
 import org.knime.core.node.port.PortType;
 import org.knime.core.node.port.PortTypeRegistry;
+import org.knime.filehandling.core.util.CheckedExceptionSupplier;
 
 import com.continental.knime.xlsformatter.apply.XlsFormatterApplyLogic;
+import com.continental.knime.xlsformatter.commons.AddressingTools;
 import com.continental.knime.xlsformatter.commons.ColorTools;
 import com.continental.knime.xlsformatter.commons.Commons;
+import com.continental.knime.xlsformatter.commons.ProgressMonitor;
+import com.continental.knime.xlsformatter.commons.XlsFormatterControlTableValidator;
+import com.continental.knime.xlsformatter.commons.XlsFormatterLogger;
 
 // NOTE: changes to the state class (e.g. new fields) must also be reflected in XlsFormatterStateMerger
 
@@ -63,6 +88,12 @@ public class XlsFormatterState implements PortObject, Externalizable {
 	 */
 	public static int VIEW_CELLS_THRESHOLD = 100;
 	
+	/**
+	 * The number of cells with instructions from which on a node's output state is held in a file store
+	 * instead of on the heap (see moveSheetsToFileStore()). Sheets take a few bytes per cell in such a file.
+	 */
+	private static final int FILE_BACKED_STATE_MIN_CELLS = 1000000;
+	
 	public static final PortType TYPE = PortTypeRegistry.getInstance().getPortType(XlsFormatterState.class);
 	public static final PortType TYPE_OPTIONAL = PortTypeRegistry.getInstance().getPortType(XlsFormatterState.class, true);
 	
@@ -175,6 +206,277 @@ public class XlsFormatterState implements PortObject, Externalizable {
 			SerializationHelpers.writeNullableString(author, output, serializationVersion);
 			SerializationHelpers.writeNullableString(text, output, serializationVersion);
 		}
+		
+		@Override
+		public boolean equals(Object o) {
+			if (o == this)
+				return true;
+			if (!(o instanceof Comment))
+				return false;
+			Comment other = (Comment)o;
+			return Objects.equals(author, other.author) && Objects.equals(text, other.text);
+		}
+		
+		@Override
+		public int hashCode() {
+			return Objects.hash(author, text);
+		}
+	}
+	
+	/**
+	 * An instruction set for formatting a cell range as native Excel table (incl. table style, header and totals row and banding).
+	 */
+	public static class TableDefinition {
+		public CellRangeAddress range;
+		public String name = null; // null means an automatically derived table name
+		public String styleName = null; // name of a built-in table style, null means no table style
+		public boolean hasHeaderRow = true;
+		public boolean hasTotalsRow = false;
+		public boolean showBandedRows = true;
+		public boolean showBandedColumns = false;
+		public boolean highlightFirstColumn = false;
+		public boolean highlightLastColumn = false;
+		
+		public static TableDefinition readFromExternal(ObjectInput input, int serializationVersion) throws IOException, ClassNotFoundException {
+			TableDefinition ret = new TableDefinition();
+			input.readInt(); // placeholder for future type implementations
+			ret.range = SerializationHelpers.readCellRangeAddress(input, serializationVersion);
+			ret.name = SerializationHelpers.readNullableString(input, serializationVersion);
+			ret.styleName = SerializationHelpers.readNullableString(input, serializationVersion);
+			ret.hasHeaderRow = input.readBoolean();
+			ret.hasTotalsRow = input.readBoolean();
+			ret.showBandedRows = input.readBoolean();
+			ret.showBandedColumns = input.readBoolean();
+			ret.highlightFirstColumn = input.readBoolean();
+			ret.highlightLastColumn = input.readBoolean();
+			return ret;
+		}
+
+		public void writeExternal(ObjectOutput output, int serializationVersion) throws IOException {
+			output.writeInt(0); // placeholder for future type implementations (0 being default)
+			SerializationHelpers.writeCellRangeAddress(range, output, serializationVersion);
+			SerializationHelpers.writeNullableString(name, output, serializationVersion);
+			SerializationHelpers.writeNullableString(styleName, output, serializationVersion);
+			output.writeBoolean(hasHeaderRow);
+			output.writeBoolean(hasTotalsRow);
+			output.writeBoolean(showBandedRows);
+			output.writeBoolean(showBandedColumns);
+			output.writeBoolean(highlightFirstColumn);
+			output.writeBoolean(highlightLastColumn);
+		}
+		
+		@Override
+		public boolean equals(Object o) {
+			if (o == this)
+				return true;
+			if (!(o instanceof TableDefinition))
+				return false;
+			TableDefinition other = (TableDefinition)o;
+			return range.equals(other.range) && Objects.equals(name, other.name) && Objects.equals(styleName, other.styleName) &&
+					hasHeaderRow == other.hasHeaderRow && hasTotalsRow == other.hasTotalsRow &&
+					showBandedRows == other.showBandedRows && showBandedColumns == other.showBandedColumns &&
+					highlightFirstColumn == other.highlightFirstColumn && highlightLastColumn == other.highlightLastColumn;
+		}
+		
+		@Override
+		public int hashCode() {
+			return Objects.hash(range, name, styleName, hasHeaderRow, hasTotalsRow, showBandedRows, showBandedColumns, highlightFirstColumn, highlightLastColumn);
+		}
+		
+		@Override
+		public String toString() {
+			return range.formatAsString() + (name == null ? "" : " \"" + name + "\"") + " style:" + (styleName == null ? "none" : styleName) +
+					(hasHeaderRow ? " header" : "") + (hasTotalsRow ? " totals" : "") +
+					(showBandedRows ? " bandedRows" : "") + (showBandedColumns ? " bandedColumns" : "") +
+					(highlightFirstColumn ? " firstColumn" : "") + (highlightLastColumn ? " lastColumn" : "");
+		}
+	}
+	
+	/**
+	 * Types of conditional formatting highlight rules: either a comparison of the cell's value or a boolean formula.
+	 */
+	public enum HighlightRuleType { CELL_VALUE, FORMULA }
+	
+	/**
+	 * Comparison operators of cell value based highlight rules.
+	 */
+	public enum CellValueComparison {
+		BETWEEN, NOT_BETWEEN, EQUAL, NOT_EQUAL, GREATER_THAN, LESS_THAN, GREATER_OR_EQUAL, LESS_OR_EQUAL;
+		
+		/**
+		 * Checks whether this comparison requires a second operand (i.e. the upper bound of a range).
+		 */
+		public boolean hasSecondOperand() {
+			return this == BETWEEN || this == NOT_BETWEEN;
+		}
+	}
+	
+	/**
+	 * A conditional formatting rule that changes the fill and/or font of the cells it is true for.
+	 * Formulas and operands are given in XLS formula syntax (without leading equal sign), relative references are resolved
+	 * from the top-left cell of the formatted cells.
+	 */
+	public static class HighlightRule {
+		public HighlightRuleType type = HighlightRuleType.FORMULA;
+		public CellValueComparison comparison = null; // only for type CELL_VALUE
+		public String formula1 = null; // the formula (type FORMULA) or the first operand of the comparison (type CELL_VALUE)
+		public String formula2 = null; // the second operand of comparisons that require one
+		public Color backgroundColor = null; // null means unmodified
+		public Color fontColor = null; // null means unmodified
+		public boolean fontBold = false;
+		public boolean fontItalic = false;
+		
+		public static HighlightRule readFromExternal(ObjectInput input, int serializationVersion) throws IOException, ClassNotFoundException {
+			HighlightRule ret = new HighlightRule();
+			input.readInt(); // placeholder for future type implementations
+			ret.type = HighlightRuleType.valueOf(input.readUTF());
+			String comparison = SerializationHelpers.readNullableString(input, serializationVersion);
+			ret.comparison = comparison == null ? null : CellValueComparison.valueOf(comparison);
+			ret.formula1 = SerializationHelpers.readNullableString(input, serializationVersion);
+			ret.formula2 = SerializationHelpers.readNullableString(input, serializationVersion);
+			ret.backgroundColor = SerializationHelpers.readNullableColor(input, serializationVersion);
+			ret.fontColor = SerializationHelpers.readNullableColor(input, serializationVersion);
+			ret.fontBold = input.readBoolean();
+			ret.fontItalic = input.readBoolean();
+			return ret;
+		}
+		
+		public void writeExternal(ObjectOutput output, int serializationVersion) throws IOException {
+			output.writeInt(0); // placeholder for future type implementations (0 being default)
+			output.writeUTF(type.name());
+			SerializationHelpers.writeNullableString(comparison == null ? null : comparison.name(), output, serializationVersion);
+			SerializationHelpers.writeNullableString(formula1, output, serializationVersion);
+			SerializationHelpers.writeNullableString(formula2, output, serializationVersion);
+			SerializationHelpers.writeNullableColor(backgroundColor, output, serializationVersion);
+			SerializationHelpers.writeNullableColor(fontColor, output, serializationVersion);
+			output.writeBoolean(fontBold);
+			output.writeBoolean(fontItalic);
+		}
+		
+		@Override
+		public String toString() {
+			return (type == HighlightRuleType.FORMULA ? "formula(" + formula1 + ")" :
+					"value " + comparison + "(" + formula1 + (comparison != null && comparison.hasSecondOperand() ? "," + formula2 : "") + ")") +
+					"->" + (backgroundColor == null ? "" : "bg:" + ColorTools.colorToXlsfColorString(backgroundColor)) +
+					(fontColor == null ? "" : "font:" + ColorTools.colorToXlsfColorString(fontColor)) +
+					(fontBold ? "bold" : "") + (fontItalic ? "italic" : "");
+		}
+	}
+	
+	/**
+	 * Types of thresholds of data bars and icon sets, i.e. how a threshold's value is interpreted. AUTOMATIC means
+	 * the lowest respectively highest value of the formatted cells and does not have a value.
+	 */
+	public enum ConditionalThresholdType { AUTOMATIC, NUMBER, PERCENT, PERCENTILE }
+	
+	/**
+	 * The icon sets offered by the spreadsheet application, named as in the POI library.
+	 */
+	public enum IconSetStyle {
+		GYR_3_ARROW(3), GREY_3_ARROWS(3), GYR_3_FLAGS(3), GYR_3_TRAFFIC_LIGHTS(3), GYR_3_TRAFFIC_LIGHTS_BOX(3), GYR_3_SHAPES(3),
+		GYR_3_SYMBOLS_CIRCLE(3), GYR_3_SYMBOLS(3), GYR_4_ARROWS(4), GREY_4_ARROWS(4), RB_4_TRAFFIC_LIGHTS(4), RATINGS_4(4),
+		GYRB_4_TRAFFIC_LIGHTS(4), GYYYR_5_ARROWS(5), GREY_5_ARROWS(5), RATINGS_5(5), QUARTERS_5(5);
+		
+		private final int iconCount;
+		
+		IconSetStyle(int iconCount) {
+			this.iconCount = iconCount;
+		}
+		
+		public int getIconCount() {
+			return iconCount;
+		}
+	}
+	
+	/**
+	 * A data bar rendering each cell's value as a bar of proportional length in the cell's background.
+	 */
+	public static class DataBar {
+		public Color color = null;
+		public ConditionalThresholdType minType = ConditionalThresholdType.AUTOMATIC;
+		public double minValue = 0d; // ignored for type AUTOMATIC
+		public ConditionalThresholdType maxType = ConditionalThresholdType.AUTOMATIC;
+		public double maxValue = 0d; // ignored for type AUTOMATIC
+		public boolean showValue = true;
+		
+		public static DataBar readFromExternal(ObjectInput input, int serializationVersion) throws IOException, ClassNotFoundException {
+			DataBar ret = new DataBar();
+			input.readInt(); // placeholder for future type implementations
+			ret.color = SerializationHelpers.readNullableColor(input, serializationVersion);
+			ret.minType = ConditionalThresholdType.valueOf(input.readUTF());
+			ret.minValue = input.readDouble();
+			ret.maxType = ConditionalThresholdType.valueOf(input.readUTF());
+			ret.maxValue = input.readDouble();
+			ret.showValue = input.readBoolean();
+			return ret;
+		}
+		
+		public void writeExternal(ObjectOutput output, int serializationVersion) throws IOException {
+			output.writeInt(0); // placeholder for future type implementations (0 being default)
+			SerializationHelpers.writeNullableColor(color, output, serializationVersion);
+			output.writeUTF(minType.name());
+			output.writeDouble(minValue);
+			output.writeUTF(maxType.name());
+			output.writeDouble(maxValue);
+			output.writeBoolean(showValue);
+		}
+		
+		@Override
+		public String toString() {
+			return "databar(" + (color == null ? "-" : ColorTools.colorToXlsfColorString(color)) +
+					"," + minType + (minType == ConditionalThresholdType.AUTOMATIC ? "" : ":" + minValue) +
+					"," + maxType + (maxType == ConditionalThresholdType.AUTOMATIC ? "" : ":" + maxValue) +
+					(showValue ? "" : ",barOnly") + ")";
+		}
+	}
+	
+	/**
+	 * An icon set showing one of several icons in each cell, depending on the range its value falls into.
+	 */
+	public static class IconSetDefinition {
+		public IconSetStyle style = IconSetStyle.GYR_3_TRAFFIC_LIGHTS;
+		public ConditionalThresholdType thresholdType = ConditionalThresholdType.PERCENT; // not AUTOMATIC
+		/**
+		 * The ascending lower bounds of all icons except the first one (which covers all values below the first threshold).
+		 * Its size is one less than the style's icon count.
+		 */
+		public List<Double> thresholds = new ArrayList<Double>();
+		public boolean reversed = false;
+		public boolean showValue = true;
+		
+		public static IconSetDefinition readFromExternal(ObjectInput input, int serializationVersion) throws IOException, ClassNotFoundException {
+			IconSetDefinition ret = new IconSetDefinition();
+			input.readInt(); // placeholder for future type implementations
+			ret.style = IconSetStyle.valueOf(input.readUTF());
+			ret.thresholdType = ConditionalThresholdType.valueOf(input.readUTF());
+			int tempSize = input.readInt();
+			ret.thresholds = new ArrayList<Double>(tempSize);
+			for (int i = 0; i < tempSize; i++)
+				ret.thresholds.add(input.readDouble());
+			ret.reversed = input.readBoolean();
+			ret.showValue = input.readBoolean();
+			return ret;
+		}
+		
+		public void writeExternal(ObjectOutput output, int serializationVersion) throws IOException {
+			output.writeInt(0); // placeholder for future type implementations (0 being default)
+			output.writeUTF(style.name());
+			output.writeUTF(thresholdType.name());
+			output.writeInt(thresholds.size());
+			for (Double threshold : thresholds)
+				output.writeDouble(threshold);
+			output.writeBoolean(reversed);
+			output.writeBoolean(showValue);
+		}
+		
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append("iconset(" + style + "," + thresholdType);
+			for (Double threshold : thresholds)
+				sb.append(":" + threshold);
+			return sb.append((reversed ? ",reversed" : "") + (showValue ? "" : ",iconOnly") + ")").toString();
+		}
 	}
 	
 	/**
@@ -187,6 +489,33 @@ public class XlsFormatterState implements PortObject, Externalizable {
 		 */
 		public List<Pair<Double, Color>> backgroundScaleFixpoints = new ArrayList<Pair<Double, Color>>();
 		
+		/**
+		 * Highlight rules in order of their priority.
+		 */
+		public List<HighlightRule> highlightRules = new ArrayList<HighlightRule>();
+		
+		/**
+		 * Data bar or null if none.
+		 */
+		public DataBar dataBar = null;
+		
+		/**
+		 * Icon set or null if none.
+		 */
+		public IconSetDefinition iconSet = null;
+		
+		/**
+		 * Creates a new ConditionalFormattingSet holding the same scale fixpoints, rules and visuals as this one (sharing the contained objects).
+		 */
+		public ConditionalFormattingSet getShallowCopy() {
+			ConditionalFormattingSet ret = new ConditionalFormattingSet();
+			ret.backgroundScaleFixpoints.addAll(backgroundScaleFixpoints);
+			ret.highlightRules.addAll(highlightRules);
+			ret.dataBar = dataBar;
+			ret.iconSet = iconSet;
+			return ret;
+		}
+		
 		/**
 		 * Get a String representation of this ConditionalFormattingSet. Two different ConditionalFormattingSet must
 		 * yield two different Strings returned by this method.
@@ -199,6 +528,12 @@ public class XlsFormatterState implements PortObject, Externalizable {
 			else
 				for (Pair<Double, Color> pair : backgroundScaleFixpoints)
 					sb.append(pair.getLeft() + ":" + ColorTools.colorToXlsfColorString(pair.getRight()) + ";");
+			for (HighlightRule rule : highlightRules)
+				sb.append("|" + rule.toString());
+			if (dataBar != null)
+				sb.append("|" + dataBar.toString());
+			if (iconSet != null)
+				sb.append("|" + iconSet.toString());
 			return sb.toString();
 		}
 		
@@ -211,6 +546,16 @@ public class XlsFormatterState implements PortObject, Externalizable {
 				Color color = SerializationHelpers.readNullableColor(input, serializationVersion);
 				ret.backgroundScaleFixpoints.add(Pair.of(step, color));
 			}
+			if (serializationVersion >= 3) { // versions 1 and 2 did not yet have these elements
+				tempSize = input.readInt();
+				ret.highlightRules = new ArrayList<HighlightRule>(tempSize);
+				for (int i = 0; i < tempSize; i++)
+					ret.highlightRules.add(HighlightRule.readFromExternal(input, serializationVersion));
+				if (input.readBoolean())
+					ret.dataBar = DataBar.readFromExternal(input, serializationVersion);
+				if (input.readBoolean())
+					ret.iconSet = IconSetDefinition.readFromExternal(input, serializationVersion);
+			}
 			return ret;
 		}
 
@@ -220,6 +565,15 @@ public class XlsFormatterState implements PortObject, Externalizable {
 				output.writeDouble(pair.getLeft());
 				SerializationHelpers.writeNullableColor(pair.getRight(), output, serializationVersion);
 			}
+			output.writeInt(highlightRules.size());
+			for (HighlightRule rule : highlightRules)
+				rule.writeExternal(output, serializationVersion);
+			output.writeBoolean(dataBar != null);
+			if (dataBar != null)
+				dataBar.writeExternal(output, serializationVersion);
+			output.writeBoolean(iconSet != null);
+			if (iconSet != null)
+				iconSet.writeExternal(output, serializationVersion);
 		}
 	}
 	
@@ -339,11 +693,6 @@ public class XlsFormatterState implements PortObject, Externalizable {
 		}
 	}
 	
-	
-	
-	
-	
-	
 	/**
 	 * The formatting state of a single cell.
 	 */
@@ -416,13 +765,7 @@ public class XlsFormatterState implements PortObject, Externalizable {
 		 * Transform this cell's font specification to String in order to later on match equal fonts to generate only a joint Font object in POI
 		 */
 		public String fontDefinitionToShortString() {
-			StringBuilder sb = new StringBuilder();
-			sb.append("s:" + (fontSize == null ? "-," : fontSize + ","));
-			sb.append("b:" + resolveEnumUnmodified(fontBold.toString()) + ",");
-			sb.append("i:" + resolveEnumUnmodified(fontItalic.toString()) + ",");
-			sb.append("u:" + resolveEnumUnmodified(fontUnderline.toString()) + ",");
-			sb.append("c:" + (fontColor == null ? "-" : ColorTools.colorToXlsfColorString(fontColor)));
-			return sb.toString();
+			return new FormattingRecord(this).fontDefinitionToShortString();
 		}
 		
 		/**
@@ -433,40 +776,8 @@ public class XlsFormatterState implements PortObject, Externalizable {
 		 * @param includeBorderFormatting If false, border formatting is excluded (typical use case is around cell merging functions, where border information can be different per cell of a merged range, all other properties should be the same)
 		 */
 		public String cellFormatToShortString(boolean restrictToPoiStyleRelevantProperties, boolean includeBorderFormatting) {
-			StringBuilder sb = new StringBuilder();
-			sb.append("font:");
-			sb.append(fontDefinitionToShortString());
-			sb.append(";alignH:");
-			sb.append(resolveEnumUnmodified(cellHorizontalAlignment.toString()));
-			sb.append(";alignV:");
-			sb.append(resolveEnumUnmodified(cellVerticalAlignment.toString()));
-			sb.append(";wrap:");
-			sb.append(resolveEnumUnmodified(wrapText.toString()));
-			sb.append(";tilt:");
-			sb.append(textTiltDegree == null ? "-" : textTiltDegree);
-			sb.append(";bgCol:");
-			sb.append(backgroundColor == null ? "-" : ColorTools.colorToXlsfColorString(backgroundColor));
-			sb.append(";fillP:");
-			sb.append(resolveEnumUnmodified(fillPattern.toString()));
-			sb.append(";patCol:");
-			sb.append(fillForegroundColor == null ? "-" : ColorTools.colorToXlsfColorString(fillForegroundColor));
-			sb.append(";dt:");
-			sb.append(restrictToPoiStyleRelevantProperties && (cellDataType == CellDataType.NUMERIC || cellDataType == CellDataType.BOOLEAN) ?
-					"/" : resolveEnumUnmodified(cellDataType.toString()));
-			sb.append(";nf:");
-			sb.append(textFormat == null ? "-" : textFormat);
-			if (includeBorderFormatting) {
-				sb.append(";borders:T:");
-				sb.append(borderTop == null ? "-;" : borderTop.toString());
-				sb.append("B:");
-				sb.append(borderBottom == null ? "-;" : borderBottom.toString());
-				sb.append("L:");
-				sb.append(borderLeft == null ? "-;" : borderLeft.toString());
-				sb.append("R:");
-				sb.append(borderRight == null ? "-;" : borderRight.toString());
-			}
+			StringBuilder sb = new StringBuilder(new FormattingRecord(this).cellFormatToShortString(restrictToPoiStyleRelevantProperties, includeBorderFormatting));
 			if (!restrictToPoiStyleRelevantProperties) {
-				sb.append(conditionalFormat == null ? "cf:-" : conditionalFormat.toString());
 				sb.append(";cmnt:");
 				sb.append(comment == null ? "-" : "\"" + comment.author + "\":\"" + comment.text + "\"");
 				sb.append(";hl:");
@@ -633,38 +944,277 @@ public class XlsFormatterState implements PortObject, Externalizable {
 		 * Externalized writing method.
 		 */
 		public void writeExternal(ObjectOutput output, int serializationVersion) throws IOException {
-			SerializationHelpers.writeNullableInt(fontSize, output, serializationVersion);
-			output.writeByte(fontBold == FormattingFlag.UNMODIFIED ? 0 : (fontBold == FormattingFlag.OFF ? 1 : 2));
-			output.writeByte(fontItalic == FormattingFlag.UNMODIFIED ? 0 : (fontItalic == FormattingFlag.OFF ? 1 : 2));
-			output.writeByte(fontUnderline == FormattingFlag.UNMODIFIED ? 0 : (fontUnderline == FormattingFlag.OFF ? 1 : 2));
-			SerializationHelpers.writeNullableColor(fontColor, output, serializationVersion);
-			output.writeByte(wrapText == FormattingFlag.UNMODIFIED ? 0 : (wrapText == FormattingFlag.OFF ? 1 : 2));
-			switch (cellHorizontalAlignment) {
-				case LEFT:
-					output.writeByte(1);
-					break;
-				case RIGHT:
-					output.writeByte(2);
-					break;
-				case CENTER:
-					output.writeByte(3);
-					break;
-				case JUSTIFY:
-					output.writeByte(4);
-					break;
-				case UNMODIFIED:
-				default:
-					output.writeByte(0);
-					break;
+			new FormattingRecord(this).writeExternal(output, serializationVersion, hyperlink, comment);
+		}
+	}
+	
+	/**
+	 * The immutable formatting of cells, i.e. all properties of a CellState except its per-cell payloads hyperlink and comment.
+	 * Equal records are shared by all cells of a state via its FormattingRecordTable, so a record must never be modified.
+	 * Deriving a new formatting is done on a CellState, see toCellState() and SheetState.modifyCells().
+	 */
+	public static final class FormattingRecord {
+		
+		/**
+		 * The record of cells without any formatting instruction (e.g. cells that only carry a hyperlink).
+		 */
+		public static final FormattingRecord EMPTY = new FormattingRecord(new CellState());
+		
+		public final Integer fontSize;
+		public final FormattingFlag fontBold;
+		public final FormattingFlag fontItalic;
+		public final FormattingFlag fontUnderline;
+		public final Color fontColor;
+		
+		public final CellAlignmentHorizontal cellHorizontalAlignment;
+		public final CellAlignmentVertical cellVerticalAlignment;
+		public final FormattingFlag wrapText;
+		public final Integer textTiltDegree;
+		
+		public final Color backgroundColor;
+		public final FillPattern fillPattern;
+		public final Color fillForegroundColor;
+		public final ConditionalFormattingSet conditionalFormat;
+		public final CellDataType cellDataType;
+		public final String textFormat;
+		
+		public final BorderEdge borderTop;
+		public final BorderEdge borderBottom;
+		public final BorderEdge borderLeft;
+		public final BorderEdge borderRight;
+		public final BorderEdge borderDiagonalSlash;
+		public final BorderEdge borderDiagonalBackslash;
+		
+		/**
+		 * The String representation of the conditional formatting set, which is unique per content (lazily computed).
+		 */
+		private String m_conditionalFormatKey = null;
+		
+		/**
+		 * The cached hash code, 0 meaning not yet computed.
+		 */
+		private int m_hashCode = 0;
+		
+		/**
+		 * Creates a record holding the formatting of the provided cell state (border edges are copied, the
+		 * conditional formatting set is shared).
+		 */
+		public FormattingRecord(final CellState cellState) {
+			fontSize = cellState.fontSize;
+			fontBold = cellState.fontBold;
+			fontItalic = cellState.fontItalic;
+			fontUnderline = cellState.fontUnderline;
+			fontColor = cellState.fontColor;
+			cellHorizontalAlignment = cellState.cellHorizontalAlignment;
+			cellVerticalAlignment = cellState.cellVerticalAlignment;
+			wrapText = cellState.wrapText;
+			textTiltDegree = cellState.textTiltDegree;
+			backgroundColor = cellState.backgroundColor;
+			fillPattern = cellState.fillPattern;
+			fillForegroundColor = cellState.fillForegroundColor;
+			conditionalFormat = cellState.conditionalFormat;
+			cellDataType = cellState.cellDataType;
+			textFormat = cellState.textFormat;
+			borderTop = copyOf(cellState.borderTop);
+			borderBottom = copyOf(cellState.borderBottom);
+			borderLeft = copyOf(cellState.borderLeft);
+			borderRight = copyOf(cellState.borderRight);
+			borderDiagonalSlash = copyOf(cellState.borderDiagonalSlash);
+			borderDiagonalBackslash = copyOf(cellState.borderDiagonalBackslash);
+		}
+		
+		/**
+		 * Returns a new, modifiable CellState holding this record's formatting (without hyperlink and comment).
+		 */
+		public CellState toCellState() {
+			CellState ret = new CellState();
+			ret.fontSize = fontSize;
+			ret.fontBold = fontBold;
+			ret.fontItalic = fontItalic;
+			ret.fontUnderline = fontUnderline;
+			ret.fontColor = fontColor;
+			ret.cellHorizontalAlignment = cellHorizontalAlignment;
+			ret.cellVerticalAlignment = cellVerticalAlignment;
+			ret.wrapText = wrapText;
+			ret.textTiltDegree = textTiltDegree;
+			ret.backgroundColor = backgroundColor;
+			ret.fillPattern = fillPattern;
+			ret.fillForegroundColor = fillForegroundColor;
+			ret.conditionalFormat = conditionalFormat;
+			ret.cellDataType = cellDataType;
+			ret.textFormat = textFormat;
+			ret.borderTop = copyOf(borderTop);
+			ret.borderBottom = copyOf(borderBottom);
+			ret.borderLeft = copyOf(borderLeft);
+			ret.borderRight = copyOf(borderRight);
+			ret.borderDiagonalSlash = copyOf(borderDiagonalSlash);
+			ret.borderDiagonalBackslash = copyOf(borderDiagonalBackslash);
+			return ret;
+		}
+		
+		private static BorderEdge copyOf(final BorderEdge edge) {
+			return edge == null ? null : new BorderEdge(edge.style, edge.color);
+		}
+		
+		private static boolean edgeEquals(final BorderEdge a, final BorderEdge b) {
+			if (a == null || b == null)
+				return a == b;
+			return a.style == b.style && Objects.equals(a.color, b.color);
+		}
+		
+		private static int edgeHashCode(final BorderEdge edge) {
+			return edge == null ? 0 : Objects.hash(enumHashCode(edge.style), edge.color);
+		}
+		
+		/**
+		 * Hashes an enum constant by its ordinal, as the hash code of an enum differs between JVM runs.
+		 */
+		private static int enumHashCode(final Enum<?> value) {
+			return value == null ? 0 : value.ordinal() + 1;
+		}
+		
+		private String getConditionalFormatKey() {
+			if (m_conditionalFormatKey == null && conditionalFormat != null)
+				m_conditionalFormatKey = conditionalFormat.toString();
+			return m_conditionalFormatKey;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof FormattingRecord))
+				return false;
+			FormattingRecord o = (FormattingRecord)obj;
+			return hashCode() == o.hashCode() &&
+					Objects.equals(fontSize, o.fontSize) && fontBold == o.fontBold && fontItalic == o.fontItalic &&
+					fontUnderline == o.fontUnderline && Objects.equals(fontColor, o.fontColor) &&
+					cellHorizontalAlignment == o.cellHorizontalAlignment && cellVerticalAlignment == o.cellVerticalAlignment &&
+					wrapText == o.wrapText && Objects.equals(textTiltDegree, o.textTiltDegree) &&
+					Objects.equals(backgroundColor, o.backgroundColor) && fillPattern == o.fillPattern &&
+					Objects.equals(fillForegroundColor, o.fillForegroundColor) && cellDataType == o.cellDataType &&
+					Objects.equals(textFormat, o.textFormat) &&
+					edgeEquals(borderTop, o.borderTop) && edgeEquals(borderBottom, o.borderBottom) &&
+					edgeEquals(borderLeft, o.borderLeft) && edgeEquals(borderRight, o.borderRight) &&
+					edgeEquals(borderDiagonalSlash, o.borderDiagonalSlash) && edgeEquals(borderDiagonalBackslash, o.borderDiagonalBackslash) &&
+					(conditionalFormat == o.conditionalFormat || Objects.equals(getConditionalFormatKey(), o.getConditionalFormatKey()));
+		}
+		
+		/**
+		 * Hashes the record independently of the JVM run, as the hashes of the sheets are persisted (see SheetSummary).
+		 */
+		@Override
+		public int hashCode() {
+			if (m_hashCode == 0) {
+				int hashCode = Objects.hash(fontSize, enumHashCode(fontBold), enumHashCode(fontItalic), enumHashCode(fontUnderline), fontColor,
+						enumHashCode(cellHorizontalAlignment), enumHashCode(cellVerticalAlignment), enumHashCode(wrapText), textTiltDegree,
+						backgroundColor, enumHashCode(fillPattern), fillForegroundColor, enumHashCode(cellDataType), textFormat, getConditionalFormatKey());
+				hashCode = 31 * hashCode + edgeHashCode(borderTop);
+				hashCode = 31 * hashCode + edgeHashCode(borderBottom);
+				hashCode = 31 * hashCode + edgeHashCode(borderLeft);
+				hashCode = 31 * hashCode + edgeHashCode(borderRight);
+				hashCode = 31 * hashCode + edgeHashCode(borderDiagonalSlash);
+				hashCode = 31 * hashCode + edgeHashCode(borderDiagonalBackslash);
+				m_hashCode = hashCode == 0 ? 1 : hashCode;
 			}
-			switch (cellVerticalAlignment) {
-				case TOP:
-					output.writeByte(1);
-					break;
-				case MIDDLE:
-					output.writeByte(2);
-					break;
-				case BOTTOM:
+			return m_hashCode;
+		}
+		
+		/**
+		 * Transform this record's font specification to String in order to later on match equal fonts to generate only a joint Font object in POI
+		 */
+		public String fontDefinitionToShortString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append("s:" + (fontSize == null ? "-," : fontSize + ","));
+			sb.append("b:" + resolveEnumUnmodified(fontBold.toString()) + ",");
+			sb.append("i:" + resolveEnumUnmodified(fontItalic.toString()) + ",");
+			sb.append("u:" + resolveEnumUnmodified(fontUnderline.toString()) + ",");
+			sb.append("c:" + (fontColor == null ? "-" : ColorTools.colorToXlsfColorString(fontColor)));
+			return sb.toString();
+		}
+		
+		/**
+		 * Transform this record's format specification to String in order to later on match equal styles and to generate only a joint CellStyle object in POI.
+		 * Makes use of shared Font specification internally already.
+		 * This function is only used during computation and its results are never serialized. Hence it may differ between versions.
+		 * @param restrictToPoiStyleRelevantProperties If true, only information is included which leads to a POI style being necessary. If false, all formatting information is included. 
+		 * @param includeBorderFormatting If false, border formatting is excluded (typical use case is around cell merging functions, where border information can be different per cell of a merged range, all other properties should be the same)
+		 */
+		public String cellFormatToShortString(boolean restrictToPoiStyleRelevantProperties, boolean includeBorderFormatting) {
+			StringBuilder sb = new StringBuilder();
+			sb.append("font:");
+			sb.append(fontDefinitionToShortString());
+			sb.append(";alignH:");
+			sb.append(resolveEnumUnmodified(cellHorizontalAlignment.toString()));
+			sb.append(";alignV:");
+			sb.append(resolveEnumUnmodified(cellVerticalAlignment.toString()));
+			sb.append(";wrap:");
+			sb.append(resolveEnumUnmodified(wrapText.toString()));
+			sb.append(";tilt:");
+			sb.append(textTiltDegree == null ? "-" : textTiltDegree);
+			sb.append(";bgCol:");
+			sb.append(backgroundColor == null ? "-" : ColorTools.colorToXlsfColorString(backgroundColor));
+			sb.append(";fillP:");
+			sb.append(resolveEnumUnmodified(fillPattern.toString()));
+			sb.append(";patCol:");
+			sb.append(fillForegroundColor == null ? "-" : ColorTools.colorToXlsfColorString(fillForegroundColor));
+			sb.append(";dt:");
+			sb.append(restrictToPoiStyleRelevantProperties && (cellDataType == CellDataType.NUMERIC || cellDataType == CellDataType.BOOLEAN) ?
+					"/" : resolveEnumUnmodified(cellDataType.toString()));
+			sb.append(";nf:");
+			sb.append(textFormat == null ? "-" : textFormat);
+			if (includeBorderFormatting) {
+				sb.append(";borders:T:");
+				sb.append(borderTop == null ? "-;" : borderTop.toString());
+				sb.append("B:");
+				sb.append(borderBottom == null ? "-;" : borderBottom.toString());
+				sb.append("L:");
+				sb.append(borderLeft == null ? "-;" : borderLeft.toString());
+				sb.append("R:");
+				sb.append(borderRight == null ? "-;" : borderRight.toString());
+			}
+			if (!restrictToPoiStyleRelevantProperties)
+				sb.append(conditionalFormat == null ? "cf:-" : getConditionalFormatKey());
+			return sb.toString();
+		}
+		
+		/**
+		 * Externalized writing method, writing the record together with the per-cell payloads of one cell
+		 * in the byte layout read by CellState.readFromExternal.
+		 */
+		public void writeExternal(ObjectOutput output, int serializationVersion, String hyperlink, Comment comment) throws IOException {
+			SerializationHelpers.writeNullableInt(fontSize, output, serializationVersion);
+			output.writeByte(fontBold == FormattingFlag.UNMODIFIED ? 0 : (fontBold == FormattingFlag.OFF ? 1 : 2));
+			output.writeByte(fontItalic == FormattingFlag.UNMODIFIED ? 0 : (fontItalic == FormattingFlag.OFF ? 1 : 2));
+			output.writeByte(fontUnderline == FormattingFlag.UNMODIFIED ? 0 : (fontUnderline == FormattingFlag.OFF ? 1 : 2));
+			SerializationHelpers.writeNullableColor(fontColor, output, serializationVersion);
+			output.writeByte(wrapText == FormattingFlag.UNMODIFIED ? 0 : (wrapText == FormattingFlag.OFF ? 1 : 2));
+			switch (cellHorizontalAlignment) {
+				case LEFT:
+					output.writeByte(1);
+					break;
+				case RIGHT:
+					output.writeByte(2);
+					break;
+				case CENTER:
+					output.writeByte(3);
+					break;
+				case JUSTIFY:
+					output.writeByte(4);
+					break;
+				case UNMODIFIED:
+				default:
+					output.writeByte(0);
+					break;
+			}
+			switch (cellVerticalAlignment) {
+				case TOP:
+					output.writeByte(1);
+					break;
+				case MIDDLE:
+					output.writeByte(2);
+					break;
+				case BOTTOM:
 					output.writeByte(3);
 					break;
 				case UNMODIFIED:
@@ -745,7 +1295,47 @@ public class XlsFormatterState implements PortObject, Externalizable {
 		}
 	}
 	
-	
+	/**
+	 * A formatting instruction for rectangular cell ranges, which is kept without expanding it to the ranges' cells. The attributes
+	 * set in its delta override those of the cells' records as well as those of instructions with a lower sequence number.
+	 * Range instructions are immutable.
+	 */
+	public static final class RangeInstruction {
+		
+		public final List<CellRangeAddress> ranges;
+		public final FormattingRecord delta;
+		public final int sequenceNumber;
+		
+		public RangeInstruction(final List<CellRangeAddress> ranges, final FormattingRecord delta, final int sequenceNumber) {
+			List<CellRangeAddress> rangeCopies = new ArrayList<CellRangeAddress>(ranges.size());
+			for (CellRangeAddress range : ranges)
+				rangeCopies.add(range.copy());
+			this.ranges = Collections.unmodifiableList(rangeCopies);
+			this.delta = delta;
+			this.sequenceNumber = sequenceNumber;
+		}
+		
+		@Override
+		public boolean equals(Object o) {
+			if (o == this)
+				return true;
+			if (!(o instanceof RangeInstruction))
+				return false;
+			RangeInstruction other = (RangeInstruction)o;
+			return sequenceNumber == other.sequenceNumber && delta.equals(other.delta) && ranges.equals(other.ranges);
+		}
+		
+		@Override
+		public int hashCode() {
+			return Objects.hash(ranges, delta, sequenceNumber);
+		}
+		
+		@Override
+		public String toString() {
+			return ranges.stream().map(range -> range.formatAsString()).collect(Collectors.joining(" ")) + " (#" + sequenceNumber + "): " +
+					delta.cellFormatToShortString(false, true);
+		}
+	}
 	
 	/**
 	 * The serialization UID that must remain constant over releases for the Java Serialization to
@@ -757,74 +1347,848 @@ public class XlsFormatterState implements PortObject, Externalizable {
 	 * The serialization version controlling backward compatibility for future releases.
 	 * It is used as the "one and only" master serial version, even for subclasses.
 	 */
-	private static final int masterSerializationVersion = 2; // see a history of versions in the comment to the writeExternal method below
+	private static final int masterSerializationVersion = 3; // see a history of versions in the comment to the writeExternal method below
 	
 	/**
-	 * The state of a specific sheet (incl. the CellStates of its cells)
+	 * A modification of a cell's formatting, applied on a modifiable copy of the cell's formatting record.
+	 */
+	@FunctionalInterface
+	public interface CellStateModification {
+		void modify(CellState cellState) throws Exception;
+	}
+	
+	/**
+	 * The state of a specific sheet (incl. the formatting records of its cells)
 	 */
 	public class SheetState {
 		
 		
-		/**
-		 * Map of cell address to its internal cell state, holding all cell relevant formatting + additional instructions.
-		 */
-		public Map<CellAddress, CellState> cells = new HashMap<CellAddress, CellState>();
+		/**
+		 * Map of cell address to the formatting record of all cells with instructions. Records are shared between cells
+		 * and must not be modified, see modifyCells(). Loops over many cells should use the map's long-keyed methods, see CellMap.
+		 */
+		public CellMap<FormattingRecord> cells = new CellMap<FormattingRecord>();
+		
+		/**
+		 * Map of cell address to a hyperlink that shall be set for the cell. Every key is also contained in cells.
+		 */
+		public CellMap<String> hyperlinks = new CellMap<String>();
+		
+		/**
+		 * Map of cell address to a comment that shall be added to the cell. Every key is also contained in cells.
+		 */
+		public CellMap<Comment> comments = new CellMap<Comment>();
+		
+		/**
+		 * Cell at whose top left corner the sheet shall be frozen.
+		 */
+		public CellAddress freezeSheetAtTopLeftCornerOfCell = null;
+		
+		/**
+		 * Cell range that an auto filter shall be applied on (incl. the data part, not only the table header).
+		 */
+		public CellRangeAddress autoFilterRange = null;
+		
+		/**
+		 * Map of column index to column width. Null in value means auto-sized column.
+		 */
+		public Map<Integer, Double> columnWidths = new HashMap<Integer, Double>();
+		
+		/**
+		 * Map of row index to row height.
+		 */
+		public Map<Integer, Double> rowHeights = new HashMap<Integer, Double>();
+		
+		/**
+		 * Set of row IDs to hide.
+		 */
+		public Set<Integer> hiddenRows = new HashSet<Integer>();
+		
+		/**
+		 * Set of column IDs to hide.
+		 */
+		public Set<Integer> hiddenColumns = new HashSet<Integer>();
+		
+		/**
+		 * Cell ranges to be merged.
+		 */
+		public List<CellRangeAddress> mergeRanges = new ArrayList<CellRangeAddress>();
+		
+		/**
+		 * Map of column groups: <<fromCol, toCol>, isCollapsed>
+		 */
+		public Map<Pair<Integer, Integer>, Boolean> columnGroups = new HashMap<Pair<Integer, Integer>, Boolean>();
+		
+		/**
+		 * Map of row groups: <<fromRow, toRow>, isCollapsed>
+		 */
+		public Map<Pair<Integer, Integer>, Boolean> rowGroups = new HashMap<Pair<Integer, Integer>, Boolean>();
+		
+		/**
+		 * Map of column index to the cell state applying to the whole column. Such full-column instructions are kept lazily,
+		 * i.e. without expanding them to the column's cells, and are rendered as column default style.
+		 */
+		public Map<Integer, CellState> fullColumns = new HashMap<Integer, CellState>();
+		
+		/**
+		 * Map of row index to the cell state applying to the whole row. Such full-row instructions are kept lazily,
+		 * i.e. without expanding them to the row's cells, and are rendered as row style.
+		 */
+		public Map<Integer, CellState> fullRows = new HashMap<Integer, CellState>();
+		
+		/**
+		 * Cell ranges to be formatted as native Excel tables.
+		 */
+		public List<TableDefinition> tables = new ArrayList<TableDefinition>();
+		
+		/**
+		 * Formatting instructions for rectangular cell ranges in ascending order of their sequence number. They take precedence over
+		 * the records in cells and are resolved into these only when applied, see getResolvedCells(). A later modifyCells() call
+		 * resolves them for the cells it modifies.
+		 */
+		public List<RangeInstruction> rangeInstructions = new ArrayList<RangeInstruction>();
+	
+		/**
+		 * Checks whether this state is empty, meaning all data instruction-storing structures are empty.
+		 */
+		public boolean isEmpty() {
+			return cells.size() == 0 && freezeSheetAtTopLeftCornerOfCell == null && autoFilterRange == null &&
+					rowHeights.size() == 0 && columnWidths.size() == 0 && hiddenRows.size() == 0 && hiddenColumns.size() == 0 &&
+					mergeRanges.size() == 0 && columnGroups.size() == 0 && rowGroups.size() == 0 && fullColumns.size() == 0 && fullRows.size() == 0 &&
+					tables.size() == 0 && rangeInstructions.size() == 0;
+		}
+		
+		/**
+		 * Returns a new, modifiable CellState holding the formatting (incl. that of range instructions), hyperlink and comment
+		 * of a cell, or null if the cell has no instructions.
+		 */
+		public CellState getCellState(final long cellKey) {
+			FormattingRecord record = cells.get(cellKey);
+			List<FormattingRecord> deltas = RangeInstructionResolver.getCoveringDeltas(rangeInstructions, CellMap.getRow(cellKey), CellMap.getColumn(cellKey));
+			if (record == null && deltas.size() == 0)
+				return null;
+			CellState ret = deltas.size() == 0 ? record.toCellState() : RangeInstructionResolver.getOverlaidCellState(deltas, record);
+			ret.hyperlink = hyperlinks.get(cellKey);
+			ret.comment = comments.get(cellKey);
+			return ret;
+		}
+		
+		/**
+		 * Sets formatting, hyperlink and comment of a cell to the ones of the provided CellState (which is not referenced afterwards).
+		 */
+		public void putCellState(final long cellKey, final CellState cellState) {
+			cells.put(cellKey, formattingRecords.intern(cellState));
+			setPayload(hyperlinks, cellKey, cellState.hyperlink);
+			setPayload(comments, cellKey, cellState.comment);
+		}
+		
+		/**
+		 * Applies a formatting modification on all provided cells (creating the cells not yet having instructions). The modification
+		 * is executed once per distinct formatting record of these cells, the derived records are shared between the cells.
+		 * Hyperlinks and comments are not part of the provided CellStates, see setHyperlink() and setComment().
+		 */
+		public void modifyCells(final Iterable<CellAddress> cellAddresses, final CellStateModification modification) throws Exception {
+			if (rangeInstructions.size() != 0)
+				resolveRangeInstructions(cellAddresses);
+			Map<FormattingRecord, FormattingRecord> derivedRecords = new HashMap<FormattingRecord, FormattingRecord>();
+			for (CellAddress cellAddress : cellAddresses) {
+				long cellKey = CellMap.toKey(cellAddress);
+				FormattingRecord record = cells.get(cellKey);
+				if (record == null)
+					record = FormattingRecord.EMPTY;
+				FormattingRecord derivedRecord = derivedRecords.get(record);
+				if (derivedRecord == null) {
+					derivedRecord = deriveRecord(record, modification);
+					derivedRecords.put(record, derivedRecord);
+				}
+				cells.put(cellKey, derivedRecord);
+			}
+		}
+		
+		/**
+		 * Applies a formatting modification on a single cell (creating it if it has no instructions yet).
+		 * Hyperlinks and comments are not part of the provided CellState, see setHyperlink() and setComment().
+		 */
+		public void modifyCell(final long cellKey, final CellStateModification modification) throws Exception {
+			if (rangeInstructions.size() != 0)
+				resolveRangeInstructions(Collections.singletonList(CellMap.toCellAddress(cellKey)));
+			FormattingRecord record = cells.get(cellKey);
+			cells.put(cellKey, deriveRecord(record == null ? FormattingRecord.EMPTY : record, modification));
+		}
+		
+		private FormattingRecord deriveRecord(final FormattingRecord record, final CellStateModification modification) throws Exception {
+			CellState cellState = record.toCellState();
+			modification.modify(cellState);
+			return formattingRecords.intern(cellState);
+		}
+		
+		/**
+		 * Resolves the range instructions for the provided cells into their records, so that these can be modified individually.
+		 */
+		private void resolveRangeInstructions(final Iterable<CellAddress> cellAddresses) throws Exception {
+			List<CellAddress> addresses = new ArrayList<CellAddress>();
+			int firstRow = Integer.MAX_VALUE, lastRow = -1, firstColumn = Integer.MAX_VALUE, lastColumn = -1;
+			for (CellAddress cellAddress : cellAddresses) {
+				addresses.add(cellAddress);
+				firstRow = Math.min(firstRow, cellAddress.getRow());
+				lastRow = Math.max(lastRow, cellAddress.getRow());
+				firstColumn = Math.min(firstColumn, cellAddress.getColumn());
+				lastColumn = Math.max(lastColumn, cellAddress.getColumn());
+			}
+			if (addresses.size() == 0)
+				return;
+			CellRangeAddress boundingBox = new CellRangeAddress(firstRow, lastRow, firstColumn, lastColumn);
+			if (!rangeInstructions.stream().anyMatch(instruction -> instruction.ranges.stream().anyMatch(range -> range.intersects(boundingBox))))
+				return;
+			List<CellRangeAddress> area = AddressingTools.getRangesFromAddressList(addresses, ProgressMonitor.NONE, XlsFormatterLogger.NONE);
+			rangeInstructions = RangeInstructionResolver.resolveArea(cells, rangeInstructions, area, formattingRecords);
+		}
+		
+		/**
+		 * Adds a formatting instruction for cell ranges, which overrides the current formatting of their cells. The modification
+		 * is executed once on an empty CellState, hence it must only set attributes independently of a cell's current formatting.
+		 */
+		public void addRangeInstruction(final List<CellRangeAddress> ranges, final CellStateModification modification) throws Exception {
+			if (ranges.size() == 0)
+				return;
+			CellState delta = new CellState();
+			modification.modify(delta);
+			int sequenceNumber = rangeInstructions.size() == 0 ? 0 : rangeInstructions.get(rangeInstructions.size() - 1).sequenceNumber + 1;
+			rangeInstructions.add(new RangeInstruction(ranges, formattingRecords.intern(delta), sequenceNumber));
+		}
+		
+		/**
+		 * Applies a formatting modification on full columns and rows (see fullColumns and fullRows), as returned by
+		 * XlsFormatterControlTableAnalysisTools.getFullRangesMatchingTag. As a cell's own instructions win over those of its full
+		 * column and row when applied, the modification is also applied on the cells of these columns and rows that already have
+		 * instructions and the intersections with other full columns and rows, which become cells of their own. For the cells of
+		 * range instructions, it is added as a newer range instruction limited to their intersections with the columns and rows,
+		 * so that a tall or wide range instruction isn't resolved cell by cell. This way, the instructions take effect in the
+		 * order of the nodes. As for addRangeInstruction(), the modification must only set attributes independently of a cell's
+		 * current formatting.
+		 */
+		public void modifyFullRanges(final List<CellRangeAddress> fullRanges, final CellStateModification modification) throws Exception {
+			if (fullRanges.size() == 0)
+				return;
+			Set<Integer> columns = new HashSet<Integer>();
+			Set<Integer> rows = new HashSet<Integer>();
+			List<CellRangeAddress> area = new ArrayList<CellRangeAddress>(fullRanges.size());
+			for (CellRangeAddress range : fullRanges)
+				if (range.getFirstRow() == -1) { // full columns
+					for (int c = range.getFirstColumn(); c <= range.getLastColumn(); c++)
+						columns.add(c);
+					area.add(new CellRangeAddress(0, XlsFormatterControlTableValidator.XLS_SIZE_LIMIT_MAX_ROWS - 1, range.getFirstColumn(), range.getLastColumn()));
+				}
+				else { // full rows
+					for (int r = range.getFirstRow(); r <= range.getLastRow(); r++)
+						rows.add(r);
+					area.add(new CellRangeAddress(range.getFirstRow(), range.getLastRow(), 0, XlsFormatterControlTableValidator.XLS_SIZE_LIMIT_MAX_COLUMNS - 1));
+				}
+			Set<CellRangeAddress> rangeInstructionIntersections = new LinkedHashSet<CellRangeAddress>();
+			for (RangeInstruction instruction : rangeInstructions)
+				for (CellRangeAddress range : instruction.ranges)
+					for (CellRangeAddress areaRange : area)
+						if (range.intersects(areaRange))
+							rangeInstructionIntersections.add(new CellRangeAddress(
+									Math.max(range.getFirstRow(), areaRange.getFirstRow()), Math.min(range.getLastRow(), areaRange.getLastRow()),
+									Math.max(range.getFirstColumn(), areaRange.getFirstColumn()), Math.min(range.getLastColumn(), areaRange.getLastColumn())));
+			addRangeInstruction(new ArrayList<CellRangeAddress>(rangeInstructionIntersections), modification);
+			
+			// the intersections with other full columns and rows get the formatting they had so far (mostly that of only one of
+			// them, as the intersections of earlier instructions are cells already):
+			Set<Integer> allColumns = new HashSet<Integer>(fullColumns.keySet());
+			allColumns.addAll(columns);
+			Set<Integer> allRows = new HashSet<Integer>(fullRows.keySet());
+			allRows.addAll(rows);
+			for (int r : allRows)
+				for (int c : allColumns)
+					if ((rows.contains(r) || columns.contains(c)) && !cells.containsKey(r, c))
+						cells.put(r, c, formattingRecords.intern(XlsFormatterStateMerger.getOverlaidCellState(fullRows.get(r), fullColumns.get(c))));
+			
+			Map<FormattingRecord, FormattingRecord> derivedRecords = new HashMap<FormattingRecord, FormattingRecord>();
+			for (CellMap<FormattingRecord>.Cursor cell = cells.getCursor(); cell.next(); )
+				if (rows.contains(cell.getRow()) || columns.contains(cell.getColumn())) {
+					FormattingRecord derivedRecord = derivedRecords.get(cell.getValue());
+					if (derivedRecord == null) {
+						derivedRecord = deriveRecord(cell.getValue(), modification);
+						derivedRecords.put(cell.getValue(), derivedRecord);
+					}
+					cell.setValue(derivedRecord);
+				}
+			for (CellState cellState : AddressingTools.safelyGetFullRangeCellStates(this, fullRanges))
+				modification.modify(cellState);
+		}
+		
+		/**
+		 * Checks whether a cell is covered by any range instruction.
+		 */
+		public boolean isCoveredByRangeInstruction(final long cellKey) {
+			return RangeInstructionResolver.getCoveringDeltas(rangeInstructions, CellMap.getRow(cellKey), CellMap.getColumn(cellKey)).size() != 0;
+		}
+		
+		/**
+		 * Gets the records of all cells with the range instructions resolved, which is the cells map itself if there are none.
+		 * Otherwise, a new map is returned and this sheet state is not modified.
+		 * @param targetRecords The table of the state the resolved cells are meant for, which the overlaid records are added to
+		 * (not this state's table, as this state may be a port object shared with other nodes).
+		 */
+		public CellMap<FormattingRecord> getResolvedCells(final FormattingRecordTable targetRecords) {
+			if (rangeInstructions.size() == 0)
+				return cells;
+			CellMap<FormattingRecord> ret = new CellMap<FormattingRecord>(cells);
+			RangeInstructionResolver.resolve(cells, rangeInstructions, ret, targetRecords);
+			return ret;
+		}
+		
+		/**
+		 * Gets the distinct records of all cells with the range instructions resolved, without resolving them cell by cell.
+		 */
+		public Collection<FormattingRecord> getDistinctResolvedRecords() {
+			return RangeInstructionResolver.getDistinctRecords(cells, rangeInstructions);
+		}
+		
+		/**
+		 * Sets the hyperlink of a cell (creating the cell if it has no instructions yet), null removes it.
+		 */
+		public void setHyperlink(final long cellKey, final String hyperlink) {
+			if (!cells.containsKey(cellKey))
+				cells.put(cellKey, FormattingRecord.EMPTY);
+			setPayload(hyperlinks, cellKey, hyperlink);
+		}
+		
+		/**
+		 * Sets the comment of a cell (creating the cell if it has no instructions yet), null removes it.
+		 */
+		public void setComment(final long cellKey, final Comment comment) {
+			if (!cells.containsKey(cellKey))
+				cells.put(cellKey, FormattingRecord.EMPTY);
+			setPayload(comments, cellKey, comment);
+		}
+		
+		private <T> void setPayload(final CellMap<T> payloads, final long cellKey, final T payload) {
+			if (payload == null)
+				payloads.remove(cellKey);
+			else
+				payloads.put(cellKey, payload);
+		}
+		
+		/**
+		 * Compares the instructions of two sheet states. The cell maps are compared via their content hashes first (see
+		 * CellMap.equals), so unequal sheets are usually rejected without visiting their cells.
+		 */
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof SheetState))
+				return false;
+			SheetState o = (SheetState)obj;
+			return cells.equals(o.cells) && hyperlinks.equals(o.hyperlinks) && comments.equals(o.comments) &&
+					Objects.equals(freezeSheetAtTopLeftCornerOfCell, o.freezeSheetAtTopLeftCornerOfCell) &&
+					Objects.equals(autoFilterRange, o.autoFilterRange) &&
+					columnWidths.equals(o.columnWidths) && rowHeights.equals(o.rowHeights) &&
+					hiddenRows.equals(o.hiddenRows) && hiddenColumns.equals(o.hiddenColumns) && mergeRanges.equals(o.mergeRanges) &&
+					columnGroups.equals(o.columnGroups) && rowGroups.equals(o.rowGroups) &&
+					areFullRangesEqual(fullColumns, o.fullColumns) && areFullRangesEqual(fullRows, o.fullRows) &&
+					tables.equals(o.tables) && rangeInstructions.equals(o.rangeInstructions);
+		}
+		
+		/**
+		 * Hashes the instructions of the sheet state, which takes constant time for the cells (see CellMap.getContentHash()).
+		 * The hash doesn't depend on the JVM run, so that it can be persisted (see SheetSummary).
+		 */
+		@Override
+		public int hashCode() {
+			return Objects.hash(cells.getContentHash(), hyperlinks.getContentHash(), comments.getContentHash(),
+					freezeSheetAtTopLeftCornerOfCell, autoFilterRange, columnWidths, rowHeights, hiddenRows, hiddenColumns, mergeRanges,
+					columnGroups, rowGroups, fullColumns.keySet(), fullRows.keySet(), tables, rangeInstructions);
+		}
+	}
+	
+	/**
+	 * Compares the full column or row instructions of two sheet states (cell states have no equals method, as they are modifiable).
+	 */
+	private static boolean areFullRangesEqual(final Map<Integer, CellState> fullRanges, final Map<Integer, CellState> otherFullRanges) {
+		if (!fullRanges.keySet().equals(otherFullRanges.keySet()))
+			return false;
+		for (Map.Entry<Integer, CellState> entry : fullRanges.entrySet()) {
+			CellState other = otherFullRanges.get(entry.getKey());
+			if (!new FormattingRecord(entry.getValue()).equals(new FormattingRecord(other)) ||
+					!Objects.equals(entry.getValue().hyperlink, other.hyperlink) || !Objects.equals(entry.getValue().comment, other.comment))
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * The instruction counts of a sheet state, as shown in the port's summary, and its hash code. They are written to the
+	 * sheet index of the byte stream, so that the summary of a read state is available and read states are compared
+	 * without decoding their sheets (see SheetStateMap).
+	 */
+	private static final class SheetSummary {
+		
+		final int cells;
+		final int fullRanges;
+		final int rangeInstructions;
+		final int sheetLevelInstructions;
+		final boolean empty;
+		final int hashCode;
+		
+		SheetSummary(final SheetState sheetState) {
+			cells = sheetState.cells.size();
+			fullRanges = sheetState.fullColumns.size() + sheetState.fullRows.size();
+			rangeInstructions = sheetState.rangeInstructions.size();
+			sheetLevelInstructions =
+					(sheetState.freezeSheetAtTopLeftCornerOfCell == null ? 0 : 1) +
+					(sheetState.autoFilterRange == null ? 0 : 1) +
+					sheetState.columnWidths.size() +
+					sheetState.rowHeights.size() +
+					sheetState.hiddenRows.size() +
+					sheetState.hiddenColumns.size() +
+					sheetState.mergeRanges.size() +
+					sheetState.columnGroups.size() +
+					sheetState.rowGroups.size() +
+					sheetState.tables.size();
+			empty = sheetState.isEmpty();
+			hashCode = sheetState.hashCode();
+		}
+		
+		SheetSummary(final ObjectInput input, final int readSerialVersion) throws IOException {
+			cells = SerializationHelpers.readVarInt(input, readSerialVersion);
+			fullRanges = SerializationHelpers.readVarInt(input, readSerialVersion);
+			rangeInstructions = SerializationHelpers.readVarInt(input, readSerialVersion);
+			sheetLevelInstructions = SerializationHelpers.readVarInt(input, readSerialVersion);
+			empty = input.readBoolean();
+			hashCode = input.readInt();
+		}
+		
+		void writeExternal(final ObjectOutput output, final int serializationVersion) throws IOException {
+			SerializationHelpers.writeVarInt(cells, output, serializationVersion);
+			SerializationHelpers.writeVarInt(fullRanges, output, serializationVersion);
+			SerializationHelpers.writeVarInt(rangeInstructions, output, serializationVersion);
+			SerializationHelpers.writeVarInt(sheetLevelInstructions, output, serializationVersion);
+			output.writeBoolean(empty);
+			output.writeInt(hashCode);
+		}
+	}
+	
+	/**
+	 * The byte block of a sheet (see writeSheet), either held on the heap or as a part of a file. A block in a file is read
+	 * whenever it is accessed, and the file is only open while reading (unlike a memory-mapped file, which stays locked
+	 * until the mapping is garbage collected, so that KNIME couldn't delete it on a reset on Windows).
+	 */
+	private static final class EncodedSheet {
+		
+		private final ByteBuffer m_bytes; // null for a block in a file
+		private final File m_file;
+		private final long m_offset;
+		private final int m_length;
+		
+		EncodedSheet(final ByteBuffer bytes) {
+			m_bytes = bytes;
+			m_file = null;
+			m_offset = 0;
+			m_length = bytes.remaining();
+		}
+		
+		EncodedSheet(final File file, final long offset, final int length) {
+			m_bytes = null;
+			m_file = file;
+			m_offset = offset;
+			m_length = length;
+		}
+		
+		boolean isInFile() {
+			return m_file != null;
+		}
+		
+		int getLength() {
+			return m_length;
+		}
+		
+		/**
+		 * Gets the bytes of the block, which for a block in a file are read into a new buffer.
+		 */
+		ByteBuffer getBytes() throws IOException {
+			if (m_bytes != null)
+				return m_bytes.asReadOnlyBuffer();
+			ByteBuffer ret = ByteBuffer.allocate(m_length);
+			try (FileChannel channel = FileChannel.open(m_file.toPath(), StandardOpenOption.READ)) {
+				while (ret.hasRemaining())
+					if (channel.read(ret, m_offset + ret.position()) < 0)
+						throw new EOFException("The file of the XLS Formatting state " + m_file + " is incomplete.");
+			}
+			ret.flip();
+			return ret;
+		}
+		
+		/**
+		 * Writes the bytes of the block, which for a block in a file are read in chunks.
+		 */
+		void writeTo(final DataOutput output) throws IOException {
+			if (m_bytes != null) {
+				SerializationHelpers.writeByteBuffer(m_bytes, output);
+				return;
+			}
+			try (FileChannel channel = FileChannel.open(m_file.toPath(), StandardOpenOption.READ)) {
+				ByteBuffer chunk = ByteBuffer.allocate(Math.max(1, Math.min(m_length, 64 * 1024)));
+				long position = m_offset;
+				long end = m_offset + m_length;
+				while (position < end) {
+					chunk.clear();
+					chunk.limit((int)Math.min(chunk.capacity(), end - position));
+					int length = channel.read(chunk, position);
+					if (length < 0)
+						throw new EOFException("The file of the XLS Formatting state " + m_file + " is incomplete.");
+					output.write(chunk.array(), 0, length);
+					position += length;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * The byte block in a file that a decoded sheet of a copy was decoded from, along with the sheet as it was decoded. As
+	 * long as the decoded sheet still equals that one, the block is reused when moving the sheets to a file.
+	 */
+	private static final class SheetOrigin {
+		
+		final EncodedSheet encodedSheet;
+		final SheetSummary summary;
+		final SheetState sheetState;
+		
+		SheetOrigin(final EncodedSheet encodedSheet, final SheetSummary summary, final SheetState sheetState) {
+			this.encodedSheet = encodedSheet;
+			this.summary = summary;
+			this.sheetState = sheetState;
+		}
+	}
+	
+	/**
+	 * The sheet states of a state read from a byte stream with a sheet index (see writeExternal), of a state moved to a file
+	 * (see moveSheetsToFile()) or of a copy of either. Each sheet is kept as its byte block and decoded on its first access
+	 * only, i.e. getting a sheet by name does not decode the others, and iterating the map's entries decodes one sheet per
+	 * entry. Its keys, size and the sheets' summaries (see getSheetSummary()) are served from the index, so loading a port
+	 * object and showing its summary decodes nothing. Sheets that were not decoded are written back and copied (see
+	 * getModifiableCopy()) as they were read, i.e. copies share their byte blocks.
+	 * A map moved to a file holds the byte blocks in files instead of on the heap (see EncodedSheet). Its decoded sheets are
+	 * then only cached as long as the heap allows and decoded again when needed, which requires the port object not to be
+	 * modified in place (as nodes work on getModifiableCopy()). Moving a copy to a file only writes the sheets that were
+	 * modified, the blocks of the others stay in the file of the state the copy was taken from: KNIME resets the successors
+	 * of a node together with it, so that file is deleted only after the port objects referring to it. Decoding doesn't add
+	 * records to any record table, so the table of the shared port object is never written (see FormattingRecordTable).
+	 * The map is synchronized, as a port object may be read by several nodes at the same time.
+	 */
+	private final class SheetStateMap extends AbstractMap<String, SheetState> {
+		
+		private final Map<String, SheetState> m_sheetStates = new LinkedHashMap<String, SheetState>(); // null for sheets not decoded yet or only cached
+		private final Map<String, EncodedSheet> m_encodedSheets = new HashMap<String, EncodedSheet>();
+		private final Map<String, SheetSummary> m_summaries = new HashMap<String, SheetSummary>();
+		private final Map<String, SoftReference<SheetState>> m_cachedSheets = new HashMap<String, SoftReference<SheetState>>();
+		private final Map<String, SheetOrigin> m_origins = new HashMap<String, SheetOrigin>();
+		private final int m_readSerialVersion;
+		private boolean m_isFileBacked = false;
+		
+		SheetStateMap(final int readSerialVersion) {
+			m_readSerialVersion = readSerialVersion;
+		}
+		
+		synchronized void putEncodedSheet(final String sheetName, final SheetSummary summary, final EncodedSheet encodedSheet) {
+			m_sheetStates.put(sheetName, null);
+			m_encodedSheets.put(sheetName, encodedSheet);
+			m_summaries.put(sheetName, summary);
+		}
+		
+		/**
+		 * Returns the byte block of a sheet that was not decoded yet (or is only cached), or null if it was (or has been written
+		 * with a different serialization version and hence needs to be encoded again).
+		 */
+		synchronized EncodedSheet getEncodedSheet(final String sheetName) {
+			if (m_readSerialVersion != masterSerializationVersion)
+				return null;
+			return m_encodedSheets.get(sheetName);
+		}
+		
+		synchronized SheetSummary getSheetSummary(final String sheetName) {
+			SheetSummary summary = m_summaries.get(sheetName);
+			return summary != null ? summary : new SheetSummary(get(sheetName));
+		}
+		
+		/**
+		 * Gets the hash code of a sheet, which for a sheet that was not decoded is taken from the index (unless the sheet was
+		 * written with another serialization version, whose hash codes may differ).
+		 */
+		synchronized int getSheetHashCode(final String sheetName) {
+			SheetSummary summary = m_summaries.get(sheetName);
+			if (summary != null && m_readSerialVersion == masterSerializationVersion)
+				return summary.hashCode;
+			return Objects.hashCode(get(sheetName));
+		}
+		
+		/**
+		 * Returns the byte block of a sheet that was not decoded yet (or is only cached), or null. Unlike getEncodedSheet(),
+		 * it is returned regardless of the serialization version, for comparing blocks shared with copies of this map.
+		 */
+		synchronized EncodedSheet getSharedEncodedSheet(final String sheetName) {
+			return m_encodedSheets.get(sheetName);
+		}
+		
+		/**
+		 * Writes the byte blocks of the sheets that are not in a file yet to the provided file (encoding the decoded sheets)
+		 * and holds them from there, only caching the sheets decoded afterwards. Blocks already in a file, as well as those
+		 * of decoded sheets that weren't modified since they were decoded from a file, stay where they are. The file is only
+		 * created if any block needs to be written.
+		 */
+		synchronized void moveToFile(final CheckedExceptionSupplier<File, IOException> createFile) throws IOException {
+			List<String> sheetNames = new ArrayList<String>();
+			for (Map.Entry<String, SheetState> entry : m_sheetStates.entrySet()) {
+				SheetOrigin origin = m_origins.get(entry.getKey());
+				if (entry.getValue() != null && origin != null && entry.getValue().equals(origin.sheetState)) {
+					m_encodedSheets.put(entry.getKey(), origin.encodedSheet);
+					m_summaries.put(entry.getKey(), origin.summary);
+					m_cachedSheets.put(entry.getKey(), new SoftReference<SheetState>(entry.getValue()));
+					entry.setValue(null);
+				}
+				else if (entry.getValue() != null || !m_encodedSheets.get(entry.getKey()).isInFile())
+					sheetNames.add(entry.getKey());
+			}
+			m_origins.clear();
+			m_isFileBacked = true;
+			if (sheetNames.size() == 0)
+				return;
+			
+			File file = createFile.get();
+			long[] offsets = new long[sheetNames.size() + 1];
+			try (FileOutputStream fileOutput = new FileOutputStream(file)) {
+				DataOutputStream output = new DataOutputStream(new BufferedOutputStream(fileOutput));
+				for (int i = 0; i < sheetNames.size(); i++) {
+					SheetState sheetState = m_sheetStates.get(sheetNames.get(i));
+					if (sheetState == null)
+						m_encodedSheets.get(sheetNames.get(i)).writeTo(output);
+					else {
+						m_summaries.put(sheetNames.get(i), new SheetSummary(sheetState));
+						ObjectOutputStream objectOutput = new ObjectOutputStream(output);
+						writeSheet(sheetState, objectOutput);
+						objectOutput.flush();
+					}
+					output.flush();
+					offsets[i + 1] = fileOutput.getChannel().position();
+					if (offsets[i + 1] - offsets[i] > Integer.MAX_VALUE)
+						throw new IOException("The XLS Formatting state can't be held in a file, sheet " +
+								(sheetNames.get(i) == null ? "[default]" : "\"" + sheetNames.get(i) + "\"") + " takes more than 2 GB.");
+				}
+			}
+			
+			for (int i = 0; i < sheetNames.size(); i++) {
+				SheetState sheetState = m_sheetStates.get(sheetNames.get(i));
+				m_encodedSheets.put(sheetNames.get(i), new EncodedSheet(file, offsets[i], (int)(offsets[i + 1] - offsets[i])));
+				m_sheetStates.put(sheetNames.get(i), null);
+				if (sheetState != null)
+					m_cachedSheets.put(sheetNames.get(i), new SoftReference<SheetState>(sheetState));
+			}
+		}
+		
+		/**
+		 * Returns a copy of this map for a copy of its state (see XlsFormatterState.getModifiableCopy()). Sheets that were not
+		 * decoded are copied as their byte blocks, the others copy-on-write. A cached sheet of a file-backed map remembers the
+		 * block it was decoded from (see SheetOrigin).
+		 */
+		synchronized SheetStateMap getModifiableCopy(final XlsFormatterState copy) {
+			SheetStateMap ret = copy.new SheetStateMap(m_readSerialVersion);
+			for (Map.Entry<String, SheetState> entry : m_sheetStates.entrySet()) {
+				SheetState sheetState = entry.getValue();
+				SoftReference<SheetState> cachedSheet = m_cachedSheets.get(entry.getKey());
+				if (sheetState == null && cachedSheet != null) {
+					sheetState = cachedSheet.get();
+					if (sheetState != null)
+						ret.m_origins.put(entry.getKey(), new SheetOrigin(m_encodedSheets.get(entry.getKey()), m_summaries.get(entry.getKey()), sheetState));
+				}
+				if (sheetState != null)
+					ret.m_sheetStates.put(entry.getKey(), copy.getModifiableCopy(sheetState));
+				else
+					ret.putEncodedSheet(entry.getKey(), m_summaries.get(entry.getKey()), m_encodedSheets.get(entry.getKey()));
+			}
+			return ret;
+		}
+		
+		@Override
+		public synchronized int size() {
+			return m_sheetStates.size();
+		}
+		
+		@Override
+		public synchronized boolean containsKey(final Object sheetName) {
+			return m_sheetStates.containsKey(sheetName);
+		}
+		
+		@Override
+		public synchronized SheetState get(final Object sheetName) {
+			SheetState sheetState = m_sheetStates.get(sheetName);
+			if (sheetState != null || !m_encodedSheets.containsKey(sheetName))
+				return sheetState;
+			SoftReference<SheetState> cachedSheet = m_cachedSheets.get(sheetName);
+			sheetState = cachedSheet == null ? null : cachedSheet.get();
+			if (sheetState != null)
+				return sheetState;
+			
+			sheetState = decode(sheetName);
+			if (m_isFileBacked)
+				m_cachedSheets.put((String)sheetName, new SoftReference<SheetState>(sheetState));
+			else {
+				EncodedSheet encodedSheet = m_encodedSheets.remove(sheetName);
+				SheetSummary summary = m_summaries.remove(sheetName);
+				if (encodedSheet.isInFile()) { // the decoded sheet may be modified, so keep it as it was decoded
+					m_origins.put((String)sheetName, new SheetOrigin(encodedSheet, summary, sheetState));
+					sheetState = XlsFormatterState.this.getModifiableCopy(sheetState);
+				}
+				m_sheetStates.put((String)sheetName, sheetState);
+			}
+			return sheetState;
+		}
 		
 		/**
-		 * Cell at whose top left corner the sheet shall be frozen.
+		 * Puts a sheet, dropping the byte block of a previous one without decoding it. Hence, the previous sheet is only
+		 * returned if it was decoded (or is cached), otherwise null.
 		 */
-		public CellAddress freezeSheetAtTopLeftCornerOfCell = null;
+		@Override
+		public synchronized SheetState put(final String sheetName, final SheetState sheetState) {
+			SheetState previous = getDecodedSheet(sheetName);
+			dropEncodedSheet(sheetName);
+			m_sheetStates.put(sheetName, sheetState);
+			return previous;
+		}
 		
 		/**
-		 * Cell range that an auto filter shall be applied on (incl. the data part, not only the table header).
+		 * Removes a sheet without decoding it, i.e. the removed sheet is only returned if it was decoded (or is cached),
+		 * otherwise null.
 		 */
-		public CellRangeAddress autoFilterRange = null;
+		@Override
+		public synchronized SheetState remove(final Object sheetName) {
+			SheetState previous = getDecodedSheet(sheetName);
+			m_sheetStates.remove(sheetName);
+			dropEncodedSheet(sheetName);
+			return previous;
+		}
 		
-		/**
-		 * Map of column index to column width. Null in value means auto-sized column.
-		 */
-		public Map<Integer, Double> columnWidths = new HashMap<Integer, Double>();
+		private SheetState getDecodedSheet(final Object sheetName) {
+			SheetState sheetState = m_sheetStates.get(sheetName);
+			SoftReference<SheetState> cachedSheet = m_cachedSheets.get(sheetName);
+			return sheetState != null || cachedSheet == null ? sheetState : cachedSheet.get();
+		}
 		
-		/**
-		 * Map of row index to row height.
-		 */
-		public Map<Integer, Double> rowHeights = new HashMap<Integer, Double>();
+		private void dropEncodedSheet(final Object sheetName) {
+			m_encodedSheets.remove(sheetName);
+			m_summaries.remove(sheetName);
+			m_cachedSheets.remove(sheetName);
+			m_origins.remove(sheetName);
+		}
 		
-		/**
-		 * Set of row IDs to hide.
-		 */
-		public Set<Integer> hiddenRows = new HashSet<Integer>();
+		@Override
+		public synchronized void clear() {
+			m_sheetStates.clear();
+			m_encodedSheets.clear();
+			m_summaries.clear();
+			m_cachedSheets.clear();
+			m_origins.clear();
+		}
 		
-		/**
-		 * Set of column IDs to hide.
-		 */
-		public Set<Integer> hiddenColumns = new HashSet<Integer>();
+		@Override
+		public synchronized Set<String> keySet() {
+			return Collections.unmodifiableSet(m_sheetStates.keySet());
+		}
 		
 		/**
-		 * Cell ranges to be merged.
+		 * Compares the sheets with those of another map by their hash codes first (see getSheetHashCode()), so that sheets
+		 * are only decoded to compare those with equal hash codes. Sheets sharing their byte block with the other map's
+		 * (e.g. of a copy) are equal without decoding them. The other map is not locked while this one is, as both may be
+		 * compared the other way round at the same time.
 		 */
-		public List<CellRangeAddress> mergeRanges = new ArrayList<CellRangeAddress>();
+		@Override
+		public boolean equals(final Object obj) {
+			if (obj == this)
+				return true;
+			if (!(obj instanceof Map))
+				return false;
+			Map<?, ?> other = (Map<?, ?>)obj;
+			SheetStateMap otherSheetStateMap = other instanceof SheetStateMap ? (SheetStateMap)other : null;
+			Set<String> sheetNames = new HashSet<String>(keySet());
+			if (!sheetNames.equals(other.keySet()))
+				return false;
+			for (String sheetName : sheetNames)
+				if (getSheetHashCode(sheetName) != (otherSheetStateMap != null ?
+						otherSheetStateMap.getSheetHashCode(sheetName) : Objects.hashCode(other.get(sheetName))))
+					return false;
+			for (String sheetName : sheetNames) {
+				EncodedSheet encodedSheet = getSharedEncodedSheet(sheetName);
+				if (encodedSheet != null && otherSheetStateMap != null && encodedSheet == otherSheetStateMap.getSharedEncodedSheet(sheetName))
+					continue;
+				if (!Objects.equals(get(sheetName), other.get(sheetName)))
+					return false;
+			}
+			return true;
+		}
 		
 		/**
-		 * Map of column groups: <<fromCol, toCol>, isCollapsed>
+		 * Hashes the map like any other map of the same sheets (see AbstractMap.hashCode()), with the hash codes of the
+		 * sheets that were not decoded taken from the index.
 		 */
-		public Map<Pair<Integer, Integer>, Boolean> columnGroups = new HashMap<Pair<Integer, Integer>, Boolean>();
+		@Override
+		public synchronized int hashCode() {
+			int ret = 0;
+			for (String sheetName : m_sheetStates.keySet())
+				ret += Objects.hashCode(sheetName) ^ getSheetHashCode(sheetName);
+			return ret;
+		}
 		
 		/**
-		 * Map of row groups: <<fromRow, toRow>, isCollapsed>
-		 */
-		public Map<Pair<Integer, Integer>, Boolean> rowGroups = new HashMap<Pair<Integer, Integer>, Boolean>();
-	
-		/**
-		 * Checks whether this state is empty, meaning all data instruction-storing structures are empty.
+		 * Returns a read-only view of the entries, which decodes the sheet of an entry when the iteration reaches it. Sheets of
+		 * a file-backed map are hence not held all at once, unless the caller does so.
 		 */
-		public boolean isEmpty() {
-			return cells.size() == 0 && freezeSheetAtTopLeftCornerOfCell == null && autoFilterRange == null &&
-					rowHeights.size() == 0 && columnWidths.size() == 0 && hiddenRows.size() == 0 && hiddenColumns.size() == 0 &&
-					mergeRanges.size() == 0 && columnGroups.size() == 0 && rowGroups.size() == 0;
+		@Override
+		public Set<Map.Entry<String, SheetState>> entrySet() {
+			return new AbstractSet<Map.Entry<String, SheetState>>() {
+				@Override
+				public Iterator<Map.Entry<String, SheetState>> iterator() {
+					Iterator<String> sheetNames = new ArrayList<String>(keySet()).iterator();
+					return new Iterator<Map.Entry<String, SheetState>>() {
+						@Override
+						public boolean hasNext() {
+							return sheetNames.hasNext();
+						}
+						
+						@Override
+						public Map.Entry<String, SheetState> next() {
+							String sheetName = sheetNames.next();
+							return new AbstractMap.SimpleImmutableEntry<String, SheetState>(sheetName, get(sheetName));
+						}
+					};
+				}
+				
+				@Override
+				public int size() {
+					return SheetStateMap.this.size();
+				}
+			};
+		}
+		
+		private SheetState decode(final Object sheetName) {
+			SheetState sheetState = new SheetState();
+			try {
+				readSheet(sheetState, new ObjectInputStream(SerializationHelpers.getInputStream(m_encodedSheets.get(sheetName).getBytes())), m_readSerialVersion);
+			} catch (IOException | ClassNotFoundException e) {
+				throw new IllegalStateException("Invalid persisted XLS Formatting state, sheet " +
+						(sheetName == null ? "[default]" : "\"" + sheetName + "\"") + " could not be read.", e);
+			}
+			return sheetState;
 		}
 	}
 	
+	/**
+	 * The deduplicated formatting records of the cells and range instructions this state added (copies and read states
+	 * start with an empty table and share the records of their cells, see FormattingRecordTable).
+	 */
+	private final FormattingRecordTable formattingRecords = new FormattingRecordTable();
+	
 	/**
 	 * A map relating a sheet name to its SheetState.
 	 * A key of null represents the default sheet (with POI index 0).
@@ -842,11 +2206,55 @@ public class XlsFormatterState implements PortObject, Externalizable {
 	 */
 	public XlsFormatterState() { }
 	
+	/**
+	 * Gets the deduplicated formatting records of all cells of all sheet states.
+	 */
+	public FormattingRecordTable getFormattingRecords() {
+		return formattingRecords;
+	}
+	
 	/**
 	 * Checks whether this sheet state is empty, meaning all data instruction-storing structures are empty.
 	 */
 	public boolean isEmpty() {
-		return sheetStates.size() == 0 || !sheetStates.values().stream().filter(s -> !s.isEmpty()).findAny().isPresent(); 
+		return sheetStates.keySet().stream().allMatch(sheetName -> getSheetSummary(sheetName).empty);
+	}
+	
+	/**
+	 * Gets the instruction counts of a sheet, which doesn't require to decode a sheet of a read state (see SheetStateMap).
+	 */
+	private SheetSummary getSheetSummary(final String sheetName) {
+		return sheetStates instanceof SheetStateMap ? ((SheetStateMap)sheetStates).getSheetSummary(sheetName) : new SheetSummary(sheetStates.get(sheetName));
+	}
+	
+	/**
+	 * Moves the sheets of a state with at least FILE_BACKED_STATE_MIN_CELLS cells to a file store of the node that created
+	 * it, so that their instructions only stay on the heap as long as it allows (see SheetStateMap). Only the sheets the node
+	 * modified are written, the others stay in the file stores of the preceding nodes. The file store is deleted by KNIME
+	 * together with the node's output. Only to be called for a node's output port object, as it must not be modified in
+	 * place anymore.
+	 */
+	public void moveSheetsToFileStore(final ExecutionContext exec) throws IOException {
+		moveSheetsToFile(() -> exec.createFileStore("XlsFormatterState").getFile());
+	}
+	
+	/**
+	 * Moves the sheets of a state with at least FILE_BACKED_STATE_MIN_CELLS cells to a file (see moveSheetsToFileStore()),
+	 * which is only created if so and if any sheet isn't in a file yet.
+	 */
+	void moveSheetsToFile(final CheckedExceptionSupplier<File, IOException> createFile) throws IOException {
+		if (sheetStates.keySet().stream().mapToLong(sheetName -> getSheetSummary(sheetName).cells).sum() < FILE_BACKED_STATE_MIN_CELLS)
+			return;
+		SheetStateMap sheetStateMap;
+		if (sheetStates instanceof SheetStateMap)
+			sheetStateMap = (SheetStateMap)sheetStates;
+		else {
+			sheetStateMap = new SheetStateMap(masterSerializationVersion);
+			for (Map.Entry<String, SheetState> sheetStateEntry : sheetStates.entrySet())
+				sheetStateMap.put(sheetStateEntry.getKey(), sheetStateEntry.getValue());
+		}
+		sheetStateMap.moveToFile(createFile);
+		sheetStates = sheetStateMap;
 	}
 	
 	/**
@@ -882,21 +2290,14 @@ public class XlsFormatterState implements PortObject, Externalizable {
 		if (isEmpty())
 			return "XLS Formatting port object, yet without formatting instructions";
 		
-		int sheetLevelInstructions = sheetStates.values().stream().mapToInt(s -> {
-			return
-				(s.freezeSheetAtTopLeftCornerOfCell == null ? 0 : 1) +
-				(s.autoFilterRange == null ? 0 : 1) +
-				s.columnWidths.size() +
-				s.rowHeights.size() +
-				s.hiddenRows.size() +
-				s.hiddenColumns.size() +
-				s.mergeRanges.size() +
-				s.columnGroups.size() +
-				s.rowGroups.size();
-			}).sum();
-		return "XLS Formatting port object: " + Commons.resolvePluralString((int)sheetStates.values().stream().filter(s -> !s.isEmpty()).count(), "sheet(s)") + ", " + 
-				Commons.resolvePluralString(sheetStates.values().stream().mapToInt(s -> s.cells.size()).sum(), "cell(s) with instructions") + ", " + 
-				Commons.resolvePluralString(sheetLevelInstructions, "sheet-level instruction(s)");
+		List<SheetSummary> summaries = sheetStates.keySet().stream().map(this::getSheetSummary).collect(Collectors.toList());
+		int fullRanges = summaries.stream().mapToInt(s -> s.fullRanges).sum();
+		int rangeInstructions = summaries.stream().mapToInt(s -> s.rangeInstructions).sum();
+		return "XLS Formatting port object: " + Commons.resolvePluralString((int)summaries.stream().filter(s -> !s.empty).count(), "sheet(s)") + ", " + 
+				Commons.resolvePluralString(summaries.stream().mapToInt(s -> s.cells).sum(), "cell(s) with instructions") + ", " + 
+				(fullRanges == 0 ? "" : Commons.resolvePluralString(fullRanges, "full column/row(s) with instructions") + ", ") + 
+				(rangeInstructions == 0 ? "" : Commons.resolvePluralString(rangeInstructions, "range instruction(s)") + ", ") + 
+				Commons.resolvePluralString(summaries.stream().mapToInt(s -> s.sheetLevelInstructions).sum(), "sheet-level instruction(s)");
 	}
 	
 	/**
@@ -934,11 +2335,20 @@ public class XlsFormatterState implements PortObject, Externalizable {
 			sb.append("\nrowGroups: ");
 			for (Map.Entry<Pair<Integer, Integer>, Boolean> group : state.rowGroups.entrySet())
 				sb.append(group.getKey().getLeft() + ":" + group.getKey().getRight() + "," + (group.getValue() ? "collapsed" : "opened") + " ");
+			sb.append("\ntables: ");
+			for (TableDefinition table : state.tables)
+				sb.append(table.toString() + "; ");
 			sb.append("\n");
+			for (Map.Entry<Integer, CellState> fullColumn : state.fullColumns.entrySet())
+				sb.append("\n" + CellReference.convertNumToColString(fullColumn.getKey()) + ":" + CellReference.convertNumToColString(fullColumn.getKey()) + ": " + fullColumn.getValue().cellFormatToShortString(false, true));
+			for (Map.Entry<Integer, CellState> fullRow : state.fullRows.entrySet())
+				sb.append("\n" + (fullRow.getKey() + 1) + ":" + (fullRow.getKey() + 1) + ": " + fullRow.getValue().cellFormatToShortString(false, true));
+			for (RangeInstruction instruction : state.rangeInstructions)
+				sb.append("\n" + instruction.toString());
 			int iteration = 0;
-			for (CellAddress address : state.cells.keySet()) {
-				sb.append("\n" + address.formatAsString() + ": ");
-				sb.append(state.cells.get(address).cellFormatToShortString(false, true));
+			for (CellMap<FormattingRecord>.Cursor cell = state.cells.getRowMajorCursor(); cell.next(); ) {
+				sb.append("\n" + CellMap.toCellAddress(cell.getKey()).formatAsString() + ": ");
+				sb.append(state.getCellState(cell.getKey()).cellFormatToShortString(false, true));
 				if (iteration++ >= VIEW_CELLS_THRESHOLD && cutLongText) {
 					sb.append("\n[...], " + state.cells.size() + " total cells with instructions");
 					break;
@@ -953,8 +2363,6 @@ public class XlsFormatterState implements PortObject, Externalizable {
 
 	@Override
 	public void readExternal(ObjectInput input) throws IOException, ClassNotFoundException {
-		int tempSize;
-		int temp;
 		int readSerialVersion = (int)input.readLong();
 		
 		// check for cases of unsupported upward compatibility (see explanation below in the writeExternal method comment)
@@ -965,11 +2373,53 @@ public class XlsFormatterState implements PortObject, Externalizable {
 		if (masterSerializationVersion < readSerialVersion && masterSerializationVersion < earliestSerializationVersionCapableOfReadingThis)
 			throw new ClassNotFoundException("You are trying to read a XLS Formatting state that has been written with a newer version of the extension than the one currently executing. Upward compatibility is not supported. Please update to the newest version.");
 		
-		// read sheet header and loop all sheets
+		// read sheet header and all sheets
 		int numberOfSheets = 1; // default for v1 is one sheet of name null
 		if (readSerialVersion >= 2) // version 1 did not yet have this element
 			numberOfSheets = input.readInt();
 		
+		if (readSerialVersion >= 3) // versions 1 and 2 wrote the cells of all sheets one after another, without a sheet index
+			readSheetIndex(numberOfSheets, input, readSerialVersion);
+		else
+			readSheets(numberOfSheets, input, readSerialVersion);
+		
+		// also update the internal state for next sheet to modify (esp. as the serialization logic
+		// is used to clone objects in memory)
+		if (numberOfSheets == 1)
+			designatedSheetnameForModifications = sheetStates.keySet().iterator().next();
+	}
+	
+	/**
+	 * Reads the sheet index written by writeExternal and keeps the byte blocks of the sheets to decode each one on its first
+	 * access only (see SheetStateMap).
+	 */
+	private void readSheetIndex(final int numberOfSheets, final ObjectInput input, final int readSerialVersion) throws IOException {
+		List<String> sheetNames = new ArrayList<String>(numberOfSheets);
+		List<SheetSummary> summaries = new ArrayList<SheetSummary>(numberOfSheets);
+		int[] lengths = new int[numberOfSheets];
+		for (int iSheet = 0; iSheet < numberOfSheets; iSheet++) {
+			String sheetName = SerializationHelpers.readNullableString(input, readSerialVersion);
+			if (sheetNames.contains(sheetName))
+				throw new IOException("Coding issue: Invalid persisted XLS Formatting state, sheet names must be unique");
+			sheetNames.add(sheetName);
+			summaries.add(new SheetSummary(input, readSerialVersion));
+			lengths[iSheet] = input.readInt();
+		}
+		
+		SheetStateMap sheetStateMap = new SheetStateMap(readSerialVersion);
+		for (int iSheet = 0; iSheet < numberOfSheets; iSheet++) {
+			byte[] encodedSheet = new byte[lengths[iSheet]];
+			input.readFully(encodedSheet);
+			sheetStateMap.putEncodedSheet(sheetNames.get(iSheet), summaries.get(iSheet), new EncodedSheet(ByteBuffer.wrap(encodedSheet)));
+		}
+		sheetStates = sheetStateMap;
+	}
+	
+	/**
+	 * Reads the sheets as written by versions 1 and 2, i.e. every cell's address and formatting in full, followed by the
+	 * sheet-level instructions of the sheet.
+	 */
+	private void readSheets(final int numberOfSheets, final ObjectInput input, final int readSerialVersion) throws IOException, ClassNotFoundException {
 		for (int iSheet = 0; iSheet < numberOfSheets; iSheet++) {
 			
 			// handle sheet logic of this loop iteration:
@@ -982,73 +2432,116 @@ public class XlsFormatterState implements PortObject, Externalizable {
 			sheetStates.put(sheetName, sheetState);
 			
 			// read cells map:
-			tempSize = input.readInt();
-			sheetState.cells = new HashMap<CellAddress, CellState>(tempSize);
+			int tempSize = input.readInt();
+			sheetState.cells = new CellMap<FormattingRecord>(tempSize);
 			for (int i = 0; i < tempSize; i++) {
-				CellAddress address = SerializationHelpers.readCellAddress(input, readSerialVersion);
-				sheetState.cells.put(
-						address,
+				long cellKey = SerializationHelpers.readCellKey(input, readSerialVersion);
+				sheetState.putCellState(
+						cellKey,
 						CellState.readFromExternal(input, readSerialVersion));
 			}
 			
-			if (input.readBoolean())
-				sheetState.freezeSheetAtTopLeftCornerOfCell = SerializationHelpers.readCellAddress(input, readSerialVersion);
-			
-			if (input.readBoolean())
-				sheetState.autoFilterRange = SerializationHelpers.readCellRangeAddress(input, readSerialVersion);
-			
-			tempSize = input.readInt();
-			sheetState.rowHeights = new HashMap<Integer, Double>(tempSize);
-			for (int i = 0; i < tempSize; i++) {
-				temp = input.readInt();
-				sheetState.rowHeights.put(temp, input.readDouble());
-			}
-			
-			tempSize = input.readInt();
-			sheetState.columnWidths = new HashMap<Integer, Double>(tempSize);
-			for (int i = 0; i < tempSize; i++) {
-				temp = input.readInt(); // key, i.e. column index
-				boolean autoSizeColumn = !input.readBoolean();
-				Double columnWidth = null;
-				if (!autoSizeColumn)
-					columnWidth = input.readDouble();
-				sheetState.columnWidths.put(temp, columnWidth);
-			}
-			
-			tempSize = input.readInt();
-			sheetState.hiddenRows = new HashSet<Integer>(tempSize);
-			for (int i = 0; i < tempSize; i++)
-				sheetState.hiddenRows.add(input.readInt());
-			
-			tempSize = input.readInt();
-			sheetState.hiddenColumns = new HashSet<Integer>(tempSize);
-			for (int i = 0; i < tempSize; i++)
-				sheetState.hiddenColumns.add(input.readInt());
-			
-			tempSize = input.readInt();
-			sheetState.mergeRanges = new ArrayList<CellRangeAddress>(tempSize);
-			for (int i = 0; i < tempSize; i++)
-				sheetState.mergeRanges.add(SerializationHelpers.readCellRangeAddress(input, readSerialVersion));
-			
-			tempSize = input.readInt();
-			sheetState.columnGroups = new HashMap<Pair<Integer, Integer>, Boolean>();
-			for (int i = 0; i < tempSize; i++)
-				SerializationHelpers.addReadGroupingEntryToMap(sheetState.columnGroups, input, readSerialVersion);
-			
-			tempSize = input.readInt();
-			sheetState.rowGroups = new HashMap<Pair<Integer, Integer>, Boolean>();
-			for (int i = 0; i < tempSize; i++)
-				SerializationHelpers.addReadGroupingEntryToMap(sheetState.rowGroups, input, readSerialVersion);
+			readSheetLevelInstructions(sheetState, input, readSerialVersion);
 		}
+	}
+	
+	/**
+	 * Reads the byte block of a sheet written by writeSheet.
+	 */
+	private static void readSheet(final SheetState sheetState, final ObjectInput input, final int readSerialVersion) throws IOException, ClassNotFoundException {
+		readCells(sheetState, input, readSerialVersion);
+		readSheetLevelInstructions(sheetState, input, readSerialVersion);
+		readFullRanges(sheetState, input, readSerialVersion);
+		readTables(sheetState, input, readSerialVersion);
+		readRangeInstructions(sheetState, input, readSerialVersion);
+	}
+	
+	private static void readSheetLevelInstructions(final SheetState sheetState, final ObjectInput input, final int readSerialVersion) throws IOException {
+		int tempSize;
+		int temp;
+		if (input.readBoolean())
+			sheetState.freezeSheetAtTopLeftCornerOfCell = SerializationHelpers.readCellAddress(input, readSerialVersion);
 		
-		// also update the internal state for next sheet to modify (esp. as the serialization logic
-		// is used to clone objects in memory)
-		if (numberOfSheets == 1)
-			designatedSheetnameForModifications = sheetStates.keySet().iterator().next();
+		if (input.readBoolean())
+			sheetState.autoFilterRange = SerializationHelpers.readCellRangeAddress(input, readSerialVersion);
+		
+		tempSize = input.readInt();
+		sheetState.rowHeights = new HashMap<Integer, Double>(tempSize);
+		for (int i = 0; i < tempSize; i++) {
+			temp = input.readInt();
+			sheetState.rowHeights.put(temp, input.readDouble());
+		}
+		
+		tempSize = input.readInt();
+		sheetState.columnWidths = new HashMap<Integer, Double>(tempSize);
+		for (int i = 0; i < tempSize; i++) {
+			temp = input.readInt(); // key, i.e. column index
+			boolean autoSizeColumn = !input.readBoolean();
+			Double columnWidth = null;
+			if (!autoSizeColumn)
+				columnWidth = input.readDouble();
+			sheetState.columnWidths.put(temp, columnWidth);
+		}
+		
+		tempSize = input.readInt();
+		sheetState.hiddenRows = new HashSet<Integer>(tempSize);
+		for (int i = 0; i < tempSize; i++)
+			sheetState.hiddenRows.add(input.readInt());
+		
+		tempSize = input.readInt();
+		sheetState.hiddenColumns = new HashSet<Integer>(tempSize);
+		for (int i = 0; i < tempSize; i++)
+			sheetState.hiddenColumns.add(input.readInt());
+		
+		tempSize = input.readInt();
+		sheetState.mergeRanges = new ArrayList<CellRangeAddress>(tempSize);
+		for (int i = 0; i < tempSize; i++)
+			sheetState.mergeRanges.add(SerializationHelpers.readCellRangeAddress(input, readSerialVersion));
+		
+		tempSize = input.readInt();
+		sheetState.columnGroups = new HashMap<Pair<Integer, Integer>, Boolean>();
+		for (int i = 0; i < tempSize; i++)
+			SerializationHelpers.addReadGroupingEntryToMap(sheetState.columnGroups, input, readSerialVersion);
+		
+		tempSize = input.readInt();
+		sheetState.rowGroups = new HashMap<Pair<Integer, Integer>, Boolean>();
+		for (int i = 0; i < tempSize; i++)
+			SerializationHelpers.addReadGroupingEntryToMap(sheetState.rowGroups, input, readSerialVersion);
+	}
+	
+	private static void readFullRanges(final SheetState sheetState, final ObjectInput input, final int readSerialVersion) throws IOException, ClassNotFoundException {
+		int tempSize = input.readInt();
+		for (int i = 0; i < tempSize; i++) {
+			int temp = input.readInt();
+			sheetState.fullColumns.put(temp, CellState.readFromExternal(input, readSerialVersion));
+		}
+		tempSize = input.readInt();
+		for (int i = 0; i < tempSize; i++) {
+			int temp = input.readInt();
+			sheetState.fullRows.put(temp, CellState.readFromExternal(input, readSerialVersion));
+		}
 	}
-
 	
+	private static void readTables(final SheetState sheetState, final ObjectInput input, final int readSerialVersion) throws IOException, ClassNotFoundException {
+		int tempSize = input.readInt();
+		sheetState.tables = new ArrayList<TableDefinition>(tempSize);
+		for (int i = 0; i < tempSize; i++)
+			sheetState.tables.add(TableDefinition.readFromExternal(input, readSerialVersion));
+	}
 	
+	private static void readRangeInstructions(final SheetState sheetState, final ObjectInput input, final int readSerialVersion) throws IOException, ClassNotFoundException {
+		int tempSize = input.readInt();
+		sheetState.rangeInstructions = new ArrayList<RangeInstruction>(tempSize);
+		for (int i = 0; i < tempSize; i++) {
+			int sequenceNumber = input.readInt();
+			int numberOfRanges = input.readInt();
+			List<CellRangeAddress> ranges = new ArrayList<CellRangeAddress>(numberOfRanges);
+			for (int j = 0; j < numberOfRanges; j++)
+				ranges.add(SerializationHelpers.readCellRangeAddress(input, readSerialVersion));
+			sheetState.rangeInstructions.add(new RangeInstruction(ranges, new FormattingRecord(CellState.readFromExternal(input, readSerialVersion)), sequenceNumber));
+		}
+	}
+
 	@Override
 	public void writeExternal(ObjectOutput output) throws IOException {
 		
@@ -1068,66 +2561,225 @@ public class XlsFormatterState implements PortObject, Externalizable {
 		 * History:
 		 * version 1, (selective upward compatibility not yet implemented)
 		 * version 2, earliestSerializationVersionCapableOfReadingThis 2 (because sheets are added early in the byte stream)
+		 * version 3, earliestSerializationVersionCapableOfReadingThis 3 (a sheet index of names, summary counts and byte lengths precedes the sheets, which are
+		 *            written one after another as self-contained byte blocks, see SheetStateMap; the summary holds a sheet's hash code; cells refer to dictionaries of formatting records, hyperlink
+		 *            prefixes and comment authors by id, with delta encoded addresses, see writeCells; blocks also hold full column and row instructions,
+		 *            table definitions and range instructions; conditional formatting sets hold highlight rules, data bars and icon sets)
 		 */
-		output.writeInt(masterSerializationVersion); // WARNING: if unsure, set this one to masterSerializationVersion
+		output.writeInt(3); // WARNING: if unsure, set this one to masterSerializationVersion
 		
 		
-		// iterate all sheets
+		// write the sheet index, which allows to summarize a read state without decoding its sheets (see SheetStateMap):
 		output.writeInt(sheetStates.size());
+		List<EncodedSheet> encodedSheets = new ArrayList<EncodedSheet>(sheetStates.size());
 		for (String sheetName : sheetStates.keySet()) {
-			SheetState sheetState = sheetStates.get(sheetName);
+			EncodedSheet encodedSheet = sheetStates instanceof SheetStateMap ? ((SheetStateMap)sheetStates).getEncodedSheet(sheetName) : null;
+			if (encodedSheet == null)
+				encodedSheet = new EncodedSheet(ByteBuffer.wrap(encodeSheet(sheetStates.get(sheetName))));
 			SerializationHelpers.writeNullableString(sheetName, output, masterSerializationVersion);
-			
-			// write cells map:
-			output.writeInt(sheetState.cells.size());
-			for (CellAddress address : sheetState.cells.keySet()) {
-				SerializationHelpers.writeCellAddress(address, output, masterSerializationVersion);
-				sheetState.cells.get(address).writeExternal(output, masterSerializationVersion);
-			}
-			
-			output.writeBoolean(sheetState.freezeSheetAtTopLeftCornerOfCell != null);
-			if (sheetState.freezeSheetAtTopLeftCornerOfCell != null)
-				SerializationHelpers.writeCellAddress(sheetState.freezeSheetAtTopLeftCornerOfCell, output, masterSerializationVersion);
+			getSheetSummary(sheetName).writeExternal(output, masterSerializationVersion);
+			output.writeInt(encodedSheet.getLength());
+			encodedSheets.add(encodedSheet);
+		}
+		
+		// append the byte blocks of all sheets in the order of the index (those of a file-backed state straight from the file):
+		for (EncodedSheet encodedSheet : encodedSheets)
+			encodedSheet.writeTo(output);
+	}
 	
-			output.writeBoolean(sheetState.autoFilterRange != null);
-			if (sheetState.autoFilterRange != null)
-				SerializationHelpers.writeCellRangeAddress(sheetState.autoFilterRange, output, masterSerializationVersion);
-			
-			output.writeInt(sheetState.rowHeights.size());
-			for (Integer key : sheetState.rowHeights.keySet()) {
-				output.writeInt(key);
-				output.writeDouble(sheetState.rowHeights.get(key));
-			}
-			
-			output.writeInt(sheetState.columnWidths.size());
-			for (Integer key : sheetState.columnWidths.keySet()) {
-				output.writeInt(key);
-				Double columnWidth = sheetState.columnWidths.get(key);
-				output.writeBoolean(columnWidth != null); // null means auto-size
-				if (columnWidth != null)
-					output.writeDouble(sheetState.columnWidths.get(key));
-			}
-			
-			output.writeInt(sheetState.hiddenRows.size());
-			for (Integer key : sheetState.hiddenRows)
-				output.writeInt(key);
-			
-			output.writeInt(sheetState.hiddenColumns.size());
-			for (Integer key : sheetState.hiddenColumns)
-				output.writeInt(key);
-			
-			output.writeInt(sheetState.mergeRanges.size());
-			for (CellRangeAddress mergeRange : sheetState.mergeRanges)
-				SerializationHelpers.writeCellRangeAddress(mergeRange, output, masterSerializationVersion);
-			
-			output.writeInt(sheetState.columnGroups.size());
-			for (Map.Entry<Pair<Integer, Integer>, Boolean> group : sheetState.columnGroups.entrySet())
-				SerializationHelpers.writeGroupingEntry(group.getKey().getLeft(), group.getKey().getRight(), group.getValue(), output, masterSerializationVersion);
-			
-			output.writeInt(sheetState.rowGroups.size());
-			for (Map.Entry<Pair<Integer, Integer>, Boolean> group : sheetState.rowGroups.entrySet())
-				SerializationHelpers.writeGroupingEntry(group.getKey().getLeft(), group.getKey().getRight(), group.getValue(), output, masterSerializationVersion);
+	/**
+	 * Encodes a sheet as a byte block that can be decoded independently of all other sheets (see writeSheet).
+	 */
+	private static byte[] encodeSheet(final SheetState sheetState) throws IOException {
+		ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+		ObjectOutputStream output = new ObjectOutputStream(byteOutputStream);
+		writeSheet(sheetState, output);
+		output.flush();
+		return byteOutputStream.toByteArray();
+	}
+	
+	/**
+	 * Writes the cells of a sheet, followed by its sheet-level instructions, full-column and full-row instructions,
+	 * table definitions and range instructions.
+	 */
+	private static void writeSheet(final SheetState sheetState, final ObjectOutput output) throws IOException {
+		
+		// write cells map:
+		writeCells(sheetState, output);
+		
+		// write the sheet-level instructions:
+		output.writeBoolean(sheetState.freezeSheetAtTopLeftCornerOfCell != null);
+		if (sheetState.freezeSheetAtTopLeftCornerOfCell != null)
+			SerializationHelpers.writeCellAddress(sheetState.freezeSheetAtTopLeftCornerOfCell, output, masterSerializationVersion);
+
+		output.writeBoolean(sheetState.autoFilterRange != null);
+		if (sheetState.autoFilterRange != null)
+			SerializationHelpers.writeCellRangeAddress(sheetState.autoFilterRange, output, masterSerializationVersion);
+		
+		output.writeInt(sheetState.rowHeights.size());
+		for (Integer key : sheetState.rowHeights.keySet()) {
+			output.writeInt(key);
+			output.writeDouble(sheetState.rowHeights.get(key));
+		}
+		
+		output.writeInt(sheetState.columnWidths.size());
+		for (Integer key : sheetState.columnWidths.keySet()) {
+			output.writeInt(key);
+			Double columnWidth = sheetState.columnWidths.get(key);
+			output.writeBoolean(columnWidth != null); // null means auto-size
+			if (columnWidth != null)
+				output.writeDouble(sheetState.columnWidths.get(key));
+		}
+		
+		output.writeInt(sheetState.hiddenRows.size());
+		for (Integer key : sheetState.hiddenRows)
+			output.writeInt(key);
+		
+		output.writeInt(sheetState.hiddenColumns.size());
+		for (Integer key : sheetState.hiddenColumns)
+			output.writeInt(key);
+		
+		output.writeInt(sheetState.mergeRanges.size());
+		for (CellRangeAddress mergeRange : sheetState.mergeRanges)
+			SerializationHelpers.writeCellRangeAddress(mergeRange, output, masterSerializationVersion);
+		
+		output.writeInt(sheetState.columnGroups.size());
+		for (Map.Entry<Pair<Integer, Integer>, Boolean> group : sheetState.columnGroups.entrySet())
+			SerializationHelpers.writeGroupingEntry(group.getKey().getLeft(), group.getKey().getRight(), group.getValue(), output, masterSerializationVersion);
+		
+		output.writeInt(sheetState.rowGroups.size());
+		for (Map.Entry<Pair<Integer, Integer>, Boolean> group : sheetState.rowGroups.entrySet())
+			SerializationHelpers.writeGroupingEntry(group.getKey().getLeft(), group.getKey().getRight(), group.getValue(), output, masterSerializationVersion);
+		
+		// write the full-column and full-row instructions:
+		output.writeInt(sheetState.fullColumns.size());
+		for (Map.Entry<Integer, CellState> fullColumn : sheetState.fullColumns.entrySet()) {
+			output.writeInt(fullColumn.getKey());
+			fullColumn.getValue().writeExternal(output, masterSerializationVersion);
+		}
+		
+		output.writeInt(sheetState.fullRows.size());
+		for (Map.Entry<Integer, CellState> fullRow : sheetState.fullRows.entrySet()) {
+			output.writeInt(fullRow.getKey());
+			fullRow.getValue().writeExternal(output, masterSerializationVersion);
+		}
+		
+		// write the table definitions:
+		output.writeInt(sheetState.tables.size());
+		for (TableDefinition table : sheetState.tables)
+			table.writeExternal(output, masterSerializationVersion);
+		
+		// write the range instructions:
+		output.writeInt(sheetState.rangeInstructions.size());
+		for (RangeInstruction instruction : sheetState.rangeInstructions) {
+			output.writeInt(instruction.sequenceNumber);
+			output.writeInt(instruction.ranges.size());
+			for (CellRangeAddress range : instruction.ranges)
+				SerializationHelpers.writeCellRangeAddress(range, output, masterSerializationVersion);
+			instruction.delta.writeExternal(output, masterSerializationVersion, null, null);
+		}
+	}
+	
+	/**
+	 * Writes the cells of a sheet, followed by their hyperlinks and comments, each in row-major order (so that equal states
+	 * yield equal byte streams) with addresses relative to the previous one (see SerializationHelpers.writeCellKeyDelta).
+	 * Formatting records, hyperlink prefixes (up to the last slash) and comment authors are written once per sheet where they
+	 * occur first and are referred to by id afterwards. An id equal to the number of entries read so far hence announces a new entry.
+	 */
+	private static void writeCells(final SheetState sheetState, final ObjectOutput output) throws IOException {
+		Map<FormattingRecord, Integer> recordIds = new HashMap<FormattingRecord, Integer>();
+		SerializationHelpers.writeVarInt(sheetState.cells.size(), output, masterSerializationVersion);
+		long previousKey = -1;
+		for (CellMap<FormattingRecord>.Cursor cell = sheetState.cells.getRowMajorCursor(); cell.next(); ) {
+			SerializationHelpers.writeCellKeyDelta(cell.getKey(), previousKey, output, masterSerializationVersion);
+			previousKey = cell.getKey();
+			Integer recordId = recordIds.putIfAbsent(cell.getValue(), recordIds.size());
+			SerializationHelpers.writeVarInt(recordId == null ? recordIds.size() - 1 : recordId, output, masterSerializationVersion);
+			if (recordId == null)
+				cell.getValue().writeExternal(output, masterSerializationVersion, null, null);
+		}
+		
+		Map<String, Integer> prefixIds = new HashMap<String, Integer>();
+		SerializationHelpers.writeVarInt(sheetState.hyperlinks.size(), output, masterSerializationVersion);
+		previousKey = -1;
+		for (CellMap<String>.Cursor hyperlink = sheetState.hyperlinks.getRowMajorCursor(); hyperlink.next(); ) {
+			SerializationHelpers.writeCellKeyDelta(hyperlink.getKey(), previousKey, output, masterSerializationVersion);
+			previousKey = hyperlink.getKey();
+			int prefixLength = hyperlink.getValue().lastIndexOf('/') + 1;
+			String prefix = hyperlink.getValue().substring(0, prefixLength);
+			Integer prefixId = prefixIds.putIfAbsent(prefix, prefixIds.size());
+			SerializationHelpers.writeVarInt(prefixId == null ? prefixIds.size() - 1 : prefixId, output, masterSerializationVersion);
+			if (prefixId == null)
+				output.writeUTF(prefix);
+			output.writeUTF(hyperlink.getValue().substring(prefixLength));
+		}
+		
+		Map<String, Integer> authorIds = new HashMap<String, Integer>();
+		SerializationHelpers.writeVarInt(sheetState.comments.size(), output, masterSerializationVersion);
+		previousKey = -1;
+		for (CellMap<Comment>.Cursor comment = sheetState.comments.getRowMajorCursor(); comment.next(); ) {
+			SerializationHelpers.writeCellKeyDelta(comment.getKey(), previousKey, output, masterSerializationVersion);
+			previousKey = comment.getKey();
+			Integer authorId = authorIds.putIfAbsent(comment.getValue().author, authorIds.size());
+			SerializationHelpers.writeVarInt(authorId == null ? authorIds.size() - 1 : authorId, output, masterSerializationVersion);
+			if (authorId == null)
+				SerializationHelpers.writeNullableString(comment.getValue().author, output, masterSerializationVersion);
+			SerializationHelpers.writeNullableString(comment.getValue().text, output, masterSerializationVersion);
+		}
+	}
+	
+	/**
+	 * Reads the cells of a sheet written by writeCells.
+	 */
+	private static void readCells(final SheetState sheetState, final ObjectInput input, final int readSerialVersion) throws IOException, ClassNotFoundException {
+		List<FormattingRecord> records = new ArrayList<FormattingRecord>();
+		int size = SerializationHelpers.readVarInt(input, readSerialVersion);
+		sheetState.cells = new CellMap<FormattingRecord>(size);
+		long cellKey = -1;
+		for (int i = 0; i < size; i++) {
+			cellKey = SerializationHelpers.readCellKeyDelta(cellKey, input, readSerialVersion);
+			int recordId = readDictionaryId(records, input, readSerialVersion);
+			if (recordId == records.size())
+				records.add(new FormattingRecord(CellState.readFromExternal(input, readSerialVersion))); // deduplicated by the dictionary
+			sheetState.cells.put(cellKey, records.get(recordId));
+		}
+		
+		List<String> prefixes = new ArrayList<String>();
+		size = SerializationHelpers.readVarInt(input, readSerialVersion);
+		sheetState.hyperlinks = new CellMap<String>(size);
+		cellKey = -1;
+		for (int i = 0; i < size; i++) {
+			cellKey = SerializationHelpers.readCellKeyDelta(cellKey, input, readSerialVersion);
+			int prefixId = readDictionaryId(prefixes, input, readSerialVersion);
+			if (prefixId == prefixes.size())
+				prefixes.add(input.readUTF());
+			sheetState.hyperlinks.put(cellKey, prefixes.get(prefixId) + input.readUTF());
 		}
+		
+		List<String> authors = new ArrayList<String>();
+		size = SerializationHelpers.readVarInt(input, readSerialVersion);
+		sheetState.comments = new CellMap<Comment>(size);
+		cellKey = -1;
+		for (int i = 0; i < size; i++) {
+			cellKey = SerializationHelpers.readCellKeyDelta(cellKey, input, readSerialVersion);
+			int authorId = readDictionaryId(authors, input, readSerialVersion);
+			if (authorId == authors.size())
+				authors.add(SerializationHelpers.readNullableString(input, readSerialVersion));
+			Comment comment = new Comment();
+			comment.author = authors.get(authorId);
+			comment.text = SerializationHelpers.readNullableString(input, readSerialVersion);
+			sheetState.comments.put(cellKey, comment);
+		}
+	}
+	
+	/**
+	 * Reads an id of a dictionary written by writeCells, which is either that of an entry read before or announces a new one.
+	 */
+	private static int readDictionaryId(final List<?> dictionary, final ObjectInput input, final int readSerialVersion) throws IOException {
+		int id = SerializationHelpers.readVarInt(input, readSerialVersion);
+		if (id > dictionary.size())
+			throw new IOException("Invalid persisted XLS Formatting state, reference to an unknown dictionary entry.");
+		return id;
 	}
 
 	@Override
@@ -1156,6 +2808,61 @@ public class XlsFormatterState implements PortObject, Externalizable {
 		return new JComponent[] { panel };
 	}
 	
+	/**
+	 * Returns a copy of the state that can be modified without affecting this one. Unlike getDeepClone(), the cells are not
+	 * copied but shared copy-on-write (see CellMap), and the formatting records are immutable anyway. Only the sheet-level
+	 * collections (e.g. column widths, merge ranges and the full column and row instructions) are copied right away.
+	 * The copy starts with an empty record table, i.e. it doesn't carry the records this state interned but its cells
+	 * don't refer to anymore, and this state's table is neither read nor written (see FormattingRecordTable).
+	 */
+	public XlsFormatterState getModifiableCopy() {
+		XlsFormatterState ret = new XlsFormatterState();
+		if (sheetStates instanceof SheetStateMap) // copies the sheets not decoded yet as byte blocks
+			ret.sheetStates = ((SheetStateMap)sheetStates).getModifiableCopy(ret);
+		else
+			for (Map.Entry<String, SheetState> sheetStateEntry : sheetStates.entrySet())
+				ret.sheetStates.put(sheetStateEntry.getKey(), ret.getModifiableCopy(sheetStateEntry.getValue()));
+		ret.designatedSheetnameForModifications = sheetStates.size() == 1 ? sheetStates.keySet().iterator().next() : designatedSheetnameForModifications;
+		return ret;
+	}
+	
+	/**
+	 * Creates a sheet state of this state holding a modifiable copy of the provided one (see getModifiableCopy()).
+	 */
+	private SheetState getModifiableCopy(final SheetState sheetState) {
+		SheetState ret = new SheetState();
+		ret.cells = new CellMap<FormattingRecord>(sheetState.cells);
+		ret.hyperlinks = new CellMap<String>(sheetState.hyperlinks);
+		ret.comments = new CellMap<Comment>(sheetState.comments);
+		ret.freezeSheetAtTopLeftCornerOfCell = sheetState.freezeSheetAtTopLeftCornerOfCell;
+		ret.autoFilterRange = sheetState.autoFilterRange;
+		ret.columnWidths.putAll(sheetState.columnWidths);
+		ret.rowHeights.putAll(sheetState.rowHeights);
+		ret.hiddenRows.addAll(sheetState.hiddenRows);
+		ret.hiddenColumns.addAll(sheetState.hiddenColumns);
+		ret.mergeRanges.addAll(sheetState.mergeRanges);
+		ret.columnGroups.putAll(sheetState.columnGroups);
+		ret.rowGroups.putAll(sheetState.rowGroups);
+		for (Map.Entry<Integer, CellState> entry : sheetState.fullColumns.entrySet())
+			ret.fullColumns.put(entry.getKey(), getCopy(entry.getValue()));
+		for (Map.Entry<Integer, CellState> entry : sheetState.fullRows.entrySet())
+			ret.fullRows.put(entry.getKey(), getCopy(entry.getValue()));
+		ret.tables.addAll(sheetState.tables);
+		ret.rangeInstructions.addAll(sheetState.rangeInstructions);
+		return ret;
+	}
+	
+	/**
+	 * Returns a modifiable copy of a full column's or row's cell state (the hyperlink and comment are shared, as nodes replace
+	 * them instead of modifying them).
+	 */
+	private static CellState getCopy(final CellState cellState) {
+		CellState ret = new FormattingRecord(cellState).toCellState();
+		ret.hyperlink = cellState.hyperlink;
+		ret.comment = cellState.comment;
+		return ret;
+	}
+	
 	/**
 	 * Returns a deep clone of the state via in-memory serialization and de-serialization.
 	 */
@@ -1169,41 +2876,37 @@ public class XlsFormatterState implements PortObject, Externalizable {
 		}
 	}
 	
+	/**
+	 * Two states are equal if their sheet states hold equal instructions (see SheetState.equals()). The cells, which make up
+	 * the bulk of a state, are hashed incrementally while the state is built, so unequal states are usually rejected and
+	 * a state is hashed in time independent of its number of cells. The hash codes of the sheets of a read state are taken
+	 * from its sheet index, so they are not decoded for that (see SheetStateMap.equals()).
+	 */
 	@Override
 	public boolean equals(Object obj) {
-		if (obj == null)
-			return false;
-		
-		try {
-			ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
-			(new ObjectOutputStream(byteOutputStream)).writeObject(this);
-			byte[] thisAsByteArray = byteOutputStream.toByteArray();
-			
-			byteOutputStream = new ByteArrayOutputStream();
-			(new ObjectOutputStream(byteOutputStream)).writeObject(obj);
-			byte[] refAsByteArray = byteOutputStream.toByteArray();
-			
-			if (thisAsByteArray.length != refAsByteArray.length)
-				return false;
-			
-			for (int i = 0; i < thisAsByteArray.length; i++)
-				if (thisAsByteArray[i] != refAsByteArray[i])
-					return false;
+		if (this == obj)
 			return true;
-		} catch (IOException ioe) {
+		if (!(obj instanceof XlsFormatterState))
 			return false;
-		}
+		Map<String, SheetState> otherSheetStates = ((XlsFormatterState)obj).sheetStates;
+		if (otherSheetStates instanceof SheetStateMap && !(sheetStates instanceof SheetStateMap))
+			return otherSheetStates.equals(sheetStates);
+		return sheetStates.equals(otherSheetStates);
 	}
 	
 	@Override
 	public int hashCode() {
-		try {
-			ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
-			(new ObjectOutputStream(byteOutputStream)).writeObject(this); 
-			return byteOutputStream.toByteArray().hashCode();
-		} catch (IOException ioe) {
-			return 0;
-		}
+		return sheetStates.hashCode();
+	}
+	
+	/**
+	 * Returns a modifiable copy of the state passed as PortObject (see getModifiableCopy()) or a new XlsFormatterState,
+	 * if portObject is null. The passed state is not modified and may hence stay shared with other nodes.
+	 */
+	public static XlsFormatterState getModifiableCopy(PortObject portObject) {
+		if (portObject == null)
+			return new XlsFormatterState();
+		return ((XlsFormatterState)portObject).getModifiableCopy();
 	}
 	
 	/**
@@ -1,22 +1,32 @@
 package com.continental.knime.xlsformatter.porttype;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.tuple.Pair;
-import org.apache.poi.ss.util.CellAddress;
 import org.apache.poi.ss.util.CellRangeAddress;
-import org.knime.core.node.ExecutionContext;
-import org.knime.core.node.NodeLogger;
 
 import com.continental.knime.xlsformatter.commons.AddressingTools;
+import com.continental.knime.xlsformatter.commons.ProgressMonitor;
+import com.continental.knime.xlsformatter.commons.XlsFormatterLogger;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterState.BorderEdge;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.BorderStyle;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterState.CellAlignmentHorizontal;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterState.CellAlignmentVertical;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterState.CellDataType;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterState.CellState;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterState.FillPattern;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterState.FormattingFlag;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.FormattingRecord;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.RangeInstruction;
 import com.continental.knime.xlsformatter.porttype.XlsFormatterState.SheetState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.TableDefinition;
 
 public class XlsFormatterStateMerger {
 	
@@ -25,7 +35,7 @@ public class XlsFormatterStateMerger {
 	 * Will deeply clone the slave state first in order to safely re-use its contained objects in the master state.
 	 * Slave can be null, in this case no action is performed. An exception is thrown if master is null.
 	 */
-	public static void mergeFormatterStates(XlsFormatterState master, XlsFormatterState slave, final ExecutionContext exec, final NodeLogger logger) throws Exception {
+	public static void mergeFormatterStates(XlsFormatterState master, XlsFormatterState slave, final ProgressMonitor exec, final XlsFormatterLogger logger) throws Exception {
 		
 		if (master == null)
 			throw new Exception("Coding issue: the master state cannot be null in a merge operation.");
@@ -33,7 +43,7 @@ public class XlsFormatterStateMerger {
 		if (slave == null)
 			return;
 		
-		slave = XlsFormatterState.getDeepClone(slave); // create fresh nested objects to safely add them to master later on
+		slave = XlsFormatterState.getModifiableCopy(slave); // get own sheet-level objects to safely add them to master later on
 		
 		// iterate over all sheets
 		for (String slaveSheetName : slave.sheetStates.keySet()) {
@@ -45,12 +55,47 @@ public class XlsFormatterStateMerger {
 				SheetState slaveState = slave.sheetStates.get(slaveSheetName);
 				SheetState masterState = master.sheetStates.get(slaveSheetName);
 				
-				// merge the contained cells:
-				for (CellAddress slaveCell : slaveState.cells.keySet())
-					if (masterState.cells.containsKey(slaveCell))
-						mergeCells(masterState.cells.get(slaveCell), slaveState.cells.get(slaveCell));
+				// the slave's range instructions are resolved into its cells, so that they rank below all of the master's instructions,
+				// while the master's range instructions keep overlaying whatever its cells end up with:
+				slaveState.cells = slaveState.getResolvedCells(master.getFormattingRecords());
+				slaveState.rangeInstructions = new ArrayList<RangeInstruction>();
+				
+				// merge the contained cells and the intersections of full columns and rows, each into the overlay of its master formatting
+				// over its slave formatting, both including the full column and row covering it (once per distinct combination), as a cell's
+				// own instructions win over those of its full column and row when applied. Note that a slave cell's comment is only taken
+				// over for cells not yet contained in master:
+				Map<List<Object>, FormattingRecord> mergedRecords = new HashMap<List<Object>, FormattingRecord>();
+				CellMap<Boolean> mergedCells = new CellMap<Boolean>(); // used as set of cell keys
+				for (long cellKey : slaveState.cells.getKeys())
+					mergedCells.put(cellKey, Boolean.TRUE);
+				for (Integer row : union(masterState.fullRows.keySet(), slaveState.fullRows.keySet()))
+					for (Integer column : union(masterState.fullColumns.keySet(), slaveState.fullColumns.keySet()))
+						mergedCells.put(row, column, Boolean.TRUE);
+				for (long cellKey : mergedCells.getKeys()) {
+					List<Object> records = Arrays.asList(
+							masterState.cells.get(cellKey), masterState.fullRows.get(CellMap.getRow(cellKey)), masterState.fullColumns.get(CellMap.getColumn(cellKey)),
+							slaveState.cells.get(cellKey), slaveState.fullRows.get(CellMap.getRow(cellKey)), slaveState.fullColumns.get(CellMap.getColumn(cellKey)));
+					boolean isMasterCell = records.get(0) != null;
+					masterState.cells.put(cellKey, mergedRecords.computeIfAbsent(records, r -> master.getFormattingRecords().intern(getOverlaidCellState(
+							r.get(0) == null ? null : ((FormattingRecord)r.get(0)).toCellState(), (CellState)r.get(1), (CellState)r.get(2),
+							r.get(3) == null ? null : ((FormattingRecord)r.get(3)).toCellState(), (CellState)r.get(4), (CellState)r.get(5)))));
+					if (!masterState.hyperlinks.containsKey(cellKey) && slaveState.hyperlinks.containsKey(cellKey))
+						masterState.hyperlinks.put(cellKey, slaveState.hyperlinks.get(cellKey));
+					if (!isMasterCell && slaveState.comments.containsKey(cellKey) && !masterState.isCoveredByRangeInstruction(cellKey))
+						masterState.comments.put(cellKey, slaveState.comments.get(cellKey));
+				}
+				
+				// merge the full-column and full-row instructions:
+				for (Map.Entry<Integer, CellState> entry : slaveState.fullColumns.entrySet())
+					if (masterState.fullColumns.containsKey(entry.getKey()))
+						mergeCells(masterState.fullColumns.get(entry.getKey()), entry.getValue());
+					else
+						masterState.fullColumns.put(entry.getKey(), entry.getValue());
+				for (Map.Entry<Integer, CellState> entry : slaveState.fullRows.entrySet())
+					if (masterState.fullRows.containsKey(entry.getKey()))
+						mergeCells(masterState.fullRows.get(entry.getKey()), entry.getValue());
 					else
-						masterState.cells.put(slaveCell, slaveState.cells.get(slaveCell));
+						masterState.fullRows.put(entry.getKey(), entry.getValue());
 				
 				// merge the sheet level formatting instructions:
 				if (masterState.freezeSheetAtTopLeftCornerOfCell == null)
@@ -79,6 +124,17 @@ public class XlsFormatterStateMerger {
 							(slaveSheetName == null ? "[default / first]" : "\"" + slaveSheetName + "\"") +
 							" which contain overlapping / conflicting cell merge ranges. See log for details.");
 				masterState.mergeRanges.addAll(slaveState.mergeRanges);
+
+				// handle tables like cell merge ranges, i.e. pure duplicates are dropped while any other overlap is a conflict
+				List<TableDefinition> slaveTables = new ArrayList<TableDefinition>(slaveState.tables);
+				slaveTables.removeAll(masterState.tables);
+				if (AddressingTools.hasOverlap(
+						masterState.tables.stream().map(t -> t.range).collect(Collectors.toList()),
+						slaveTables.stream().map(t -> t.range).collect(Collectors.toList()), exec, logger))
+					throw new IllegalArgumentException("The provided XLS Formatter ports address sheet " +
+							(slaveSheetName == null ? "[default / first]" : "\"" + slaveSheetName + "\"") +
+							" which contain overlapping / conflicting table definitions. See log for details.");
+				masterState.tables.addAll(slaveTables);
 				
 				mergeGroups(masterState.columnGroups, slaveState.columnGroups);
 				mergeGroups(masterState.rowGroups, slaveState.rowGroups);
@@ -86,6 +142,69 @@ public class XlsFormatterStateMerger {
 		}
 	}
 	
+	/**
+	 * Combines several XlsFormatterStates for a joint application to one workbook. As long as the states address distinct sheets,
+	 * the combined state simply refers to their sheet states, i.e. nothing is cloned and the combined state must not be modified.
+	 * Only if a sheet is addressed by more than one state, a conventional (deeply cloning) merge is performed, in which earlier
+	 * states are superior to later ones.
+	 */
+	public static XlsFormatterState combineFormatterStates(List<XlsFormatterState> states, final ProgressMonitor exec, final XlsFormatterLogger logger) throws Exception {
+		
+		XlsFormatterState combined = new XlsFormatterState();
+		for (XlsFormatterState state : states)
+			for (Map.Entry<String, SheetState> sheetStateEntry : state.sheetStates.entrySet()) {
+				if (combined.sheetStates.containsKey(sheetStateEntry.getKey())) {
+					logger.debug("Sheet " + (sheetStateEntry.getKey() == null ? "[default / first]" : "\"" + sheetStateEntry.getKey() + "\"") +
+							" is addressed by multiple XLS Formatter ports, hence these are merged.");
+					XlsFormatterState master = XlsFormatterState.getModifiableCopy(states.get(0));
+					for (int i = 1; i < states.size(); i++)
+						mergeFormatterStates(master, states.get(i), exec, logger);
+					return master;
+				}
+				combined.sheetStates.put(sheetStateEntry.getKey(), sheetStateEntry.getValue());
+			}
+		return combined;
+	}
+	
+	private static <T> Set<T> union(final Set<T> set1, final Set<T> set2) {
+		Set<T> ret = new HashSet<T>(set1);
+		ret.addAll(set2);
+		return ret;
+	}
+	
+	/**
+	 * Creates a new CellState overlaying the provided CellStates, of which earlier ones are superior to later ones (null entries are skipped).
+	 * The provided states are not modified, but the returned state may share their color and conditional formatting objects.
+	 */
+	public static CellState getOverlaidCellState(CellState... states) {
+		CellState ret = new CellState();
+		ret.borderTop = new BorderEdge(BorderStyle.UNMODIFIED);
+		ret.borderBottom = new BorderEdge(BorderStyle.UNMODIFIED);
+		ret.borderLeft = new BorderEdge(BorderStyle.UNMODIFIED);
+		ret.borderRight = new BorderEdge(BorderStyle.UNMODIFIED);
+		ret.borderDiagonalSlash = new BorderEdge(BorderStyle.UNMODIFIED);
+		ret.borderDiagonalBackslash = new BorderEdge(BorderStyle.UNMODIFIED);
+		for (CellState state : states)
+			if (state != null) {
+				mergeCells(ret, state);
+				if (ret.comment == null)
+					ret.comment = state.comment;
+			}
+		
+		// borders have been pre-populated above to not alter the provided states' border objects, so remove the unused ones:
+		ret.borderTop = getNullIfUnmodified(ret.borderTop);
+		ret.borderBottom = getNullIfUnmodified(ret.borderBottom);
+		ret.borderLeft = getNullIfUnmodified(ret.borderLeft);
+		ret.borderRight = getNullIfUnmodified(ret.borderRight);
+		ret.borderDiagonalSlash = getNullIfUnmodified(ret.borderDiagonalSlash);
+		ret.borderDiagonalBackslash = getNullIfUnmodified(ret.borderDiagonalBackslash);
+		return ret;
+	}
+	
+	private static BorderEdge getNullIfUnmodified(BorderEdge edge) {
+		return edge.style == BorderStyle.UNMODIFIED && edge.color == null ? null : edge;
+	}
+	
 	/**
 	 * Merges to CellStates. In case of conflict, master wins over slave, but at the lowest level of detail.
 	 * Expects slave to be a fresh deep clone, i.e. its contained objects to be re-usable in master.
@@ -43,6 +43,7 @@ import org.knime.core.node.port.PortObject;
 import org.knime.core.node.port.PortObjectSpec;
 import org.knime.core.node.port.PortType;
 
+import com.continental.knime.xlsformatter.commons.KnimeAdapters;
 import com.continental.knime.xlsformatter.commons.TagBasedXlsCellFormatterNodeModel;
 import com.continental.knime.xlsformatter.commons.XlsFormatterControlTableAnalysisTools;
 import com.continental.knime.xlsformatter.commons.XlsFormatterControlTableValidator;
@@ -141,7 +142,7 @@ public class XlsRowColumnSizerNodeModel extends TagBasedXlsCellFormatterNodeMode
 	 */
 	protected PortObject[] execute(PortObject[] inObjects, final ExecutionContext exec) throws Exception { 
 		
-		XlsFormatterState xlsf = XlsFormatterState.getDeepClone(inObjects[1]);
+		XlsFormatterState xlsf = XlsFormatterState.getModifiableCopy(inObjects[1]);
 		XlsFormatterState.SheetState xlsfs = xlsf.getCurrentSheetStateForModification();
 
 		ControlTableStyle controlTableStyle = ControlTableStyle.getFromString(m_controlTableStyle.getStringValue());
@@ -154,7 +155,7 @@ public class XlsRowColumnSizerNodeModel extends TagBasedXlsCellFormatterNodeMode
 		if (controlTableStyle == ControlTableStyle.DIRECT) {
 			
 			Map<CellAddress, Double> cellContentMap =
-					XlsFormatterControlTableAnalysisTools.getCellsWithDoubleValues((BufferedDataTable)inObjects[0], exec, logger);
+					XlsFormatterControlTableAnalysisTools.getCellsWithDoubleValues((BufferedDataTable)inObjects[0], KnimeAdapters.of(exec), KnimeAdapters.of(logger));
 			
 			Set<Integer> processedIndices = new HashSet<Integer>(); // row or columns already processed
 			for (CellAddress cell : cellContentMap.keySet()) {
@@ -173,7 +174,7 @@ public class XlsRowColumnSizerNodeModel extends TagBasedXlsCellFormatterNodeMode
 		else { // standard tags provided in UI
 			
 			List<CellAddress> targetCells =
-					XlsFormatterControlTableAnalysisTools.getCellsMatchingTag((BufferedDataTable)inObjects[0], m_tag.getStringValue().trim(), exec, logger);
+					XlsFormatterControlTableAnalysisTools.getCellsMatchingTag((BufferedDataTable)inObjects[0], m_tag.getStringValue().trim(), KnimeAdapters.of(exec), KnimeAdapters.of(logger));
 			warnOnNoMatchingTags(targetCells, m_tag.getStringValue().trim());
 			
 			for (CellAddress cell : targetCells) {
@@ -184,6 +185,7 @@ public class XlsRowColumnSizerNodeModel extends TagBasedXlsCellFormatterNodeMode
 			}
 		}
 		
+		xlsf.moveSheetsToFileStore(exec);
 		return new PortObject[] { xlsf };
 	}
 
@@ -39,6 +39,7 @@ import org.knime.core.node.port.PortObject;
 import org.knime.core.node.port.PortObjectSpec;
 import org.knime.core.node.port.PortType;
 
+import com.continental.knime.xlsformatter.commons.KnimeAdapters;
 import com.continental.knime.xlsformatter.commons.TagBasedXlsCellFormatterNodeModel;
 import com.continental.knime.xlsformatter.commons.WarningMessageContainer;
 import com.continental.knime.xlsformatter.commons.XlsFormatterControlTableAnalysisTools;
@@ -109,16 +110,17 @@ public class XlsSheetPropertiesNodeModel extends TagBasedXlsCellFormatterNodeMod
 		if (!XlsFormatterControlTableValidator.isControlTable((BufferedDataTable)inObjects[0], exec, logger))
 			throw new IllegalArgumentException("The provided input table is not a valid XLS control table. See log for details.");
 		
-		XlsFormatterState xlsf = XlsFormatterState.getDeepClone(inObjects[1]);
+		XlsFormatterState xlsf = XlsFormatterState.getModifiableCopy(inObjects[1]);
 		WarningMessageContainer warningMessageContainer = new WarningMessageContainer();
 
 		BufferedDataTable inputTable = (BufferedDataTable)inObjects[0];
 		FunctionOptions function = FunctionOptions.getFromString(m_function.getStringValue());
 
 		List<CellAddress> matchingCells = XlsFormatterControlTableAnalysisTools.getCellsMatchingTag(
-				inputTable, m_tag.getStringValue(), exec, logger);
+				inputTable, m_tag.getStringValue(), KnimeAdapters.of(exec), KnimeAdapters.of(logger));
 		if (matchingCells == null || matchingCells.size() == 0) {
 			warnOnNoMatchingTags(matchingCells, m_tag.getStringValue().trim()); // not feeding the warningMessageContainer, because next line is return statement
+			xlsf.moveSheetsToFileStore(exec);
 			return new PortObject[] { xlsf };
 		}
 
@@ -144,7 +146,7 @@ public class XlsSheetPropertiesNodeModel extends TagBasedXlsCellFormatterNodeMod
 			break;
 
 		case AUTOFILTER:
-			List<CellRangeAddress> ranges = XlsFormatterControlTableAnalysisTools.getRangesFromTag(inputTable, m_tag.getStringValue(), false, true, warningMessageContainer, exec, logger);
+			List<CellRangeAddress> ranges = XlsFormatterControlTableAnalysisTools.getRangesFromTag(inputTable, m_tag.getStringValue(), false, true, warningMessageContainer, KnimeAdapters.of(exec), KnimeAdapters.of(logger));
 			logger.debug("Detected auto-filter range as: " + ranges.stream().map(r -> r.formatAsString()).collect(Collectors.joining(";")));
 			if (ranges.size() != 1)
 				throw new IllegalArgumentException("For auto-filter, only one rectangular range may match the searched tag.");
@@ -166,6 +168,7 @@ public class XlsSheetPropertiesNodeModel extends TagBasedXlsCellFormatterNodeMod
 		if (warningMessageContainer.hasMessage())
 			setWarningMessage(warningMessageContainer.getMessage());
 		
+		xlsf.moveSheetsToFileStore(exec);
 		return new PortObject[] { xlsf };
 	}
 
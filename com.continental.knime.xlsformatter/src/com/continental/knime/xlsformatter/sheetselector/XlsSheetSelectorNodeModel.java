@@ -83,6 +83,7 @@ public class XlsSheetSelectorNodeModel extends NodeModel {
 		logger.info("The sheet for further instructions has been changed to " +
 				(m_optionNamed.getBooleanValue() ? "\"" + m_sheetName.getStringValue() + "\"" : "[default: sheet 0]"));
 		
+		xlsf.moveSheetsToFileStore(exec);
 		return new PortObject[] { xlsf };
 	}
 
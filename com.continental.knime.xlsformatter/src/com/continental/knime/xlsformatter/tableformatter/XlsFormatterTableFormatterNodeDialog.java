@@ -0,0 +1,86 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.continental.knime.xlsformatter.tableformatter;
+
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
+import org.knime.core.node.defaultnodesettings.DialogComponentBoolean;
+import org.knime.core.node.defaultnodesettings.DialogComponentString;
+import org.knime.core.node.defaultnodesettings.DialogComponentStringSelection;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+
+import com.continental.knime.xlsformatter.commons.UiValidation;
+import com.continental.knime.xlsformatter.commons.XlsFormatterUiOptions;
+
+public class XlsFormatterTableFormatterNodeDialog extends DefaultNodeSettingsPane {
+
+	SettingsModelString tag;
+	SettingsModelString tableName;
+
+	protected XlsFormatterTableFormatterNodeDialog() {
+		super();
+
+		this.createNewGroup("Tag Selection");
+		tag = new SettingsModelString(XlsFormatterTableFormatterNodeModel.CFGKEY_TAG, XlsFormatterTableFormatterNodeModel.DEFAULT_TAG);
+		DialogComponentString tagComponent = new DialogComponentString(tag, XlsFormatterUiOptions.UI_LABEL_SINGLE_TAG, true, 10);
+		tagComponent.setToolTipText("Select the tag from your control table that marks the table range (incl. header and totals row).");
+		this.addDialogComponent(tagComponent);
+
+
+		this.createNewGroup("Table Definition");
+		tableName = new SettingsModelString(XlsFormatterTableFormatterNodeModel.CFGKEY_TABLENAME, XlsFormatterTableFormatterNodeModel.DEFAULT_TABLENAME);
+		DialogComponentString tableNameComponent = new DialogComponentString(tableName, "table name (empty for automatic)", false, 20);
+		tableNameComponent.setToolTipText("The table's name as used in structured references of formulas.");
+		this.addDialogComponent(tableNameComponent);
+
+		this.addDialogComponent(new DialogComponentStringSelection(
+				new SettingsModelString(XlsFormatterTableFormatterNodeModel.CFGKEY_TABLESTYLE, XlsFormatterTableFormatterNodeModel.DEFAULT_TABLESTYLE),
+				"table style", XlsFormatterTableFormatterNodeModel.TABLE_STYLE_OPTIONS));
+
+
+		this.createNewGroup("Table Style Options");
+		setHorizontalPlacement(true);
+		this.addDialogComponent(new DialogComponentBoolean(
+				new SettingsModelBoolean(XlsFormatterTableFormatterNodeModel.CFGKEY_HEADERROW, XlsFormatterTableFormatterNodeModel.DEFAULT_HEADERROW), "header row"));
+		this.addDialogComponent(new DialogComponentBoolean(
+				new SettingsModelBoolean(XlsFormatterTableFormatterNodeModel.CFGKEY_TOTALSROW, XlsFormatterTableFormatterNodeModel.DEFAULT_TOTALSROW), "totals row"));
+		this.addDialogComponent(new DialogComponentBoolean(
+				new SettingsModelBoolean(XlsFormatterTableFormatterNodeModel.CFGKEY_BANDEDROWS, XlsFormatterTableFormatterNodeModel.DEFAULT_BANDEDROWS), "banded rows"));
+		setHorizontalPlacement(false);
+		setHorizontalPlacement(true);
+		this.addDialogComponent(new DialogComponentBoolean(
+				new SettingsModelBoolean(XlsFormatterTableFormatterNodeModel.CFGKEY_FIRSTCOLUMN, XlsFormatterTableFormatterNodeModel.DEFAULT_FIRSTCOLUMN), "first column"));
+		this.addDialogComponent(new DialogComponentBoolean(
+				new SettingsModelBoolean(XlsFormatterTableFormatterNodeModel.CFGKEY_LASTCOLUMN, XlsFormatterTableFormatterNodeModel.DEFAULT_LASTCOLUMN), "last column"));
+		this.addDialogComponent(new DialogComponentBoolean(
+				new SettingsModelBoolean(XlsFormatterTableFormatterNodeModel.CFGKEY_BANDEDCOLUMNS, XlsFormatterTableFormatterNodeModel.DEFAULT_BANDEDCOLUMNS), "banded columns"));
+		setHorizontalPlacement(false);
+	}
+
+	@Override
+	public void saveAdditionalSettingsTo(NodeSettingsWO settings) throws InvalidSettingsException {
+		super.saveAdditionalSettingsTo(settings);
+		UiValidation.validateTagField(tag);
+
+		if (!tableName.getStringValue().trim().equals("") && !XlsFormatterTableFormatterNodeModel.isValidTableName(tableName.getStringValue().trim()))
+			throw new InvalidSettingsException("The table name is invalid. It needs to start with a letter or underscore, must not contain spaces and must not look like a cell reference.");
+	}
+}
@@ -0,0 +1,283 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019  Continental AG, Hanover, Germany
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.continental.knime.xlsformatter.tableformatter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+import org.knime.core.node.port.PortObject;
+import org.knime.core.node.port.PortObjectSpec;
+import org.knime.core.node.port.PortType;
+
+import com.continental.knime.xlsformatter.commons.AddressingTools;
+import com.continental.knime.xlsformatter.commons.KnimeAdapters;
+import com.continental.knime.xlsformatter.commons.TagBasedXlsCellFormatterNodeModel;
+import com.continental.knime.xlsformatter.commons.WarningMessageContainer;
+import com.continental.knime.xlsformatter.commons.XlsFormatterControlTableAnalysisTools;
+import com.continental.knime.xlsformatter.commons.XlsFormatterControlTableValidator;
+import com.continental.knime.xlsformatter.commons.XlsFormatterTagTools;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState.TableDefinition;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterStateSpec;
+
+public class XlsFormatterTableFormatterNodeModel extends TagBasedXlsCellFormatterNodeModel {
+
+	// the logger instance
+	private static final NodeLogger logger = NodeLogger
+			.getLogger(XlsFormatterTableFormatterNodeModel.class);
+
+	static final String CFGKEY_TAG = "Tag";
+	static final String DEFAULT_TAG = "table";
+	final SettingsModelString m_tag =
+			new SettingsModelString(CFGKEY_TAG, DEFAULT_TAG);
+
+	static final String CFGKEY_TABLENAME = "TableName";
+	static final String DEFAULT_TABLENAME = "";
+	final SettingsModelString m_tableName =
+			new SettingsModelString(CFGKEY_TABLENAME, DEFAULT_TABLENAME);
+
+	static final String OPTION_NO_TABLE_STYLE = "none";
+	static final String[] TABLE_STYLE_OPTIONS = getTableStyleOptions();
+	static final String CFGKEY_TABLESTYLE = "TableStyle";
+	static final String DEFAULT_TABLESTYLE = "TableStyleMedium2";
+	final SettingsModelString m_tableStyle =
+			new SettingsModelString(CFGKEY_TABLESTYLE, DEFAULT_TABLESTYLE);
+
+	static final String CFGKEY_HEADERROW = "HeaderRow";
+	static final boolean DEFAULT_HEADERROW = true;
+	final SettingsModelBoolean m_headerRow =
+			new SettingsModelBoolean(CFGKEY_HEADERROW, DEFAULT_HEADERROW);
+
+	static final String CFGKEY_TOTALSROW = "TotalsRow";
+	static final boolean DEFAULT_TOTALSROW = false;
+	final SettingsModelBoolean m_totalsRow =
+			new SettingsModelBoolean(CFGKEY_TOTALSROW, DEFAULT_TOTALSROW);
+
+	static final String CFGKEY_BANDEDROWS = "BandedRows";
+	static final boolean DEFAULT_BANDEDROWS = true;
+	final SettingsModelBoolean m_bandedRows =
+			new SettingsModelBoolean(CFGKEY_BANDEDROWS, DEFAULT_BANDEDROWS);
+
+	static final String CFGKEY_BANDEDCOLUMNS = "BandedColumns";
+	static final boolean DEFAULT_BANDEDCOLUMNS = false;
+	final SettingsModelBoolean m_bandedColumns =
+			new SettingsModelBoolean(CFGKEY_BANDEDCOLUMNS, DEFAULT_BANDEDCOLUMNS);
+
+	static final String CFGKEY_FIRSTCOLUMN = "FirstColumn";
+	static final boolean DEFAULT_FIRSTCOLUMN = false;
+	final SettingsModelBoolean m_firstColumn =
+			new SettingsModelBoolean(CFGKEY_FIRSTCOLUMN, DEFAULT_FIRSTCOLUMN);
+
+	static final String CFGKEY_LASTCOLUMN = "LastColumn";
+	static final boolean DEFAULT_LASTCOLUMN = false;
+	final SettingsModelBoolean m_lastColumn =
+			new SettingsModelBoolean(CFGKEY_LASTCOLUMN, DEFAULT_LASTCOLUMN);
+
+
+	/**
+	 * Constructor for the node model.
+	 */
+	protected XlsFormatterTableFormatterNodeModel() {
+		super(
+				new PortType[] { BufferedDataTable.TYPE, XlsFormatterState.TYPE_OPTIONAL },
+				new PortType[] { XlsFormatterState.TYPE });
+	}
+
+	/**
+	 * Gets the selectable table styles, i.e. Excel's built-in table styles.
+	 */
+	private static String[] getTableStyleOptions() {
+		List<String> ret = new ArrayList<String>();
+		ret.add(OPTION_NO_TABLE_STYLE);
+		for (int i = 1; i <= 21; i++)
+			ret.add("TableStyleLight" + i);
+		for (int i = 1; i <= 28; i++)
+			ret.add("TableStyleMedium" + i);
+		for (int i = 1; i <= 11; i++)
+			ret.add("TableStyleDark" + i);
+		return ret.toArray(new String[ret.size()]);
+	}
+
+	/**
+	 * Checks whether a String is a valid Excel table name, i.e. starts with a letter, underscore or backslash, consists of letters,
+	 * digits, underscores, periods and backslashes only and cannot be confused with a cell reference.
+	 */
+	static boolean isValidTableName(String name) {
+		return name.length() <= 255 &&
+				name.matches("[\\p{L}_\\\\][\\p{L}\\p{N}_.\\\\]*") &&
+				!name.matches("(?i)[a-z]{1,3}[0-9]+|[rc]|r[0-9]*c[0-9]*");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	protected PortObject[] execute(PortObject[] inObjects,
+			final ExecutionContext exec) throws Exception {
+
+		if (!XlsFormatterControlTableValidator.isControlTable((BufferedDataTable)inObjects[0], exec, logger))
+			throw new IllegalArgumentException("The provided input table is not a valid XLS control table. See log for details.");
+
+		XlsFormatterState xlsf = XlsFormatterState.getModifiableCopy(inObjects[1]);
+		XlsFormatterState.SheetState xlsfs = xlsf.getCurrentSheetStateForModification();
+		WarningMessageContainer warningMessageContainer = new WarningMessageContainer();
+
+		List<CellRangeAddress> ranges = XlsFormatterControlTableAnalysisTools.getRangesFromTag((BufferedDataTable)inObjects[0], m_tag.getStringValue(), false, true, warningMessageContainer, KnimeAdapters.of(exec), KnimeAdapters.of(logger));
+		if (ranges.size() == 0) {
+			warnOnNoMatchingTags(null, m_tag.getStringValue().trim());
+			xlsf.moveSheetsToFileStore(exec);
+			return new PortObject[] { xlsf };
+		}
+		logger.debug("Detected table range as: " + ranges.stream().map(r -> r.formatAsString()).collect(Collectors.joining(";")));
+		if (ranges.size() != 1)
+			throw new IllegalArgumentException("For a table, only one rectangular range may match the searched tag.");
+
+		TableDefinition table = new TableDefinition();
+		table.range = ranges.get(0);
+		table.name = m_tableName.getStringValue().trim().equals("") ? null : m_tableName.getStringValue().trim();
+		table.styleName = m_tableStyle.getStringValue().equals(OPTION_NO_TABLE_STYLE) ? null : m_tableStyle.getStringValue();
+		table.hasHeaderRow = m_headerRow.getBooleanValue();
+		table.hasTotalsRow = m_totalsRow.getBooleanValue();
+		table.showBandedRows = m_bandedRows.getBooleanValue();
+		table.showBandedColumns = m_bandedColumns.getBooleanValue();
+		table.highlightFirstColumn = m_firstColumn.getBooleanValue();
+		table.highlightLastColumn = m_lastColumn.getBooleanValue();
+
+		// check the table against the sheet's other instructions, as Excel would refuse to open conflicting files:
+		if (table.range.getNumberOfCells() / (table.range.getLastColumn() - table.range.getFirstColumn() + 1) <= (table.hasHeaderRow ? 1 : 0) + (table.hasTotalsRow ? 1 : 0))
+			throw new IllegalArgumentException("The table range " + table.range.formatAsString() + " needs to contain at least one data row besides its header and totals row.");
+		if (AddressingTools.hasOverlap(xlsfs.tables.stream().map(t -> t.range).collect(Collectors.toList()), Arrays.asList(table.range), KnimeAdapters.of(exec), KnimeAdapters.of(logger)))
+			throw new IllegalArgumentException("The table range overlaps with a previously defined table. See log for details.");
+		if (AddressingTools.hasOverlap(xlsfs.mergeRanges, Arrays.asList(table.range), KnimeAdapters.of(exec), KnimeAdapters.of(logger)))
+			throw new IllegalArgumentException("The table range overlaps with merged cells, which tables cannot contain. See log for details.");
+		if (table.name != null && xlsfs.tables.stream().anyMatch(t -> table.name.equalsIgnoreCase(t.name)))
+			throw new IllegalArgumentException("The table name \"" + table.name + "\" is already used by a previously defined table.");
+		if (xlsfs.autoFilterRange != null && xlsfs.autoFilterRange.intersects(table.range))
+			warningMessageContainer.addMessage("The sheet's auto filter overlaps this table and will be skipped, since a table has its own filter.");
+
+		xlsfs.tables.add(table);
+
+		if (warningMessageContainer.hasMessage())
+			setWarningMessage(warningMessageContainer.getMessage());
+
+		xlsf.moveSheetsToFileStore(exec);
+		return new PortObject[] { xlsf };
+	}
+
+	@Override
+	protected PortObjectSpec[] configure(final PortObjectSpec[] inSpecs)
+			throws InvalidSettingsException {
+
+		if (m_tag.getStringValue().trim().equals(""))
+			throw new IllegalArgumentException("Empty tag is not allowed, you need to enter something here that is also present in your control table (e.g., \"x\" or \"data\"");
+
+		if (!XlsFormatterTagTools.isValidSingleTag(m_tag.getStringValue().trim()))
+			throw new IllegalArgumentException("Only a single tag is allowed, no comma-separated list.");
+
+		if (!m_tableName.getStringValue().trim().equals("") && !isValidTableName(m_tableName.getStringValue().trim()))
+			throw new InvalidSettingsException("The table name \"" + m_tableName.getStringValue().trim() + "\" is invalid. It needs to start with a letter or underscore, must not contain spaces and must not look like a cell reference.");
+
+		if (!XlsFormatterControlTableValidator.isControlTableSpec((DataTableSpec)inSpecs[0], logger))
+			throw new InvalidSettingsException("The configured input table header is not that of a valid XLS Formatting control table. See log for details.");
+
+		return new PortObjectSpec[] { inSpecs[1] == null ? XlsFormatterStateSpec.getEmptySpec() : ((XlsFormatterStateSpec)inSpecs[1]).getCopy() };
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void saveSettingsTo(final NodeSettingsWO settings) {
+
+		m_tag.saveSettingsTo(settings);
+		m_tableName.saveSettingsTo(settings);
+		m_tableStyle.saveSettingsTo(settings);
+		m_headerRow.saveSettingsTo(settings);
+		m_totalsRow.saveSettingsTo(settings);
+		m_bandedRows.saveSettingsTo(settings);
+		m_bandedColumns.saveSettingsTo(settings);
+		m_firstColumn.saveSettingsTo(settings);
+		m_lastColumn.saveSettingsTo(settings);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void loadValidatedSettingsFrom(final NodeSettingsRO settings)
+			throws InvalidSettingsException {
+
+		m_tag.loadSettingsFrom(settings);
+		m_tableName.loadSettingsFrom(settings);
+		m_tableStyle.loadSettingsFrom(settings);
+		m_headerRow.loadSettingsFrom(settings);
+		m_totalsRow.loadSettingsFrom(settings);
+		m_bandedRows.loadSettingsFrom(settings);
+		m_bandedColumns.loadSettingsFrom(settings);
+		m_firstColumn.loadSettingsFrom(settings);
+		m_lastColumn.loadSettingsFrom(settings);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void validateSettings(final NodeSettingsRO settings)
+			throws InvalidSettingsException {
+
+		m_tag.validateSettings(settings);
+		m_tableName.validateSettings(settings);
+		m_tableStyle.validateSettings(settings);
+		m_headerRow.validateSettings(settings);
+		m_totalsRow.validateSettings(settings);
+		m_bandedRows.validateSettings(settings);
+		m_bandedColumns.validateSettings(settings);
+		m_firstColumn.validateSettings(settings);
+		m_lastColumn.validateSettings(settings);
+	}
+
+	@Override
+	protected void loadInternals(File nodeInternDir, ExecutionMonitor exec)
+			throws IOException, CanceledExecutionException {
+	}
+
+	@Override
+	protected void saveInternals(File nodeInternDir, ExecutionMonitor exec)
+			throws IOException, CanceledExecutionException {
+	}
+
+	@Override
+	protected void reset() {
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019-2021  Continental AG, Hanover, Germany
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ 
+package com.continental.knime.xlsformatter.write;
+
+import java.util.Optional;
+
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.ConfigurableNodeFactory;
+import org.knime.core.node.NodeDialogPane;
+import org.knime.core.node.NodeView;
+import org.knime.core.node.context.NodeCreationConfiguration;
+import org.knime.core.node.context.ports.PortsConfiguration;
+import org.knime.filehandling.core.port.FileSystemPortObject;
+
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState;
+
+public final class XlsFormatterWriteNodeFactory extends ConfigurableNodeFactory<XlsFormatterWriteNodeModel> {
+
+	/** The name of the data table input port group. */
+	private static final String DATA_TABLE_GRP_NAME = "Input Table";
+
+	/** The name of the xls formatter input port group. */
+	private static final String FORMATTER_STATE_GRP_NAME = "XLS Formatter";
+
+	/** The name of the optional destination connection input port group. */
+	private static final String CONNECTION_DESTINATION_PORT_GRP_NAME = "Destination File System Connection";
+
+	@Override
+	protected Optional<PortsConfigurationBuilder> createPortsConfigBuilder() {
+		final PortsConfigurationBuilder b = new PortsConfigurationBuilder();
+		b.addFixedInputPortGroup(DATA_TABLE_GRP_NAME, BufferedDataTable.TYPE);
+		b.addFixedInputPortGroup(FORMATTER_STATE_GRP_NAME, XlsFormatterState.TYPE);
+		b.addOptionalInputPortGroup(CONNECTION_DESTINATION_PORT_GRP_NAME, FileSystemPortObject.TYPE);
+		return Optional.of(b);
+	}
+
+	@Override
+	protected XlsFormatterWriteNodeModel createNodeModel(NodeCreationConfiguration creationConfig) {
+		final PortsConfiguration portsCfg = getPortsCfg(creationConfig);
+		return new XlsFormatterWriteNodeModel(portsCfg, createSettings(portsCfg), getDataTableIdx(portsCfg), getFormatterIdx(portsCfg));
+	}
+
+	@Override
+	protected NodeDialogPane createNodeDialogPane(NodeCreationConfiguration creationConfig) {
+		final PortsConfiguration portsCfg = getPortsCfg(creationConfig);
+		return new XlsFormatterWriteNodeDialog(createSettings(portsCfg));
+	}
+
+	@Override
+	protected int getNrNodeViews() {
+		return 0;
+	}
+
+	@Override
+	public NodeView<XlsFormatterWriteNodeModel> createNodeView(int viewIndex, XlsFormatterWriteNodeModel nodeModel) {
+		return null;
+	}
+
+	@Override
+	protected boolean hasDialog() {
+		return true;
+	}
+
+	private static PortsConfiguration getPortsCfg(final NodeCreationConfiguration creationCfg) {
+		return creationCfg.getPortConfig().orElseThrow(IllegalStateException::new);
+	}
+
+	private static XlsFormatterWriteSettings createSettings(final PortsConfiguration portsCfg) {
+		return new XlsFormatterWriteSettings(portsCfg, CONNECTION_DESTINATION_PORT_GRP_NAME);
+	}
+
+	private static int getDataTableIdx(final PortsConfiguration portsCfg) {
+		return portsCfg.getInputPortLocation().get(DATA_TABLE_GRP_NAME)[0];
+	}
+
+	private static int getFormatterIdx(final PortsConfiguration portsCfg) {
+		return portsCfg.getInputPortLocation().get(FORMATTER_STATE_GRP_NAME)[0];
+	}
+}
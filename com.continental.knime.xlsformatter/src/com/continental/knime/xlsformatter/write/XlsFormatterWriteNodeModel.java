@@ -0,0 +1,137 @@
+/*
+ * Continental Nodes for KNIME
+ * Copyright (C) 2019-2021  Continental AG, Hanover, Germany
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ 
+package com.continental.knime.xlsformatter.write;
+
+import java.io.File;
+import java.util.EnumSet;
+
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.NodeModel;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.context.ports.PortsConfiguration;
+import org.knime.core.node.port.PortObject;
+import org.knime.core.node.port.PortObjectSpec;
+import org.knime.filehandling.core.connections.FSFiles;
+import org.knime.filehandling.core.connections.FSPath;
+import org.knime.filehandling.core.defaultnodesettings.filechooser.writer.WritePathAccessor;
+import org.knime.filehandling.core.defaultnodesettings.status.NodeModelStatusConsumer;
+import org.knime.filehandling.core.defaultnodesettings.status.StatusMessage.MessageType;
+
+import com.continental.knime.xlsformatter.apply.XlsFormatterApplyDataTableSource;
+import com.continental.knime.xlsformatter.apply.XlsFormatterApplyStreamingWriter;
+import com.continental.knime.xlsformatter.commons.KnimeAdapters;
+import com.continental.knime.xlsformatter.commons.OutputFileTools;
+import com.continental.knime.xlsformatter.commons.WarningMessageContainer;
+import com.continental.knime.xlsformatter.porttype.XlsFormatterState;
+
+final class XlsFormatterWriteNodeModel extends NodeModel {
+
+	private static final NodeLogger LOGGER = NodeLogger.getLogger(XlsFormatterWriteNodeModel.class);
+	private final WarningMessageContainer warningMessageContainer = new WarningMessageContainer();
+
+	private final XlsFormatterWriteSettings m_settings;
+
+	private final int m_dataTableIdx;
+
+	private final int m_formatterIdx;
+
+	private final NodeModelStatusConsumer m_statusConsumer;
+
+	XlsFormatterWriteNodeModel(PortsConfiguration portsCfg, XlsFormatterWriteSettings settings, int dataTableIdx, int formatterIdx) {
+		super(portsCfg.getInputPorts(), portsCfg.getOutputPorts());
+		m_settings = settings;
+		m_dataTableIdx = dataTableIdx;
+		m_formatterIdx = formatterIdx;
+		m_statusConsumer = new NodeModelStatusConsumer(EnumSet.of(MessageType.WARNING, MessageType.ERROR));
+	}
+
+	@Override
+	protected PortObjectSpec[] configure(PortObjectSpec[] inSpecs) throws InvalidSettingsException {
+		String sheetName = m_settings.getSheetNameSettingsModel().getStringValue();
+		if (sheetName == null || sheetName.trim().length() == 0)
+			throw new InvalidSettingsException("The sheet name must not be empty.");
+		m_settings.getTgtFileChooser().configureInModel(inSpecs, m_statusConsumer);
+		m_statusConsumer.setWarningsIfRequired(this::setWarningMessage);
+		return new PortObjectSpec[] {};
+	}
+
+	@Override
+	protected PortObject[] execute(PortObject[] inObjects, ExecutionContext exec) throws Exception {
+		final BufferedDataTable table = (BufferedDataTable) inObjects[m_dataTableIdx];
+		final XlsFormatterState state = (XlsFormatterState) inObjects[m_formatterIdx];
+		try (final WritePathAccessor writeAccessor = m_settings.getTgtFileChooser().createWritePathAccessor()) {
+			final FSPath outputPath = writeAccessor.getOutputPath(m_statusConsumer);
+			m_statusConsumer.setWarningsIfRequired(this::setWarningMessage);
+			OutputFileTools.createParentDirectories(outputPath, m_settings.getTgtFileChooser());
+			// since the remainder is rather costly we do this check here
+			OutputFileTools.checkOverwrite(outputPath, m_settings.getTgtFileChooser());
+			m_statusConsumer.setWarningsIfRequired(this::setWarningMessage);
+
+			XlsFormatterApplyStreamingWriter.write(new XlsFormatterApplyDataTableSource(table),
+					m_settings.getSheetNameSettingsModel().getStringValue(),
+					m_settings.getWriteColumnHeaderSettingsModel().getBooleanValue(),
+					() -> FSFiles.newOutputStream(outputPath,
+							m_settings.getTgtFileChooser().getFileOverwritePolicy().getOpenOptions()),
+					state,
+					warningMessageContainer,
+					KnimeAdapters.of(exec),
+					KnimeAdapters.of(LOGGER));
+			if (m_settings.getOpenOutputFileSettingsModel().getBooleanValue() && !OutputFileTools.isHeadlessOrRemote()
+					&& OutputFileTools.categoryIsSupported(outputPath.toFSLocation().getFSCategory())) {
+				OutputFileTools.openFile(m_settings.getTgtFileChooser(), outputPath, warningMessageContainer);
+			}
+			if (warningMessageContainer.hasMessage()) {
+				setWarningMessage(warningMessageContainer.getMessage());
+			}
+		}
+		return new PortObject[] {};
+	}
+
+	@Override
+	protected void saveSettingsTo(NodeSettingsWO settings) {
+		m_settings.saveSettingsInModel(settings);
+	}
+
+	@Override
+	protected void validateSettings(NodeSettingsRO settings) throws InvalidSettingsException {
+		m_settings.validateSettingsInModel(settings);
+	}
+
+	@Override
+	protected void loadValidatedSettingsFrom(NodeSettingsRO settings) throws InvalidSettingsException {
+		m_settings.loadSettingsInModel(settings);
+	}
+
+	@Override
+	protected void loadInternals(File nodeInternDir, ExecutionMonitor exec) {
+	}
+
+	@Override
+	protected void saveInternals(File nodeInternDir, ExecutionMonitor exec) {
+	}
+
+	@Override
+	protected void reset() {
+	}
+}
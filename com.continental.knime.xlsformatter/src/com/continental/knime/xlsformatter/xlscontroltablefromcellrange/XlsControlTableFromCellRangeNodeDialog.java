@@ -58,7 +58,7 @@ public class XlsControlTableFromCellRangeNodeDialog extends DefaultNodeSettingsP
 		UiValidation.validateTagField(tag);
 
 		try {
-			AddressingTools.parseRange(cellRange.getStringValue().trim());
+			AddressingTools.parseRange(cellRange.getStringValue().trim(), true);
 		} catch (IllegalArgumentException iae) {
 			throw new InvalidSettingsException(iae.getMessage(), iae);
 		}
@@ -20,6 +20,8 @@ package com.continental.knime.xlsformatter.xlscontroltablefromcellrange;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.apache.poi.ss.util.CellRangeAddress;
 import org.knime.core.data.DataCell;
@@ -87,7 +89,7 @@ public class XlsControlTableFromCellRangeNodeModel extends NodeModel {
 
 		CellRangeAddress range;
 		try {
-			range = AddressingTools.parseRange(m_cellRange.getStringValue().trim());
+			range = AddressingTools.parseRange(m_cellRange.getStringValue().trim(), true);
 		}
 		catch (Exception e) {
 			throw new Exception("Invalid cell range " + m_cellRange.getStringValue().trim() + ". " + e.getMessage(), e);
@@ -96,6 +98,18 @@ public class XlsControlTableFromCellRangeNodeModel extends NodeModel {
 		if (!XlsFormatterControlTableValidator.isSheetSizeWithinXlsSpec(range.getLastColumn() + 1, range.getLastRow() + 1))
 			throw new Exception("Cell range exceeds XLS limits: " + m_cellRange.getStringValue().trim());
 
+		// full column or row ranges are not materialized, but carried as tags in the control table's spec:
+		if (AddressingTools.isFullColumnOrRowRange(range)) {
+			BufferedDataContainer fullRangeTableBuffer = XlsFormatterControlTableCreateTools.getNewBufferedDataContainer(1, getFullRangeTags(range), exec, logger);
+			fullRangeTableBuffer.close();
+			BufferedDataTable fullRangeTable = fullRangeTableBuffer.getTable();
+			if (inData[0] != null)
+				fullRangeTable = XlsFormatterControlTableCreateTools.merge(
+						inData[0], fullRangeTable,
+						m_mode.getStringValue().equals(Modes.OVERWRITE.toString()), exec, logger);
+			return new BufferedDataTable[] { fullRangeTable };
+		}
+
 
 		// generate new control table:
 		BufferedDataContainer newDataTableBuffer = XlsFormatterControlTableCreateTools.getNewBufferedDataContainer(range.getLastColumn() + 1, exec, logger);
@@ -129,17 +143,36 @@ public class XlsControlTableFromCellRangeNodeModel extends NodeModel {
 
 		CellRangeAddress range;
 		try {
-			range = AddressingTools.parseRange(m_cellRange.getStringValue().trim());
+			range = AddressingTools.parseRange(m_cellRange.getStringValue().trim(), true);
 		}
 		catch (Exception e) {
 			throw new InvalidSettingsException("Invalid cell range " + m_cellRange.getStringValue().trim() + ". " + e.getMessage(), e);
 		}
 
+		if (AddressingTools.isFullColumnOrRowRange(range)) {
+			Map<String, String> fullRangeTags = getFullRangeTags(range);
+			if (inSpecs[0] != null)
+				fullRangeTags = XlsFormatterControlTableCreateTools.mergeFullRangeTags(
+						XlsFormatterControlTableCreateTools.getFullRangeTags(inSpecs[0]), fullRangeTags,
+						m_mode.getStringValue().equals(Modes.OVERWRITE.toString()));
+			return new DataTableSpec[] { XlsFormatterControlTableCreateTools.createDataTableSpec(
+					inSpecs[0] == null ? 1 : Math.max(inSpecs[0].getNumColumns(), 1), StringCell.TYPE, fullRangeTags) };
+		}
+		
 		if (inSpecs[0] == null)
 			return new DataTableSpec[] { XlsFormatterControlTableCreateTools.createDataTableSpec(range.getLastColumn() + 1) };
 
 		return new DataTableSpec[] { XlsFormatterControlTableCreateTools.createDataTableSpec(
-				Math.max(inSpecs[0].getNumColumns(), range.getLastColumn() + 1)) };
+				Math.max(inSpecs[0].getNumColumns(), range.getLastColumn() + 1), StringCell.TYPE, XlsFormatterControlTableCreateTools.getFullRangeTags(inSpecs[0])) };
+	}
+
+	/**
+	 * Gets the full-range tag map of this node's full column or row range.
+	 */
+	private Map<String, String> getFullRangeTags(CellRangeAddress range) {
+		Map<String, String> ret = new HashMap<String, String>();
+		ret.put(range.formatAsString(), m_tag.getStringValue().trim());
+		return ret;
 	}
 
 	/**
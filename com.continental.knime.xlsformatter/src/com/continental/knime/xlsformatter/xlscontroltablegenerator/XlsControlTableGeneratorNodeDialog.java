@@ -32,6 +32,7 @@ import org.knime.core.node.defaultnodesettings.DialogComponentStringSelection;
 import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
 import org.knime.core.node.defaultnodesettings.SettingsModelString;
 
+import com.continental.knime.xlsformatter.commons.KnimeAdapters;
 import com.continental.knime.xlsformatter.commons.XlsFormatterControlTableAnalysisTools;
 import com.continental.knime.xlsformatter.commons.XlsFormatterUiOptions;
 import com.continental.knime.xlsformatter.xlscontroltablegenerator.XlsControlTableGeneratorNodeModel.InconsistencyResolutionOptions;
@@ -119,7 +120,7 @@ public class XlsControlTableGeneratorNodeDialog extends DefaultNodeSettingsPane
   	if (spec.getNumColumns() == 0)
   		throw new NotConfigurableException("\nThis node cannot be configured without a non-empty input table specification.");
   	
-  	longUnpivotedInputTableColumnCount = XlsFormatterControlTableAnalysisTools.isLongControlTableSpec(spec, null, logger);
+  	longUnpivotedInputTableColumnCount = XlsFormatterControlTableAnalysisTools.isLongControlTableSpec(spec, null, KnimeAdapters.of(logger));
 		operationType.setStringValue(longUnpivotedInputTableColumnCount == -1 ?
 				OperationType.STANDARD.toString() : OperationType.PIVOT_BACK.toString());
 		operationType.setEnabled(false);
@@ -35,6 +35,7 @@ import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
 import org.knime.core.node.defaultnodesettings.SettingsModelString;
 import org.knime.core.node.port.PortType;
 
+import com.continental.knime.xlsformatter.commons.KnimeAdapters;
 import com.continental.knime.xlsformatter.commons.WarningMessageContainer;
 import com.continental.knime.xlsformatter.commons.XlsFormatterControlTableAnalysisTools;
 import com.continental.knime.xlsformatter.commons.XlsFormatterUiOptions;
@@ -155,7 +156,7 @@ public class XlsControlTableGeneratorNodeModel extends NodeModel {
 		WarningMessageContainer warningMessageContainer = new WarningMessageContainer();
 		BufferedDataTable[] ret = null;
 		
-		XlsFormatterControlTableAnalysisTools.isLongControlTableSpec(inData[0].getSpec(), warningMessageContainer, logger); // just to add the warning about potentially intended pivot-back option
+		XlsFormatterControlTableAnalysisTools.isLongControlTableSpec(inData[0].getSpec(), warningMessageContainer, KnimeAdapters.of(logger)); // just to add the warning about potentially intended pivot-back option
 		
 		if (m_operationType.getStringValue().equals(OperationType.PIVOT_BACK.toString()))
 			ret = XlsControlTableGeneratorFunctionPivotBack.pivotBack(
@@ -180,7 +181,7 @@ public class XlsControlTableGeneratorNodeModel extends NodeModel {
 
 		WarningMessageContainer warningMessageContainer = new WarningMessageContainer();
 		
-		int longUnpivotedInputTableColumnCount = XlsFormatterControlTableAnalysisTools.isLongControlTableSpec(inSpecs[0], warningMessageContainer, logger);
+		int longUnpivotedInputTableColumnCount = XlsFormatterControlTableAnalysisTools.isLongControlTableSpec(inSpecs[0], warningMessageContainer, KnimeAdapters.of(logger));
 		m_operationType.setStringValue(longUnpivotedInputTableColumnCount == -1 ?
 				OperationType.STANDARD.toString() : OperationType.PIVOT_BACK.toString());
 		
@@ -21,8 +21,11 @@ package com.continental.knime.xlsformatter.xlscontroltablemerger;
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.def.StringCell;
 import org.knime.core.node.BufferedDataTable;
 import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionContext;
@@ -100,15 +103,18 @@ public class XlsControlTableMergerNodeModel extends NodeModel {
 			throws InvalidSettingsException {
 
 		int width = -1;
+		Map<String, String> fullRangeTags = new HashMap<String, String>();
 		for (int i = 0; i < inSpecs.length; i++) {
 			if (!XlsFormatterControlTableValidator.isControlTableSpec(inSpecs[i], logger))
 				throw new InvalidSettingsException("Input table header " + (i+1) + " is not that of a valid XLS Formatting control table. See log for details.");
 			
 			if (inSpecs[i].getNumColumns() > width)
 				width = inSpecs[i].getNumColumns();
+			fullRangeTags = XlsFormatterControlTableCreateTools.mergeFullRangeTags(fullRangeTags, XlsFormatterControlTableCreateTools.getFullRangeTags(inSpecs[i]),
+					Modes.getFromString(m_mode.getStringValue()) == Modes.OVERWRITE);
 		}
 
-		return new DataTableSpec[] { XlsFormatterControlTableCreateTools.createDataTableSpec(width) };
+		return new DataTableSpec[] { XlsFormatterControlTableCreateTools.createDataTableSpec(width, StringCell.TYPE, fullRangeTags) };
 	}
 
 	/**